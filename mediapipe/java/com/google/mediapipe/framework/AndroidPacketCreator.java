@@ -66,12 +66,15 @@ public class AndroidPacketCreator extends PacketCreator {
    * Creates a MediaPipe Image packet from a {@link MPImage}.
    *
    * <p>The ImageContainerType must be IMAGE_CONTAINER_BYTEBUFFER or IMAGE_CONTAINER_BITMAP.
+   *
+   * <p>The pixels of a {@link ByteBuffer} image are copied, unless the image was built with a
+   * {@link com.google.mediapipe.framework.image.ByteBufferImageBuilder.ReleaseListener}: the
+   * packet then wraps the buffer and keeps a reference on the image until the graph releases it.
    */
   public Packet createImage(MPImage image) {
     // TODO: Choose the best storage from multiple containers.
     MPImageProperties properties = image.getContainedImageProperties().get(0);
     if (properties.getStorageType() == MPImage.STORAGE_TYPE_BYTEBUFFER) {
-      ByteBuffer buffer = ByteBufferExtractor.extract(image);
       int numChannels = 0;
       switch (properties.getImageFormat()) {
         case MPImage.IMAGE_FORMAT_RGBA:
@@ -91,7 +94,18 @@ public class AndroidPacketCreator extends PacketCreator {
       }
       int width = image.getWidth();
       int height = image.getHeight();
-      return createImage(buffer, width, height, numChannels);
+      ByteBuffer sharedBuffer = ByteBufferExtractor.acquireSharedBuffer(image);
+      if (sharedBuffer != null) {
+        try {
+          return createImage(
+              sharedBuffer, width, height, numChannels, releasedBuffer -> image.close());
+        } catch (RuntimeException e) {
+          image.close();
+          throw e;
+        }
+      }
+      // The image doesn't share its buffer, which is copied.
+      return createImage(ByteBufferExtractor.extract(image), width, height, numChannels);
     }
     if (properties.getStorageType() == MPImage.STORAGE_TYPE_BITMAP) {
       Bitmap bitmap = BitmapExtractor.extract(image);
@@ -61,6 +61,9 @@ public class Graph {
 
   private Map<String, ArrayList<PacketBufferItem>> packetBuffers = new HashMap<>();
 
+  // The native indices of the input streams registered by addConsumablePacketsToInputStreams.
+  private final Map<String, Integer> inputStreamIndices = new HashMap<>();
+
   // This is used for methods that need to ensure the native context is alive
   // while still allowing other methods of this class to execute concurrently.
   // Note: if a method needs to acquire both this lock and the Graph intrinsic monitor,
@@ -412,6 +415,61 @@ public class Graph {
     }
   }
 
+  /**
+   * Adds one packet into each of several graph input streams in a single native call, yielding
+   * the ownership of the packets over to the graph streams as {@link
+   * #addConsumablePacketToInputStream} does.
+   *
+   * <p>Each stream name is only passed to the native graph the first time it is used, after which
+   * the stream is referred to by its native index. The packets are added in the array order. The
+   * packets that are consumed by the graph are released and their array entries are set to null,
+   * including when the function ends with MediaPipeException, in which case the remaining packets
+   * are unaffected.
+   *
+   * @param streamNames the names of the input streams.
+   * @param packets the mediapipe packets, one per input stream.
+   * @param timestamp the timestamp of the packets, although not enforced, the unit is normally
+   *     microsecond.
+   * @throws MediaPipeException for any error status.
+   */
+  public synchronized void addConsumablePacketsToInputStreams(
+      String[] streamNames, Packet[] packets, long timestamp) {
+    Preconditions.checkState(
+        nativeGraphHandle != 0, "Invalid context, tearDown() might have been called.");
+    Preconditions.checkArgument(
+        streamNames.length == packets.length,
+        "The number of stream names and packets doesn't match.");
+    if (!graphRunning) {
+      for (int i = 0; i < packets.length; ++i) {
+        addConsumablePacketToInputStream(streamNames[i], packets[i], timestamp);
+        packets[i] = null;
+      }
+      return;
+    }
+    int[] streamIndices = new int[streamNames.length];
+    long[] packetHandles = new long[packets.length];
+    for (int i = 0; i < streamNames.length; ++i) {
+      Integer streamIndex = inputStreamIndices.get(streamNames[i]);
+      if (streamIndex == null) {
+        streamIndex = nativeRegisterInputStream(nativeGraphHandle, streamNames[i]);
+        inputStreamIndices.put(streamNames[i], streamIndex);
+      }
+      streamIndices[i] = streamIndex;
+      packetHandles[i] = packets[i].getNativeHandle();
+    }
+    try {
+      nativeMovePacketsToInputStreams(nativeGraphHandle, streamIndices, packetHandles, timestamp);
+    } finally {
+      // The native graph zeroes the handles of the packets it has moved.
+      for (int i = 0; i < packets.length; ++i) {
+        if (packetHandles[i] == 0) {
+          packets[i].release();
+          packets[i] = null;
+        }
+      }
+    }
+  }
+
   /**
    * Closes the specified input stream.
    * @throws MediaPipeException for any error status.
@@ -662,6 +720,11 @@ public class Graph {
   private native void nativeMovePacketToInputStream(
       long context, String streamName, long packet, long timestamp);
 
+  private native int nativeRegisterInputStream(long context, String streamName);
+
+  private native void nativeMovePacketsToInputStreams(
+      long context, int[] streamIndices, long[] packets, long timestamp);
+
   private native void nativeSetGraphInputStreamBlockingMode(long context, boolean mode);
 
   private native void nativeCloseInputStream(long context, String streamName);
@@ -296,6 +296,23 @@ public class PacketCreator {
             mediapipeGraph.getNativeHandle(), fx, fy, cx, cy, width, height));
   }
 
+  /**
+   * Creates a {@link Packet} containing a mediapipe::NormalizedRect with the given center, size and
+   * rotation, without serializing a protobuf message.
+   *
+   * @param xCenter the x coordinate of the rect center, normalized by the image width.
+   * @param yCenter the y coordinate of the rect center, normalized by the image height.
+   * @param width the width of the rect, normalized by the image width.
+   * @param height the height of the rect, normalized by the image height.
+   * @param rotation the rotation of the rect in radians, anti-clockwise.
+   */
+  public Packet createNormalizedRect(
+      float xCenter, float yCenter, float width, float height, float rotation) {
+    return Packet.create(
+        nativeCreateNormalizedRect(
+            mediapipeGraph.getNativeHandle(), xCenter, yCenter, width, height, rotation));
+  }
+
   /**
    * Creates a mediapipe::GpuBuffer with the specified texture name and dimensions.
    *
@@ -370,6 +387,50 @@ public class PacketCreator {
    * <p>For 3 and 4 channel images, the pixel rows should have 4-byte alignment.
    */
   public Packet createImage(ByteBuffer buffer, int width, int height, int numChannels) {
+    int widthStep = getImageWidthStep(buffer, width, height, numChannels);
+    return Packet.create(
+        nativeCreateCpuImage(
+            mediapipeGraph.getNativeHandle(), buffer, width, height, widthStep, numChannels));
+  }
+
+  /**
+   * Creates a 1, 3, or 4 channel 8-bit Image packet that uses a U8, RGB, or RGBA direct byte buffer
+   * as its pixel storage, without copying it.
+   *
+   * <p>The packet holds a reference to the buffer until MediaPipe no longer needs it, at which
+   * point {@code releaseCallback} is invoked. The buffer contents must not be modified before that.
+   *
+   * <p>For 3 and 4 channel images, the pixel rows should have 4-byte alignment.
+   *
+   * @param buffer a buffer created with {@link ByteBuffer#allocateDirect}.
+   * @param width the width in pixels.
+   * @param height the height in pixels.
+   * @param numChannels the number of channels, either 1, 3, or 4.
+   * @param releaseCallback a callback to be invoked when the buffer is released. Can be null.
+   */
+  public Packet createImage(
+      ByteBuffer buffer,
+      int width,
+      int height,
+      int numChannels,
+      BufferReleaseCallback releaseCallback) {
+    if (!buffer.isDirect()) {
+      throw new IllegalArgumentException(
+          "The buffer should be created using ByteBuffer.allocateDirect.");
+    }
+    int widthStep = getImageWidthStep(buffer, width, height, numChannels);
+    return Packet.create(
+        nativeCreateCpuImageWithoutCopy(
+            mediapipeGraph.getNativeHandle(),
+            buffer,
+            width,
+            height,
+            widthStep,
+            numChannels,
+            releaseCallback));
+  }
+
+  private static int getImageWidthStep(ByteBuffer buffer, int width, int height, int numChannels) {
     int widthStep;
     if (numChannels == 4) {
       widthStep = width * 4;
@@ -385,9 +446,7 @@ public class PacketCreator {
       throw new IllegalArgumentException(
           "The size of the buffer should be: " + expectedSize + " but is " + buffer.capacity());
     }
-    return Packet.create(
-        nativeCreateCpuImage(
-            mediapipeGraph.getNativeHandle(), buffer, width, height, widthStep, numChannels));
+    return widthStep;
   }
 
   /** Helper callback adaptor to create the Java {@link GlSyncToken}. This is called by JNI code. */
@@ -447,6 +506,15 @@ public class PacketCreator {
   private native long nativeCreateCpuImage(
       long context, ByteBuffer buffer, int width, int height, int rowBytes, int numChannels);
 
+  private native long nativeCreateCpuImageWithoutCopy(
+      long context,
+      ByteBuffer buffer,
+      int width,
+      int height,
+      int rowBytes,
+      int numChannels,
+      BufferReleaseCallback releaseCallback);
+
   private native long nativeCreateInt32Array(long context, int[] data);
 
   private native long nativeCreateFloat32Array(long context, float[] data);
@@ -461,4 +529,7 @@ public class PacketCreator {
 
   private native long nativeCreateCameraIntrinsics(
       long context, float fx, float fy, float cx, float cy, float width, float height);
+
+  private native long nativeCreateNormalizedRect(
+      long context, float xCenter, float yCenter, float width, float height, float rotation);
 }
@@ -16,34 +16,95 @@ limitations under the License.
 package com.google.mediapipe.framework.image;
 
 import android.graphics.Bitmap;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
 
 /**
  * Utility for extracting {@link android.graphics.Bitmap} from {@link MPImage}.
  *
- * <p>Currently it only supports {@link MPImage} with {@link MPImage#STORAGE_TYPE_BITMAP}, otherwise
- * {@link IllegalArgumentException} will be thrown.
+ * <p>Currently it only supports {@link MPImage} with {@link MPImage#STORAGE_TYPE_BITMAP}, or with
+ * {@link MPImage#STORAGE_TYPE_BYTEBUFFER} in RGBA, RGB or ALPHA format, otherwise {@link
+ * IllegalArgumentException} will be thrown.
  */
 public final class BitmapExtractor {
 
   /**
    * Extracts a {@link android.graphics.Bitmap} from a {@link MPImage}.
    *
+   * <p>If the image is stored in a {@link java.nio.ByteBuffer}, it is converted to an {@link
+   * Bitmap.Config#ARGB_8888} bitmap (or {@link Bitmap.Config#ALPHA_8} for ALPHA images) the first
+   * time. The converted bitmap is cached in {@code image} and recycled when {@code image} is
+   * closed.
+   *
    * @param image the image to extract {@link android.graphics.Bitmap} from.
    * @return the {@link android.graphics.Bitmap} stored in {@link MPImage}
    * @throws IllegalArgumentException when the extraction requires unsupported format or data type
    *     conversions.
    */
   public static Bitmap extract(MPImage image) {
-    MPImageContainer imageContainer = image.getContainer(MPImage.STORAGE_TYPE_BITMAP);
-    if (imageContainer != null) {
+    // Prefers the container the image was built with, so that the representations cached by other
+    // extractions don't change the result.
+    MPImageContainer imageContainer = image.getContainer();
+    if (!(imageContainer instanceof BitmapImageContainer
+        || imageContainer instanceof ByteBufferImageContainer)) {
+      imageContainer = image.getContainer(MPImage.STORAGE_TYPE_BITMAP);
+      if (imageContainer == null) {
+        imageContainer = image.getContainer(MPImage.STORAGE_TYPE_BYTEBUFFER);
+      }
+    }
+    if (imageContainer instanceof BitmapImageContainer) {
       return ((BitmapImageContainer) imageContainer).getBitmap();
+    }
+    if (imageContainer == null) {
+      throw new IllegalArgumentException(
+          "Extracting Bitmap from a MPImage created by objects other than Bitmap or ByteBuffer is"
+              + " not supported");
+    }
+    @MPImage.MPImageFormat
+    int sourceFormat = ((ByteBufferImageContainer) imageContainer).getImageFormat();
+    if (sourceFormat == MPImage.IMAGE_FORMAT_ALPHA) {
+      return extractFromByteBuffer(image, MPImage.IMAGE_FORMAT_ALPHA, Bitmap.Config.ALPHA_8);
+    } else if (sourceFormat == MPImage.IMAGE_FORMAT_RGBA
+        || sourceFormat == MPImage.IMAGE_FORMAT_RGB) {
+      return extractFromByteBuffer(image, MPImage.IMAGE_FORMAT_RGBA, Bitmap.Config.ARGB_8888);
     } else {
-      // TODO: Support ByteBuffer -> Bitmap conversion.
       throw new IllegalArgumentException(
-          "Extracting Bitmap from a MPImage created by objects other than Bitmap is not"
-              + " supported");
+          String.format(
+              "Extracting Bitmap from a MPImage created by a ByteBuffer in format %d is not"
+                  + " supported",
+              sourceFormat));
     }
   }
 
+  private static Bitmap extractFromByteBuffer(
+      MPImage image, @MPImage.MPImageFormat int byteBufferFormat, Bitmap.Config config) {
+    MPImageProperties bitmapProperties =
+        MPImageProperties.builder()
+            .setStorageType(MPImage.STORAGE_TYPE_BITMAP)
+            .setImageFormat(BitmapImageContainer.convertFormatCode(config))
+            .build();
+    MPImageContainer container =
+        image.getOrCreateContainer(
+            bitmapProperties,
+            () ->
+                // Reuses the cached ByteBuffer representation, or converts RGB to RGBA into a
+                // temporary buffer as only the bitmap is cached.
+                ByteBufferExtractor.extractTemporarily(
+                    image,
+                    byteBufferFormat,
+                    buffer -> {
+                      Bitmap bitmap =
+                          Bitmap.createBitmap(image.getWidth(), image.getHeight(), config);
+                      if (VERSION.SDK_INT >= VERSION_CODES.KITKAT) {
+                        // Keeps the color values as they are, and lets the result be extracted
+                        // again.
+                        bitmap.setPremultiplied(false);
+                      }
+                      bitmap.copyPixelsFromBuffer(buffer);
+                      return new BitmapImageContainer(bitmap);
+                    }));
+    return ((BitmapImageContainer) container).getBitmap();
+  }
+
   private BitmapExtractor() {}
 }
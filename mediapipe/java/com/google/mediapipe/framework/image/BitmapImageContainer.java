@@ -20,7 +20,10 @@ import com.google.mediapipe.framework.image.MPImage.MPImageFormat;
 
 class BitmapImageContainer implements MPImageContainer {
 
-  private final Bitmap bitmap;
+  // Null until loaded for the containers built with a BitmapLoader.
+  private Bitmap bitmap;
+  // Null for the containers built with a bitmap, and once the bitmap is loaded.
+  private LazyBitmapImageBuilder.BitmapLoader bitmapLoader;
   private final MPImageProperties properties;
 
   public BitmapImageContainer(Bitmap bitmap) {
@@ -32,7 +35,27 @@ class BitmapImageContainer implements MPImageContainer {
             .build();
   }
 
-  public Bitmap getBitmap() {
+  /**
+   * Creates a container whose bitmap is loaded by {@code bitmapLoader} the first time it is
+   * requested.
+   *
+   * @param bitmapLoader the {@link LazyBitmapImageBuilder.BitmapLoader} of the bitmap.
+   * @param config the config of the loaded bitmap.
+   */
+  BitmapImageContainer(LazyBitmapImageBuilder.BitmapLoader bitmapLoader, Bitmap.Config config) {
+    this.bitmapLoader = bitmapLoader;
+    this.properties =
+        MPImageProperties.builder()
+            .setImageFormat(convertFormatCode(config))
+            .setStorageType(MPImage.STORAGE_TYPE_BITMAP)
+            .build();
+  }
+
+  public synchronized Bitmap getBitmap() {
+    if (bitmap == null) {
+      bitmap = bitmapLoader.load();
+      bitmapLoader = null;
+    }
     return bitmap;
   }
 
@@ -42,8 +65,13 @@ class BitmapImageContainer implements MPImageContainer {
   }
 
   @Override
-  public void close() {
-    bitmap.recycle();
+  public synchronized void close() {
+    if (bitmap != null) {
+      bitmap.recycle();
+    }
+    if (bitmapLoader != null) {
+      bitmapLoader.close();
+    }
   }
 
   @MPImageFormat
@@ -20,11 +20,16 @@ import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
+import androidx.annotation.Nullable;
 import com.google.auto.value.AutoValue;
 import com.google.mediapipe.framework.image.MPImage.MPImageFormat;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
 import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 /**
  * Utility for extracting {@link ByteBuffer} from {@link MPImage}.
@@ -61,6 +66,30 @@ public class ByteBufferExtractor {
     }
   }
 
+  /**
+   * Acquires the {@link ByteBuffer} of a {@link MPImage} built with a {@link
+   * ByteBufferImageBuilder.ReleaseListener}, to use it without copying.
+   *
+   * <p>This acquires a reference on {@code image}, which the caller must close once it doesn't use
+   * the buffer anymore. Returns null without acquiring a reference if the image doesn't share its
+   * buffer.
+   *
+   * @throws IllegalStateException if the image is already closed.
+   */
+  @Nullable
+  public static ByteBuffer acquireSharedBuffer(MPImage image) {
+    // Acquired before checking the container, whose buffer is no longer shareable once the image
+    // is closed.
+    image.getInternal().acquire();
+    MPImageContainer container = image.getContainer();
+    if (container.getImageProperties().getStorageType() == MPImage.STORAGE_TYPE_BYTEBUFFER
+        && ((ByteBufferImageContainer) container).isShareable()) {
+      return ((ByteBufferImageContainer) container).getByteBuffer();
+    }
+    image.close();
+    return null;
+  }
+
   /**
    * Extracts a readonly {@link ByteBuffer} in given {@code targetFormat} from a {@link MPImage}.
    *
@@ -69,8 +98,16 @@ public class ByteBufferExtractor {
    * <ul>
    *   <li>When extracting RGB images to RGBA format, A channel will always set to 255.
    *   <li>When extracting RGBA images to RGB format, A channel will be dropped.
+   *   <li>When extracting VEC32F1 images to ALPHA format, values are clamped to [0, 1] and scaled
+   *       to [0, 255].
    * </ul>
    *
+   * <p>The converted buffer is cached in {@code image}, so that extracting the same format again
+   * doesn't convert the image again. It is taken from a pool of direct buffers, and returned to the
+   * pool once {@code image} is closed, so the returned buffer must not be used afterwards. To
+   * convert every frame of a video into a buffer owned by the caller, use {@link #extract(MPImage,
+   * int, ByteBuffer)} instead.
+   *
    * @param image the image to extract buffer from.
    * @param targetFormat the image format of the result bytebuffer.
    * @return the readonly {@link ByteBuffer} stored in {@link MPImage}
@@ -78,35 +115,86 @@ public class ByteBufferExtractor {
    *     conversions.
    */
   public static ByteBuffer extract(MPImage image, @MPImageFormat int targetFormat) {
-    MPImageContainer container;
-    MPImageProperties byteBufferProperties =
-        MPImageProperties.builder()
-            .setStorageType(MPImage.STORAGE_TYPE_BYTEBUFFER)
-            .setImageFormat(targetFormat)
-            .build();
-    if ((container = image.getContainer(byteBufferProperties)) != null) {
-      ByteBufferImageContainer byteBufferImageContainer = (ByteBufferImageContainer) container;
-      return byteBufferImageContainer
-          .getByteBuffer()
-          .asReadOnlyBuffer()
-          .order(ByteOrder.nativeOrder());
-    } else if ((container = image.getContainer(MPImage.STORAGE_TYPE_BYTEBUFFER)) != null) {
-      ByteBufferImageContainer byteBufferImageContainer = (ByteBufferImageContainer) container;
-      @MPImageFormat int sourceFormat = byteBufferImageContainer.getImageFormat();
-      return convertByteBuffer(byteBufferImageContainer.getByteBuffer(), sourceFormat, targetFormat)
-          .asReadOnlyBuffer()
-          .order(ByteOrder.nativeOrder());
-    } else if ((container = image.getContainer(MPImage.STORAGE_TYPE_BITMAP)) != null) {
-      BitmapImageContainer bitmapImageContainer = (BitmapImageContainer) container;
-      ByteBuffer byteBuffer =
-          extractByteBufferFromBitmap(bitmapImageContainer.getBitmap(), targetFormat)
-              .asReadOnlyBuffer();
-      boolean unused = image.addContainer(new ByteBufferImageContainer(byteBuffer, targetFormat));
-      return byteBuffer;
-    } else {
-      throw new IllegalArgumentException(
-          "Extracting ByteBuffer from a MPImage created by objects other than Bitmap or"
-              + " Bytebuffer is not supported");
+    DirectBufferPool pool = DirectBufferPool.getDefaultInstance();
+    ByteBufferImageContainer byteBufferImageContainer =
+        (ByteBufferImageContainer)
+            image.getOrCreateContainer(
+                getByteBufferProperties(targetFormat),
+                () ->
+                    new ByteBufferImageContainer(
+                        convert(image, targetFormat, pool::acquire), targetFormat, pool::release));
+    return byteBufferImageContainer
+        .getByteBuffer()
+        .asReadOnlyBuffer()
+        .order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Extracts a {@link MPImage} in given {@code targetFormat} into a buffer owned by the caller.
+   *
+   * <p>Follows the format conversion spec of {@link #extract(MPImage, int)}, but the result is
+   * neither allocated nor cached in {@code image}: it is written at the current position of {@code
+   * target}, whose position is advanced past it. Reusing the same target for every frame of a video
+   * avoids allocating a buffer per frame.
+   *
+   * @param image the image to extract buffer from.
+   * @param targetFormat the image format of the result.
+   * @param target the buffer to write the result to.
+   * @return the number of bytes written to {@code target}.
+   * @throws IllegalArgumentException when the extraction requires unsupported format or data type
+   *     conversions, or when the result doesn't fit in the remaining bytes of {@code target}.
+   * @throws ReadOnlyBufferException if {@code target} is read-only.
+   */
+  public static int extract(MPImage image, @MPImageFormat int targetFormat, ByteBuffer target) {
+    if (target.isReadOnly()) {
+      throw new ReadOnlyBufferException();
+    }
+    MPImageContainer container = image.getContainer(getByteBufferProperties(targetFormat));
+    ByteBuffer result;
+    if (container != null) {
+      // Copies the existing representation.
+      result = ((ByteBufferImageContainer) container).getByteBuffer().duplicate();
+      result.rewind();
+      int size = result.remaining();
+      checkFits(size, target.remaining());
+      target.put(result);
+      return size;
+    }
+    ByteBuffer remaining = target.slice().order(ByteOrder.nativeOrder());
+    result =
+        convert(
+            image,
+            targetFormat,
+            capacity -> {
+              checkFits(capacity, remaining.remaining());
+              ((Buffer) remaining).limit(capacity);
+              return remaining;
+            });
+    advance(target, result.remaining());
+    return result.remaining();
+  }
+
+  /**
+   * Extracts a {@link MPImage} in given {@code targetFormat}, and returns the result of {@code
+   * function} applied to it.
+   *
+   * <p>The representation cached in {@code image} is used if there is one. Otherwise, the image is
+   * converted into a buffer of the {@link DirectBufferPool} that is returned to the pool once
+   * {@code function} returns, so {@code function} must not keep any reference to the buffer.
+   */
+  static <T> T extractTemporarily(
+      MPImage image, @MPImageFormat int targetFormat, Function<ByteBuffer, T> function) {
+    MPImageContainer container = image.getContainer(getByteBufferProperties(targetFormat));
+    if (container != null) {
+      return function.apply(
+          ((ByteBufferImageContainer) container).getByteBuffer().asReadOnlyBuffer());
+    }
+    DirectBufferPool pool = DirectBufferPool.getDefaultInstance();
+    ByteBuffer buffer = convert(image, targetFormat, pool::acquire);
+    try {
+      return function.apply(buffer.asReadOnlyBuffer());
+    } finally {
+      pool.release(buffer);
     }
   }
 
@@ -139,17 +227,22 @@ public class ByteBufferExtractor {
    *     given {@code imageFormat}
    */
   static Result extractInRecommendedFormat(MPImage image) {
-    MPImageContainer container;
-    if ((container = image.getContainer(MPImage.STORAGE_TYPE_BITMAP)) != null) {
+    // Prefers the container the image was built with, so that the representations cached by other
+    // extractions don't change the result.
+    MPImageContainer container = image.getContainer();
+    int storageType = container.getImageProperties().getStorageType();
+    if (storageType != MPImage.STORAGE_TYPE_BITMAP
+        && storageType != MPImage.STORAGE_TYPE_BYTEBUFFER) {
+      container = image.getContainer(MPImage.STORAGE_TYPE_BITMAP);
+      if (container == null) {
+        container = image.getContainer(MPImage.STORAGE_TYPE_BYTEBUFFER);
+      }
+    }
+    if (container instanceof BitmapImageContainer) {
       Bitmap bitmap = ((BitmapImageContainer) container).getBitmap();
       @MPImageFormat int format = adviseImageFormat(bitmap);
-      Result result =
-          Result.create(extractByteBufferFromBitmap(bitmap, format).asReadOnlyBuffer(), format);
-
-      boolean unused =
-          image.addContainer(new ByteBufferImageContainer(result.buffer(), result.format()));
-      return result;
-    } else if ((container = image.getContainer(MPImage.STORAGE_TYPE_BYTEBUFFER)) != null) {
+      return Result.create(extract(image, format), format);
+    } else if (container instanceof ByteBufferImageContainer) {
       ByteBufferImageContainer byteBufferImageContainer = (ByteBufferImageContainer) container;
       return Result.create(
           byteBufferImageContainer.getByteBuffer().asReadOnlyBuffer(),
@@ -174,8 +267,57 @@ public class ByteBufferExtractor {
     }
   }
 
+  private static MPImageProperties getByteBufferProperties(@MPImageFormat int imageFormat) {
+    return MPImageProperties.builder()
+        .setStorageType(MPImage.STORAGE_TYPE_BYTEBUFFER)
+        .setImageFormat(imageFormat)
+        .build();
+  }
+
+  private static void checkFits(int size, int available) {
+    if (size > available) {
+      throw new IllegalArgumentException(
+          String.format(
+              Locale.ENGLISH,
+              "The target buffer has %d remaining bytes, but the image needs %d bytes.",
+              available,
+              size));
+    }
+  }
+
+  // Called on a Buffer, as the covariant overrides of position(int) and limit(int) don't exist on
+  // all the Android versions.
+  private static void advance(Buffer buffer, int size) {
+    buffer.position(buffer.position() + size);
+  }
+
+  /**
+   * Converts an existing representation of {@code image} to a {@link ByteBuffer} in {@code
+   * targetFormat}, written to a buffer obtained from {@code allocator}.
+   */
+  private static ByteBuffer convert(
+      MPImage image, @MPImageFormat int targetFormat, IntFunction<ByteBuffer> allocator) {
+    MPImageContainer container;
+    if ((container = image.getContainer(MPImage.STORAGE_TYPE_BYTEBUFFER)) != null) {
+      ByteBufferImageContainer byteBufferImageContainer = (ByteBufferImageContainer) container;
+      return convertByteBuffer(
+          byteBufferImageContainer.getByteBuffer(),
+          byteBufferImageContainer.getImageFormat(),
+          targetFormat,
+          allocator);
+    } else if ((container = image.getContainer(MPImage.STORAGE_TYPE_BITMAP)) != null) {
+      BitmapImageContainer bitmapImageContainer = (BitmapImageContainer) container;
+      return extractByteBufferFromBitmap(
+          bitmapImageContainer.getBitmap(), targetFormat, allocator);
+    } else {
+      throw new IllegalArgumentException(
+          "Extracting ByteBuffer from a MPImage created by objects other than Bitmap or"
+              + " Bytebuffer is not supported");
+    }
+  }
+
   private static ByteBuffer extractByteBufferFromBitmap(
-      Bitmap bitmap, @MPImageFormat int imageFormat) {
+      Bitmap bitmap, @MPImageFormat int imageFormat, IntFunction<ByteBuffer> allocator) {
     if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN_MR1 && bitmap.isPremultiplied()) {
       throw new IllegalArgumentException(
           "Extracting ByteBuffer from a MPImage created by a premultiplied Bitmap is not"
@@ -183,7 +325,7 @@ public class ByteBufferExtractor {
     }
     if (bitmap.getConfig() == Config.ARGB_8888) {
       if (imageFormat == MPImage.IMAGE_FORMAT_RGBA) {
-        ByteBuffer buffer = ByteBuffer.allocateDirect(bitmap.getByteCount());
+        ByteBuffer buffer = allocator.apply(bitmap.getByteCount());
         bitmap.copyPixelsToBuffer(buffer);
         buffer.rewind();
         return buffer;
@@ -191,16 +333,8 @@ public class ByteBufferExtractor {
         // TODO: Try Use RGBA buffer to create RGB buffer which might be faster.
         int w = bitmap.getWidth();
         int h = bitmap.getHeight();
-        int[] pixels = new int[w * h];
-        bitmap.getPixels(pixels, 0, w, 0, 0, w, h);
-        ByteBuffer buffer = ByteBuffer.allocateDirect(w * h * 3);
-        buffer.order(ByteOrder.nativeOrder());
-        for (int pixel : pixels) {
-          // getPixels returns Color in ARGB rather than copyPixelsToBuffer which returns RGBA
-          buffer.put((byte) ((pixel >> 16) & 0xff));
-          buffer.put((byte) ((pixel >> 8) & 0xff));
-          buffer.put((byte) (pixel & 0xff));
-        }
+        ByteBuffer buffer = allocator.apply(w * h * 3);
+        PixelConverter.argbBitmapToRgb(bitmap, buffer);
         buffer.rewind();
         return buffer;
       }
@@ -213,44 +347,28 @@ public class ByteBufferExtractor {
   }
 
   private static ByteBuffer convertByteBuffer(
-      ByteBuffer source, @MPImageFormat int sourceFormat, @MPImageFormat int targetFormat) {
+      ByteBuffer source,
+      @MPImageFormat int sourceFormat,
+      @MPImageFormat int targetFormat,
+      IntFunction<ByteBuffer> allocator) {
+    // Read from a duplicate so that the position of the source buffer is left untouched.
+    ByteBuffer input = source.duplicate();
+    input.rewind();
+    ByteBuffer target;
     if (sourceFormat == MPImage.IMAGE_FORMAT_RGB && targetFormat == MPImage.IMAGE_FORMAT_RGBA) {
-      ByteBuffer target = ByteBuffer.allocateDirect(source.capacity() / 3 * 4);
-      // Extend the buffer when the target is longer than the source. Use two cursors and sweep the
-      // array reversely to convert in-place.
-      byte[] array = new byte[target.capacity()];
-      source.get(array, 0, source.capacity());
-      source.rewind();
-      int rgbCursor = source.capacity();
-      int rgbaCursor = target.capacity();
-      while (rgbCursor != rgbaCursor) {
-        array[--rgbaCursor] = (byte) 0xff; // A
-        array[--rgbaCursor] = array[--rgbCursor]; // B
-        array[--rgbaCursor] = array[--rgbCursor]; // G
-        array[--rgbaCursor] = array[--rgbCursor]; // R
-      }
-      target.put(array, 0, target.capacity());
-      target.rewind();
-      return target;
+      int numPixels = source.capacity() / 3;
+      target = allocator.apply(numPixels * 4);
+      PixelConverter.rgbToRgba(input, target, numPixels);
     } else if (sourceFormat == MPImage.IMAGE_FORMAT_RGBA
         && targetFormat == MPImage.IMAGE_FORMAT_RGB) {
-      ByteBuffer target = ByteBuffer.allocateDirect(source.capacity() / 4 * 3);
-      // Shrink the buffer when the target is shorter than the source. Use two cursors and sweep the
-      // array to convert in-place.
-      byte[] array = new byte[source.capacity()];
-      source.get(array, 0, source.capacity());
-      source.rewind();
-      int rgbaCursor = 0;
-      int rgbCursor = 0;
-      while (rgbaCursor < array.length) {
-        array[rgbCursor++] = array[rgbaCursor++]; // R
-        array[rgbCursor++] = array[rgbaCursor++]; // G
-        array[rgbCursor++] = array[rgbaCursor++]; // B
-        rgbaCursor++;
-      }
-      target.put(array, 0, target.capacity());
-      target.rewind();
-      return target;
+      int numPixels = source.capacity() / 4;
+      target = allocator.apply(numPixels * 3);
+      PixelConverter.rgbaToRgb(input, target, numPixels);
+    } else if (sourceFormat == MPImage.IMAGE_FORMAT_VEC32F1
+        && targetFormat == MPImage.IMAGE_FORMAT_ALPHA) {
+      int numPixels = source.capacity() / 4;
+      target = allocator.apply(numPixels);
+      PixelConverter.vec32f1ToAlpha(input, target, numPixels);
     } else {
       throw new IllegalArgumentException(
           String.format(
@@ -259,6 +377,8 @@ public class ByteBufferExtractor {
               sourceFormat,
               targetFormat));
     }
+    target.rewind();
+    return target;
   }
 
   // ByteBuffer is not able to be instantiated.
@@ -36,6 +36,16 @@ public class ByteBufferImageBuilder {
 
   // Optional fields.
   private long timestamp;
+  private ReleaseListener releaseListener;
+
+  /** Listens for the release of the {@link ByteBuffer} of a {@link MPImage}. */
+  public interface ReleaseListener {
+    /**
+     * Invoked once the image is closed and no MediaPipe graph uses {@code buffer} anymore, after
+     * which the buffer can be modified or reused.
+     */
+    void onRelease(ByteBuffer buffer);
+  }
 
   /**
    * Creates the builder with mandatory {@link ByteBuffer} and the represented image.
@@ -64,8 +74,30 @@ public class ByteBufferImageBuilder {
     return this;
   }
 
+  /**
+   * Lets MediaPipe graphs use the {@link ByteBuffer} without copying it, and sets the listener
+   * invoked when the buffer can be reused.
+   *
+   * <p>By default, the packets created from the image copy the buffer. With a release listener,
+   * they wrap the buffer and keep a reference on the image until the graph releases them, so the
+   * buffer must not be modified until {@code listener} is invoked.
+   *
+   * @throws IllegalArgumentException if the buffer is not direct.
+   */
+  public ByteBufferImageBuilder setReleaseListener(ReleaseListener listener) {
+    if (!buffer.isDirect()) {
+      throw new IllegalArgumentException("Only direct buffers can be shared without copying.");
+    }
+    this.releaseListener = listener;
+    return this;
+  }
+
   /** Builds a {@link MPImage} instance. */
   public MPImage build() {
-    return new MPImage(new ByteBufferImageContainer(buffer, imageFormat), timestamp, width, height);
+    return new MPImage(
+        new ByteBufferImageContainer(buffer, imageFormat, releaseListener),
+        timestamp,
+        width,
+        height);
   }
 }
@@ -15,6 +15,7 @@ limitations under the License.
 
 package com.google.mediapipe.framework.image;
 
+import androidx.annotation.Nullable;
 import com.google.mediapipe.framework.image.MPImage.MPImageFormat;
 import java.nio.ByteBuffer;
 
@@ -22,9 +23,22 @@ class ByteBufferImageContainer implements MPImageContainer {
 
   private final ByteBuffer buffer;
   private final MPImageProperties properties;
+  @Nullable private ByteBufferImageBuilder.ReleaseListener releaseListener;
 
   public ByteBufferImageContainer(ByteBuffer buffer, @MPImageFormat int imageFormat) {
+    this(buffer, imageFormat, /* releaseListener= */ null);
+  }
+
+  /**
+   * Creates a container whose {@code buffer} can be shared with MediaPipe graphs without copying
+   * it if {@code releaseListener} is not null, which is invoked when the container is closed.
+   */
+  ByteBufferImageContainer(
+      ByteBuffer buffer,
+      @MPImageFormat int imageFormat,
+      @Nullable ByteBufferImageBuilder.ReleaseListener releaseListener) {
     this.buffer = buffer;
+    this.releaseListener = releaseListener;
     this.properties =
         MPImageProperties.builder()
             .setStorageType(MPImage.STORAGE_TYPE_BYTEBUFFER)
@@ -36,6 +50,11 @@ class ByteBufferImageContainer implements MPImageContainer {
     return buffer;
   }
 
+  /** Returns true if the buffer can be shared with MediaPipe graphs without copying it. */
+  synchronized boolean isShareable() {
+    return releaseListener != null;
+  }
+
   @Override
   public MPImageProperties getImageProperties() {
     return properties;
@@ -48,7 +67,10 @@ class ByteBufferImageContainer implements MPImageContainer {
   }
 
   @Override
-  public void close() {
-    // No op for ByteBuffer.
+  public synchronized void close() {
+    if (releaseListener != null) {
+      releaseListener.onRelease(buffer);
+      releaseListener = null;
+    }
   }
 }
@@ -0,0 +1,98 @@
+/* Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package com.google.mediapipe.framework.image;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of direct {@link ByteBuffer}s, bucketed by capacity.
+ *
+ * <p>Image format conversions on a video stream produce buffers of the same few sizes for every
+ * frame. Reusing them avoids allocating and later reclaiming several megabytes of native memory per
+ * second. The buffers are acquired for the temporary conversions of the extractors, and for the
+ * converted containers cached in a {@link MPImage} until it is closed.
+ *
+ * <p>The pool keeps at most {@link #MAX_BUFFERS_PER_BUCKET} buffers of each capacity, and at most
+ * {@code maxPooledBytes} in total. Buffers released beyond these limits are left to the garbage
+ * collector. This class is thread-safe.
+ */
+final class DirectBufferPool {
+  private static final int MAX_BUFFERS_PER_BUCKET = 4;
+  private static final long DEFAULT_MAX_POOLED_BYTES = 32L * 1024 * 1024;
+  private static final DirectBufferPool DEFAULT_INSTANCE =
+      new DirectBufferPool(DEFAULT_MAX_POOLED_BYTES);
+
+  private final Map<Integer, ArrayDeque<ByteBuffer>> buckets = new HashMap<>();
+  private final long maxPooledBytes;
+  private long pooledBytes;
+
+  /** Returns the process-wide pool used by the image extractors. */
+  static DirectBufferPool getDefaultInstance() {
+    return DEFAULT_INSTANCE;
+  }
+
+  DirectBufferPool(long maxPooledBytes) {
+    this.maxPooledBytes = maxPooledBytes;
+  }
+
+  /**
+   * Returns a direct {@link ByteBuffer} in native byte order with exactly {@code capacity} bytes,
+   * reusing a pooled buffer if one is available. The content of the buffer is undefined.
+   */
+  ByteBuffer acquire(int capacity) {
+    ByteBuffer buffer = null;
+    synchronized (this) {
+      ArrayDeque<ByteBuffer> bucket = buckets.get(capacity);
+      if (bucket != null && (buffer = bucket.pollFirst()) != null) {
+        pooledBytes -= capacity;
+      }
+    }
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer previously obtained from {@link #acquire} to the pool. The caller must not
+   * access the buffer, or any view of it, afterwards.
+   */
+  synchronized void release(ByteBuffer buffer) {
+    if (!buffer.isDirect() || buffer.isReadOnly()) {
+      return;
+    }
+    int capacity = buffer.capacity();
+    if (pooledBytes + capacity > maxPooledBytes) {
+      return;
+    }
+    ArrayDeque<ByteBuffer> bucket = buckets.get(capacity);
+    if (bucket == null) {
+      bucket = new ArrayDeque<>(MAX_BUFFERS_PER_BUCKET);
+      buckets.put(capacity, bucket);
+    }
+    if (bucket.size() >= MAX_BUFFERS_PER_BUCKET) {
+      return;
+    }
+    // Most recently used buffers are handed out first, as they are the most likely to be resident.
+    bucket.offerFirst(buffer);
+    pooledBytes += capacity;
+  }
+}
@@ -0,0 +1,83 @@
+/* Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package com.google.mediapipe.framework.image;
+
+import android.graphics.Bitmap;
+
+/**
+ * Builds {@link MPImage} from an {@link android.graphics.Bitmap} that is loaded on demand.
+ *
+ * <p>The bitmap is loaded by the given {@link BitmapLoader} the first time it is extracted from
+ * the {@link MPImage}, for instance with {@link BitmapExtractor}, and is never loaded if the image
+ * is not extracted. This avoids copying image data that may not be needed, e.g. in the callbacks
+ * that receive images they don't always look at.
+ */
+public class LazyBitmapImageBuilder {
+
+  /** Loads the {@link android.graphics.Bitmap} of an {@link MPImage} on demand. */
+  public interface BitmapLoader {
+    /**
+     * Returns the loaded {@link android.graphics.Bitmap}, which must match the dimensions and the
+     * config given to the {@link LazyBitmapImageBuilder}. Invoked at most once per image.
+     *
+     * @throws IllegalStateException if the bitmap can't be loaded anymore.
+     */
+    Bitmap load();
+
+    /**
+     * Releases the resources held to load the bitmap. Invoked when the {@link MPImage} is closed
+     * before its bitmap is loaded. Does nothing by default.
+     */
+    default void close() {}
+  }
+
+  // Mandatory fields.
+  private final int width;
+  private final int height;
+  private final Bitmap.Config config;
+  private final BitmapLoader bitmapLoader;
+
+  // Optional fields.
+  private long timestamp;
+
+  /**
+   * Creates the builder with the mandatory dimensions, config and {@link BitmapLoader}.
+   *
+   * @param width the width of the bitmap.
+   * @param height the height of the bitmap.
+   * @param config the config of the bitmap.
+   * @param bitmapLoader the {@link BitmapLoader} that loads the bitmap on demand.
+   */
+  public LazyBitmapImageBuilder(
+      int width, int height, Bitmap.Config config, BitmapLoader bitmapLoader) {
+    this.width = width;
+    this.height = height;
+    this.config = config;
+    this.bitmapLoader = bitmapLoader;
+    timestamp = 0;
+  }
+
+  /** Sets value for {@link MPImage#getTimestamp()}. */
+  LazyBitmapImageBuilder setTimestamp(long timestamp) {
+    this.timestamp = timestamp;
+    return this;
+  }
+
+  /** Builds a {@link MPImage} instance. */
+  public MPImage build() {
+    return new MPImage(new BitmapImageContainer(bitmapLoader, config), timestamp, width, height);
+  }
+}
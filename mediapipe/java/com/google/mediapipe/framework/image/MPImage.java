@@ -20,11 +20,11 @@ import androidx.annotation.Nullable;
 import java.io.Closeable;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * The wrapper class for image objects.
@@ -38,6 +38,7 @@ import java.util.Map.Entry;
  *   <li>{@link ByteBufferImageBuilder}
  *   <li>{@link BitmapImageBuilder}
  *   <li>{@link MediaImageBuilder}
+ *   <li>{@link LazyBitmapImageBuilder}
  * </ul>
  *
  * <p>{@link MPImage} uses reference counting to maintain internal storage. When it is created the
@@ -104,13 +105,14 @@ public class MPImage implements Closeable {
   /**
    * Returns a list of supported image properties for this {@link MPImage}.
    *
-   * <p>Currently {@link MPImage} only support single storage type so the size of return list will
-   * always be 1.
+   * <p>The first element describes the storage the {@link MPImage} was built with. It is followed
+   * by the properties of any representation that the extractors have converted and cached so far,
+   * in the order they were created.
    *
    * @see MPImageProperties
    */
-  public List<MPImageProperties> getContainedImageProperties() {
-    return Collections.singletonList(getContainer().getImageProperties());
+  public synchronized List<MPImageProperties> getContainedImageProperties() {
+    return Collections.unmodifiableList(new ArrayList<>(containerMap.keySet()));
   }
 
   /** Returns the timestamp attached to the image. */
@@ -128,8 +130,15 @@ public class MPImage implements Closeable {
     return height;
   }
 
-  /** Acquires a reference on this {@link MPImage}. This will increase the reference count by 1. */
+  /**
+   * Acquires a reference on this {@link MPImage}. This will increase the reference count by 1.
+   *
+   * @throws IllegalStateException if the image is already closed.
+   */
   private synchronized void acquire() {
+    if (referenceCount <= 0) {
+      throw new IllegalStateException("Cannot acquire a MPImage that is already closed.");
+    }
     referenceCount += 1;
   }
 
@@ -151,8 +160,13 @@ public class MPImage implements Closeable {
     }
   }
 
+  /** Creates a container on demand. See {@link MPImage#getOrCreateContainer}. */
+  interface ContainerFactory {
+    MPImageContainer create();
+  }
+
   /** Advanced API access for {@link MPImage}. */
-  static final class Internal {
+  public static final class Internal {
 
     /**
      * Acquires a reference on this {@link MPImage}. This will increase the reference count by 1.
@@ -164,9 +178,10 @@ public class MPImage implements Closeable {
      * <p>The reference count is 1 when {@link MPImage} is created. Developer can call {@link
      * #close()} to indicate it doesn't need this {@link MPImage} anymore.
      *
+     * @throws IllegalStateException if the image is already closed.
      * @see #close()
      */
-    void acquire() {
+    public void acquire() {
       image.acquire();
     }
 
@@ -179,11 +194,16 @@ public class MPImage implements Closeable {
   }
 
   /** Gets {@link Internal} object which contains internal APIs. */
-  Internal getInternal() {
+  public Internal getInternal() {
     return new Internal(this);
   }
 
+  // Containers in creation order, the first one being the container the image was built with.
   private final Map<MPImageProperties, MPImageContainer> containerMap;
+  // The first container of each storage type, indexed by storage type.
+  private final MPImageContainer[] containerByStorageType =
+      new MPImageContainer[STORAGE_TYPE_IMAGE_PROXY + 1];
+  private final MPImageContainer originalContainer;
   private final long timestamp;
   private final int width;
   private final int height;
@@ -192,8 +212,9 @@ public class MPImage implements Closeable {
 
   /** Constructs a {@link MPImage} with a built container. */
   MPImage(MPImageContainer container, long timestamp, int width, int height) {
-    this.containerMap = new HashMap<>();
-    containerMap.put(container.getImageProperties(), container);
+    this.containerMap = new LinkedHashMap<>();
+    this.originalContainer = container;
+    putContainer(container);
     this.timestamp = timestamp;
     this.width = width;
     this.height = height;
@@ -201,15 +222,12 @@ public class MPImage implements Closeable {
   }
 
   /**
-   * Gets one available container.
+   * Gets the container the image was built with.
    *
-   * @return the current container.
+   * @return the original container.
    */
   MPImageContainer getContainer() {
-    // According to the design, in the future we will support multiple containers in one image.
-    // Currently just return the original container.
-    // TODO: Cache multiple containers in MPImage.
-    return containerMap.values().iterator().next();
+    return originalContainer;
   }
 
   /**
@@ -218,28 +236,69 @@ public class MPImage implements Closeable {
    * <p>If there are multiple containers with required {@code storageType}, returns the first one.
    */
   @Nullable
-  MPImageContainer getContainer(@StorageType int storageType) {
-    for (Entry<MPImageProperties, MPImageContainer> entry : containerMap.entrySet()) {
-      if (entry.getKey().getStorageType() == storageType) {
-        return entry.getValue();
-      }
+  synchronized MPImageContainer getContainer(@StorageType int storageType) {
+    if (storageType < 0 || storageType >= containerByStorageType.length) {
+      return null;
     }
-    return null;
+    return containerByStorageType[storageType];
   }
 
   /** Gets container from required {@code imageProperties}. Returns {@code null} if non existed. */
   @Nullable
-  MPImageContainer getContainer(MPImageProperties imageProperties) {
+  synchronized MPImageContainer getContainer(MPImageProperties imageProperties) {
     return containerMap.get(imageProperties);
   }
 
   /** Adds a new container if it doesn't exist. Returns {@code true} if it succeeds. */
-  boolean addContainer(MPImageContainer container) {
+  synchronized boolean addContainer(MPImageContainer container) {
     MPImageProperties imageProperties = container.getImageProperties();
     if (containerMap.containsKey(imageProperties)) {
       return false;
     }
-    containerMap.put(imageProperties, container);
+    putContainer(container);
     return true;
   }
+
+  /**
+   * Gets the container with required {@code imageProperties}, creating it with {@code factory} and
+   * caching it in this image if it doesn't exist yet.
+   *
+   * <p>Creation happens under the lock of this image, so concurrent extractions of the same
+   * representation convert the image only once. The created container is closed together with the
+   * image.
+   *
+   * @throws IllegalStateException if the image is already closed.
+   * @throws IllegalArgumentException if {@code factory} creates a container with other properties.
+   */
+  synchronized MPImageContainer getOrCreateContainer(
+      MPImageProperties imageProperties, ContainerFactory factory) {
+    MPImageContainer container = containerMap.get(imageProperties);
+    if (container != null) {
+      return container;
+    }
+    if (referenceCount <= 0) {
+      throw new IllegalStateException("Cannot convert a MPImage that is already closed.");
+    }
+    container = factory.create();
+    if (!container.getImageProperties().equals(imageProperties)) {
+      container.close();
+      throw new IllegalArgumentException(
+          String.format(
+              "Expected a container with %s, but got %s.",
+              imageProperties, container.getImageProperties()));
+    }
+    putContainer(container);
+    return container;
+  }
+
+  private void putContainer(MPImageContainer container) {
+    MPImageProperties imageProperties = container.getImageProperties();
+    containerMap.put(imageProperties, container);
+    int storageType = imageProperties.getStorageType();
+    if (storageType >= 0
+        && storageType < containerByStorageType.length
+        && containerByStorageType[storageType] == null) {
+      containerByStorageType[storageType] = container;
+    }
+  }
 }
@@ -0,0 +1,234 @@
+/* Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package com.google.mediapipe.framework.image;
+
+import android.graphics.Bitmap;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Locale;
+
+/**
+ * Pixel format conversions between 8-bit interleaved buffers.
+ *
+ * <p>The conversions read and write four pixels at a time as 32-bit words through little-endian
+ * {@link IntBuffer} views, and move the words with bulk transfers to and from per-thread scratch
+ * arrays. This avoids the per-byte bounds checks of {@link ByteBuffer#get()} and {@link
+ * ByteBuffer#put(byte)}, and never allocates frame sized temporary arrays.
+ *
+ * <p>All conversions read {@code numPixels} pixels from the current position of the source and
+ * write them at the current position of the target, advancing both positions like {@link
+ * ByteBuffer#put(ByteBuffer)} does. Pixel layouts are named in memory order, e.g. an RGBA pixel
+ * stores red in its first byte.
+ */
+final class PixelConverter {
+  /** The number of pixels converted per bulk transfer. Must be a multiple of 4. */
+  private static final int CHUNK_PIXELS = 1024;
+
+  private static final int OPAQUE_ALPHA = 0xff000000;
+
+  /** Per-thread scratch arrays, so that repeated conversions don't allocate. */
+  private static final class Scratch {
+    final int[] input = new int[CHUNK_PIXELS];
+    final int[] output = new int[CHUNK_PIXELS];
+    final int[] argb = new int[CHUNK_PIXELS];
+    final float[] floats = new float[CHUNK_PIXELS];
+  }
+
+  private static final ThreadLocal<Scratch> scratch =
+      new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+          return new Scratch();
+        }
+      };
+
+  /** Converts RGB pixels to RGBA pixels, setting the A channel to 255. */
+  static void rgbToRgba(ByteBuffer source, ByteBuffer target, int numPixels) {
+    checkRemaining(source, numPixels * 3);
+    checkRemaining(target, numPixels * 4);
+    Scratch s = scratch.get();
+    IntBuffer input = asIntBuffer(source);
+    IntBuffer output = asIntBuffer(target);
+    int numQuads = numPixels / 4;
+    for (int quad = 0; quad < numQuads; quad += CHUNK_PIXELS / 4) {
+      int chunkQuads = Math.min(CHUNK_PIXELS / 4, numQuads - quad);
+      input.get(s.input, 0, chunkQuads * 3);
+      for (int q = 0, i = 0, o = 0; q < chunkQuads; ++q) {
+        // Three words hold four RGB pixels: [R0 G0 B0 R1] [G1 B1 R2 G2] [B2 R3 G3 B3].
+        int w0 = s.input[i++];
+        int w1 = s.input[i++];
+        int w2 = s.input[i++];
+        s.output[o++] = w0 | OPAQUE_ALPHA;
+        s.output[o++] = (w0 >>> 24) | (w1 << 8) | OPAQUE_ALPHA;
+        s.output[o++] = (w1 >>> 16) | (w2 << 16) | OPAQUE_ALPHA;
+        s.output[o++] = (w2 >>> 8) | OPAQUE_ALPHA;
+      }
+      output.put(s.output, 0, chunkQuads * 4);
+    }
+    advance(source, numQuads * 12);
+    advance(target, numQuads * 16);
+    for (int p = numQuads * 4; p < numPixels; ++p) {
+      target.put(source.get()); // R
+      target.put(source.get()); // G
+      target.put(source.get()); // B
+      target.put((byte) 0xff); // A
+    }
+  }
+
+  /** Converts RGBA pixels to RGB pixels, dropping the A channel. */
+  static void rgbaToRgb(ByteBuffer source, ByteBuffer target, int numPixels) {
+    checkRemaining(source, numPixels * 4);
+    checkRemaining(target, numPixels * 3);
+    Scratch s = scratch.get();
+    IntBuffer input = asIntBuffer(source);
+    IntBuffer output = asIntBuffer(target);
+    int numQuads = numPixels / 4;
+    for (int quad = 0; quad < numQuads; quad += CHUNK_PIXELS / 4) {
+      int chunkQuads = Math.min(CHUNK_PIXELS / 4, numQuads - quad);
+      input.get(s.input, 0, chunkQuads * 4);
+      packRgbWords(s.input, s.output, chunkQuads);
+      output.put(s.output, 0, chunkQuads * 3);
+    }
+    advance(source, numQuads * 16);
+    advance(target, numQuads * 12);
+    for (int p = numQuads * 4; p < numPixels; ++p) {
+      target.put(source.get()); // R
+      target.put(source.get()); // G
+      target.put(source.get()); // B
+      source.get(); // A
+    }
+  }
+
+  /**
+   * Converts VEC32F1 pixels, i.e. native-order floats in [0, 1], to ALPHA pixels. Values outside
+   * of [0, 1] are clamped.
+   */
+  static void vec32f1ToAlpha(ByteBuffer source, ByteBuffer target, int numPixels) {
+    checkRemaining(source, numPixels * 4);
+    checkRemaining(target, numPixels);
+    Scratch s = scratch.get();
+    FloatBuffer input = source.duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer();
+    IntBuffer output = asIntBuffer(target);
+    int numQuads = numPixels / 4;
+    for (int quad = 0; quad < numQuads; quad += CHUNK_PIXELS / 4) {
+      int chunkQuads = Math.min(CHUNK_PIXELS / 4, numQuads - quad);
+      input.get(s.floats, 0, chunkQuads * 4);
+      for (int q = 0, i = 0; q < chunkQuads; ++q) {
+        int a0 = toAlpha(s.floats[i++]);
+        int a1 = toAlpha(s.floats[i++]);
+        int a2 = toAlpha(s.floats[i++]);
+        int a3 = toAlpha(s.floats[i++]);
+        s.output[q] = a0 | (a1 << 8) | (a2 << 16) | (a3 << 24);
+      }
+      output.put(s.output, 0, chunkQuads);
+    }
+    advance(source, numQuads * 16);
+    advance(target, numQuads * 4);
+    ByteOrder order = source.order();
+    source.order(ByteOrder.nativeOrder());
+    for (int p = numQuads * 4; p < numPixels; ++p) {
+      target.put((byte) toAlpha(source.getFloat()));
+    }
+    source.order(order);
+  }
+
+  /**
+   * Writes the pixels of an {@link Bitmap.Config#ARGB_8888} {@link Bitmap} to {@code target} as
+   * RGB pixels, dropping the A channel.
+   */
+  static void argbBitmapToRgb(Bitmap bitmap, ByteBuffer target) {
+    int width = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    checkRemaining(target, width * height * 3);
+    Scratch s = scratch.get();
+    int[] argb = s.argb;
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; x += CHUNK_PIXELS) {
+        int chunkPixels = Math.min(CHUNK_PIXELS, width - x);
+        bitmap.getPixels(argb, 0, width, x, y, chunkPixels, 1);
+        int numQuads = chunkPixels / 4;
+        for (int i = 0; i < numQuads * 4; ++i) {
+          s.input[i] = swapRedAndBlue(argb[i]);
+        }
+        packRgbWords(s.input, s.output, numQuads);
+        asIntBuffer(target).put(s.output, 0, numQuads * 3);
+        advance(target, numQuads * 12);
+        for (int i = numQuads * 4; i < chunkPixels; ++i) {
+          // getPixels returns Color in ARGB rather than copyPixelsToBuffer which returns RGBA
+          int pixel = argb[i];
+          target.put((byte) ((pixel >> 16) & 0xff));
+          target.put((byte) ((pixel >> 8) & 0xff));
+          target.put((byte) (pixel & 0xff));
+        }
+      }
+    }
+  }
+
+  /** Packs {@code numQuads} groups of four RGBA words into three RGB words each. */
+  private static void packRgbWords(int[] rgba, int[] rgb, int numQuads) {
+    for (int q = 0, i = 0, o = 0; q < numQuads; ++q) {
+      int p0 = rgba[i++];
+      int p1 = rgba[i++];
+      int p2 = rgba[i++];
+      int p3 = rgba[i++];
+      rgb[o++] = (p0 & 0xffffff) | (p1 << 24);
+      rgb[o++] = ((p1 >>> 8) & 0xffff) | (p2 << 16);
+      rgb[o++] = ((p2 >>> 16) & 0xff) | (p3 << 8);
+    }
+  }
+
+  private static int swapRedAndBlue(int pixel) {
+    return (pixel & 0xff00ff00) | ((pixel >>> 16) & 0xff) | ((pixel & 0xff) << 16);
+  }
+
+  private static int toAlpha(float value) {
+    // Also maps NaN to 0.
+    if (!(value > 0f)) {
+      return 0;
+    }
+    if (value >= 1f) {
+      return 0xff;
+    }
+    return (int) (value * 255f + 0.5f);
+  }
+
+  /** Returns a little-endian int view starting at the current position of {@code buffer}. */
+  private static IntBuffer asIntBuffer(ByteBuffer buffer) {
+    return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+  }
+
+  // Called on a Buffer, as the covariant overrides of position(int) don't exist on all the Android
+  // versions.
+  private static void advance(Buffer buffer, int numBytes) {
+    buffer.position(buffer.position() + numBytes);
+  }
+
+  private static void checkRemaining(ByteBuffer buffer, int numBytes) {
+    if (buffer.remaining() < numBytes) {
+      throw new IllegalArgumentException(
+          String.format(
+              Locale.ENGLISH,
+              "The buffer should have at least %d bytes remaining, but has %d.",
+              numBytes,
+              buffer.remaining()));
+    }
+  }
+
+  private PixelConverter() {}
+}
@@ -498,6 +498,35 @@ absl::Status Graph::SetTimestampAndMovePacketToInputStream(
   return AddPacketToInputStream(stream_name, std::move(packet));
 }
 
+int Graph::RegisterInputStream(const std::string& stream_name) {
+  const int num_streams = registered_input_streams_.size();
+  for (int i = 0; i < num_streams; ++i) {
+    if (registered_input_streams_[i] == stream_name) {
+      return i;
+    }
+  }
+  registered_input_streams_.push_back(stream_name);
+  return num_streams;
+}
+
+absl::Status Graph::SetTimestampAndMovePacketsToInputStreams(
+    const int32_t* stream_indices, int64_t* packet_handles, int num_packets,
+    int64_t timestamp) {
+  const int num_streams = registered_input_streams_.size();
+  for (int i = 0; i < num_packets; ++i) {
+    const int32_t stream_index = stream_indices[i];
+    if (stream_index < 0 || stream_index >= num_streams) {
+      return absl::InvalidArgumentError(
+          absl::StrCat("Unregistered input stream index: ", stream_index));
+    }
+    MP_RETURN_IF_ERROR(SetTimestampAndMovePacketToInputStream(
+        registered_input_streams_[stream_index], packet_handles[i],
+        timestamp));
+    packet_handles[i] = 0;
+  }
+  return absl::OkStatus();
+}
+
 absl::Status Graph::AddPacketToInputStream(const std::string& stream_name,
                                            const Packet& packet) {
   if (!running_graph_) {
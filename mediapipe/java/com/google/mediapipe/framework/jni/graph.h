@@ -107,6 +107,18 @@ class Graph {
   absl::Status SetTimestampAndMovePacketToInputStream(
       const std::string& stream_name, int64_t packet_handle, int64_t timestamp);
 
+  // Registers a graph input stream, so that packets can be moved into it by
+  // index with SetTimestampAndMovePacketsToInputStreams. Returns the index of
+  // the stream, which is the same for repeated registrations.
+  int RegisterInputStream(const std::string& stream_name);
+  // Moves the MediaPipe Packets referenced by the handles into the registered
+  // input streams of the given indices, with the given timestamp. The handles
+  // of the moved packets are set to 0. Stops at the first packet that fails to
+  // be moved, leaving the remaining packets unaffected.
+  absl::Status SetTimestampAndMovePacketsToInputStreams(
+      const int32_t* stream_indices, int64_t* packet_handles, int num_packets,
+      int64_t timestamp);
+
   // Sets the mode for adding packets to a graph input stream.
   void SetGraphInputStreamAddMode(
       CalculatorGraph::GraphInputStreamAddMode mode);
@@ -211,6 +223,9 @@ class Graph {
   absl::Mutex all_packets_mutex_;
   // All callback handlers managed by the context.
   std::vector<std::unique_ptr<internal::CallbackHandler>> callback_handlers_;
+  // The names of the input streams registered by RegisterInputStream, in the
+  // order of their indices.
+  std::vector<std::string> registered_input_streams_;
 
 #if !MEDIAPIPE_DISABLE_GPU
   // mediapipe::GpuResources used by the graph.
@@ -16,6 +16,7 @@
 
 #include <memory>
 #include <string>
+#include <vector>
 
 #include "mediapipe/framework/calculator_framework.h"
 #include "mediapipe/framework/port/canonical_errors.h"
@@ -283,6 +284,37 @@ JNIEXPORT void JNICALL GRAPH_METHOD(nativeMovePacketToInputStream)(
                static_cast<int64_t>(packet), static_cast<int64_t>(timestamp)));
 }
 
+JNIEXPORT jint JNICALL GRAPH_METHOD(nativeRegisterInputStream)(
+    JNIEnv* env, jobject thiz, jlong context, jstring stream_name) {
+  mediapipe::android::Graph* mediapipe_graph =
+      reinterpret_cast<mediapipe::android::Graph*>(context);
+  return mediapipe_graph->RegisterInputStream(
+      JStringToStdString(env, stream_name));
+}
+
+JNIEXPORT void JNICALL GRAPH_METHOD(nativeMovePacketsToInputStreams)(
+    JNIEnv* env, jobject thiz, jlong context, jintArray stream_indices,
+    jlongArray packets, jlong timestamp) {
+  mediapipe::android::Graph* mediapipe_graph =
+      reinterpret_cast<mediapipe::android::Graph*>(context);
+  const jsize num_packets = env->GetArrayLength(packets);
+  jint* stream_index_array = env->GetIntArrayElements(stream_indices, nullptr);
+  jlong* packet_handle_array = env->GetLongArrayElements(packets, nullptr);
+  std::vector<int64_t> packet_handles(packet_handle_array,
+                                      packet_handle_array + num_packets);
+  absl::Status status =
+      mediapipe_graph->SetTimestampAndMovePacketsToInputStreams(
+          stream_index_array, packet_handles.data(), num_packets,
+          static_cast<int64_t>(timestamp));
+  // Writes back the zeroed handles of the moved packets.
+  for (jsize i = 0; i < num_packets; ++i) {
+    packet_handle_array[i] = static_cast<jlong>(packet_handles[i]);
+  }
+  env->ReleaseLongArrayElements(packets, packet_handle_array, 0);
+  env->ReleaseIntArrayElements(stream_indices, stream_index_array, JNI_ABORT);
+  ThrowIfError(env, status);
+}
+
 JNIEXPORT void JNICALL GRAPH_METHOD(nativeSetGraphInputStreamBlockingMode)(
     JNIEnv* env, jobject thiz, jlong context, jboolean mode) {
   mediapipe::android::Graph* mediapipe_graph =
@@ -86,6 +86,13 @@ JNIEXPORT void JNICALL GRAPH_METHOD(nativeMovePacketToInputStream)(
     JNIEnv* env, jobject thiz, jlong context, jstring stream_name, jlong packet,
     jlong timestamp);
 
+JNIEXPORT jint JNICALL GRAPH_METHOD(nativeRegisterInputStream)(
+    JNIEnv* env, jobject thiz, jlong context, jstring stream_name);
+
+JNIEXPORT void JNICALL GRAPH_METHOD(nativeMovePacketsToInputStreams)(
+    JNIEnv* env, jobject thiz, jlong context, jintArray stream_indices,
+    jlongArray packets, jlong timestamp);
+
 JNIEXPORT void JNICALL GRAPH_METHOD(nativeSetGraphInputStreamBlockingMode)(
     JNIEnv* env, jobject thiz, jlong context, jboolean mode);
 
@@ -16,6 +16,7 @@
 
 #include <cstring>
 #include <memory>
+#include <utility>
 
 #include "absl/status/status.h"
 #include "absl/strings/str_cat.h"
@@ -25,6 +26,7 @@
 #include "mediapipe/framework/formats/image_format.pb.h"
 #include "mediapipe/framework/formats/image_frame.h"
 #include "mediapipe/framework/formats/matrix.h"
+#include "mediapipe/framework/formats/rect.pb.h"
 #include "mediapipe/framework/formats/time_series_header.pb.h"
 #include "mediapipe/framework/formats/video_stream_header.h"
 #include "mediapipe/framework/port/core_proto_inc.h"
@@ -127,10 +129,9 @@ CreateImageFrameFromByteBuffer(JNIEnv* env, jobject byte_buffer, jint width,
       << " but is: " << buffer_size;
 
   auto image_frame = std::make_unique<mediapipe::ImageFrame>();
-  // TODO: we could retain the buffer with a special deleter and use
-  // the data directly without a copy. May need a new Java API since existing
-  // code might expect to be able to overwrite the buffer after creating an
-  // ImageFrame from it.
+  // Existing code might expect to be able to overwrite the buffer after
+  // creating an ImageFrame from it, so we copy here. See
+  // WrapByteBufferInImageFrame for the zero-copy variant.
   image_frame->CopyPixelData(
       format, width, height, width_step, static_cast<const uint8*>(buffer_data),
       mediapipe::ImageFrame::kGlDefaultAlignmentBoundary);
@@ -138,6 +139,79 @@ CreateImageFrameFromByteBuffer(JNIEnv* env, jobject byte_buffer, jint width,
   return image_frame;
 }
 
+// Create a 1, 3, or 4 channel 8-bit ImageFrame that uses the memory of a Java
+// direct ByteBuffer as its pixel data. The buffer is retained with a global
+// reference until the ImageFrame is destroyed, at which point the optional
+// BufferReleaseCallback is invoked.
+absl::StatusOr<std::unique_ptr<mediapipe::ImageFrame>>
+WrapByteBufferInImageFrame(JNIEnv* env, jobject byte_buffer, jint width,
+                           jint height, jint width_step,
+                           mediapipe::ImageFormat::Format format,
+                           jobject buffer_release_callback) {
+  const int64_t buffer_size = env->GetDirectBufferCapacity(byte_buffer);
+  void* buffer_data = env->GetDirectBufferAddress(byte_buffer);
+  if (buffer_data == nullptr || buffer_size < 0) {
+    return absl::InvalidArgumentError(
+        "Cannot get direct access to the input buffer. It should be created "
+        "using allocateDirect.");
+  }
+
+  const int expected_buffer_size = height * width_step;
+  RET_CHECK_EQ(buffer_size, expected_buffer_size)
+      << "Input buffer size should be " << expected_buffer_size
+      << " but is: " << buffer_size;
+
+  jmethodID release_method = nullptr;
+  if (buffer_release_callback) {
+    // Note: the callback is an interface, so we look the method up on the
+    // interface rather than on the object's class.
+    jclass callback_class = env->FindClass(
+        "com/google/mediapipe/framework/BufferReleaseCallback");
+    release_method = env->GetMethodID(callback_class, "release",
+                                      "(Ljava/nio/ByteBuffer;)V");
+    RET_CHECK(release_method);
+    env->DeleteLocalRef(callback_class);
+  }
+
+  jobject java_buffer = env->NewGlobalRef(byte_buffer);
+  jobject java_callback = buffer_release_callback
+                              ? env->NewGlobalRef(buffer_release_callback)
+                              : nullptr;
+  mediapipe::ImageFrame::Deleter deleter = [java_buffer, java_callback,
+                                            release_method](uint8*) {
+    JNIEnv* env = mediapipe::java::GetJNIEnv();
+    if (java_callback) {
+      env->CallVoidMethod(java_callback, release_method, java_buffer);
+      if (env->ExceptionCheck()) {
+        // The release may happen on a graph thread, so there is no Java
+        // caller to propagate the exception to.
+        env->ExceptionDescribe();
+        env->ExceptionClear();
+      }
+      env->DeleteGlobalRef(java_callback);
+    }
+    env->DeleteGlobalRef(java_buffer);
+  };
+  return std::make_unique<mediapipe::ImageFrame>(
+      format, width, height, width_step, static_cast<uint8*>(buffer_data),
+      std::move(deleter));
+}
+
+absl::StatusOr<mediapipe::ImageFormat::Format> GetImageFormatForNumChannels(
+    jint num_channels) {
+  switch (num_channels) {
+    case 4:
+      return mediapipe::ImageFormat::SRGBA;
+    case 3:
+      return mediapipe::ImageFormat::SRGB;
+    case 1:
+      return mediapipe::ImageFormat::GRAY8;
+    default:
+      return absl::InvalidArgumentError(absl::StrCat(
+          "Channels must be either 1, 3, or 4, but are ", num_channels));
+  }
+}
+
 }  // namespace
 
 JNIEXPORT jlong JNICALL PACKET_CREATOR_METHOD(nativeCreateReferencePacket)(
@@ -372,26 +446,28 @@ JNIEXPORT jlong JNICALL PACKET_CREATOR_METHOD(nativeCreateMatrix)(
 JNIEXPORT jlong JNICALL PACKET_CREATOR_METHOD(nativeCreateCpuImage)(
     JNIEnv* env, jobject thiz, jlong context, jobject byte_buffer, jint width,
     jint height, jint width_step, jint num_channels) {
-  mediapipe::ImageFormat::Format format;
-  switch (num_channels) {
-    case 4:
-      format = mediapipe::ImageFormat::SRGBA;
-      break;
-    case 3:
-      format = mediapipe::ImageFormat::SRGB;
-      break;
-    case 1:
-      format = mediapipe::ImageFormat::GRAY8;
-      break;
-    default:
-      ThrowIfError(env, absl::InvalidArgumentError(absl::StrCat(
-                            "Channels must be either 1, 3, or 4, but are ",
-                            num_channels)));
-      return 0L;
-  }
+  auto format_or = GetImageFormatForNumChannels(num_channels);
+  if (ThrowIfError(env, format_or.status())) return 0L;
 
   auto image_frame_or = CreateImageFrameFromByteBuffer(
-      env, byte_buffer, width, height, width_step, format);
+      env, byte_buffer, width, height, width_step, *format_or);
+  if (ThrowIfError(env, image_frame_or.status())) return 0L;
+
+  mediapipe::Packet packet =
+      mediapipe::MakePacket<mediapipe::Image>(*std::move(image_frame_or));
+  return CreatePacketWithContext(context, packet);
+}
+
+JNIEXPORT jlong JNICALL PACKET_CREATOR_METHOD(nativeCreateCpuImageWithoutCopy)(
+    JNIEnv* env, jobject thiz, jlong context, jobject byte_buffer, jint width,
+    jint height, jint width_step, jint num_channels,
+    jobject buffer_release_callback) {
+  auto format_or = GetImageFormatForNumChannels(num_channels);
+  if (ThrowIfError(env, format_or.status())) return 0L;
+
+  auto image_frame_or =
+      WrapByteBufferInImageFrame(env, byte_buffer, width, height, width_step,
+                                 *format_or, buffer_release_callback);
   if (ThrowIfError(env, image_frame_or.status())) return 0L;
 
   mediapipe::Packet packet =
@@ -536,3 +612,17 @@ JNIEXPORT jlong JNICALL PACKET_CREATOR_METHOD(nativeCreateCameraIntrinsics)(
       mediapipe::MakePacket<CameraIntrinsics>(fx, fy, cx, cy, width, height);
   return CreatePacketWithContext(context, packet);
 }
+
+JNIEXPORT jlong JNICALL PACKET_CREATOR_METHOD(nativeCreateNormalizedRect)(
+    JNIEnv* env, jobject thiz, jlong context, jfloat x_center, jfloat y_center,
+    jfloat width, jfloat height, jfloat rotation) {
+  mediapipe::NormalizedRect rect;
+  rect.set_x_center(x_center);
+  rect.set_y_center(y_center);
+  rect.set_width(width);
+  rect.set_height(height);
+  rect.set_rotation(rotation);
+  mediapipe::Packet packet =
+      mediapipe::MakePacket<mediapipe::NormalizedRect>(std::move(rect));
+  return CreatePacketWithContext(context, packet);
+}
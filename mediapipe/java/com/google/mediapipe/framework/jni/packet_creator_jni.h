@@ -101,6 +101,11 @@ JNIEXPORT jlong JNICALL PACKET_CREATOR_METHOD(nativeCreateCpuImage)(
     JNIEnv* env, jobject thiz, jlong context, jobject byte_buffer, jint width,
     jint height, jint width_step, jint num_channels);
 
+JNIEXPORT jlong JNICALL PACKET_CREATOR_METHOD(nativeCreateCpuImageWithoutCopy)(
+    JNIEnv* env, jobject thiz, jlong context, jobject byte_buffer, jint width,
+    jint height, jint width_step, jint num_channels,
+    jobject buffer_release_callback);
+
 JNIEXPORT jlong JNICALL PACKET_CREATOR_METHOD(nativeCreateGpuImage)(
     JNIEnv* env, jobject thiz, jlong context, jint name, jint width,
     jint height, jobject texture_release_callback);
@@ -133,6 +138,10 @@ JNIEXPORT jlong JNICALL PACKET_CREATOR_METHOD(nativeCreateCameraIntrinsics)(
     JNIEnv* env, jobject thiz, jlong context, jfloat fx, jfloat fy, jfloat cx,
     jfloat cy, jfloat width, jfloat height);
 
+JNIEXPORT jlong JNICALL PACKET_CREATOR_METHOD(nativeCreateNormalizedRect)(
+    JNIEnv* env, jobject thiz, jlong context, jfloat x_center, jfloat y_center,
+    jfloat width, jfloat height, jfloat rotation);
+
 #ifdef __cplusplus
 }  // extern "C"
 #endif  // __cplusplus
@@ -0,0 +1,160 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.framework;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.mediapipe.proto.CalculatorProto.CalculatorGraphConfig;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for the bulk packet submission of {@link Graph}. */
+@RunWith(AndroidJUnit4.class)
+public final class GraphTest {
+  private static final String[] INPUT_STREAMS = {"first_in", "second_in"};
+
+  static {
+    System.loadLibrary("mediapipe_jni");
+  }
+
+  private final List<Integer> firstOutputs = new ArrayList<>();
+  private final List<Integer> secondOutputs = new ArrayList<>();
+  private final List<Long> outputTimestamps = new ArrayList<>();
+  private Graph graph;
+  private PacketCreator packetCreator;
+
+  @Before
+  public void setUp() {
+    graph = new Graph();
+    graph.loadBinaryGraph(
+        CalculatorGraphConfig.newBuilder()
+            .addInputStream("first_in")
+            .addInputStream("second_in")
+            .addNode(
+                CalculatorGraphConfig.Node.newBuilder()
+                    .setCalculator("PassThroughCalculator")
+                    .addInputStream("first_in")
+                    .addInputStream("second_in")
+                    .addOutputStream("first_out")
+                    .addOutputStream("second_out"))
+            .build());
+    graph.addPacketCallback(
+        "first_out",
+        packet -> {
+          synchronized (this) {
+            firstOutputs.add(PacketGetter.getInt32(packet));
+            outputTimestamps.add(packet.getTimestamp());
+          }
+        });
+    graph.addPacketCallback(
+        "second_out",
+        packet -> {
+          synchronized (this) {
+            secondOutputs.add(PacketGetter.getInt32(packet));
+          }
+        });
+    packetCreator = new AndroidPacketCreator(graph);
+  }
+
+  @After
+  public void tearDown() {
+    graph.tearDown();
+  }
+
+  @Test
+  public void addConsumablePacketsToInputStreams_addsOnePacketPerStream() {
+    graph.startRunningGraph();
+
+    for (int i = 0; i < 3; ++i) {
+      Packet[] packets = {packetCreator.createInt32(i), packetCreator.createInt32(10 + i)};
+      graph.addConsumablePacketsToInputStreams(INPUT_STREAMS, packets, /* timestamp= */ i);
+
+      // The packets are consumed by the graph.
+      assertThat(packets[0]).isNull();
+      assertThat(packets[1]).isNull();
+    }
+    graph.closeAllInputStreams();
+    graph.waitUntilGraphDone();
+
+    synchronized (this) {
+      assertThat(firstOutputs).containsExactly(0, 1, 2).inOrder();
+      assertThat(secondOutputs).containsExactly(10, 11, 12).inOrder();
+      assertThat(outputTimestamps).containsExactly(0L, 1L, 2L).inOrder();
+    }
+  }
+
+  @Test
+  public void addConsumablePacketsToInputStreams_buffersPacketsUntilTheGraphRuns() {
+    Packet[] packets = {packetCreator.createInt32(1), packetCreator.createInt32(2)};
+
+    graph.addConsumablePacketsToInputStreams(INPUT_STREAMS, packets, /* timestamp= */ 5);
+
+    assertThat(packets[0]).isNull();
+    assertThat(packets[1]).isNull();
+
+    // The buffered packets are sent once the graph runs, followed by the later ones.
+    graph.startRunningGraph();
+    Packet[] nextPackets = {packetCreator.createInt32(3), packetCreator.createInt32(4)};
+    graph.addConsumablePacketsToInputStreams(INPUT_STREAMS, nextPackets, /* timestamp= */ 6);
+    graph.closeAllInputStreams();
+    graph.waitUntilGraphDone();
+
+    synchronized (this) {
+      assertThat(firstOutputs).containsExactly(1, 3).inOrder();
+      assertThat(secondOutputs).containsExactly(2, 4).inOrder();
+      assertThat(outputTimestamps).containsExactly(5L, 6L).inOrder();
+    }
+  }
+
+  @Test
+  public void addConsumablePacketsToInputStreams_keepsThePacketsThatFailedToBeAdded() {
+    graph.startRunningGraph();
+    Packet[] packets = {packetCreator.createInt32(1), packetCreator.createInt32(2)};
+
+    assertThrows(
+        MediaPipeException.class,
+        () ->
+            graph.addConsumablePacketsToInputStreams(
+                new String[] {"first_in", "unknown_in"}, packets, /* timestamp= */ 0));
+
+    // The first packet was consumed, the second one is still owned by the caller.
+    assertThat(packets[0]).isNull();
+    assertThat(packets[1]).isNotNull();
+    assertThat(PacketGetter.getInt32(packets[1])).isEqualTo(2);
+    packets[1].release();
+  }
+
+  @Test
+  public void addConsumablePacketsToInputStreams_failsWithMismatchedArrays() {
+    Packet[] packets = {packetCreator.createInt32(1)};
+
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                graph.addConsumablePacketsToInputStreams(
+                    INPUT_STREAMS, packets, /* timestamp= */ 0));
+
+    assertThat(exception).hasMessageThat().contains("doesn't match");
+    assertThat(packets[0]).isNotNull();
+    packets[0].release();
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.framework;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.mediapipe.formats.proto.RectProto.NormalizedRect;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link PacketCreator}. */
+@RunWith(AndroidJUnit4.class)
+public final class PacketCreatorTest {
+  static {
+    System.loadLibrary("mediapipe_jni");
+  }
+
+  private Graph graph;
+  private PacketCreator packetCreator;
+
+  @Before
+  public void setUp() {
+    graph = new Graph();
+    packetCreator = new AndroidPacketCreator(graph);
+  }
+
+  @After
+  public void tearDown() {
+    graph.tearDown();
+  }
+
+  @Test
+  public void createNormalizedRect_matchesTheProtoMessage() throws Exception {
+    Packet packet =
+        packetCreator.createNormalizedRect(
+            /* xCenter= */ 0.25f,
+            /* yCenter= */ 0.75f,
+            /* width= */ 0.5f,
+            /* height= */ 0.125f,
+            /* rotation= */ -1.5f);
+
+    NormalizedRect rect = PacketGetter.getProto(packet, NormalizedRect.getDefaultInstance());
+    assertThat(rect)
+        .isEqualTo(
+            NormalizedRect.newBuilder()
+                .setXCenter(0.25f)
+                .setYCenter(0.75f)
+                .setWidth(0.5f)
+                .setHeight(0.125f)
+                .setRotation(-1.5f)
+                .build());
+    packet.release();
+  }
+
+  @Test
+  public void createNormalizedRect_copyOutlivesTheOriginalPacket() throws Exception {
+    Packet packet =
+        packetCreator.createNormalizedRect(
+            /* xCenter= */ 0.5f,
+            /* yCenter= */ 0.5f,
+            /* width= */ 1f,
+            /* height= */ 1f,
+            /* rotation= */ 0f);
+    Packet copy = packet.copy();
+    packet.release();
+
+    NormalizedRect rect = PacketGetter.getProto(copy, NormalizedRect.getDefaultInstance());
+    assertThat(rect.getXCenter()).isEqualTo(0.5f);
+    assertThat(rect.getWidth()).isEqualTo(1f);
+    copy.release();
+  }
+}
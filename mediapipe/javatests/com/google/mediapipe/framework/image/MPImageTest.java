@@ -0,0 +1,303 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.framework.image;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for the container cache of {@link MPImage}. */
+@RunWith(AndroidJUnit4.class)
+public final class MPImageTest {
+  private static final int WIDTH = 2;
+  private static final int HEIGHT = 3;
+  private static final MPImageProperties RGB_BYTEBUFFER =
+      createProperties(MPImage.IMAGE_FORMAT_RGB, MPImage.STORAGE_TYPE_BYTEBUFFER);
+  private static final MPImageProperties RGBA_BYTEBUFFER =
+      createProperties(MPImage.IMAGE_FORMAT_RGBA, MPImage.STORAGE_TYPE_BYTEBUFFER);
+  private static final MPImageProperties ALPHA_BYTEBUFFER =
+      createProperties(MPImage.IMAGE_FORMAT_ALPHA, MPImage.STORAGE_TYPE_BYTEBUFFER);
+  private static final MPImageProperties RGBA_BITMAP =
+      createProperties(MPImage.IMAGE_FORMAT_RGBA, MPImage.STORAGE_TYPE_BITMAP);
+
+  /** A container that records whether it was closed. */
+  private static final class TestContainer implements MPImageContainer {
+    private final MPImageProperties properties;
+    private boolean closed;
+
+    TestContainer(MPImageProperties properties) {
+      this.properties = properties;
+    }
+
+    @Override
+    public MPImageProperties getImageProperties() {
+      return properties;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  @Test
+  public void getOrCreateContainer_createsEachRepresentationOnce() {
+    MPImage image = createRgbImage();
+    AtomicInteger createCount = new AtomicInteger();
+
+    MPImageContainer rgba =
+        image.getOrCreateContainer(
+            RGBA_BYTEBUFFER,
+            () -> {
+              createCount.incrementAndGet();
+              return new TestContainer(RGBA_BYTEBUFFER);
+            });
+    MPImageContainer cachedRgba =
+        image.getOrCreateContainer(
+            RGBA_BYTEBUFFER,
+            () -> {
+              createCount.incrementAndGet();
+              return new TestContainer(RGBA_BYTEBUFFER);
+            });
+
+    assertThat(createCount.get()).isEqualTo(1);
+    assertThat(cachedRgba).isSameInstanceAs(rgba);
+    assertThat(image.getContainer(RGBA_BYTEBUFFER)).isSameInstanceAs(rgba);
+    // The image was built with its original container.
+    assertThat(image.getContainer(RGB_BYTEBUFFER)).isSameInstanceAs(image.getContainer());
+  }
+
+  @Test
+  public void getContainedImageProperties_listsRepresentationsInCreationOrder() {
+    MPImage image = createRgbImage();
+
+    image.getOrCreateContainer(ALPHA_BYTEBUFFER, () -> new TestContainer(ALPHA_BYTEBUFFER));
+    image.getOrCreateContainer(RGBA_BITMAP, () -> new TestContainer(RGBA_BITMAP));
+    image.getOrCreateContainer(RGBA_BYTEBUFFER, () -> new TestContainer(RGBA_BYTEBUFFER));
+
+    assertThat(image.getContainedImageProperties())
+        .containsExactly(RGB_BYTEBUFFER, ALPHA_BYTEBUFFER, RGBA_BITMAP, RGBA_BYTEBUFFER)
+        .inOrder();
+  }
+
+  @Test
+  public void getContainer_returnsTheFirstContainerOfTheStorageType() {
+    MPImage image = createRgbImage();
+    MPImageContainer bitmap =
+        image.getOrCreateContainer(RGBA_BITMAP, () -> new TestContainer(RGBA_BITMAP));
+    image.getOrCreateContainer(RGBA_BYTEBUFFER, () -> new TestContainer(RGBA_BYTEBUFFER));
+
+    assertThat(image.getContainer(MPImage.STORAGE_TYPE_BYTEBUFFER))
+        .isSameInstanceAs(image.getContainer());
+    assertThat(image.getContainer(MPImage.STORAGE_TYPE_BITMAP)).isSameInstanceAs(bitmap);
+    assertThat(image.getContainer(MPImage.STORAGE_TYPE_MEDIA_IMAGE)).isNull();
+    assertThat(image.getContainer(/* storageType= */ 42)).isNull();
+  }
+
+  @Test
+  public void getOrCreateContainer_createsOnceForConcurrentCallers() throws Exception {
+    MPImage image = createRgbImage();
+    AtomicInteger createCount = new AtomicInteger();
+    int numThreads = 8;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<MPImageContainer>> containers = new ArrayList<>();
+      for (int i = 0; i < numThreads; ++i) {
+        containers.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  return image.getOrCreateContainer(
+                      RGBA_BYTEBUFFER,
+                      () -> {
+                        createCount.incrementAndGet();
+                        return new TestContainer(RGBA_BYTEBUFFER);
+                      });
+                }));
+      }
+      start.countDown();
+
+      MPImageContainer first = containers.get(0).get();
+      for (Future<MPImageContainer> container : containers) {
+        assertThat(container.get()).isSameInstanceAs(first);
+      }
+      assertThat(createCount.get()).isEqualTo(1);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void getOrCreateContainer_failsWithContainerOfOtherProperties() {
+    MPImage image = createRgbImage();
+    TestContainer alpha = new TestContainer(ALPHA_BYTEBUFFER);
+
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> image.getOrCreateContainer(RGBA_BYTEBUFFER, () -> alpha));
+
+    assertThat(exception).hasMessageThat().contains("Expected a container with");
+    assertThat(alpha.closed).isTrue();
+    assertThat(image.getContainer(RGBA_BYTEBUFFER)).isNull();
+    assertThat(image.getContainer(ALPHA_BYTEBUFFER)).isNull();
+  }
+
+  @Test
+  public void getOrCreateContainer_failsOnClosedImage() {
+    MPImage image = createRgbImage();
+    image.close();
+
+    IllegalStateException exception =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                image.getOrCreateContainer(
+                    RGBA_BYTEBUFFER, () -> new TestContainer(RGBA_BYTEBUFFER)));
+    assertThat(exception).hasMessageThat().contains("already closed");
+  }
+
+  @Test
+  public void close_closesTheCreatedContainers() {
+    MPImage image = createRgbImage();
+    TestContainer rgba = new TestContainer(RGBA_BYTEBUFFER);
+    image.getOrCreateContainer(RGBA_BYTEBUFFER, () -> rgba);
+    image.getInternal().acquire();
+
+    image.close();
+    assertThat(rgba.closed).isFalse();
+    image.close();
+    assertThat(rgba.closed).isTrue();
+  }
+
+  @Test
+  public void acquireSharedBuffer_acquiresAReferenceOnTheImage() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3);
+    List<ByteBuffer> releasedBuffers = new ArrayList<>();
+    MPImage image =
+        new ByteBufferImageBuilder(buffer, WIDTH, HEIGHT, MPImage.IMAGE_FORMAT_RGB)
+            .setReleaseListener(releasedBuffers::add)
+            .build();
+
+    assertThat(ByteBufferExtractor.acquireSharedBuffer(image)).isSameInstanceAs(buffer);
+    image.close();
+    assertThat(releasedBuffers).isEmpty();
+    image.close();
+    assertThat(releasedBuffers).containsExactly(buffer);
+  }
+
+  @Test
+  public void acquireSharedBuffer_failsOnClosedImage() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3);
+    MPImage image =
+        new ByteBufferImageBuilder(buffer, WIDTH, HEIGHT, MPImage.IMAGE_FORMAT_RGB)
+            .setReleaseListener(releasedBuffer -> {})
+            .build();
+    image.close();
+
+    IllegalStateException exception =
+        assertThrows(
+            IllegalStateException.class, () -> ByteBufferExtractor.acquireSharedBuffer(image));
+    assertThat(exception).hasMessageThat().contains("already closed");
+  }
+
+  @Test
+  public void addContainer_keepsTheExistingContainer() {
+    MPImage image = createRgbImage();
+    TestContainer rgba = new TestContainer(RGBA_BYTEBUFFER);
+
+    assertThat(image.addContainer(rgba)).isTrue();
+    assertThat(image.addContainer(new TestContainer(RGBA_BYTEBUFFER))).isFalse();
+    assertThat(image.getContainer(RGBA_BYTEBUFFER)).isSameInstanceAs(rgba);
+  }
+
+  @Test
+  public void extract_convertsEachFormatOnce() {
+    byte[] rgb = new byte[WIDTH * HEIGHT * 3];
+    for (int i = 0; i < rgb.length; ++i) {
+      rgb[i] = (byte) i;
+    }
+    MPImage image =
+        new ByteBufferImageBuilder(ByteBuffer.wrap(rgb), WIDTH, HEIGHT, MPImage.IMAGE_FORMAT_RGB)
+            .build();
+
+    ByteBuffer rgba = ByteBufferExtractor.extract(image, MPImage.IMAGE_FORMAT_RGBA);
+    MPImageContainer rgbaContainer = image.getContainer(RGBA_BYTEBUFFER);
+    ByteBufferExtractor.extract(image, MPImage.IMAGE_FORMAT_RGBA);
+
+    assertThat(image.getContainer(RGBA_BYTEBUFFER)).isSameInstanceAs(rgbaContainer);
+    assertThat(image.getContainedImageProperties())
+        .containsExactly(RGB_BYTEBUFFER, RGBA_BYTEBUFFER)
+        .inOrder();
+    assertThat(rgba.remaining()).isEqualTo(WIDTH * HEIGHT * 4);
+    for (int p = 0; p < WIDTH * HEIGHT; ++p) {
+      assertThat(rgba.get(p * 4)).isEqualTo(rgb[p * 3]);
+      assertThat(rgba.get(p * 4 + 1)).isEqualTo(rgb[p * 3 + 1]);
+      assertThat(rgba.get(p * 4 + 2)).isEqualTo(rgb[p * 3 + 2]);
+      assertThat(rgba.get(p * 4 + 3)).isEqualTo((byte) 0xff);
+    }
+  }
+
+  @Test
+  public void extractInRecommendedFormat_prefersTheOriginalContainer() {
+    MPImage image = createRgbImage();
+    image.getOrCreateContainer(RGBA_BITMAP, () -> new TestContainer(RGBA_BITMAP));
+
+    ByteBufferExtractor.Result result = ByteBufferExtractor.extractInRecommendedFormat(image);
+
+    assertThat(result.format()).isEqualTo(MPImage.IMAGE_FORMAT_RGB);
+    assertThat(result.buffer().capacity()).isEqualTo(WIDTH * HEIGHT * 3);
+  }
+
+  @Test
+  public void close_returnsTheConvertedBufferToThePool() {
+    MPImage image = createRgbImage();
+    ByteBuffer rgba = ByteBufferExtractor.extract(image, MPImage.IMAGE_FORMAT_RGBA);
+
+    image.close();
+
+    // The next conversion of the same size reuses the memory of the released buffer.
+    DirectBufferPool pool = DirectBufferPool.getDefaultInstance();
+    ByteBuffer reused = pool.acquire(WIDTH * HEIGHT * 4);
+    reused.put(0, (byte) 42);
+    assertThat(rgba.get(0)).isEqualTo((byte) 42);
+    pool.release(reused);
+  }
+
+  private static MPImage createRgbImage() {
+    return new ByteBufferImageBuilder(
+            ByteBuffer.allocate(WIDTH * HEIGHT * 3), WIDTH, HEIGHT, MPImage.IMAGE_FORMAT_RGB)
+        .build();
+  }
+
+  private static MPImageProperties createProperties(int imageFormat, int storageType) {
+    return MPImageProperties.builder()
+        .setImageFormat(imageFormat)
+        .setStorageType(storageType)
+        .build();
+  }
+}
@@ -0,0 +1,212 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.framework.image;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.graphics.Bitmap;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link PixelConverter} against straightforward per-byte reference conversions. */
+@RunWith(AndroidJUnit4.class)
+public final class PixelConverterTest {
+  // Covers the per-pixel tail of every remainder modulo 4, and the chunks of 1024 pixels.
+  private static final int[] PIXEL_COUNTS = {0, 1, 2, 3, 4, 5, 6, 7, 8, 1023, 1024, 1025, 2051};
+  // The number of bytes before the pixels in the source and target buffers.
+  private static final int SOURCE_OFFSET = 5;
+  private static final int TARGET_OFFSET = 3;
+
+  private final Random random = new Random(/* seed= */ 42);
+
+  @Test
+  public void rgbToRgba_matchesReference() {
+    for (boolean direct : new boolean[] {false, true}) {
+      for (int numPixels : PIXEL_COUNTS) {
+        byte[] rgb = randomBytes(numPixels * 3);
+        byte[] expected = new byte[numPixels * 4];
+        for (int p = 0; p < numPixels; ++p) {
+          expected[p * 4] = rgb[p * 3];
+          expected[p * 4 + 1] = rgb[p * 3 + 1];
+          expected[p * 4 + 2] = rgb[p * 3 + 2];
+          expected[p * 4 + 3] = (byte) 0xff;
+        }
+        ByteBuffer source = createSource(rgb, direct);
+        ByteBuffer target = createTarget(expected.length, direct);
+
+        PixelConverter.rgbToRgba(source, target, numPixels);
+
+        assertConverted(source, rgb.length, target, expected);
+      }
+    }
+  }
+
+  @Test
+  public void rgbaToRgb_matchesReference() {
+    for (boolean direct : new boolean[] {false, true}) {
+      for (int numPixels : PIXEL_COUNTS) {
+        byte[] rgba = randomBytes(numPixels * 4);
+        byte[] expected = new byte[numPixels * 3];
+        for (int p = 0; p < numPixels; ++p) {
+          expected[p * 3] = rgba[p * 4];
+          expected[p * 3 + 1] = rgba[p * 4 + 1];
+          expected[p * 3 + 2] = rgba[p * 4 + 2];
+        }
+        ByteBuffer source = createSource(rgba, direct);
+        ByteBuffer target = createTarget(expected.length, direct);
+
+        PixelConverter.rgbaToRgb(source, target, numPixels);
+
+        assertConverted(source, rgba.length, target, expected);
+      }
+    }
+  }
+
+  @Test
+  public void vec32f1ToAlpha_matchesReference() {
+    for (boolean direct : new boolean[] {false, true}) {
+      for (int numPixels : PIXEL_COUNTS) {
+        float[] values = new float[numPixels];
+        for (int p = 0; p < numPixels; ++p) {
+          // Also covers the values that are clamped to [0, 1].
+          values[p] = random.nextFloat() * 1.5f - 0.25f;
+        }
+        if (numPixels > 2) {
+          values[0] = Float.NaN;
+          values[1] = 1f;
+          values[2] = 0f;
+        }
+        ByteBuffer floats = ByteBuffer.allocate(numPixels * 4).order(ByteOrder.nativeOrder());
+        floats.asFloatBuffer().put(values);
+        byte[] expected = new byte[numPixels];
+        for (int p = 0; p < numPixels; ++p) {
+          float value = Float.isNaN(values[p]) ? 0f : Math.min(1f, Math.max(0f, values[p]));
+          expected[p] = (byte) Math.round(value * 255f);
+        }
+        ByteBuffer source = createSource(floats.array(), direct);
+        ByteBuffer target = createTarget(expected.length, direct);
+
+        PixelConverter.vec32f1ToAlpha(source, target, numPixels);
+
+        assertConverted(source, floats.capacity(), target, expected);
+      }
+    }
+  }
+
+  @Test
+  public void argbBitmapToRgb_matchesReference() {
+    // The widths cover every remainder modulo 4, and rows of more than one chunk.
+    for (int width : new int[] {1, 2, 3, 4, 5, 7, 1025}) {
+      int height = 3;
+      int[] colors = new int[width * height];
+      for (int i = 0; i < colors.length; ++i) {
+        // Opaque colors, as the RGB values of translucent ones are altered by premultiplication.
+        colors[i] = random.nextInt() | 0xff000000;
+      }
+      Bitmap bitmap = Bitmap.createBitmap(colors, width, height, Bitmap.Config.ARGB_8888);
+      byte[] expected = new byte[colors.length * 3];
+      for (int i = 0; i < colors.length; ++i) {
+        expected[i * 3] = (byte) (colors[i] >> 16);
+        expected[i * 3 + 1] = (byte) (colors[i] >> 8);
+        expected[i * 3 + 2] = (byte) colors[i];
+      }
+      ByteBuffer target = createTarget(expected.length, /* direct= */ true);
+
+      PixelConverter.argbBitmapToRgb(bitmap, target);
+
+      assertThat(target.position()).isEqualTo(TARGET_OFFSET + expected.length);
+      assertThat(getBytes(target, TARGET_OFFSET, expected.length)).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void rgbToRgba_failsWithTooSmallTarget() {
+    ByteBuffer source = ByteBuffer.allocate(5 * 3);
+    ByteBuffer target = ByteBuffer.allocate(5 * 4 - 1);
+
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> PixelConverter.rgbToRgba(source, target, /* numPixels= */ 5));
+    assertThat(exception).hasMessageThat().contains("at least 20 bytes remaining");
+    assertThat(source.position()).isEqualTo(0);
+    assertThat(target.position()).isEqualTo(0);
+  }
+
+  private byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  /**
+   * Returns a buffer holding {@code bytes} after {@link #SOURCE_OFFSET} bytes of padding, and
+   * positioned at them.
+   */
+  private static ByteBuffer createSource(byte[] bytes, boolean direct) {
+    ByteBuffer source = allocate(SOURCE_OFFSET + bytes.length + 1, direct);
+    setPosition(source, SOURCE_OFFSET);
+    source.put(bytes);
+    setPosition(source, SOURCE_OFFSET);
+    return source;
+  }
+
+  /**
+   * Returns a buffer positioned after {@link #TARGET_OFFSET} bytes of padding, with room for {@code
+   * size} bytes and one more.
+   */
+  private static ByteBuffer createTarget(int size, boolean direct) {
+    ByteBuffer target = allocate(TARGET_OFFSET + size + 1, direct);
+    setPosition(target, TARGET_OFFSET);
+    return target;
+  }
+
+  // Called on a Buffer, as the covariant overrides of position(int) don't exist on all the Android
+  // versions.
+  private static void setPosition(Buffer buffer, int position) {
+    buffer.position(position);
+  }
+
+  private static ByteBuffer allocate(int capacity, boolean direct) {
+    return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  /**
+   * Checks that both buffers advanced past the converted pixels, and that only the pixels were
+   * written to the target.
+   */
+  private static void assertConverted(
+      ByteBuffer source, int sourceSize, ByteBuffer target, byte[] expected) {
+    assertThat(source.position()).isEqualTo(SOURCE_OFFSET + sourceSize);
+    assertThat(target.position()).isEqualTo(TARGET_OFFSET + expected.length);
+    assertThat(getBytes(target, TARGET_OFFSET, expected.length)).isEqualTo(expected);
+    assertThat(getBytes(target, 0, TARGET_OFFSET)).isEqualTo(new byte[TARGET_OFFSET]);
+    assertThat(target.get(TARGET_OFFSET + expected.length)).isEqualTo((byte) 0);
+  }
+
+  private static byte[] getBytes(ByteBuffer buffer, int offset, int size) {
+    byte[] bytes = new byte[size];
+    for (int i = 0; i < size; ++i) {
+      bytes[i] = buffer.get(offset + i);
+    }
+    return bytes;
+  }
+}
@@ -24,6 +24,7 @@ limitations under the License.
 #include "absl/status/status.h"
 #include "absl/status/statusor.h"
 #include "absl/strings/substitute.h"
+#include "absl/synchronization/mutex.h"
 #include "mediapipe/framework/api2/packet.h"
 #include "mediapipe/tasks/cc/common.h"
 #include "mediapipe/tasks/cc/core/model_asset_bundle_resources.h"
@@ -43,10 +44,12 @@ ModelResourcesCache::ModelResourcesCache(
 }
 
 bool ModelResourcesCache::Exists(const std::string& tag) const {
+  absl::MutexLock lock(&mutex_);
   return model_resources_collection_.contains(tag);
 }
 
 bool ModelResourcesCache::ModelAssetBundleExists(const std::string& tag) const {
+  absl::MutexLock lock(&mutex_);
   return model_asset_bundle_resources_collection_.contains(tag);
 }
 
@@ -64,7 +67,8 @@ absl::Status ModelResourcesCache::AddModelResources(
         "ModelResources must have a non-empty tag.",
         MediaPipeTasksStatus::kRunnerModelResourcesCacheServiceError);
   }
-  if (Exists(tag)) {
+  absl::MutexLock lock(&mutex_);
+  if (model_resources_collection_.contains(tag)) {
     return CreateStatusWithPayload(
         absl::StatusCode::kInvalidArgument,
         absl::Substitute("ModelResources with tag \"$0\" already exists.", tag),
@@ -90,13 +94,17 @@ absl::StatusOr<const ModelResources*> ModelResourcesCache::GetModelResources(
         "ModelResources must be retrieved with a non-empty tag.",
         MediaPipeTasksStatus::kRunnerModelResourcesCacheServiceError);
   }
-  if (!Exists(tag)) {
+  absl::MutexLock lock(&mutex_);
+  auto it = model_resources_collection_.find(tag);
+  if (it == model_resources_collection_.end()) {
     return CreateStatusWithPayload(
         absl::StatusCode::kInvalidArgument,
         absl::Substitute("ModelResources with tag \"$0\" does not exist.", tag),
         MediaPipeTasksStatus::kRunnerModelResourcesCacheServiceError);
   }
-  return model_resources_collection_.at(tag).get();
+  // The returned pointer stays valid when the map rehashes, as the map owns
+  // the ModelResources through a unique_ptr.
+  return it->second.get();
 }
 
 absl::Status ModelResourcesCache::AddModelAssetBundleResources(
@@ -114,7 +122,8 @@ absl::Status ModelResourcesCache::AddModelAssetBundleResources(
         "ModelAssetBundleResources must have a non-empty tag.",
         MediaPipeTasksStatus::kRunnerModelResourcesCacheServiceError);
   }
-  if (ModelAssetBundleExists(tag)) {
+  absl::MutexLock lock(&mutex_);
+  if (model_asset_bundle_resources_collection_.contains(tag)) {
     return CreateStatusWithPayload(
         absl::StatusCode::kInvalidArgument,
         absl::Substitute(
@@ -145,14 +154,16 @@ ModelResourcesCache::GetModelAssetBundleResources(
         "ModelAssetBundleResources must be retrieved with a non-empty tag.",
         MediaPipeTasksStatus::kRunnerModelResourcesCacheServiceError);
   }
-  if (!ModelAssetBundleExists(tag)) {
+  absl::MutexLock lock(&mutex_);
+  auto it = model_asset_bundle_resources_collection_.find(tag);
+  if (it == model_asset_bundle_resources_collection_.end()) {
     return CreateStatusWithPayload(
         absl::StatusCode::kInvalidArgument,
         absl::Substitute(
             "ModelAssetBundleResources with tag \"$0\" does not exist.", tag),
         MediaPipeTasksStatus::kRunnerModelResourcesCacheServiceError);
   }
-  return model_asset_bundle_resources_collection_.at(tag).get();
+  return it->second.get();
 }
 
 absl::StatusOr<api2::Packet<tflite::OpResolver>>
@@ -169,11 +169,16 @@ absl::StatusOr<const ModelResources*> ModelTaskGraph::CreateModelResources(
     local_model_resources_.push_back(std::move(local_model_resource));
     return local_model_resources_.back().get();
   }
+  const std::string tag =
+      absl::StrCat(CreateModelResourcesTag(sc->OriginalNode()), tag_suffix);
+  // The cache may be shared by several graphs that run the same model, in
+  // which case the first graph has already created the model resources.
+  if (model_resources_cache_service.GetObject().Exists(tag)) {
+    return model_resources_cache_service.GetObject().GetModelResources(tag);
+  }
   ASSIGN_OR_RETURN(
       auto op_resolver_packet,
       model_resources_cache_service.GetObject().GetGraphOpResolverPacket());
-  const std::string tag =
-      absl::StrCat(CreateModelResourcesTag(sc->OriginalNode()), tag_suffix);
   ASSIGN_OR_RETURN(auto model_resources,
                    ModelResources::Create(tag, std::move(external_file),
                                           op_resolver_packet));
@@ -208,6 +213,10 @@ ModelTaskGraph::CreateModelAssetBundleResources(
   }
   const std::string tag = absl::StrCat(
       CreateModelAssetBundleResourcesTag(sc->OriginalNode()), tag_suffix);
+  if (model_resources_cache_service.GetObject().ModelAssetBundleExists(tag)) {
+    return model_resources_cache_service.GetObject()
+        .GetModelAssetBundleResources(tag);
+  }
   ASSIGN_OR_RETURN(
       auto model_bundle_resources,
       ModelAssetBundleResources::Create(tag, std::move(external_file)));
@@ -209,6 +209,7 @@ public final class AudioClassifier extends BaseAudioTaskApi {
                 .setInputStreams(INPUT_STREAMS)
                 .setOutputStreams(OUTPUT_STREAMS)
                 .setTaskOptions(options)
+                .setBaseOptions(options.baseOptions())
                 .setEnableFlowLimiting(false)
                 .build(),
             handler);
@@ -206,6 +206,7 @@ public final class AudioEmbedder extends BaseAudioTaskApi {
                 .setInputStreams(INPUT_STREAMS)
                 .setOutputStreams(OUTPUT_STREAMS)
                 .setTaskOptions(options)
+                .setBaseOptions(options.baseOptions())
                 .setEnableFlowLimiting(false)
                 .build(),
             handler);
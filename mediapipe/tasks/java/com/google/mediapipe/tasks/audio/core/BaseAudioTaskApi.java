@@ -22,6 +22,7 @@ import com.google.mediapipe.framework.Packet;
 import com.google.mediapipe.tasks.components.containers.AudioData;
 import com.google.mediapipe.tasks.core.TaskResult;
 import com.google.mediapipe.tasks.core.TaskRunner;
+import com.google.mediapipe.tasks.core.logging.TasksStatsLogger.StatsSnapshot;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -147,6 +148,14 @@ public class BaseAudioTaskApi implements AutoCloseable {
     runner.send(inputPackets, timestampMs * MICROSECONDS_PER_MILLISECOND);
   }
 
+  /**
+   * Returns the stats of the MediaPipe audio task since it was created, such as the invocation
+   * counts, the throughput, and the latency percentiles.
+   */
+  public StatsSnapshot getStatsSnapshot() {
+    return runner.getStatsSnapshot();
+  }
+
   /** Closes and cleans up the MediaPipe audio task. */
   @Override
   public void close() {
@@ -0,0 +1,173 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.components.containers;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * An {@link Embedding} backed by a {@link FloatBuffer} or a {@link ByteBuffer}, for instance one
+ * filled by {@code EmbeddingPacketGetter} and reused for every result.
+ *
+ * <p>The embedding is a view of the remaining elements of the buffer when it was created: changes
+ * to the content of the buffer are seen by the embedding. {@link #floatEmbedding()} and {@link
+ * #quantizedEmbedding()} return the backing array itself when the view spans a whole array, and a
+ * copy of the values otherwise; {@link #floatBuffer()} and {@link #quantizedBuffer()} never copy.
+ */
+public final class BufferEmbedding extends Embedding {
+  private static final float[] EMPTY_FLOAT_EMBEDDING = new float[0];
+  private static final byte[] EMPTY_QUANTIZED_EMBEDDING = new byte[0];
+
+  private final FloatBuffer floatBuffer;
+  private final ByteBuffer quantizedBuffer;
+  private final int headIndex;
+  private final Optional<String> headName;
+
+  /**
+   * Creates a float {@link BufferEmbedding} viewing the remaining elements of {@code
+   * floatEmbedding}.
+   *
+   * @param floatEmbedding the floating-point embedding.
+   * @param headIndex the index of the embedder head.
+   * @param headName the optional name of the embedder head.
+   */
+  public static BufferEmbedding create(
+      FloatBuffer floatEmbedding, int headIndex, Optional<String> headName) {
+    return new BufferEmbedding(
+        floatEmbedding.slice(), ByteBuffer.allocate(0), headIndex, headName);
+  }
+
+  /**
+   * Creates a quantized {@link BufferEmbedding} viewing the remaining bytes of {@code
+   * quantizedEmbedding}.
+   *
+   * @param quantizedEmbedding the quantized embedding.
+   * @param headIndex the index of the embedder head.
+   * @param headName the optional name of the embedder head.
+   */
+  public static BufferEmbedding create(
+      ByteBuffer quantizedEmbedding, int headIndex, Optional<String> headName) {
+    return new BufferEmbedding(
+        FloatBuffer.allocate(0), quantizedEmbedding.slice(), headIndex, headName);
+  }
+
+  private BufferEmbedding(
+      FloatBuffer floatBuffer,
+      ByteBuffer quantizedBuffer,
+      int headIndex,
+      Optional<String> headName) {
+    this.floatBuffer = floatBuffer;
+    this.quantizedBuffer = quantizedBuffer;
+    this.headIndex = headIndex;
+    this.headName = headName;
+  }
+
+  /** Returns a read-only view of the floating-point embedding, empty if it is quantized. */
+  public FloatBuffer floatBuffer() {
+    return floatBuffer.asReadOnlyBuffer();
+  }
+
+  /** Returns a read-only view of the quantized embedding, empty if it is floating-point. */
+  public ByteBuffer quantizedBuffer() {
+    return quantizedBuffer.asReadOnlyBuffer();
+  }
+
+  @Override
+  public float[] floatEmbedding() {
+    int size = floatBuffer.capacity();
+    if (size == 0) {
+      return EMPTY_FLOAT_EMBEDDING;
+    }
+    if (floatBuffer.hasArray()
+        && floatBuffer.arrayOffset() == 0
+        && floatBuffer.array().length == size) {
+      return floatBuffer.array();
+    }
+    float[] values = new float[size];
+    floatBuffer.duplicate().get(values);
+    return values;
+  }
+
+  @Override
+  public byte[] quantizedEmbedding() {
+    int size = quantizedBuffer.capacity();
+    if (size == 0) {
+      return EMPTY_QUANTIZED_EMBEDDING;
+    }
+    if (quantizedBuffer.hasArray()
+        && quantizedBuffer.arrayOffset() == 0
+        && quantizedBuffer.array().length == size) {
+      return quantizedBuffer.array();
+    }
+    byte[] values = new byte[size];
+    quantizedBuffer.duplicate().get(values);
+    return values;
+  }
+
+  @Override
+  public int headIndex() {
+    return headIndex;
+  }
+
+  @Override
+  public Optional<String> headName() {
+    return headName;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof Embedding)) {
+      return false;
+    }
+    Embedding that = (Embedding) o;
+    return Arrays.equals(floatEmbedding(), that.floatEmbedding())
+        && Arrays.equals(quantizedEmbedding(), that.quantizedEmbedding())
+        && headIndex == that.headIndex()
+        && headName.equals(that.headName());
+  }
+
+  @Override
+  public int hashCode() {
+    // Matches the hash code of the AutoValue implementation of Embedding.
+    int h = 1;
+    h *= 1000003;
+    h ^= Arrays.hashCode(floatEmbedding());
+    h *= 1000003;
+    h ^= Arrays.hashCode(quantizedEmbedding());
+    h *= 1000003;
+    h ^= headIndex;
+    h *= 1000003;
+    h ^= headName.hashCode();
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return "BufferEmbedding{floatEmbedding="
+        + Arrays.toString(floatEmbedding())
+        + ", quantizedEmbedding="
+        + Arrays.toString(quantizedEmbedding())
+        + ", headIndex="
+        + headIndex
+        + ", headName="
+        + headName
+        + "}";
+  }
+}
@@ -0,0 +1,295 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.components.containers;
+
+import com.google.mediapipe.framework.Packet;
+import com.google.mediapipe.tasks.components.containers.proto.ClassificationsProto;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A {@link ClassificationResult} that stores the categories of all the classifier heads in flat
+ * primitive arrays instead of one {@link Category} per class.
+ *
+ * <p>The arrays are filled natively from the graph output, without serializing and parsing the
+ * classification protobuf message. The categories of head {@code h} are stored as parallel scores
+ * and category indices, see {@link #scoresBuffer(int)} and {@link #indicesBuffer(int)}. The
+ * category names and display names are looked up by category index in a {@link LabelTable} that
+ * is shared by all the results of a task, so that each label of the model is only converted to a
+ * {@link String} once. The {@link List} view of {@link ClassificationResult} is built lazily on
+ * first access.
+ */
+public final class CompactClassificationResult extends ClassificationResult {
+  // The number of heads, the number of categories, the size of the head table and the size of the
+  // label tables.
+  private static final int CLASSIFICATION_COUNTS_SIZE = 4;
+  // The timestamp returned by nativeFillClassifications for results without a timestamp.
+  private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+  private final int numHeads;
+  private final int[] headIndices;
+  // The first category of head h is at categoryOffsets[h], head h has
+  // categoryOffsets[h + 1] - categoryOffsets[h] categories.
+  private final int[] categoryOffsets;
+  private final float[] scores;
+  private final int[] indices;
+  private final Optional<Long> timestampMs;
+  // The tables of the label table when this result was created. Their entries are never changed
+  // once set.
+  private final String[] headNames;
+  private final String[][] categoryNames;
+  private final String[][] displayNames;
+
+  private List<Classifications> classificationsView;
+
+  /**
+   * Creates a {@link CompactClassificationResult} from a graph output packet holding a {@link
+   * ClassificationsProto.ClassificationResult} protobuf message.
+   *
+   * @param labelTable the {@link LabelTable} of the task that produced the packet.
+   * @param packet the graph output packet.
+   * @throws com.google.mediapipe.framework.MediaPipeException if the packet doesn't hold a
+   *     classification result.
+   */
+  public static CompactClassificationResult createFromPacket(LabelTable labelTable, Packet packet) {
+    return labelTable.createResult(packet.getNativeHandle());
+  }
+
+  private CompactClassificationResult(
+      long packetHandle,
+      int[] counts,
+      String[] headNames,
+      String[][] categoryNames,
+      String[][] displayNames) {
+    numHeads = counts[0];
+    headIndices = new int[numHeads];
+    categoryOffsets = new int[numHeads + 1];
+    scores = new float[counts[1]];
+    indices = new int[counts[1]];
+    this.headNames = headNames;
+    this.categoryNames = categoryNames;
+    this.displayNames = displayNames;
+    long timestamp =
+        nativeFillClassifications(
+            packetHandle,
+            headIndices,
+            categoryOffsets,
+            scores,
+            indices,
+            headNames,
+            categoryNames,
+            displayNames);
+    timestampMs = timestamp == NO_TIMESTAMP ? Optional.empty() : Optional.of(timestamp);
+  }
+
+  /** Returns the number of classifier heads in this result. */
+  public int headsCount() {
+    return numHeads;
+  }
+
+  /** Returns the index of the classifier head of the {@code head}-th classifications. */
+  public int headIndex(int head) {
+    checkHead(head);
+    return headIndices[head];
+  }
+
+  /** Returns the optional name of the classifier head of the {@code head}-th classifications. */
+  public Optional<String> headName(int head) {
+    checkHead(head);
+    return Optional.ofNullable(headNames[headIndices[head]]);
+  }
+
+  /** Returns the number of categories of the {@code head}-th classifications. */
+  public int categoriesCount(int head) {
+    checkHead(head);
+    return categoryOffsets[head + 1] - categoryOffsets[head];
+  }
+
+  /**
+   * Returns a read-only view of the category scores of the {@code head}-th classifications, in the
+   * same order as {@link #indicesBuffer(int)}.
+   */
+  public FloatBuffer scoresBuffer(int head) {
+    checkHead(head);
+    int start = categoryOffsets[head];
+    return FloatBuffer.wrap(scores, start, categoryOffsets[head + 1] - start)
+        .slice()
+        .asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns a read-only view of the category indices of the {@code head}-th classifications, in the
+   * same order as {@link #scoresBuffer(int)}.
+   */
+  public IntBuffer indicesBuffer(int head) {
+    checkHead(head);
+    int start = categoryOffsets[head];
+    return IntBuffer.wrap(indices, start, categoryOffsets[head + 1] - start)
+        .slice()
+        .asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns the label of the category of index {@code index} of the {@code head}-th
+   * classifications, or an empty string if the label is unknown.
+   */
+  public String categoryName(int head, int index) {
+    return lookUp(categoryNames, head, index);
+  }
+
+  /**
+   * Returns the display name of the category of index {@code index} of the {@code head}-th
+   * classifications, or an empty string if the label is unknown.
+   */
+  public String displayName(int head, int index) {
+    return lookUp(displayNames, head, index);
+  }
+
+  /** The classification results for each head of the model. Built on first access. */
+  @Override
+  public List<Classifications> classifications() {
+    if (classificationsView == null) {
+      List<Classifications> classifications = new ArrayList<>(numHeads);
+      for (int head = 0; head < numHeads; ++head) {
+        List<Category> categories = new ArrayList<>(categoriesCount(head));
+        for (int i = categoryOffsets[head]; i < categoryOffsets[head + 1]; ++i) {
+          categories.add(
+              Category.create(
+                  scores[i],
+                  indices[i],
+                  lookUp(categoryNames, head, indices[i]),
+                  lookUp(displayNames, head, indices[i])));
+        }
+        classifications.add(Classifications.create(categories, headIndex(head), headName(head)));
+      }
+      classificationsView = Collections.unmodifiableList(classifications);
+    }
+    return classificationsView;
+  }
+
+  @Override
+  public Optional<Long> timestampMs() {
+    return timestampMs;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof ClassificationResult)) {
+      return false;
+    }
+    ClassificationResult that = (ClassificationResult) o;
+    return classifications().equals(that.classifications())
+        && timestampMs().equals(that.timestampMs());
+  }
+
+  @Override
+  public int hashCode() {
+    // Matches the hash code of the AutoValue implementation of ClassificationResult.
+    int h = 1;
+    h *= 1000003;
+    h ^= classifications().hashCode();
+    h *= 1000003;
+    h ^= timestampMs().hashCode();
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return "CompactClassificationResult{classifications="
+        + classifications()
+        + ", timestampMs="
+        + timestampMs()
+        + "}";
+  }
+
+  private String lookUp(String[][] table, int head, int index) {
+    checkHead(head);
+    String[] labels = table[headIndices[head]];
+    String label = index >= 0 && index < labels.length ? labels[index] : null;
+    return label == null ? "" : label;
+  }
+
+  private void checkHead(int head) {
+    if (head < 0 || head >= numHeads) {
+      throw new IndexOutOfBoundsException(
+          String.format("Head %d is out of range [0, %d).", head, numHeads));
+    }
+  }
+
+  /**
+   * The head names, category names and display names of a model, indexed by head index and
+   * category index, shared by all the {@link CompactClassificationResult}s of a task.
+   *
+   * <p>The table is filled from the classification results as the categories are first seen, so
+   * each label is only converted to a {@link String} once per task. The table arrays are copied
+   * when they grow, so the results created before keep a consistent view.
+   */
+  public static final class LabelTable {
+    private final int[] classificationCounts = new int[CLASSIFICATION_COUNTS_SIZE];
+    private String[] headNames = new String[0];
+    private String[][] categoryNames = new String[0][];
+    private String[][] displayNames = new String[0][];
+
+    private synchronized CompactClassificationResult createResult(long packetHandle) {
+      nativeGetClassificationCounts(packetHandle, classificationCounts);
+      ensureCapacity(classificationCounts[2], classificationCounts[3]);
+      return new CompactClassificationResult(
+          packetHandle, classificationCounts, headNames, categoryNames, displayNames);
+    }
+
+    private void ensureCapacity(int headTableSize, int labelTableSize) {
+      int labelsLength = categoryNames.length > 0 ? categoryNames[0].length : 0;
+      if (headNames.length >= headTableSize && labelsLength >= labelTableSize) {
+        return;
+      }
+      headTableSize = Math.max(headTableSize, headNames.length);
+      labelTableSize = Math.max(labelTableSize, labelsLength);
+      headNames = Arrays.copyOf(headNames, headTableSize);
+      categoryNames = grow(categoryNames, headTableSize, labelTableSize);
+      displayNames = grow(displayNames, headTableSize, labelTableSize);
+    }
+
+    private static String[][] grow(String[][] table, int headTableSize, int labelTableSize) {
+      String[][] grown = new String[headTableSize][];
+      for (int head = 0; head < headTableSize; ++head) {
+        grown[head] =
+            head < table.length
+                ? Arrays.copyOf(table[head], labelTableSize)
+                : new String[labelTableSize];
+      }
+      return grown;
+    }
+  }
+
+  private static native void nativeGetClassificationCounts(long packetHandle, int[] counts);
+
+  private static native long nativeFillClassifications(
+      long packetHandle,
+      int[] headIndices,
+      int[] categoryOffsets,
+      float[] scores,
+      int[] indices,
+      String[] headNames,
+      String[][] categoryNames,
+      String[][] displayNames);
+}
@@ -0,0 +1,280 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.components.containers;
+
+import com.google.mediapipe.framework.Packet;
+import com.google.mediapipe.tasks.components.containers.proto.EmbeddingsProto;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Utility class to read the embeddings of a graph output packet holding an {@link
+ * EmbeddingsProto.EmbeddingResult} protobuf message, without serializing and parsing the message.
+ *
+ * <p>The embedding values are copied natively into arrays or buffers supplied by the caller, so
+ * that the same destination can be reused for every result. A destination buffer can then be
+ * viewed as an {@link Embedding} with {@link BufferEmbedding}. The embeddings of a packet are
+ * identified by their position in the result, from 0 to {@link #getEmbeddingsCount} excluded.
+ *
+ * <p>The methods throw a {@link com.google.mediapipe.framework.MediaPipeException} if the packet
+ * doesn't hold an embedding result, if the position of the embedding is out of range, or if the
+ * embedding is not of the requested type (float vs. quantized).
+ */
+public final class EmbeddingPacketGetter {
+  // The head index, the number of values, and 1 if the embedding is quantized or 0 otherwise.
+  private static final int EMBEDDING_INFO_SIZE = 3;
+  // The timestamp returned by nativeGetTimestampMs for results without a timestamp.
+  private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+  // Non-instantiable class.
+  private EmbeddingPacketGetter() {}
+
+  /** Returns the number of embeddings, one per embedder head, of the embedding result. */
+  public static int getEmbeddingsCount(Packet packet) {
+    return nativeGetEmbeddingsCount(packet.getNativeHandle());
+  }
+
+  /** Returns the index of the embedder head of the {@code embedding}-th embedding. */
+  public static int getHeadIndex(Packet packet, int embedding) {
+    return getEmbeddingInfo(packet, embedding)[0];
+  }
+
+  /** Returns the optional name of the embedder head of the {@code embedding}-th embedding. */
+  public static Optional<String> getHeadName(Packet packet, int embedding) {
+    return Optional.ofNullable(nativeGetHeadName(packet.getNativeHandle(), embedding));
+  }
+
+  /** Returns the number of values of the {@code embedding}-th embedding. */
+  public static int getEmbeddingSize(Packet packet, int embedding) {
+    return getEmbeddingInfo(packet, embedding)[1];
+  }
+
+  /** Returns true if the {@code embedding}-th embedding is quantized, false if it is float. */
+  public static boolean isQuantized(Packet packet, int embedding) {
+    return getEmbeddingInfo(packet, embedding)[2] != 0;
+  }
+
+  /**
+   * Copies the values of the {@code embedding}-th embedding, which must be a float embedding, to
+   * {@code destination} starting at {@code offset}.
+   *
+   * @return the number of copied values.
+   * @throws IllegalArgumentException if the values don't fit in {@code destination} from {@code
+   *     offset}.
+   */
+  public static int getFloatEmbedding(
+      Packet packet, int embedding, float[] destination, int offset) {
+    checkOffset(offset, destination.length);
+    int capacity = destination.length - offset;
+    int size =
+        nativeGetFloatEmbedding(
+            packet.getNativeHandle(), embedding, destination, offset, capacity);
+    checkFits(size, capacity);
+    return size;
+  }
+
+  /**
+   * Copies the values of the {@code embedding}-th embedding, which must be a float embedding, to
+   * {@code destination} at its position, and advances its position past them. Direct buffers in
+   * the native byte order are written to without any intermediate copy.
+   *
+   * @return the number of copied values.
+   * @throws IllegalArgumentException if the values don't fit in the remaining elements of {@code
+   *     destination}.
+   * @throws ReadOnlyBufferException if {@code destination} is read-only.
+   */
+  public static int getFloatEmbedding(Packet packet, int embedding, FloatBuffer destination) {
+    if (destination.isReadOnly()) {
+      throw new ReadOnlyBufferException();
+    }
+    int size;
+    if (destination.isDirect() && destination.order() == ByteOrder.nativeOrder()) {
+      size =
+          nativeGetEmbeddingToDirectBuffer(
+              packet.getNativeHandle(),
+              embedding,
+              /* quantized= */ false,
+              destination,
+              destination.position() * Float.BYTES,
+              destination.remaining() * Float.BYTES);
+      checkFits(size, destination.remaining());
+    } else if (destination.hasArray()) {
+      size =
+          nativeGetFloatEmbedding(
+              packet.getNativeHandle(),
+              embedding,
+              destination.array(),
+              destination.arrayOffset() + destination.position(),
+              destination.remaining());
+      checkFits(size, destination.remaining());
+    } else {
+      float[] values = new float[getEmbeddingSize(packet, embedding)];
+      size = getFloatEmbedding(packet, embedding, values, 0);
+      checkFits(size, destination.remaining());
+      destination.put(values);
+      return size;
+    }
+    advance(destination, size);
+    return size;
+  }
+
+  /**
+   * Copies the values of the {@code embedding}-th embedding, which must be a quantized embedding,
+   * to {@code destination} starting at {@code offset}.
+   *
+   * @return the number of copied values.
+   * @throws IllegalArgumentException if the values don't fit in {@code destination} from {@code
+   *     offset}.
+   */
+  public static int getQuantizedEmbedding(
+      Packet packet, int embedding, byte[] destination, int offset) {
+    checkOffset(offset, destination.length);
+    int capacity = destination.length - offset;
+    int size =
+        nativeGetQuantizedEmbedding(
+            packet.getNativeHandle(), embedding, destination, offset, capacity);
+    checkFits(size, capacity);
+    return size;
+  }
+
+  /**
+   * Copies the values of the {@code embedding}-th embedding, which must be a quantized embedding,
+   * to {@code destination} at its position, and advances its position past them. Direct buffers
+   * are written to without any intermediate copy.
+   *
+   * @return the number of copied values.
+   * @throws IllegalArgumentException if the values don't fit in the remaining bytes of {@code
+   *     destination}.
+   * @throws ReadOnlyBufferException if {@code destination} is read-only.
+   */
+  public static int getQuantizedEmbedding(Packet packet, int embedding, ByteBuffer destination) {
+    if (destination.isReadOnly()) {
+      throw new ReadOnlyBufferException();
+    }
+    int size;
+    if (destination.isDirect()) {
+      size =
+          nativeGetEmbeddingToDirectBuffer(
+              packet.getNativeHandle(),
+              embedding,
+              /* quantized= */ true,
+              destination,
+              destination.position(),
+              destination.remaining());
+      checkFits(size, destination.remaining());
+    } else {
+      size =
+          nativeGetQuantizedEmbedding(
+              packet.getNativeHandle(),
+              embedding,
+              destination.array(),
+              destination.arrayOffset() + destination.position(),
+              destination.remaining());
+      checkFits(size, destination.remaining());
+    }
+    advance(destination, size);
+    return size;
+  }
+
+  /**
+   * Creates an {@link EmbeddingResult} from the packet, copying each embedding natively into a new
+   * array of the exact size.
+   */
+  public static EmbeddingResult getEmbeddingResult(Packet packet) {
+    long handle = packet.getNativeHandle();
+    int count = nativeGetEmbeddingsCount(handle);
+    List<Embedding> embeddings = new ArrayList<>(count);
+    int[] info = new int[EMBEDDING_INFO_SIZE];
+    for (int i = 0; i < count; ++i) {
+      nativeGetEmbeddingInfo(handle, i, info);
+      float[] floatEmbedding;
+      byte[] quantizedEmbedding;
+      if (info[2] != 0) {
+        floatEmbedding = new float[0];
+        quantizedEmbedding = new byte[info[1]];
+        nativeGetQuantizedEmbedding(handle, i, quantizedEmbedding, 0, info[1]);
+      } else {
+        floatEmbedding = new float[info[1]];
+        quantizedEmbedding = new byte[0];
+        nativeGetFloatEmbedding(handle, i, floatEmbedding, 0, info[1]);
+      }
+      embeddings.add(
+          Embedding.create(
+              floatEmbedding,
+              quantizedEmbedding,
+              info[0],
+              Optional.ofNullable(nativeGetHeadName(handle, i))));
+    }
+    long timestampMs = nativeGetTimestampMs(handle);
+    return EmbeddingResult.create(
+        embeddings, timestampMs == NO_TIMESTAMP ? Optional.empty() : Optional.of(timestampMs));
+  }
+
+  private static int[] getEmbeddingInfo(Packet packet, int embedding) {
+    int[] info = new int[EMBEDDING_INFO_SIZE];
+    nativeGetEmbeddingInfo(packet.getNativeHandle(), embedding, info);
+    return info;
+  }
+
+  private static void checkOffset(int offset, int length) {
+    if (offset < 0 || offset > length) {
+      throw new IllegalArgumentException(
+          String.format("Offset %d is out of range [0, %d].", offset, length));
+    }
+  }
+
+  private static void checkFits(int size, int available) {
+    if (size > available) {
+      throw new IllegalArgumentException(
+          String.format(
+              "The destination has room for %d values, but the embedding has %d values.",
+              available, size));
+    }
+  }
+
+  // Called on a Buffer, as the covariant overrides of position(int) don't exist on all the
+  // Android versions.
+  private static void advance(Buffer buffer, int size) {
+    buffer.position(buffer.position() + size);
+  }
+
+  private static native int nativeGetEmbeddingsCount(long packetHandle);
+
+  private static native void nativeGetEmbeddingInfo(long packetHandle, int embedding, int[] info);
+
+  private static native String nativeGetHeadName(long packetHandle, int embedding);
+
+  private static native int nativeGetFloatEmbedding(
+      long packetHandle, int embedding, float[] destination, int offset, int capacity);
+
+  private static native int nativeGetQuantizedEmbedding(
+      long packetHandle, int embedding, byte[] destination, int offset, int capacity);
+
+  private static native int nativeGetEmbeddingToDirectBuffer(
+      long packetHandle,
+      int embedding,
+      boolean quantized,
+      Buffer destination,
+      int byteOffset,
+      int byteCapacity);
+
+  private static native long nativeGetTimestampMs(long packetHandle);
+}
@@ -0,0 +1,144 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#include "mediapipe/tasks/java/com/google/mediapipe/tasks/components/containers/jni/compact_classification_result_jni.h"
+
+#include <algorithm>
+#include <limits>
+#include <string>
+#include <vector>
+
+#include "absl/status/status.h"
+#include "mediapipe/framework/formats/classification.pb.h"
+#include "mediapipe/java/com/google/mediapipe/framework/jni/graph.h"
+#include "mediapipe/java/com/google/mediapipe/framework/jni/jni_util.h"
+#include "mediapipe/tasks/cc/components/containers/proto/classifications.pb.h"
+
+namespace {
+
+using ::mediapipe::Classification;
+using ::mediapipe::android::ThrowIfError;
+using ::mediapipe::tasks::components::containers::proto::ClassificationResult;
+using ::mediapipe::tasks::components::containers::proto::Classifications;
+
+// Returns the classification result held by the packet, or nullptr after
+// throwing a Java exception if the packet doesn't hold one.
+const ClassificationResult* GetClassificationResult(JNIEnv* env,
+                                                    jlong packet) {
+  mediapipe::Packet mediapipe_packet =
+      mediapipe::android::Graph::GetPacketFromHandle(packet);
+  absl::Status status = mediapipe_packet.ValidateAsType<ClassificationResult>();
+  if (ThrowIfError(env, status)) {
+    return nullptr;
+  }
+  return &mediapipe_packet.Get<ClassificationResult>();
+}
+
+// Sets the entry `index` of the table if it isn't set yet, so that each table
+// entry is converted to a Java string only once.
+void SetIfAbsent(JNIEnv* env, jobjectArray table, int index,
+                 const std::string& value) {
+  jobject existing_value = env->GetObjectArrayElement(table, index);
+  if (existing_value != nullptr) {
+    env->DeleteLocalRef(existing_value);
+    return;
+  }
+  jstring new_value = env->NewStringUTF(value.c_str());
+  env->SetObjectArrayElement(table, index, new_value);
+  env->DeleteLocalRef(new_value);
+}
+
+}  // namespace
+
+JNIEXPORT void JNICALL COMPACT_CLASSIFICATION_RESULT_METHOD(
+    nativeGetClassificationCounts)(JNIEnv* env, jclass clazz, jlong packet,
+                                   jintArray counts) {
+  const ClassificationResult* result = GetClassificationResult(env, packet);
+  if (result == nullptr) {
+    return;
+  }
+  jint num_categories = 0;
+  jint head_table_size = 0;
+  jint label_table_size = 0;
+  for (const Classifications& classifications : result->classifications()) {
+    head_table_size =
+        std::max(head_table_size, classifications.head_index() + 1);
+    for (const Classification& classification :
+         classifications.classification_list().classification()) {
+      ++num_categories;
+      label_table_size =
+          std::max(label_table_size, classification.index() + 1);
+    }
+  }
+  const jint values[] = {result->classifications_size(), num_categories,
+                         head_table_size, label_table_size};
+  env->SetIntArrayRegion(counts, 0, 4, values);
+}
+
+JNIEXPORT jlong JNICALL COMPACT_CLASSIFICATION_RESULT_METHOD(
+    nativeFillClassifications)(JNIEnv* env, jclass clazz, jlong packet,
+                               jintArray head_indices,
+                               jintArray category_offsets, jfloatArray scores,
+                               jintArray indices, jobjectArray head_names,
+                               jobjectArray category_names,
+                               jobjectArray display_names) {
+  const ClassificationResult* result = GetClassificationResult(env, packet);
+  if (result == nullptr) {
+    return std::numeric_limits<jlong>::min();
+  }
+  const int num_heads = result->classifications_size();
+  std::vector<jint> head_indices_values(num_heads);
+  std::vector<jint> offsets_values(num_heads + 1);
+  std::vector<jfloat> scores_values;
+  std::vector<jint> indices_values;
+  for (int i = 0; i < num_heads; ++i) {
+    const Classifications& classifications = result->classifications(i);
+    const int head_index = classifications.head_index();
+    head_indices_values[i] = head_index;
+    offsets_values[i] = scores_values.size();
+    if (classifications.has_head_name()) {
+      SetIfAbsent(env, head_names, head_index, classifications.head_name());
+    }
+    // The label tables of the head, indexed by category index.
+    jobjectArray head_category_names = static_cast<jobjectArray>(
+        env->GetObjectArrayElement(category_names, head_index));
+    jobjectArray head_display_names = static_cast<jobjectArray>(
+        env->GetObjectArrayElement(display_names, head_index));
+    for (const Classification& classification :
+         classifications.classification_list().classification()) {
+      scores_values.push_back(classification.score());
+      indices_values.push_back(classification.index());
+      if (classification.index() < 0) {
+        continue;
+      }
+      SetIfAbsent(env, head_category_names, classification.index(),
+                  classification.label());
+      SetIfAbsent(env, head_display_names, classification.index(),
+                  classification.display_name());
+    }
+    env->DeleteLocalRef(head_category_names);
+    env->DeleteLocalRef(head_display_names);
+  }
+  offsets_values[num_heads] = scores_values.size();
+  env->SetIntArrayRegion(head_indices, 0, head_indices_values.size(),
+                         head_indices_values.data());
+  env->SetIntArrayRegion(category_offsets, 0, offsets_values.size(),
+                         offsets_values.data());
+  env->SetFloatArrayRegion(scores, 0, scores_values.size(),
+                           scores_values.data());
+  env->SetIntArrayRegion(indices, 0, indices_values.size(),
+                         indices_values.data());
+  return result->has_timestamp_ms() ? result->timestamp_ms()
+                                    : std::numeric_limits<jlong>::min();
+}
@@ -0,0 +1,49 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#ifndef JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_COMPONENTS_CONTAINERS_JNI_COMPACT_CLASSIFICATION_RESULT_JNI_H_
+#define JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_COMPONENTS_CONTAINERS_JNI_COMPACT_CLASSIFICATION_RESULT_JNI_H_
+
+#include <jni.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif  // __cplusplus
+
+#define COMPACT_CLASSIFICATION_RESULT_METHOD(METHOD_NAME) \
+  Java_com_google_mediapipe_tasks_components_containers_CompactClassificationResult_##METHOD_NAME
+
+// Writes the number of heads, the total number of categories, and the sizes
+// of the head table and of the label tables needed by the classification
+// result to `counts`.
+JNIEXPORT void JNICALL COMPACT_CLASSIFICATION_RESULT_METHOD(
+    nativeGetClassificationCounts)(JNIEnv* env, jclass clazz, jlong packet,
+                                   jintArray counts);
+
+// Fills the arrays from the classification result, and adds the head names
+// and labels that are not in the tables yet. Returns the timestamp of the
+// classification result, or Long.MIN_VALUE if it has none.
+JNIEXPORT jlong JNICALL COMPACT_CLASSIFICATION_RESULT_METHOD(
+    nativeFillClassifications)(JNIEnv* env, jclass clazz, jlong packet,
+                               jintArray head_indices,
+                               jintArray category_offsets, jfloatArray scores,
+                               jintArray indices, jobjectArray head_names,
+                               jobjectArray category_names,
+                               jobjectArray display_names);
+
+#ifdef __cplusplus
+}  // extern "C"
+#endif  // __cplusplus
+
+#endif  // JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_COMPONENTS_CONTAINERS_JNI_COMPACT_CLASSIFICATION_RESULT_JNI_H_
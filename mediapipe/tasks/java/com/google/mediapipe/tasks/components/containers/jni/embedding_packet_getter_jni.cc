@@ -0,0 +1,187 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#include "mediapipe/tasks/java/com/google/mediapipe/tasks/components/containers/jni/embedding_packet_getter_jni.h"
+
+#include <cstdint>
+#include <cstring>
+#include <limits>
+#include <string>
+
+#include "absl/status/status.h"
+#include "absl/strings/str_cat.h"
+#include "mediapipe/java/com/google/mediapipe/framework/jni/graph.h"
+#include "mediapipe/java/com/google/mediapipe/framework/jni/jni_util.h"
+#include "mediapipe/tasks/cc/components/containers/proto/embeddings.pb.h"
+
+namespace {
+
+using ::mediapipe::android::ThrowIfError;
+using ::mediapipe::tasks::components::containers::proto::Embedding;
+using ::mediapipe::tasks::components::containers::proto::EmbeddingResult;
+
+// Returns the embedding result held by the packet, or nullptr after throwing a
+// Java exception if the packet doesn't hold one.
+const EmbeddingResult* GetEmbeddingResult(JNIEnv* env, jlong packet) {
+  mediapipe::Packet mediapipe_packet =
+      mediapipe::android::Graph::GetPacketFromHandle(packet);
+  absl::Status status = mediapipe_packet.ValidateAsType<EmbeddingResult>();
+  if (ThrowIfError(env, status)) {
+    return nullptr;
+  }
+  return &mediapipe_packet.Get<EmbeddingResult>();
+}
+
+// Returns the `embedding`-th embedding of the embedding result held by the
+// packet, or nullptr after throwing a Java exception if there is none.
+const Embedding* GetEmbedding(JNIEnv* env, jlong packet, jint embedding) {
+  const EmbeddingResult* result = GetEmbeddingResult(env, packet);
+  if (result == nullptr) {
+    return nullptr;
+  }
+  if (embedding < 0 || embedding >= result->embeddings_size()) {
+    ThrowIfError(env, absl::OutOfRangeError(absl::StrCat(
+                          "Embedding ", embedding, " is out of range [0, ",
+                          result->embeddings_size(), ").")));
+    return nullptr;
+  }
+  return &result->embeddings(embedding);
+}
+
+// Returns the `embedding`-th embedding of the embedding result held by the
+// packet, or nullptr after throwing a Java exception if there is none or if it
+// is not of the requested type.
+const Embedding* GetEmbeddingOfType(JNIEnv* env, jlong packet, jint embedding,
+                                    bool quantized) {
+  const Embedding* result = GetEmbedding(env, packet, embedding);
+  if (result == nullptr) {
+    return nullptr;
+  }
+  if (result->has_quantized_embedding() != quantized) {
+    ThrowIfError(env, absl::InvalidArgumentError(absl::StrCat(
+                          "Embedding ", embedding, " is not a ",
+                          quantized ? "quantized" : "float", " embedding.")));
+    return nullptr;
+  }
+  return result;
+}
+
+// Returns the number of values of the embedding.
+int GetEmbeddingSize(const Embedding& embedding) {
+  return embedding.has_quantized_embedding()
+             ? embedding.quantized_embedding().values().size()
+             : embedding.float_embedding().values_size();
+}
+
+}  // namespace
+
+JNIEXPORT jint JNICALL EMBEDDING_PACKET_GETTER_METHOD(
+    nativeGetEmbeddingsCount)(JNIEnv* env, jclass clazz, jlong packet) {
+  const EmbeddingResult* result = GetEmbeddingResult(env, packet);
+  return result == nullptr ? 0 : result->embeddings_size();
+}
+
+JNIEXPORT void JNICALL EMBEDDING_PACKET_GETTER_METHOD(nativeGetEmbeddingInfo)(
+    JNIEnv* env, jclass clazz, jlong packet, jint embedding, jintArray info) {
+  const Embedding* result = GetEmbedding(env, packet, embedding);
+  if (result == nullptr) {
+    return;
+  }
+  const jint values[] = {result->head_index(), GetEmbeddingSize(*result),
+                         result->has_quantized_embedding() ? 1 : 0};
+  env->SetIntArrayRegion(info, 0, 3, values);
+}
+
+JNIEXPORT jstring JNICALL EMBEDDING_PACKET_GETTER_METHOD(nativeGetHeadName)(
+    JNIEnv* env, jclass clazz, jlong packet, jint embedding) {
+  const Embedding* result = GetEmbedding(env, packet, embedding);
+  if (result == nullptr || !result->has_head_name()) {
+    return nullptr;
+  }
+  return env->NewStringUTF(result->head_name().c_str());
+}
+
+JNIEXPORT jint JNICALL EMBEDDING_PACKET_GETTER_METHOD(nativeGetFloatEmbedding)(
+    JNIEnv* env, jclass clazz, jlong packet, jint embedding,
+    jfloatArray destination, jint offset, jint capacity) {
+  const Embedding* result =
+      GetEmbeddingOfType(env, packet, embedding, /*quantized=*/false);
+  if (result == nullptr) {
+    return 0;
+  }
+  const int size = GetEmbeddingSize(*result);
+  if (size <= capacity) {
+    env->SetFloatArrayRegion(destination, offset, size,
+                             result->float_embedding().values().data());
+  }
+  return size;
+}
+
+JNIEXPORT jint JNICALL EMBEDDING_PACKET_GETTER_METHOD(
+    nativeGetQuantizedEmbedding)(JNIEnv* env, jclass clazz, jlong packet,
+                                 jint embedding, jbyteArray destination,
+                                 jint offset, jint capacity) {
+  const Embedding* result =
+      GetEmbeddingOfType(env, packet, embedding, /*quantized=*/true);
+  if (result == nullptr) {
+    return 0;
+  }
+  const std::string& values = result->quantized_embedding().values();
+  const int size = values.size();
+  if (size <= capacity) {
+    env->SetByteArrayRegion(destination, offset, size,
+                            reinterpret_cast<const jbyte*>(values.data()));
+  }
+  return size;
+}
+
+JNIEXPORT jint JNICALL EMBEDDING_PACKET_GETTER_METHOD(
+    nativeGetEmbeddingToDirectBuffer)(JNIEnv* env, jclass clazz, jlong packet,
+                                      jint embedding, jboolean quantized,
+                                      jobject destination, jint byte_offset,
+                                      jint byte_capacity) {
+  const Embedding* result = GetEmbeddingOfType(env, packet, embedding,
+                                               /*quantized=*/quantized);
+  if (result == nullptr) {
+    return 0;
+  }
+  char* address = static_cast<char*>(env->GetDirectBufferAddress(destination));
+  if (address == nullptr) {
+    ThrowIfError(env, absl::InvalidArgumentError(
+                          "The destination is not a direct buffer."));
+    return 0;
+  }
+  const int size = GetEmbeddingSize(*result);
+  const int64_t num_bytes =
+      quantized ? size : static_cast<int64_t>(size * sizeof(float));
+  if (num_bytes <= byte_capacity) {
+    const void* values =
+        quantized
+            ? static_cast<const void*>(
+                  result->quantized_embedding().values().data())
+            : static_cast<const void*>(
+                  result->float_embedding().values().data());
+    std::memcpy(address + byte_offset, values, num_bytes);
+  }
+  return size;
+}
+
+JNIEXPORT jlong JNICALL EMBEDDING_PACKET_GETTER_METHOD(nativeGetTimestampMs)(
+    JNIEnv* env, jclass clazz, jlong packet) {
+  const EmbeddingResult* result = GetEmbeddingResult(env, packet);
+  if (result == nullptr || !result->has_timestamp_ms()) {
+    return std::numeric_limits<jlong>::min();
+  }
+  return result->timestamp_ms();
+}
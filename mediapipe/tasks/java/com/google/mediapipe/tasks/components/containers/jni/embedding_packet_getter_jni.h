@@ -0,0 +1,75 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#ifndef JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_COMPONENTS_CONTAINERS_JNI_EMBEDDING_PACKET_GETTER_JNI_H_
+#define JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_COMPONENTS_CONTAINERS_JNI_EMBEDDING_PACKET_GETTER_JNI_H_
+
+#include <jni.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif  // __cplusplus
+
+#define EMBEDDING_PACKET_GETTER_METHOD(METHOD_NAME) \
+  Java_com_google_mediapipe_tasks_components_containers_EmbeddingPacketGetter_##METHOD_NAME
+
+// Returns the number of embeddings of the embedding result.
+JNIEXPORT jint JNICALL EMBEDDING_PACKET_GETTER_METHOD(
+    nativeGetEmbeddingsCount)(JNIEnv* env, jclass clazz, jlong packet);
+
+// Writes the head index, the number of values, and 1 if the embedding is
+// quantized or 0 otherwise, of the `embedding`-th embedding to `info`.
+JNIEXPORT void JNICALL EMBEDDING_PACKET_GETTER_METHOD(nativeGetEmbeddingInfo)(
+    JNIEnv* env, jclass clazz, jlong packet, jint embedding, jintArray info);
+
+// Returns the head name of the `embedding`-th embedding, or null if it has
+// none.
+JNIEXPORT jstring JNICALL EMBEDDING_PACKET_GETTER_METHOD(nativeGetHeadName)(
+    JNIEnv* env, jclass clazz, jlong packet, jint embedding);
+
+// Copies the values of the `embedding`-th embedding, which must be a float
+// embedding, to `destination` from `offset` if there are at most `capacity`
+// of them. Returns the number of values.
+JNIEXPORT jint JNICALL EMBEDDING_PACKET_GETTER_METHOD(nativeGetFloatEmbedding)(
+    JNIEnv* env, jclass clazz, jlong packet, jint embedding,
+    jfloatArray destination, jint offset, jint capacity);
+
+// Copies the values of the `embedding`-th embedding, which must be a quantized
+// embedding, to `destination` from `offset` if there are at most `capacity`
+// of them. Returns the number of values.
+JNIEXPORT jint JNICALL EMBEDDING_PACKET_GETTER_METHOD(
+    nativeGetQuantizedEmbedding)(JNIEnv* env, jclass clazz, jlong packet,
+                                 jint embedding, jbyteArray destination,
+                                 jint offset, jint capacity);
+
+// Copies the values of the `embedding`-th embedding, which must be quantized
+// if `quantized` is true and float otherwise, to the direct buffer
+// `destination` from `byte_offset`, if they fit in `byte_capacity` bytes.
+// Returns the number of values.
+JNIEXPORT jint JNICALL EMBEDDING_PACKET_GETTER_METHOD(
+    nativeGetEmbeddingToDirectBuffer)(JNIEnv* env, jclass clazz, jlong packet,
+                                      jint embedding, jboolean quantized,
+                                      jobject destination, jint byte_offset,
+                                      jint byte_capacity);
+
+// Returns the timestamp of the embedding result, or Long.MIN_VALUE if it has
+// none.
+JNIEXPORT jlong JNICALL EMBEDDING_PACKET_GETTER_METHOD(nativeGetTimestampMs)(
+    JNIEnv* env, jclass clazz, jlong packet);
+
+#ifdef __cplusplus
+}  // extern "C"
+#endif  // __cplusplus
+
+#endif  // JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_COMPONENTS_CONTAINERS_JNI_EMBEDDING_PACKET_GETTER_JNI_H_
@@ -15,9 +15,27 @@
 package com.google.mediapipe.tasks.components.utils;
 
 import com.google.mediapipe.tasks.components.containers.Embedding;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-/** Utility class for computing cosine similarity between {@link Embedding} objects. */
+/**
+ * Utility class for computing cosine similarity between {@link Embedding} objects.
+ *
+ * <p>Besides the similarity of two embeddings, the similarities of a query against many embeddings
+ * and between two lists of embeddings can be computed in batch, see {@link #computeAll} and {@link
+ * #computeMatrix}. The batch computations compute the L2-norm of each embedding only once, and run
+ * in parallel on the common {@link ForkJoinPool} when there is enough work.
+ */
 public class CosineSimilarity {
+  // The number of multiply-adds below which a batch computation runs on the calling thread.
+  private static final long PARALLEL_THRESHOLD = 1 << 18;
+  // The number of rows and columns of the tiles of the blocked similarity matrix computation, so
+  // that the embeddings of a tile stay in cache.
+  private static final int BLOCK_SIZE = 64;
+  // The number of int8 products that can be summed in an int without overflow is 2^31 / 2^14.
+  // Quantized dot products are summed in ints over chunks of this many elements.
+  private static final int INT_DOT_PRODUCT_CHUNK_SIZE = 1 << 16;
 
   // Non-instantiable class.
   private CosineSimilarity() {}
@@ -40,49 +58,361 @@ public class CosineSimilarity {
         "Cannot compute cosine similarity between quantized and float embeddings.");
   }
 
-  private static double computeFloat(float[] u, float[] v) {
-    if (u.length != v.length) {
-      throw new IllegalArgumentException(
-          String.format(
-              "Cannot compute cosine similarity between embeddings of different sizes (%d vs."
-                  + " %d).",
-              u.length, v.length));
+  /**
+   * Computes the cosine similarity between the {@code query} and each of the {@code embeddings}.
+   *
+   * <p>To compare many queries against the same embeddings, create an {@link EmbeddingSet} once
+   * instead, so that the L2-norms of the embeddings are only computed once.
+   *
+   * @return the similarities, in the order of {@code embeddings}.
+   * @throws IllegalArgumentException if the embeddings are of different types (float vs.
+   *     quantized), have different sizes, or have an L2-norm of 0.
+   */
+  public static double[] computeAll(Embedding query, List<Embedding> embeddings) {
+    return EmbeddingSet.create(embeddings).computeAll(query);
+  }
+
+  /**
+   * Computes the cosine similarity matrix between {@code rows} and {@code columns}, in tiles that
+   * fit in cache.
+   *
+   * @return the similarities, where {@code result[i][j]} is the similarity between {@code
+   *     rows.get(i)} and {@code columns.get(j)}.
+   * @throws IllegalArgumentException if the embeddings are of different types (float vs.
+   *     quantized), have different sizes, or have an L2-norm of 0.
+   */
+  public static double[][] computeMatrix(List<Embedding> rows, List<Embedding> columns) {
+    EmbeddingSet rowSet = EmbeddingSet.create(rows);
+    EmbeddingSet columnSet = EmbeddingSet.create(columns);
+    rowSet.checkCompatible(columnSet);
+    double[][] similarities = new double[rowSet.size()][columnSet.size()];
+    int numRowBlocks = (rowSet.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    forEachRange(
+        numRowBlocks,
+        (long) BLOCK_SIZE * columnSet.size() * rowSet.dimension,
+        (start, end) -> {
+          for (int rowBlock = start; rowBlock < end; ++rowBlock) {
+            for (int column = 0; column < columnSet.size(); column += BLOCK_SIZE) {
+              rowSet.computeTile(
+                  columnSet,
+                  rowBlock * BLOCK_SIZE,
+                  column,
+                  similarities,
+                  /* mirror= */ false);
+            }
+          }
+        });
+    return similarities;
+  }
+
+  /**
+   * Computes the symmetric cosine similarity matrix between all pairs of {@code embeddings}. Only
+   * the upper triangle of the matrix is computed, and mirrored to the lower triangle.
+   *
+   * @return the similarities, where {@code result[i][j]} is the similarity between {@code
+   *     embeddings.get(i)} and {@code embeddings.get(j)}.
+   * @throws IllegalArgumentException if the embeddings are of different types (float vs.
+   *     quantized), have different sizes, or have an L2-norm of 0.
+   */
+  public static double[][] computeMatrix(List<Embedding> embeddings) {
+    EmbeddingSet set = EmbeddingSet.create(embeddings);
+    double[][] similarities = new double[set.size()][set.size()];
+    int numBlocks = (set.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    forEachRange(
+        numBlocks,
+        (long) BLOCK_SIZE * set.size() * set.dimension / 2,
+        (start, end) -> {
+          for (int rowBlock = start; rowBlock < end; ++rowBlock) {
+            for (int columnBlock = rowBlock; columnBlock < numBlocks; ++columnBlock) {
+              set.computeTile(
+                  set,
+                  rowBlock * BLOCK_SIZE,
+                  columnBlock * BLOCK_SIZE,
+                  similarities,
+                  /* mirror= */ true);
+            }
+          }
+        });
+    return similarities;
+  }
+
+  /**
+   * A list of {@link Embedding}s with their L2-norms computed once, to compute the cosine
+   * similarity of many queries against them.
+   *
+   * <p>The set keeps references to the embedding arrays, which must not be modified afterwards.
+   */
+  public static final class EmbeddingSet {
+    private final boolean quantized;
+    // The size of the embeddings, or 0 if the set is empty.
+    private final int dimension;
+    private final float[][] floatEmbeddings;
+    private final byte[][] quantizedEmbeddings;
+    private final double[] norms;
+
+    /**
+     * Creates an {@link EmbeddingSet} from a list of {@link Embedding}s.
+     *
+     * @throws IllegalArgumentException if the embeddings are of different types (float vs.
+     *     quantized), have different sizes, or have an L2-norm of 0.
+     */
+    public static EmbeddingSet create(List<Embedding> embeddings) {
+      return new EmbeddingSet(embeddings);
     }
-    double dotProduct = 0.0;
-    double normU = 0.0;
-    double normV = 0.0;
-    for (int i = 0; i < u.length; i++) {
-      dotProduct += u[i] * v[i];
-      normU += u[i] * u[i];
-      normV += v[i] * v[i];
+
+    private EmbeddingSet(List<Embedding> embeddings) {
+      int size = embeddings.size();
+      quantized = size > 0 && embeddings.get(0).floatEmbedding().length == 0;
+      floatEmbeddings = quantized ? null : new float[size][];
+      quantizedEmbeddings = quantized ? new byte[size][] : null;
+      norms = new double[size];
+      int firstDimension = 0;
+      for (int i = 0; i < size; ++i) {
+        Embedding embedding = embeddings.get(i);
+        int length = checkType(embedding, quantized);
+        if (i == 0) {
+          firstDimension = length;
+        } else {
+          checkSizes(firstDimension, length);
+        }
+        if (quantized) {
+          quantizedEmbeddings[i] = embedding.quantizedEmbedding();
+          norms[i] = norm(quantizedEmbeddings[i]);
+        } else {
+          floatEmbeddings[i] = embedding.floatEmbedding();
+          norms[i] = norm(floatEmbeddings[i]);
+        }
+      }
+      dimension = firstDimension;
     }
-    if (normU <= 0 || normV <= 0) {
-      throw new IllegalArgumentException(
-          "Cannot compute cosine similarity on embedding with 0 norm.");
+
+    /** Returns the number of embeddings in the set. */
+    public int size() {
+      return norms.length;
+    }
+
+    /**
+     * Computes the cosine similarity between the {@code query} and each embedding of the set.
+     *
+     * @return the similarities, in the order of the embeddings of the set.
+     * @throws IllegalArgumentException if the query and the embeddings are of different types
+     *     (float vs. quantized), have different sizes, or if the query has an L2-norm of 0.
+     */
+    public double[] computeAll(Embedding query) {
+      double[] similarities = new double[size()];
+      if (size() == 0) {
+        return similarities;
+      }
+      checkSizes(checkType(query, quantized), dimension);
+      if (quantized) {
+        byte[] queryEmbedding = query.quantizedEmbedding();
+        double queryNorm = norm(queryEmbedding);
+        forEachRange(
+            size(),
+            dimension,
+            (start, end) -> {
+              for (int i = start; i < end; ++i) {
+                similarities[i] =
+                    dotProduct(queryEmbedding, quantizedEmbeddings[i]) / (queryNorm * norms[i]);
+              }
+            });
+      } else {
+        float[] queryEmbedding = query.floatEmbedding();
+        double queryNorm = norm(queryEmbedding);
+        forEachRange(
+            size(),
+            dimension,
+            (start, end) -> {
+              for (int i = start; i < end; ++i) {
+                similarities[i] =
+                    dotProduct(queryEmbedding, floatEmbeddings[i]) / (queryNorm * norms[i]);
+              }
+            });
+      }
+      return similarities;
     }
-    return dotProduct / Math.sqrt(normU * normV);
+
+    private void checkCompatible(EmbeddingSet other) {
+      if (size() == 0 || other.size() == 0) {
+        return;
+      }
+      if (quantized != other.quantized) {
+        throw new IllegalArgumentException(
+            "Cannot compute cosine similarity between quantized and float embeddings.");
+      }
+      checkSizes(dimension, other.dimension);
+    }
+
+    /**
+     * Computes the similarities of the tile of at most BLOCK_SIZE embeddings of this set starting
+     * at {@code row}, and as many embeddings of {@code columns} starting at {@code column}. If
+     * {@code mirror} is true, the tile is on or above the diagonal of the symmetric matrix of this
+     * set, and is mirrored below the diagonal.
+     */
+    private void computeTile(
+        EmbeddingSet columns, int row, int column, double[][] similarities, boolean mirror) {
+      int rowEnd = Math.min(row + BLOCK_SIZE, size());
+      int columnEnd = Math.min(column + BLOCK_SIZE, columns.size());
+      for (int i = row; i < rowEnd; ++i) {
+        // On the diagonal tiles of a symmetric matrix, only the upper triangle is computed.
+        for (int j = mirror ? Math.max(column, i) : column; j < columnEnd; ++j) {
+          double dotProduct =
+              quantized
+                  ? dotProduct(quantizedEmbeddings[i], columns.quantizedEmbeddings[j])
+                  : dotProduct(floatEmbeddings[i], columns.floatEmbeddings[j]);
+          double similarity = dotProduct / (norms[i] * columns.norms[j]);
+          similarities[i][j] = similarity;
+          if (mirror) {
+            similarities[j][i] = similarity;
+          }
+        }
+      }
+    }
+  }
+
+  private static double computeFloat(float[] u, float[] v) {
+    checkSizes(u.length, v.length);
+    return dotProduct(u, v) / (norm(u) * norm(v));
   }
 
   private static double computeQuantized(byte[] u, byte[] v) {
-    if (u.length != v.length) {
+    checkSizes(u.length, v.length);
+    return dotProduct(u, v) / (norm(u) * norm(v));
+  }
+
+  /**
+   * Returns the size of the embedding of the given type, float or quantized.
+   *
+   * @throws IllegalArgumentException if the embedding is not of the given type.
+   */
+  private static int checkType(Embedding embedding, boolean quantized) {
+    int length =
+        quantized ? embedding.quantizedEmbedding().length : embedding.floatEmbedding().length;
+    if (length == 0) {
+      throw new IllegalArgumentException(
+          "Cannot compute cosine similarity between quantized and float embeddings.");
+    }
+    return length;
+  }
+
+  private static void checkSizes(int uLength, int vLength) {
+    if (uLength != vLength) {
       throw new IllegalArgumentException(
           String.format(
               "Cannot compute cosine similarity between embeddings of different sizes (%d vs."
                   + " %d).",
-              u.length, v.length));
+              uLength, vLength));
     }
-    double dotProduct = 0.0;
-    double normU = 0.0;
-    double normV = 0.0;
-    for (int i = 0; i < u.length; i++) {
-      dotProduct += u[i] * v[i];
-      normU += u[i] * u[i];
-      normV += v[i] * v[i];
-    }
-    if (normU <= 0 || normV <= 0) {
+  }
+
+  private static double checkNorm(double norm) {
+    if (norm <= 0) {
       throw new IllegalArgumentException(
           "Cannot compute cosine similarity on embedding with 0 norm.");
     }
-    return dotProduct / Math.sqrt(normU * normV);
+    return norm;
+  }
+
+  private static double norm(float[] u) {
+    return checkNorm(Math.sqrt(dotProduct(u, u)));
+  }
+
+  private static double norm(byte[] u) {
+    return checkNorm(Math.sqrt(dotProduct(u, u)));
+  }
+
+  /**
+   * Returns the dot product of two float vectors of the same size. The loop is unrolled into four
+   * independent accumulators, so that consecutive multiply-adds don't wait on each other.
+   */
+  static double dotProduct(float[] u, float[] v) {
+    double sum0 = 0.0;
+    double sum1 = 0.0;
+    double sum2 = 0.0;
+    double sum3 = 0.0;
+    int i = 0;
+    for (; i + 3 < u.length; i += 4) {
+      sum0 += u[i] * v[i];
+      sum1 += u[i + 1] * v[i + 1];
+      sum2 += u[i + 2] * v[i + 2];
+      sum3 += u[i + 3] * v[i + 3];
+    }
+    for (; i < u.length; ++i) {
+      sum0 += u[i] * v[i];
+    }
+    return (sum0 + sum1) + (sum2 + sum3);
+  }
+
+  /**
+   * Returns the exact dot product of two int8 vectors of the same size. The products are summed in
+   * ints, which can't overflow over a chunk of {@link #INT_DOT_PRODUCT_CHUNK_SIZE} elements.
+   */
+  static long dotProduct(byte[] u, byte[] v) {
+    long sum = 0;
+    for (int start = 0; start < u.length; start += INT_DOT_PRODUCT_CHUNK_SIZE) {
+      int end = Math.min(u.length, start + INT_DOT_PRODUCT_CHUNK_SIZE);
+      int sum0 = 0;
+      int sum1 = 0;
+      int sum2 = 0;
+      int sum3 = 0;
+      int i = start;
+      for (; i + 3 < end; i += 4) {
+        sum0 += u[i] * v[i];
+        sum1 += u[i + 1] * v[i + 1];
+        sum2 += u[i + 2] * v[i + 2];
+        sum3 += u[i + 3] * v[i + 3];
+      }
+      for (; i < end; ++i) {
+        sum0 += u[i] * v[i];
+      }
+      sum += (long) sum0 + sum1 + sum2 + sum3;
+    }
+    return sum;
+  }
+
+  /** An action on the range of items [start, end) of a batch computation. */
+  interface RangeAction {
+    void run(int start, int end);
+  }
+
+  /**
+   * Runs the action on the items [0, size), split in ranges run in parallel on the common {@link
+   * ForkJoinPool} if the total number of multiply-adds reaches {@link #PARALLEL_THRESHOLD}.
+   */
+  static void forEachRange(int size, long multiplyAddsPerItem, RangeAction action) {
+    if (size < 2 || size * multiplyAddsPerItem < PARALLEL_THRESHOLD) {
+      action.run(0, size);
+      return;
+    }
+    // A few ranges per worker, so that the workers stay busy when the ranges run unevenly.
+    int grainSize = Math.max(1, size / (ForkJoinPool.getCommonPoolParallelism() * 4));
+    ForkJoinPool.commonPool().invoke(new RangeTask(action, 0, size, grainSize));
+  }
+
+  /** Splits a range of items in halves until they are at most the grain size. */
+  private static final class RangeTask extends RecursiveAction {
+    private final RangeAction action;
+    private final int start;
+    private final int end;
+    private final int grainSize;
+
+    RangeTask(RangeAction action, int start, int end, int grainSize) {
+      this.action = action;
+      this.start = start;
+      this.end = end;
+      this.grainSize = grainSize;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= grainSize) {
+        action.run(start, end);
+        return;
+      }
+      int middle = (start + end) >>> 1;
+      invokeAll(
+          new RangeTask(action, start, middle, grainSize),
+          new RangeTask(action, middle, end, grainSize));
+    }
   }
 }
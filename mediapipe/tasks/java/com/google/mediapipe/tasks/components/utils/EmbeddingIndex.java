@@ -0,0 +1,625 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.components.utils;
+
+import com.google.auto.value.AutoValue;
+import com.google.mediapipe.tasks.components.containers.Embedding;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An in-memory index of {@link Embedding}s for approximate nearest neighbor search by <a
+ * href="https://en.wikipedia.org/wiki/Cosine_similarity">cosine similarity</a>, built on a <a
+ * href="https://arxiv.org/abs/1603.09320">hierarchical navigable small world</a> (HNSW) graph.
+ *
+ * <p>All the embeddings of an index must be of the same type (float or quantized) and size. Each
+ * embedding is identified by the id returned when it is added, ids being assigned consecutively
+ * from 0. Embeddings can be added from several threads concurrently, and searched while others are
+ * being added.
+ */
+public final class EmbeddingIndex {
+  /** Options to configure an {@link EmbeddingIndex}. */
+  @AutoValue
+  public abstract static class Options {
+    /** Builder for {@link Options}. */
+    @AutoValue.Builder
+    public abstract static class Builder {
+      /**
+       * Sets the maximum number of neighbors of an embedding on the upper levels of the graph, and
+       * half the maximum number on the bottom level. Higher values give a better recall at the
+       * cost of memory and insertion time. Defaults to 16.
+       */
+      public abstract Builder setMaxConnections(Integer value);
+
+      /**
+       * Sets the number of candidate neighbors explored when adding an embedding. Higher values
+       * give a better graph at the cost of insertion time. Defaults to 200.
+       */
+      public abstract Builder setEfConstruction(Integer value);
+
+      /**
+       * Sets the default number of candidates explored by a search, which is raised to the number
+       * of requested results if lower. Higher values give a better recall at the cost of search
+       * time. Defaults to 64.
+       */
+      public abstract Builder setEfSearch(Integer value);
+
+      abstract Options autoBuild();
+
+      /**
+       * Validates and builds the {@link Options} instance.
+       *
+       * @throws IllegalArgumentException if the maximum number of connections is less than 2, or
+       *     the numbers of explored candidates are not positive.
+       */
+      public final Options build() {
+        Options options = autoBuild();
+        if (options.maxConnections() < 2) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "The maximum number of connections must be at least 2, found: %d.",
+                  options.maxConnections()));
+        }
+        if (options.efConstruction() < 1 || options.efSearch() < 1) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "The numbers of explored candidates must be positive, found: %d and %d.",
+                  options.efConstruction(), options.efSearch()));
+        }
+        return options;
+      }
+    }
+
+    public abstract Integer maxConnections();
+
+    public abstract Integer efConstruction();
+
+    public abstract Integer efSearch();
+
+    public static Builder builder() {
+      return new AutoValue_EmbeddingIndex_Options.Builder()
+          .setMaxConnections(16)
+          .setEfConstruction(200)
+          .setEfSearch(64);
+    }
+  }
+
+  /** An embedding found by {@link EmbeddingIndex#search}. */
+  @AutoValue
+  public abstract static class SearchResult {
+    static SearchResult create(int id, double similarity) {
+      return new AutoValue_EmbeddingIndex_SearchResult(id, similarity);
+    }
+
+    /** The id of the embedding, as returned by {@link EmbeddingIndex#add}. */
+    public abstract int id();
+
+    /** The cosine similarity between the embedding and the query. */
+    public abstract double similarity();
+  }
+
+  // The levels of the embeddings are drawn from the same sequence for every index, so that indexes
+  // built by a single thread are reproducible.
+  private static final long RANDOM_SEED = 1603093201L;
+  private static final int INITIAL_CAPACITY = 1024;
+  // The sets of visited nodes, reused by the searches of each thread.
+  private static final ThreadLocal<VisitedSet> visitedSets =
+      ThreadLocal.withInitial(VisitedSet::new);
+
+  private final int maxConnections;
+  private final int maxConnectionsLevel0;
+  private final int efConstruction;
+  private final int efSearch;
+  // The normalization factor of the level distribution, 1 / ln(maxConnections).
+  private final double levelMultiplier;
+  private final Random random = new Random(RANDOM_SEED);
+
+  private final Object nodesLock = new Object();
+  // The nodes indexed by id. The array is replaced when it grows, and a node is stored in it
+  // before its id is linked from any other node.
+  private volatile Node[] nodes = new Node[INITIAL_CAPACITY];
+  private int size; // Guarded by nodesLock.
+
+  private final Object entryPointLock = new Object();
+  // The node of the highest level, from which the searches start.
+  private volatile Node entryPoint;
+
+  /** Creates an empty {@link EmbeddingIndex} with the default {@link Options}. */
+  public static EmbeddingIndex create() {
+    return create(Options.builder().build());
+  }
+
+  /** Creates an empty {@link EmbeddingIndex} with the given {@link Options}. */
+  public static EmbeddingIndex create(Options options) {
+    return new EmbeddingIndex(options);
+  }
+
+  private EmbeddingIndex(Options options) {
+    maxConnections = options.maxConnections();
+    maxConnectionsLevel0 = 2 * maxConnections;
+    efConstruction = options.efConstruction();
+    efSearch = options.efSearch();
+    levelMultiplier = 1 / Math.log(maxConnections);
+  }
+
+  /** Returns the number of embeddings in the index. */
+  public int size() {
+    synchronized (nodesLock) {
+      return size;
+    }
+  }
+
+  /**
+   * Adds an embedding to the index. Can be called from several threads concurrently.
+   *
+   * @return the id of the embedding in the index.
+   * @throws IllegalArgumentException if the embedding is empty, has an L2-norm of 0, or is of a
+   *     different type (float vs. quantized) or size than the embeddings of the index.
+   */
+  public int add(Embedding embedding) {
+    Vector vector = Vector.create(embedding);
+    int level = randomLevel();
+    Node node;
+    synchronized (nodesLock) {
+      if (size > 0) {
+        nodes[0].vector.checkCompatible(vector);
+      }
+      node = new Node(size, vector, level, maxConnections, maxConnectionsLevel0);
+      if (size == nodes.length) {
+        nodes = Arrays.copyOf(nodes, 2 * size);
+      }
+      nodes[size++] = node;
+    }
+    Node entry;
+    synchronized (entryPointLock) {
+      entry = entryPoint;
+      if (entry == null) {
+        entryPoint = node;
+        return node.id;
+      }
+    }
+    int current = entry.id;
+    double currentSimilarity = vector.similarity(entry.vector);
+    int[] neighbors = new int[maxConnectionsLevel0];
+    for (int l = entry.level(); l > level; --l) {
+      current = greedySearch(vector, current, currentSimilarity, l, neighbors);
+      currentSimilarity = vector.similarity(node(current).vector);
+    }
+    for (int l = Math.min(level, entry.level()); l >= 0; --l) {
+      NodeHeap candidates = searchLevel(vector, current, currentSimilarity, efConstruction, l);
+      int[] ids = new int[candidates.size()];
+      double[] similarities = new double[candidates.size()];
+      candidates.drainDescending(ids, similarities);
+      int count = selectNeighbors(ids, similarities, ids.length, node.maxConnections(l));
+      synchronized (node) {
+        System.arraycopy(ids, 0, node.neighbors[l], 0, count);
+        node.neighborCounts[l] = count;
+      }
+      for (int i = 0; i < count; ++i) {
+        link(node(ids[i]), node.id, similarities[i], l);
+      }
+      current = ids[0];
+      currentSimilarity = similarities[0];
+    }
+    if (level > entry.level()) {
+      synchronized (entryPointLock) {
+        if (level > entryPoint.level()) {
+          entryPoint = node;
+        }
+      }
+    }
+    return node.id;
+  }
+
+  /**
+   * Searches the {@code k} embeddings of the index most similar to the query, exploring the default
+   * number of candidates. Can be called concurrently with {@link #add}.
+   *
+   * @return up to {@code k} results, in decreasing order of similarity.
+   * @throws IllegalArgumentException if {@code k} is not positive, or if the query is empty, has
+   *     an L2-norm of 0, or is of a different type (float vs. quantized) or size than the
+   *     embeddings of the index.
+   */
+  public List<SearchResult> search(Embedding query, int k) {
+    return search(query, k, efSearch);
+  }
+
+  /**
+   * Searches the {@code k} embeddings of the index most similar to the query, exploring {@code
+   * max(ef, k)} candidates. Can be called concurrently with {@link #add}.
+   *
+   * @return up to {@code k} results, in decreasing order of similarity.
+   * @throws IllegalArgumentException if {@code k} or {@code ef} is not positive, or if the query is
+   *     empty, has an L2-norm of 0, or is of a different type (float vs. quantized) or size than
+   *     the embeddings of the index.
+   */
+  public List<SearchResult> search(Embedding query, int k, int ef) {
+    if (k < 1 || ef < 1) {
+      throw new IllegalArgumentException(
+          String.format(
+              "The number of results and of explored candidates must be positive, found: %d and"
+                  + " %d.",
+              k, ef));
+    }
+    Vector vector = Vector.create(query);
+    Node entry = entryPoint;
+    if (entry == null) {
+      return Collections.emptyList();
+    }
+    entry.vector.checkCompatible(vector);
+    int current = entry.id;
+    double currentSimilarity = vector.similarity(entry.vector);
+    int[] neighbors = new int[maxConnectionsLevel0];
+    for (int l = entry.level(); l > 0; --l) {
+      current = greedySearch(vector, current, currentSimilarity, l, neighbors);
+      currentSimilarity = vector.similarity(node(current).vector);
+    }
+    NodeHeap candidates = searchLevel(vector, current, currentSimilarity, Math.max(ef, k), 0);
+    while (candidates.size() > k) {
+      candidates.pop();
+    }
+    int[] ids = new int[candidates.size()];
+    double[] similarities = new double[candidates.size()];
+    candidates.drainDescending(ids, similarities);
+    List<SearchResult> results = new ArrayList<>(ids.length);
+    for (int i = 0; i < ids.length; ++i) {
+      results.add(SearchResult.create(ids[i], similarities[i]));
+    }
+    return results;
+  }
+
+  private Node node(int id) {
+    return nodes[id];
+  }
+
+  private int randomLevel() {
+    return (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+  }
+
+  /** Returns the node of the level most similar to the query, found by greedy descent. */
+  private int greedySearch(
+      Vector query, int start, double startSimilarity, int level, int[] neighbors) {
+    int current = start;
+    double currentSimilarity = startSimilarity;
+    boolean improved = true;
+    while (improved) {
+      improved = false;
+      int count = node(current).copyNeighbors(level, neighbors);
+      for (int i = 0; i < count; ++i) {
+        double similarity = query.similarity(node(neighbors[i]).vector);
+        if (similarity > currentSimilarity) {
+          current = neighbors[i];
+          currentSimilarity = similarity;
+          improved = true;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Returns the up to {@code ef} nodes of the level most similar to the query, found by best-first
+   * search from the start node, in a heap whose top is the least similar.
+   */
+  private NodeHeap searchLevel(
+      Vector query, int start, double startSimilarity, int ef, int level) {
+    VisitedSet visited = visitedSets.get();
+    visited.clear();
+    visited.add(start);
+    // The candidates to explore, most similar first, and the best nodes found, least similar
+    // first.
+    NodeHeap candidates = new NodeHeap(/* maxHeap= */ true, ef);
+    NodeHeap results = new NodeHeap(/* maxHeap= */ false, ef + 1);
+    candidates.push(start, startSimilarity);
+    results.push(start, startSimilarity);
+    int[] neighbors = new int[maxConnectionsLevel0];
+    while (candidates.size() > 0) {
+      if (results.size() >= ef && candidates.topSimilarity() < results.topSimilarity()) {
+        break;
+      }
+      int candidate = candidates.pop();
+      int count = node(candidate).copyNeighbors(level, neighbors);
+      for (int i = 0; i < count; ++i) {
+        int neighbor = neighbors[i];
+        if (!visited.add(neighbor)) {
+          continue;
+        }
+        double similarity = query.similarity(node(neighbor).vector);
+        if (results.size() < ef || similarity > results.topSimilarity()) {
+          candidates.push(neighbor, similarity);
+          results.push(neighbor, similarity);
+          if (results.size() > ef) {
+            results.pop();
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Selects the neighbors of a node among candidates sorted by decreasing similarity to the node,
+   * with the heuristic of the HNSW paper: a candidate is skipped if it is more similar to an
+   * already selected neighbor than to the node, which keeps the graph connected across clusters.
+   * The selected candidates are moved to the front of the arrays.
+   *
+   * @return the number of selected neighbors.
+   */
+  private int selectNeighbors(int[] ids, double[] similarities, int count, int maxCount) {
+    int selected = 0;
+    for (int i = 0; i < count && selected < maxCount; ++i) {
+      Vector candidate = node(ids[i]).vector;
+      boolean keep = true;
+      for (int j = 0; j < selected && keep; ++j) {
+        keep = candidate.similarity(node(ids[j]).vector) <= similarities[i];
+      }
+      if (keep) {
+        ids[selected] = ids[i];
+        similarities[selected] = similarities[i];
+        ++selected;
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Adds a link from the node to the new neighbor on the level, and reselects the neighbors of the
+   * node if it already has the maximum number of neighbors.
+   */
+  private void link(Node node, int neighbor, double similarity, int level) {
+    synchronized (node) {
+      int[] neighbors = node.neighbors[level];
+      int count = node.neighborCounts[level];
+      if (count < neighbors.length) {
+        neighbors[count] = neighbor;
+        node.neighborCounts[level] = count + 1;
+        return;
+      }
+      // Sorts the current neighbors and the new one by decreasing similarity to the node, by
+      // insertion as there are few of them.
+      int[] ids = new int[count + 1];
+      double[] similarities = new double[count + 1];
+      for (int i = 0; i <= count; ++i) {
+        int id = i < count ? neighbors[i] : neighbor;
+        double idSimilarity = i < count ? node.vector.similarity(node(id).vector) : similarity;
+        int j = i;
+        for (; j > 0 && similarities[j - 1] < idSimilarity; --j) {
+          ids[j] = ids[j - 1];
+          similarities[j] = similarities[j - 1];
+        }
+        ids[j] = id;
+        similarities[j] = idSimilarity;
+      }
+      int selected = selectNeighbors(ids, similarities, ids.length, neighbors.length);
+      System.arraycopy(ids, 0, neighbors, 0, selected);
+      node.neighborCounts[level] = selected;
+    }
+  }
+
+  /**
+   * An embedding prepared for similarity computations: float embeddings are normalized, and the
+   * L2-norms of quantized embeddings are precomputed.
+   */
+  private static final class Vector {
+    private final float[] floatValues;
+    private final byte[] quantizedValues;
+    private final double quantizedNorm;
+
+    static Vector create(Embedding embedding) {
+      float[] floatEmbedding = embedding.floatEmbedding();
+      byte[] quantizedEmbedding = embedding.quantizedEmbedding();
+      if (floatEmbedding.length > 0) {
+        double norm =
+            checkNorm(Math.sqrt(CosineSimilarity.dotProduct(floatEmbedding, floatEmbedding)));
+        float[] values = new float[floatEmbedding.length];
+        for (int i = 0; i < values.length; ++i) {
+          values[i] = (float) (floatEmbedding[i] / norm);
+        }
+        return new Vector(values, null, 1.0);
+      }
+      if (quantizedEmbedding.length > 0) {
+        double norm =
+            checkNorm(
+                Math.sqrt(CosineSimilarity.dotProduct(quantizedEmbedding, quantizedEmbedding)));
+        return new Vector(null, quantizedEmbedding.clone(), norm);
+      }
+      throw new IllegalArgumentException("Cannot index an empty embedding.");
+    }
+
+    private Vector(float[] floatValues, byte[] quantizedValues, double quantizedNorm) {
+      this.floatValues = floatValues;
+      this.quantizedValues = quantizedValues;
+      this.quantizedNorm = quantizedNorm;
+    }
+
+    double similarity(Vector other) {
+      if (floatValues != null) {
+        return CosineSimilarity.dotProduct(floatValues, other.floatValues);
+      }
+      return CosineSimilarity.dotProduct(quantizedValues, other.quantizedValues)
+          / (quantizedNorm * other.quantizedNorm);
+    }
+
+    void checkCompatible(Vector other) {
+      if ((floatValues == null) != (other.floatValues == null)) {
+        throw new IllegalArgumentException(
+            "Cannot mix quantized and float embeddings in an embedding index.");
+      }
+      if (length() != other.length()) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Cannot mix embeddings of different sizes in an embedding index (%d vs. %d).",
+                length(), other.length()));
+      }
+    }
+
+    private int length() {
+      return floatValues != null ? floatValues.length : quantizedValues.length;
+    }
+
+    private static double checkNorm(double norm) {
+      if (norm <= 0) {
+        throw new IllegalArgumentException("Cannot index an embedding with 0 norm.");
+      }
+      return norm;
+    }
+  }
+
+  /** A node of the graph: an embedding and its neighbors on each of its levels. */
+  private static final class Node {
+    final int id;
+    final Vector vector;
+    // The neighbor ids and their counts on each level, guarded by the node monitor.
+    final int[][] neighbors;
+    final int[] neighborCounts;
+
+    Node(int id, Vector vector, int level, int maxConnections, int maxConnectionsLevel0) {
+      this.id = id;
+      this.vector = vector;
+      neighbors = new int[level + 1][];
+      for (int l = 0; l <= level; ++l) {
+        neighbors[l] = new int[l == 0 ? maxConnectionsLevel0 : maxConnections];
+      }
+      neighborCounts = new int[level + 1];
+    }
+
+    int level() {
+      return neighbors.length - 1;
+    }
+
+    int maxConnections(int level) {
+      return neighbors[level].length;
+    }
+
+    /** Copies the neighbors of the level, and returns their count. */
+    synchronized int copyNeighbors(int level, int[] destination) {
+      int count = neighborCounts[level];
+      System.arraycopy(neighbors[level], 0, destination, 0, count);
+      return count;
+    }
+  }
+
+  /** A binary heap of node ids ordered by similarity, with the most or least similar on top. */
+  static final class NodeHeap {
+    private final boolean maxHeap;
+    private int[] ids;
+    private double[] similarities;
+    private int size;
+
+    NodeHeap(boolean maxHeap, int initialCapacity) {
+      this.maxHeap = maxHeap;
+      ids = new int[initialCapacity];
+      similarities = new double[initialCapacity];
+    }
+
+    int size() {
+      return size;
+    }
+
+    double topSimilarity() {
+      return similarities[0];
+    }
+
+    void push(int id, double similarity) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, 2 * size);
+        similarities = Arrays.copyOf(similarities, 2 * size);
+      }
+      int i = size++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (!isAbove(similarity, similarities[parent])) {
+          break;
+        }
+        ids[i] = ids[parent];
+        similarities[i] = similarities[parent];
+        i = parent;
+      }
+      ids[i] = id;
+      similarities[i] = similarity;
+    }
+
+    /** Removes the top of the heap, and returns its id. */
+    int pop() {
+      int top = ids[0];
+      --size;
+      int lastId = ids[size];
+      double lastSimilarity = similarities[size];
+      int i = 0;
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && isAbove(similarities[child + 1], similarities[child])) {
+          ++child;
+        }
+        if (!isAbove(similarities[child], lastSimilarity)) {
+          break;
+        }
+        ids[i] = ids[child];
+        similarities[i] = similarities[child];
+        i = child;
+      }
+      ids[i] = lastId;
+      similarities[i] = lastSimilarity;
+      return top;
+    }
+
+    /**
+     * Empties a heap whose top is the least similar into the arrays, in decreasing order of
+     * similarity.
+     */
+    void drainDescending(int[] destinationIds, double[] destinationSimilarities) {
+      for (int i = size - 1; i >= 0; --i) {
+        destinationSimilarities[i] = topSimilarity();
+        destinationIds[i] = pop();
+      }
+    }
+
+    private boolean isAbove(double similarity, double otherSimilarity) {
+      return maxHeap ? similarity > otherSimilarity : similarity < otherSimilarity;
+    }
+  }
+
+  /** A set of node ids, cleared in constant time by bumping a generation number. */
+  private static final class VisitedSet {
+    private int[] generations = new int[INITIAL_CAPACITY];
+    private int generation;
+
+    void clear() {
+      ++generation;
+      if (generation == 0) {
+        Arrays.fill(generations, 0);
+        generation = 1;
+      }
+    }
+
+    /** Adds the id to the set, and returns false if it was already in it. */
+    boolean add(int id) {
+      if (id >= generations.length) {
+        generations = Arrays.copyOf(generations, Math.max(id + 1, 2 * generations.length));
+      }
+      if (generations[id] == generation) {
+        return false;
+      }
+      generations[id] = generation;
+      return true;
+    }
+  }
+}
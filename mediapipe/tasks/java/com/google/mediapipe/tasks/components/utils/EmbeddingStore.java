@@ -0,0 +1,494 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.components.utils;
+
+import com.google.mediapipe.tasks.components.containers.Embedding;
+import com.google.mediapipe.tasks.components.containers.EmbeddingResult;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A read-only, memory-mapped file of {@link Embedding}s, searched exactly by <a
+ * href="https://en.wikipedia.org/wiki/Cosine_similarity">cosine similarity</a>.
+ *
+ * <p>The embeddings are stored off the Java heap, so that millions of them can be searched without
+ * holding one {@link Embedding} object per row. The files are written by a {@link Writer}, and
+ * only hold embeddings of one type (float or quantized) and size. The file starts with a header of
+ * {@code HEADER_SIZE} bytes, followed by fixed-stride rows, each made of the float32 L2-norm of the
+ * embedding followed by its float32 or int8 values, padded to a multiple of 4 bytes. All values are
+ * little-endian. A trailing partial row, left by an interrupted writer, is ignored.
+ *
+ * <p>A store maps the rows present in the file when it is opened; rows appended afterwards are
+ * seen by stores opened later.
+ */
+public final class EmbeddingStore {
+  private static final int MAGIC = 0x5345504d; // "MPES" in little-endian.
+  private static final int VERSION = 1;
+  // The magic number, the version, the type, the dimension, the head index and reserved bytes.
+  private static final int HEADER_SIZE = 32;
+  private static final int TYPE_FLOAT = 0;
+  private static final int TYPE_QUANTIZED = 1;
+  private static final int NORM_SIZE = Float.BYTES;
+  // The maximum size of a mapped segment of the file. A segment holds a whole number of rows.
+  private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+  private final boolean quantized;
+  private final int dimension;
+  private final int headIndex;
+  private final int stride;
+  private final int size;
+  private final int rowsPerSegment;
+  private final ByteBuffer[] segments;
+
+  /**
+   * Opens and maps an embedding store file.
+   *
+   * @throws IOException if the file can't be read, or is not an embedding store file.
+   */
+  public static EmbeddingStore open(File file) throws IOException {
+    try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+      Header header = Header.read(channel, file);
+      if (header == null) {
+        throw new IOException("Empty embedding store file: " + file);
+      }
+      return new EmbeddingStore(channel, header);
+    }
+  }
+
+  private EmbeddingStore(FileChannel channel, Header header) throws IOException {
+    quantized = header.quantized;
+    dimension = header.dimension;
+    headIndex = header.headIndex;
+    stride = header.stride();
+    long rows = (channel.size() - HEADER_SIZE) / stride;
+    if (rows > Integer.MAX_VALUE) {
+      throw new IOException(
+          String.format("Embedding store files are limited to %d rows.", Integer.MAX_VALUE));
+    }
+    size = (int) rows;
+    rowsPerSegment = (int) Math.max(1, MAX_SEGMENT_SIZE / stride);
+    segments = new ByteBuffer[(size + rowsPerSegment - 1) / rowsPerSegment];
+    for (int s = 0; s < segments.length; ++s) {
+      long firstRow = (long) s * rowsPerSegment;
+      long segmentRows = Math.min(rowsPerSegment, size - firstRow);
+      segments[s] =
+          channel
+              .map(
+                  FileChannel.MapMode.READ_ONLY,
+                  HEADER_SIZE + firstRow * stride,
+                  segmentRows * stride)
+              .order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  /** Returns the number of embeddings in the store. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the size of the embeddings of the store. */
+  public int dimension() {
+    return dimension;
+  }
+
+  /** Returns true if the store holds quantized embeddings, false if it holds float embeddings. */
+  public boolean isQuantized() {
+    return quantized;
+  }
+
+  /** Returns a copy of the embedding of index {@code id} of the store. */
+  public Embedding get(int id) {
+    if (id < 0 || id >= size) {
+      throw new IndexOutOfBoundsException(
+          String.format("Embedding %d is out of range [0, %d).", id, size));
+    }
+    ByteBuffer rows = segment(id);
+    rows.position(rowOffset(id) + NORM_SIZE);
+    if (quantized) {
+      byte[] values = new byte[dimension];
+      rows.get(values);
+      return Embedding.create(new float[0], values, headIndex, Optional.empty());
+    }
+    float[] values = new float[dimension];
+    rows.asFloatBuffer().get(values);
+    return Embedding.create(values, new byte[0], headIndex, Optional.empty());
+  }
+
+  /**
+   * Searches the {@code k} embeddings of the store most similar to the query, by scanning all the
+   * rows. The rows are split in ranges scanned in parallel on the common {@link
+   * java.util.concurrent.ForkJoinPool} when there is enough work, each keeping its own top {@code
+   * k}.
+   *
+   * @return up to {@code k} results, in decreasing order of similarity, whose ids are the indices
+   *     of the embeddings in the store.
+   * @throws IllegalArgumentException if {@code k} is not positive, or if the query has an L2-norm
+   *     of 0, or is of a different type (float vs. quantized) or size than the embeddings of the
+   *     store.
+   */
+  public List<EmbeddingIndex.SearchResult> search(Embedding query, int k) {
+    if (k < 1) {
+      throw new IllegalArgumentException(
+          String.format("The number of results must be positive, found: %d.", k));
+    }
+    int queryLength =
+        quantized ? query.quantizedEmbedding().length : query.floatEmbedding().length;
+    if (queryLength == 0) {
+      throw new IllegalArgumentException(
+          "Cannot compute cosine similarity between quantized and float embeddings.");
+    }
+    if (queryLength != dimension) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Cannot compute cosine similarity between embeddings of different sizes (%d vs."
+                  + " %d).",
+              queryLength, dimension));
+    }
+    float[] floatQuery = query.floatEmbedding();
+    byte[] quantizedQuery = query.quantizedEmbedding();
+    double queryNorm =
+        quantized
+            ? Math.sqrt(CosineSimilarity.dotProduct(quantizedQuery, quantizedQuery))
+            : Math.sqrt(CosineSimilarity.dotProduct(floatQuery, floatQuery));
+    if (queryNorm <= 0) {
+      throw new IllegalArgumentException(
+          "Cannot compute cosine similarity on embedding with 0 norm.");
+    }
+    EmbeddingIndex.NodeHeap best = new EmbeddingIndex.NodeHeap(/* maxHeap= */ false, k + 1);
+    CosineSimilarity.forEachRange(
+        size,
+        dimension,
+        (start, end) -> {
+          EmbeddingIndex.NodeHeap rangeBest = scan(query, queryNorm, k, start, end);
+          synchronized (best) {
+            while (rangeBest.size() > 0) {
+              double similarity = rangeBest.topSimilarity();
+              offer(best, rangeBest.pop(), similarity, k);
+            }
+          }
+        });
+    int[] ids = new int[best.size()];
+    double[] similarities = new double[best.size()];
+    best.drainDescending(ids, similarities);
+    List<EmbeddingIndex.SearchResult> results = new ArrayList<>(ids.length);
+    for (int i = 0; i < ids.length; ++i) {
+      results.add(EmbeddingIndex.SearchResult.create(ids[i], similarities[i]));
+    }
+    return Collections.unmodifiableList(results);
+  }
+
+  /** Returns the top {@code k} rows of [start, end), in a heap whose top is the least similar. */
+  private EmbeddingIndex.NodeHeap scan(
+      Embedding query, double queryNorm, int k, int start, int end) {
+    EmbeddingIndex.NodeHeap best = new EmbeddingIndex.NodeHeap(/* maxHeap= */ false, k + 1);
+    // The rows are copied one at a time to the reused arrays, with a bulk get, so that the dot
+    // products run over plain arrays.
+    float[] floatQuery = query.floatEmbedding();
+    byte[] quantizedQuery = query.quantizedEmbedding();
+    float[] floatRow = quantized ? null : new float[dimension];
+    byte[] quantizedRow = quantized ? new byte[dimension] : null;
+    ByteBuffer rows = null;
+    FloatBuffer floatRows = null;
+    for (int id = start; id < end; ++id) {
+      if (rows == null || id % rowsPerSegment == 0) {
+        rows = segment(id);
+        floatRows = quantized ? null : rows.asFloatBuffer();
+      }
+      int offset = rowOffset(id);
+      double norm = rows.getFloat(offset);
+      double dotProduct;
+      if (quantized) {
+        rows.position(offset + NORM_SIZE);
+        rows.get(quantizedRow);
+        dotProduct = CosineSimilarity.dotProduct(quantizedQuery, quantizedRow);
+      } else {
+        floatRows.position((offset + NORM_SIZE) / Float.BYTES);
+        floatRows.get(floatRow);
+        dotProduct = CosineSimilarity.dotProduct(floatQuery, floatRow);
+      }
+      offer(best, id, dotProduct / (queryNorm * norm), k);
+    }
+    return best;
+  }
+
+  private static void offer(EmbeddingIndex.NodeHeap best, int id, double similarity, int k) {
+    if (best.size() < k || similarity > best.topSimilarity()) {
+      best.push(id, similarity);
+      if (best.size() > k) {
+        best.pop();
+      }
+    }
+  }
+
+  /** Returns a view of the segment holding the row, to be used by a single thread. */
+  private ByteBuffer segment(int id) {
+    return segments[id / rowsPerSegment].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /** Returns the offset of the row in its segment. */
+  private int rowOffset(int id) {
+    return (id % rowsPerSegment) * stride;
+  }
+
+  /**
+   * Appends {@link Embedding}s to an embedding store file, through a {@link FileChannel}.
+   *
+   * <p>The rows are buffered in a direct buffer and written when it is full, or when the writer is
+   * flushed or closed. The type and size of the embeddings of a new file are those of its first
+   * embedding. The methods of a writer can be called from several threads.
+   */
+  public static final class Writer implements Closeable {
+    // The size of the write buffer, raised to one row if the rows are larger.
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private final FileChannel channel;
+    private Header header;
+    private ByteBuffer buffer;
+    private int size;
+
+    /**
+     * Opens an embedding store file for appending, creating it if it doesn't exist. A trailing
+     * partial row is discarded.
+     *
+     * @throws IOException if the file can't be opened, or is not an embedding store file.
+     */
+    public static Writer open(File file) throws IOException {
+      FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+      try {
+        return new Writer(file, channel);
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    private Writer(File file, FileChannel channel) throws IOException {
+      this.file = file;
+      this.channel = channel;
+      header = Header.read(channel, file);
+      if (header == null) {
+        channel.truncate(0);
+        return;
+      }
+      long rows = (channel.size() - HEADER_SIZE) / header.stride();
+      if (rows > Integer.MAX_VALUE) {
+        throw new IOException(
+            String.format("Embedding store files are limited to %d rows.", Integer.MAX_VALUE));
+      }
+      size = (int) rows;
+      long end = HEADER_SIZE + rows * header.stride();
+      channel.truncate(end);
+      channel.position(end);
+      allocateBuffer();
+    }
+
+    /** Returns the number of embeddings in the file, including the buffered ones. */
+    public synchronized int size() {
+      return size;
+    }
+
+    /**
+     * Appends an embedding to the file.
+     *
+     * @return the index of the embedding in the store.
+     * @throws IllegalArgumentException if the embedding is empty, has an L2-norm of 0, or is of a
+     *     different type (float vs. quantized) or size than the embeddings of the file.
+     * @throws IOException if the rows can't be written.
+     */
+    public synchronized int append(Embedding embedding) throws IOException {
+      checkOpen();
+      float[] floatEmbedding = embedding.floatEmbedding();
+      byte[] quantizedEmbedding = embedding.quantizedEmbedding();
+      boolean quantized = floatEmbedding.length == 0;
+      int length = quantized ? quantizedEmbedding.length : floatEmbedding.length;
+      if (length == 0) {
+        throw new IllegalArgumentException("Cannot store an empty embedding.");
+      }
+      if (header == null) {
+        header = new Header(quantized, length, embedding.headIndex());
+        allocateBuffer();
+        header.write(buffer);
+      } else if (quantized != header.quantized) {
+        throw new IllegalArgumentException(
+            "Cannot mix quantized and float embeddings in an embedding store.");
+      } else if (length != header.dimension) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Cannot mix embeddings of different sizes in an embedding store (%d vs. %d).",
+                header.dimension, length));
+      }
+      double norm =
+          quantized
+              ? Math.sqrt(CosineSimilarity.dotProduct(quantizedEmbedding, quantizedEmbedding))
+              : Math.sqrt(CosineSimilarity.dotProduct(floatEmbedding, floatEmbedding));
+      if (norm <= 0) {
+        throw new IllegalArgumentException("Cannot store an embedding with 0 norm.");
+      }
+      int stride = header.stride();
+      if (buffer.remaining() < stride) {
+        writeBuffer();
+      }
+      int rowEnd = buffer.position() + stride;
+      buffer.putFloat((float) norm);
+      if (quantized) {
+        buffer.put(quantizedEmbedding);
+      } else {
+        buffer.asFloatBuffer().put(floatEmbedding);
+      }
+      // Skips the float values written through the view, and the padding of int8 rows.
+      buffer.position(rowEnd);
+      return size++;
+    }
+
+    /**
+     * Appends the embedding of the classifier head of index {@code headIndex} of an {@link
+     * EmbeddingResult} to the file.
+     *
+     * @return the index of the embedding in the store.
+     * @throws IllegalArgumentException if the result has no embedding for the head, or if the
+     *     embedding can't be appended, see {@link #append(Embedding)}.
+     * @throws IOException if the rows can't be written.
+     */
+    public int append(EmbeddingResult result, int headIndex) throws IOException {
+      for (Embedding embedding : result.embeddings()) {
+        if (embedding.headIndex() == headIndex) {
+          return append(embedding);
+        }
+      }
+      throw new IllegalArgumentException(
+          String.format("The embedding result has no embedding for head %d.", headIndex));
+    }
+
+    /**
+     * Writes the buffered rows to the file, so that they are seen by the stores opened afterwards.
+     *
+     * @throws IOException if the rows can't be written.
+     */
+    public synchronized void flush() throws IOException {
+      checkOpen();
+      writeBuffer();
+    }
+
+    /** Writes the buffered rows to the file, and closes it. */
+    @Override
+    public synchronized void close() throws IOException {
+      if (!channel.isOpen()) {
+        return;
+      }
+      try {
+        writeBuffer();
+      } finally {
+        channel.close();
+      }
+    }
+
+    private void allocateBuffer() {
+      buffer =
+          ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, HEADER_SIZE + header.stride()))
+              .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void writeBuffer() throws IOException {
+      if (buffer == null) {
+        return;
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    private void checkOpen() throws IOException {
+      if (!channel.isOpen()) {
+        throw new IOException("The embedding store writer of " + file + " is closed.");
+      }
+    }
+  }
+
+  /** The header of an embedding store file. */
+  private static final class Header {
+    final boolean quantized;
+    final int dimension;
+    final int headIndex;
+
+    Header(boolean quantized, int dimension, int headIndex) {
+      this.quantized = quantized;
+      this.dimension = dimension;
+      this.headIndex = headIndex;
+    }
+
+    /**
+     * Reads the header at the start of the file, or returns null if the file is shorter than a
+     * header, which is the case of a new file.
+     */
+    static Header read(FileChannel channel, File file) throws IOException {
+      if (channel.size() < HEADER_SIZE) {
+        return null;
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, buffer.position()) < 0) {
+          throw new IOException("Unexpected end of embedding store file: " + file);
+        }
+      }
+      buffer.flip();
+      int magic = buffer.getInt();
+      int version = buffer.getInt();
+      int type = buffer.getInt();
+      int dimension = buffer.getInt();
+      int headIndex = buffer.getInt();
+      if (magic != MAGIC) {
+        throw new IOException("Not an embedding store file: " + file);
+      }
+      if (version != VERSION) {
+        throw new IOException(
+            String.format("Unsupported embedding store version %d in file: %s", version, file));
+      }
+      if ((type != TYPE_FLOAT && type != TYPE_QUANTIZED) || dimension <= 0) {
+        throw new IOException("Corrupted embedding store header in file: " + file);
+      }
+      return new Header(type == TYPE_QUANTIZED, dimension, headIndex);
+    }
+
+    void write(ByteBuffer buffer) {
+      int start = buffer.position();
+      buffer
+          .putInt(MAGIC)
+          .putInt(VERSION)
+          .putInt(quantized ? TYPE_QUANTIZED : TYPE_FLOAT)
+          .putInt(dimension)
+          .putInt(headIndex);
+      buffer.position(start + HEADER_SIZE);
+    }
+
+    /** Returns the size of the rows, padded to a multiple of 4 bytes. */
+    int stride() {
+      int valuesSize = quantized ? dimension : dimension * Float.BYTES;
+      return NORM_SIZE + ((valuesSize + 3) & ~3);
+    }
+  }
+}
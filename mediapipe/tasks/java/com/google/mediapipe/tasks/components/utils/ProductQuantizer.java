@@ -0,0 +1,582 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.components.utils;
+
+import com.google.auto.value.AutoValue;
+import com.google.mediapipe.tasks.components.containers.Embedding;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * A <a href="https://doi.org/10.1109/TPAMI.2010.57">product quantization</a> codec, that
+ * compresses {@link Embedding}s to a few bytes each while preserving their <a
+ * href="https://en.wikipedia.org/wiki/Cosine_similarity">cosine similarity</a>.
+ *
+ * <p>The embeddings are normalized to unit L2-norm and split in {@link Options#numSubspaces()}
+ * contiguous subvectors. Each subvector is replaced by the index of the nearest of the {@link
+ * Options#numCentroids()} centroids of its subspace, learned by k-means from a sample of
+ * embeddings with {@link #train}, so that an embedding is encoded in {@link #codeSize()} bytes.
+ * Float and quantized embeddings are both converted to floats before being normalized.
+ *
+ * <p>The cosine similarity between a query and an encoded embedding is approximated by the cosine
+ * similarity between the query and the decoded embedding, computed with a {@link LookupTable} of
+ * the dot products between the query subvectors and all the centroids, see {@link
+ * #createLookupTable}. As the subspaces are disjoint, the squared L2-norm of a decoded embedding
+ * is the sum of the squared L2-norms of its centroids, which are looked up as well.
+ */
+public final class ProductQuantizer {
+  /** Options to configure the training of a {@link ProductQuantizer}. */
+  @AutoValue
+  public abstract static class Options {
+    /** Builder for {@link Options}. */
+    @AutoValue.Builder
+    public abstract static class Builder {
+      /**
+       * Sets the number of subspaces the embeddings are split in, which is the number of bytes of
+       * an encoded embedding. Must not exceed the size of the embeddings. Defaults to 16.
+       */
+      public abstract Builder setNumSubspaces(Integer value);
+
+      /**
+       * Sets the number of centroids of each subspace, between 2 and 256. Higher values give a
+       * better approximation at the cost of training and encoding time. Defaults to 256.
+       */
+      public abstract Builder setNumCentroids(Integer value);
+
+      /** Sets the maximum number of k-means iterations for each subspace. Defaults to 20. */
+      public abstract Builder setNumIterations(Integer value);
+
+      abstract Options autoBuild();
+
+      /**
+       * Validates and builds the {@link Options} instance.
+       *
+       * @throws IllegalArgumentException if the number of subspaces or of iterations is not
+       *     positive, or if the number of centroids is not between 2 and 256.
+       */
+      public final Options build() {
+        Options options = autoBuild();
+        if (options.numSubspaces() < 1) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "The number of subspaces must be positive, found: %d.", options.numSubspaces()));
+        }
+        if (options.numCentroids() < 2 || options.numCentroids() > MAX_NUM_CENTROIDS) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "The number of centroids must be between 2 and %d, found: %d.",
+                  MAX_NUM_CENTROIDS, options.numCentroids()));
+        }
+        if (options.numIterations() < 1) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "The number of iterations must be positive, found: %d.",
+                  options.numIterations()));
+        }
+        return options;
+      }
+    }
+
+    public abstract Integer numSubspaces();
+
+    public abstract Integer numCentroids();
+
+    public abstract Integer numIterations();
+
+    public static Builder builder() {
+      return new AutoValue_ProductQuantizer_Options.Builder()
+          .setNumSubspaces(16)
+          .setNumCentroids(MAX_NUM_CENTROIDS)
+          .setNumIterations(20);
+    }
+  }
+
+  // Each centroid index is encoded in a byte.
+  private static final int MAX_NUM_CENTROIDS = 256;
+  // The codebooks are trained from the same random sequences for every sample, so that training
+  // is reproducible.
+  private static final long RANDOM_SEED = 1009572210L;
+  private static final int MAGIC = 0x51504d50; // "PMPQ" in little-endian.
+  private static final int VERSION = 1;
+  // The magic number, the version, the dimension, the number of subspaces and of centroids.
+  private static final int HEADER_SIZE = 5 * Integer.BYTES;
+
+  private final int dimension;
+  private final int numSubspaces;
+  private final int numCentroids;
+  // The subvector of subspace m is [subspaceOffsets[m], subspaceOffsets[m + 1]) in the embedding.
+  private final int[] subspaceOffsets;
+  // The centroids of subspace m, one after the other.
+  private final float[][] codebooks;
+  // The squared L2-norm of centroid c of subspace m is at m * numCentroids + c.
+  private final float[] centroidSquaredNorms;
+
+  /** Trains a {@link ProductQuantizer} from a sample of embeddings, with the default options. */
+  public static ProductQuantizer train(List<Embedding> sample) {
+    return train(sample, Options.builder().build());
+  }
+
+  /**
+   * Trains a {@link ProductQuantizer} from a sample of embeddings, representative of the
+   * embeddings to encode. The codebooks of the subspaces are trained in parallel on the common
+   * {@link java.util.concurrent.ForkJoinPool} when there is enough work.
+   *
+   * @throws IllegalArgumentException if the sample has fewer embeddings than the number of
+   *     centroids, if the embeddings have different sizes, fewer values than the number of
+   *     subspaces, or an L2-norm of 0.
+   */
+  public static ProductQuantizer train(List<Embedding> sample, Options options) {
+    int numCentroids = options.numCentroids();
+    if (sample.size() < numCentroids) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Training %d centroids requires at least as many embeddings, found: %d.",
+              numCentroids, sample.size()));
+    }
+    int dimension = size(sample.get(0));
+    int numSubspaces = options.numSubspaces();
+    if (numSubspaces > dimension) {
+      throw new IllegalArgumentException(
+          String.format(
+              "The number of subspaces can't exceed the embedding size %d, found: %d.",
+              dimension, numSubspaces));
+    }
+    float[][] vectors = new float[sample.size()][];
+    for (int i = 0; i < vectors.length; ++i) {
+      vectors[i] = normalize(sample.get(i), dimension);
+    }
+    int[] subspaceOffsets = new int[numSubspaces + 1];
+    for (int m = 0; m < numSubspaces; ++m) {
+      // The first dimension % numSubspaces subspaces have one more value.
+      subspaceOffsets[m + 1] =
+          subspaceOffsets[m] + dimension / numSubspaces + (m < dimension % numSubspaces ? 1 : 0);
+    }
+    float[][] codebooks = new float[numSubspaces][];
+    CosineSimilarity.forEachRange(
+        numSubspaces,
+        (long) vectors.length * numCentroids * (dimension / numSubspaces)
+            * options.numIterations(),
+        (start, end) -> {
+          for (int m = start; m < end; ++m) {
+            codebooks[m] =
+                trainCodebook(
+                    vectors,
+                    subspaceOffsets[m],
+                    subspaceOffsets[m + 1],
+                    numCentroids,
+                    options.numIterations(),
+                    new Random(RANDOM_SEED + m));
+          }
+        });
+    return new ProductQuantizer(dimension, numCentroids, subspaceOffsets, codebooks);
+  }
+
+  /**
+   * Creates a {@link ProductQuantizer} from the bytes returned by {@link #toByteArray}.
+   *
+   * @throws IllegalArgumentException if the bytes are not a serialized {@link ProductQuantizer}.
+   */
+  public static ProductQuantizer fromByteArray(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    if (bytes.length < HEADER_SIZE || buffer.getInt() != MAGIC) {
+      throw new IllegalArgumentException("Not a serialized product quantizer.");
+    }
+    int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IllegalArgumentException(
+          String.format("Unsupported product quantizer version: %d.", version));
+    }
+    int dimension = buffer.getInt();
+    int numSubspaces = buffer.getInt();
+    int numCentroids = buffer.getInt();
+    if (dimension < 1
+        || numSubspaces < 1
+        || numSubspaces > dimension
+        || numCentroids < 2
+        || numCentroids > MAX_NUM_CENTROIDS
+        || buffer.remaining() != (long) numCentroids * dimension * Float.BYTES) {
+      throw new IllegalArgumentException("Corrupted serialized product quantizer.");
+    }
+    int[] subspaceOffsets = new int[numSubspaces + 1];
+    float[][] codebooks = new float[numSubspaces][];
+    for (int m = 0; m < numSubspaces; ++m) {
+      subspaceOffsets[m + 1] =
+          subspaceOffsets[m] + dimension / numSubspaces + (m < dimension % numSubspaces ? 1 : 0);
+      codebooks[m] = new float[numCentroids * (subspaceOffsets[m + 1] - subspaceOffsets[m])];
+      buffer.asFloatBuffer().get(codebooks[m]);
+      buffer.position(buffer.position() + codebooks[m].length * Float.BYTES);
+    }
+    return new ProductQuantizer(dimension, numCentroids, subspaceOffsets, codebooks);
+  }
+
+  private ProductQuantizer(
+      int dimension, int numCentroids, int[] subspaceOffsets, float[][] codebooks) {
+    this.dimension = dimension;
+    this.numSubspaces = codebooks.length;
+    this.numCentroids = numCentroids;
+    this.subspaceOffsets = subspaceOffsets;
+    this.codebooks = codebooks;
+    centroidSquaredNorms = new float[numSubspaces * numCentroids];
+    for (int m = 0; m < numSubspaces; ++m) {
+      int subspaceSize = subspaceSize(m);
+      for (int c = 0; c < numCentroids; ++c) {
+        double squaredNorm = 0;
+        for (int j = 0; j < subspaceSize; ++j) {
+          float value = codebooks[m][c * subspaceSize + j];
+          squaredNorm += value * value;
+        }
+        centroidSquaredNorms[m * numCentroids + c] = (float) squaredNorm;
+      }
+    }
+  }
+
+  /** Returns the size of the embeddings encoded by this quantizer. */
+  public int dimension() {
+    return dimension;
+  }
+
+  /** Returns the number of bytes of an encoded embedding. */
+  public int codeSize() {
+    return numSubspaces;
+  }
+
+  /**
+   * Encodes an embedding.
+   *
+   * @return the {@link #codeSize()} bytes of the encoded embedding.
+   * @throws IllegalArgumentException if the embedding is not of the size of the quantizer, or has
+   *     an L2-norm of 0.
+   */
+  public byte[] encode(Embedding embedding) {
+    byte[] codes = new byte[numSubspaces];
+    encode(embedding, codes, 0);
+    return codes;
+  }
+
+  /**
+   * Encodes an embedding into {@code codes} from {@code offset}, for instance to pack the codes of
+   * many embeddings in a single array.
+   *
+   * @throws IllegalArgumentException if the embedding is not of the size of the quantizer, or has
+   *     an L2-norm of 0.
+   */
+  public void encode(Embedding embedding, byte[] codes, int offset) {
+    float[] vector = normalize(embedding, dimension);
+    for (int m = 0; m < numSubspaces; ++m) {
+      codes[offset + m] = (byte) nearestCentroid(m, vector);
+    }
+  }
+
+  /**
+   * Encodes embeddings, and packs their codes one after the other in a single array, which can be
+   * searched with {@link LookupTable#computeAll}.
+   *
+   * @throws IllegalArgumentException if an embedding is not of the size of the quantizer, or has
+   *     an L2-norm of 0.
+   */
+  public byte[] encodeAll(List<Embedding> embeddings) {
+    byte[] codes = new byte[embeddings.size() * numSubspaces];
+    CosineSimilarity.forEachRange(
+        embeddings.size(),
+        (long) numCentroids * dimension,
+        (start, end) -> {
+          for (int i = start; i < end; ++i) {
+            encode(embeddings.get(i), codes, i * numSubspaces);
+          }
+        });
+    return codes;
+  }
+
+  /**
+   * Decodes the embedding encoded in {@code codes} from {@code offset}.
+   *
+   * @return the float embedding made of the centroids of the codes, which approximates the
+   *     normalized encoded embedding.
+   */
+  public Embedding decode(byte[] codes, int offset) {
+    float[] values = new float[dimension];
+    for (int m = 0; m < numSubspaces; ++m) {
+      int subspaceSize = subspaceSize(m);
+      int centroid = codes[offset + m] & 0xff;
+      System.arraycopy(
+          codebooks[m], centroid * subspaceSize, values, subspaceOffsets[m], subspaceSize);
+    }
+    return Embedding.create(values, new byte[0], /* headIndex= */ 0, Optional.empty());
+  }
+
+  /**
+   * Creates the {@link LookupTable} of a query, to compute its approximate cosine similarity with
+   * encoded embeddings.
+   *
+   * @throws IllegalArgumentException if the query is not of the size of the quantizer, or has an
+   *     L2-norm of 0.
+   */
+  public LookupTable createLookupTable(Embedding query) {
+    float[] vector = normalize(query, dimension);
+    float[] dotProducts = new float[numSubspaces * numCentroids];
+    for (int m = 0; m < numSubspaces; ++m) {
+      int start = subspaceOffsets[m];
+      int subspaceSize = subspaceSize(m);
+      for (int c = 0; c < numCentroids; ++c) {
+        double dotProduct = 0;
+        for (int j = 0; j < subspaceSize; ++j) {
+          dotProduct += vector[start + j] * codebooks[m][c * subspaceSize + j];
+        }
+        dotProducts[m * numCentroids + c] = (float) dotProduct;
+      }
+    }
+    return new LookupTable(dotProducts, centroidSquaredNorms, numSubspaces, numCentroids);
+  }
+
+  /** Serializes the quantizer, to be restored with {@link #fromByteArray}. */
+  public byte[] toByteArray() {
+    ByteBuffer buffer =
+        ByteBuffer.allocate(HEADER_SIZE + numCentroids * dimension * Float.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(numSubspaces);
+    buffer.putInt(numCentroids);
+    for (float[] codebook : codebooks) {
+      buffer.asFloatBuffer().put(codebook);
+      buffer.position(buffer.position() + codebook.length * Float.BYTES);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * The dot products between the subvectors of a normalized query and all the centroids of their
+   * subspace, to approximate the cosine similarity between the query and encoded embeddings with
+   * two table lookups per byte of the code.
+   */
+  public static final class LookupTable {
+    private final float[] dotProducts;
+    private final float[] centroidSquaredNorms;
+    private final int numSubspaces;
+    private final int numCentroids;
+
+    private LookupTable(
+        float[] dotProducts, float[] centroidSquaredNorms, int numSubspaces, int numCentroids) {
+      this.dotProducts = dotProducts;
+      this.centroidSquaredNorms = centroidSquaredNorms;
+      this.numSubspaces = numSubspaces;
+      this.numCentroids = numCentroids;
+    }
+
+    /**
+     * Returns the approximate cosine similarity between the query and the embedding encoded in
+     * {@code codes} from {@code offset}.
+     */
+    public double similarity(byte[] codes, int offset) {
+      double dotProduct = 0;
+      double squaredNorm = 0;
+      for (int m = 0, row = 0; m < numSubspaces; ++m, row += numCentroids) {
+        int index = row + (codes[offset + m] & 0xff);
+        dotProduct += dotProducts[index];
+        squaredNorm += centroidSquaredNorms[index];
+      }
+      // A decoded embedding of norm 0 is orthogonal to every query.
+      return squaredNorm > 0 ? dotProduct / Math.sqrt(squaredNorm) : 0;
+    }
+
+    /**
+     * Computes the approximate cosine similarity between the query and each of the embeddings
+     * whose codes are packed in {@code codes}, as returned by {@link ProductQuantizer#encodeAll}.
+     *
+     * @return the similarities, in the order of the codes.
+     * @throws IllegalArgumentException if the size of {@code codes} is not a multiple of the code
+     *     size.
+     */
+    public double[] computeAll(byte[] codes) {
+      if (codes.length % numSubspaces != 0) {
+        throw new IllegalArgumentException(
+            String.format(
+                "The size of the codes %d is not a multiple of the code size %d.",
+                codes.length, numSubspaces));
+      }
+      double[] similarities = new double[codes.length / numSubspaces];
+      CosineSimilarity.forEachRange(
+          similarities.length,
+          numSubspaces,
+          (start, end) -> {
+            for (int i = start; i < end; ++i) {
+              similarities[i] = similarity(codes, i * numSubspaces);
+            }
+          });
+      return similarities;
+    }
+  }
+
+  private int subspaceSize(int subspace) {
+    return subspaceOffsets[subspace + 1] - subspaceOffsets[subspace];
+  }
+
+  /** Returns the index of the centroid of the subspace nearest to the subvector of the vector. */
+  private int nearestCentroid(int subspace, float[] vector) {
+    // |x - c|^2 = |x|^2 - 2 x.c + |c|^2, where |x|^2 is the same for all the centroids.
+    float[] codebook = codebooks[subspace];
+    int start = subspaceOffsets[subspace];
+    int subspaceSize = subspaceSize(subspace);
+    int nearest = 0;
+    double nearestDistance = Double.POSITIVE_INFINITY;
+    for (int c = 0; c < numCentroids; ++c) {
+      double dotProduct = 0;
+      for (int j = 0; j < subspaceSize; ++j) {
+        dotProduct += vector[start + j] * codebook[c * subspaceSize + j];
+      }
+      double distance = centroidSquaredNorms[subspace * numCentroids + c] - 2 * dotProduct;
+      if (distance < nearestDistance) {
+        nearest = c;
+        nearestDistance = distance;
+      }
+    }
+    return nearest;
+  }
+
+  /**
+   * Trains the centroids of the subspace [start, end) by k-means, initialized with k-means++.
+   * Empty clusters are moved to the vectors farthest from their centroid.
+   */
+  private static float[] trainCodebook(
+      float[][] vectors, int start, int end, int numCentroids, int numIterations, Random random) {
+    int subspaceSize = end - start;
+    float[] centroids = new float[numCentroids * subspaceSize];
+    // The squared distance from each vector to its nearest centroid so far.
+    double[] distances = new double[vectors.length];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    int chosen = random.nextInt(vectors.length);
+    for (int c = 0; c < numCentroids; ++c) {
+      System.arraycopy(vectors[chosen], start, centroids, c * subspaceSize, subspaceSize);
+      double totalDistance = 0;
+      for (int i = 0; i < vectors.length; ++i) {
+        distances[i] =
+            Math.min(distances[i], squaredDistance(vectors[i], start, centroids, c, subspaceSize));
+        totalDistance += distances[i];
+      }
+      // The next centroid is drawn with a probability proportional to the squared distance.
+      chosen = random.nextInt(vectors.length);
+      double threshold = random.nextDouble() * totalDistance;
+      for (int i = 0; i < vectors.length && totalDistance > 0; ++i) {
+        threshold -= distances[i];
+        if (threshold < 0) {
+          chosen = i;
+          break;
+        }
+      }
+    }
+    int[] assignments = new int[vectors.length];
+    Arrays.fill(assignments, -1);
+    double[] sums = new double[numCentroids * subspaceSize];
+    int[] counts = new int[numCentroids];
+    for (int iteration = 0; iteration < numIterations; ++iteration) {
+      boolean changed = false;
+      for (int i = 0; i < vectors.length; ++i) {
+        int nearest = 0;
+        double nearestDistance = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < numCentroids; ++c) {
+          double distance = squaredDistance(vectors[i], start, centroids, c, subspaceSize);
+          if (distance < nearestDistance) {
+            nearest = c;
+            nearestDistance = distance;
+          }
+        }
+        changed |= assignments[i] != nearest;
+        assignments[i] = nearest;
+        distances[i] = nearestDistance;
+      }
+      if (!changed) {
+        break;
+      }
+      Arrays.fill(sums, 0);
+      Arrays.fill(counts, 0);
+      for (int i = 0; i < vectors.length; ++i) {
+        int offset = assignments[i] * subspaceSize;
+        for (int j = 0; j < subspaceSize; ++j) {
+          sums[offset + j] += vectors[i][start + j];
+        }
+        ++counts[assignments[i]];
+      }
+      for (int c = 0; c < numCentroids; ++c) {
+        int offset = c * subspaceSize;
+        if (counts[c] > 0) {
+          for (int j = 0; j < subspaceSize; ++j) {
+            centroids[offset + j] = (float) (sums[offset + j] / counts[c]);
+          }
+          continue;
+        }
+        int farthest = 0;
+        for (int i = 1; i < vectors.length; ++i) {
+          if (distances[i] > distances[farthest]) {
+            farthest = i;
+          }
+        }
+        System.arraycopy(vectors[farthest], start, centroids, offset, subspaceSize);
+        distances[farthest] = 0;
+      }
+    }
+    return centroids;
+  }
+
+  private static double squaredDistance(
+      float[] vector, int start, float[] centroids, int centroid, int subspaceSize) {
+    double distance = 0;
+    int offset = centroid * subspaceSize;
+    for (int j = 0; j < subspaceSize; ++j) {
+      double difference = vector[start + j] - centroids[offset + j];
+      distance += difference * difference;
+    }
+    return distance;
+  }
+
+  private static int size(Embedding embedding) {
+    return embedding.floatEmbedding().length > 0
+        ? embedding.floatEmbedding().length
+        : embedding.quantizedEmbedding().length;
+  }
+
+  /**
+   * Returns the values of the embedding as floats, divided by its L2-norm.
+   *
+   * @throws IllegalArgumentException if the embedding is not of the given size, or has an
+   *     L2-norm of 0.
+   */
+  private static float[] normalize(Embedding embedding, int dimension) {
+    float[] floatEmbedding = embedding.floatEmbedding();
+    byte[] quantizedEmbedding = embedding.quantizedEmbedding();
+    boolean quantized = floatEmbedding.length == 0;
+    int size = quantized ? quantizedEmbedding.length : floatEmbedding.length;
+    if (size != dimension) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Cannot quantize an embedding of size %d with a product quantizer of size %d.",
+              size, dimension));
+    }
+    double norm =
+        Math.sqrt(
+            quantized
+                ? CosineSimilarity.dotProduct(quantizedEmbedding, quantizedEmbedding)
+                : CosineSimilarity.dotProduct(floatEmbedding, floatEmbedding));
+    if (norm <= 0) {
+      throw new IllegalArgumentException("Cannot quantize an embedding with 0 norm.");
+    }
+    float[] values = new float[dimension];
+    for (int i = 0; i < dimension; ++i) {
+      values[i] = (float) ((quantized ? quantizedEmbedding[i] : floatEmbedding[i]) / norm);
+    }
+    return values;
+  }
+}
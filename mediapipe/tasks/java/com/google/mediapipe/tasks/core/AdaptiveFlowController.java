@@ -0,0 +1,116 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.core;
+
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Adapts the number of inputs in flight of a flow limited task graph to a target end-to-end
+ * latency.
+ *
+ * <p>The latency of each result is smoothed with an exponential moving average. The number of
+ * inputs in flight is lowered by one when the average exceeds the target, and raised by one after
+ * a window of results whose average latency stays well below the target.
+ */
+final class AdaptiveFlowController {
+  /** The number of results observed between two increases of the number of inputs in flight. */
+  private static final int INCREASE_WINDOW = 16;
+  /** The fraction of the target latency the average latency must stay below to allow increases. */
+  private static final double INCREASE_HEADROOM = 0.8;
+  /** The weight of the latest latency in the exponential moving average. */
+  private static final double SMOOTHING_FACTOR = 0.125;
+
+  private final long targetLatencyNanos;
+  private final int maxInFlight;
+  // Returns the current time in nanoseconds.
+  private final LongSupplier nanoClock;
+  // Input timestamp -> the time in nanoseconds when the input was sent. Inputs dropped by the flow
+  // limiter never produce results, and are discarded once a later result is observed.
+  private final ConcurrentSkipListMap<Long, Long> pendingInputs = new ConcurrentSkipListMap<>();
+  private double averageLatencyNanos = -1;
+  private int resultsSinceLastChange;
+  private int inFlight;
+  private boolean inFlightChanged;
+
+  AdaptiveFlowController(FlowLimiterOptions options) {
+    this(options, System::nanoTime);
+  }
+
+  /**
+   * Creates an {@link AdaptiveFlowController} that measures the latencies with {@code nanoClock},
+   * e.g. a fake clock in tests.
+   */
+  AdaptiveFlowController(FlowLimiterOptions options, LongSupplier nanoClock) {
+    this.nanoClock = nanoClock;
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(options.targetLatencyMs().get());
+    this.maxInFlight = options.maxInFlight();
+    this.inFlight = TaskInfo.initialMaxInFlight(options);
+  }
+
+  /** Records that the input of {@code inputTimestamp} has been sent to the task graph. */
+  void recordInputSent(long inputTimestamp) {
+    pendingInputs.put(inputTimestamp, nanoClock.getAsLong());
+  }
+
+  /** Records that the result of {@code inputTimestamp} has been produced by the task graph. */
+  void recordResult(long inputTimestamp) {
+    long now = nanoClock.getAsLong();
+    ConcurrentNavigableMap<Long, Long> settledInputs =
+        pendingInputs.headMap(inputTimestamp, /* inclusive= */ true);
+    Long sentNanos = settledInputs.get(inputTimestamp);
+    settledInputs.clear();
+    if (sentNanos != null) {
+      updateInFlight(now - sentNanos);
+    }
+  }
+
+  /**
+   * Returns the new number of inputs in flight if it changed since the last call, or -1 otherwise.
+   */
+  synchronized int pollInFlightChange() {
+    if (!inFlightChanged) {
+      return -1;
+    }
+    inFlightChanged = false;
+    return inFlight;
+  }
+
+  private synchronized void updateInFlight(long latencyNanos) {
+    averageLatencyNanos =
+        averageLatencyNanos < 0
+            ? latencyNanos
+            : averageLatencyNanos + SMOOTHING_FACTOR * (latencyNanos - averageLatencyNanos);
+    ++resultsSinceLastChange;
+    if (averageLatencyNanos > targetLatencyNanos) {
+      // Lets the inputs released under the previous limit settle before lowering it further.
+      if (inFlight > 1 && resultsSinceLastChange >= inFlight) {
+        setInFlight(inFlight - 1);
+      }
+    } else if (averageLatencyNanos < INCREASE_HEADROOM * targetLatencyNanos
+        && resultsSinceLastChange >= INCREASE_WINDOW
+        && inFlight < maxInFlight) {
+      setInFlight(inFlight + 1);
+    }
+  }
+
+  private void setInFlight(int value) {
+    inFlight = value;
+    inFlightChanged = true;
+    resultsSinceLastChange = 0;
+  }
+}
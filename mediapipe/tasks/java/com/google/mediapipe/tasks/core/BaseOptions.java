@@ -15,6 +15,7 @@
 package com.google.mediapipe.tasks.core;
 
 import com.google.auto.value.AutoValue;
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.util.Optional;
@@ -48,12 +49,39 @@ public abstract class BaseOptions {
      */
     public abstract Builder setModelAssetBuffer(ByteBuffer value);
 
+    /**
+     * Sets a model asset file (a tflite model or a model asset bundle file) to be memory mapped.
+     *
+     * <p>The file is mapped when the task is created, and the mapping is shared by all the tasks
+     * that load the same file until the last of them is closed. The model is read directly from
+     * the mapping without being copied, so its pages are loaded on demand and shared with other
+     * processes through the OS page cache.
+     *
+     * <p>Note: when the mapped model file is set, the model path, the model file descriptor, and
+     * the model buffer should be empty.
+     */
+    public abstract Builder setModelAssetMappedFile(File value);
+
+    /**
+     * Sets whether to prefetch the mapped model file into the OS page cache on a background
+     * thread when it is first mapped. Defaults to false, in which case the model pages are only
+     * read from storage when they are first accessed.
+     */
+    public abstract Builder setPrefetchModelAsset(Boolean value);
+
     /**
      * Sets device delegate to run the MediaPipe pipeline. If the delegate is not set, the default
      * delegate CPU is used.
      */
     public abstract Builder setDelegate(Delegate delegate);
 
+    /**
+     * Sets the {@link FlowLimiterOptions} that control how many inputs are processed and queued at
+     * one time in the live stream mode. If not set, a single input is processed and a single input
+     * is queued at a time.
+     */
+    public abstract Builder setFlowLimiterOptions(FlowLimiterOptions value);
+
     abstract BaseOptions autoBuild();
 
     /**
@@ -67,11 +95,16 @@ public abstract class BaseOptions {
       int modelAssetPathPresent = options.modelAssetPath().isPresent() ? 1 : 0;
       int modelAssetFileDescriptorPresent = options.modelAssetFileDescriptor().isPresent() ? 1 : 0;
       int modelAssetBufferPresent = options.modelAssetBuffer().isPresent() ? 1 : 0;
+      int modelAssetMappedFilePresent = options.modelAssetMappedFile().isPresent() ? 1 : 0;
 
-      if (modelAssetPathPresent + modelAssetFileDescriptorPresent + modelAssetBufferPresent != 1) {
+      if (modelAssetPathPresent
+              + modelAssetFileDescriptorPresent
+              + modelAssetBufferPresent
+              + modelAssetMappedFilePresent
+          != 1) {
         throw new IllegalArgumentException(
-            "Please specify only one of the model asset path, the model asset file descriptor, and"
-                + " the model asset buffer.");
+            "Please specify only one of the model asset path, the model asset file descriptor, the"
+                + " model asset buffer, and the model asset mapped file.");
       }
       if (options.modelAssetBuffer().isPresent()
           && !(options.modelAssetBuffer().get().isDirect()
@@ -89,9 +122,18 @@ public abstract class BaseOptions {
 
   abstract Optional<ByteBuffer> modelAssetBuffer();
 
+  abstract Optional<File> modelAssetMappedFile();
+
+  abstract Boolean prefetchModelAsset();
+
   abstract Delegate delegate();
 
+  abstract FlowLimiterOptions flowLimiterOptions();
+
   public static Builder builder() {
-    return new AutoValue_BaseOptions.Builder().setDelegate(Delegate.CPU);
+    return new AutoValue_BaseOptions.Builder()
+        .setDelegate(Delegate.CPU)
+        .setFlowLimiterOptions(FlowLimiterOptions.builder().build())
+        .setPrefetchModelAsset(false);
   }
 }
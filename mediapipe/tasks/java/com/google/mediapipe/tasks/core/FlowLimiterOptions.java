@@ -0,0 +1,110 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.core;
+
+import com.google.auto.value.AutoValue;
+import java.util.Optional;
+
+/**
+ * Options to configure the flow limiting of MediaPipe Tasks in the live stream mode.
+ *
+ * <p>In the live stream mode, the inputs that arrive while the task graph is busy are queued, and
+ * the oldest queued inputs are dropped when the queue is full. By default, a single input is
+ * processed at a time and a single input is queued, which gives the lowest latency. Raising the
+ * number of inputs in flight lets the graph calculators work on consecutive inputs concurrently,
+ * trading latency for throughput.
+ *
+ * <p>The dropped inputs are counted, and can be reported to a {@link DropListener}, so that
+ * callers can skip producing inputs while the task is busy.
+ *
+ * <p>When a target latency is set, the number of inputs in flight is adapted at runtime between 1
+ * and {@link #maxInFlight()}: it is raised while the observed end-to-end latency stays below the
+ * target, and lowered as soon as the latency exceeds it.
+ */
+@AutoValue
+public abstract class FlowLimiterOptions {
+  /** Builder for {@link FlowLimiterOptions}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+    /**
+     * Sets the maximum number of inputs processed by the task graph at one time, or the upper bound
+     * of the adaptive number of inputs in flight if a target latency is set. Defaults to 1.
+     */
+    public abstract Builder setMaxInFlight(Integer value);
+
+    /** Sets the maximum number of inputs waiting to be processed. Defaults to 1. */
+    public abstract Builder setMaxInQueue(Integer value);
+
+    /**
+     * Sets the target end-to-end latency in milliseconds, from sending an input to receiving its
+     * result, that enables the adaptive number of inputs in flight.
+     */
+    public abstract Builder setTargetLatencyMs(Long value);
+
+    /**
+     * Sets the {@link DropListener} to be notified of each input that is dropped by the flow
+     * limiter. The listener is called on a graph thread, and should return quickly.
+     */
+    public abstract Builder setDropListener(DropListener value);
+
+    abstract FlowLimiterOptions autoBuild();
+
+    /**
+     * Validates and builds the {@link FlowLimiterOptions} instance.
+     *
+     * @throws IllegalArgumentException if the maximum number of inputs in flight is not positive,
+     *     the maximum number of queued inputs is negative, or the target latency is not positive.
+     */
+    public final FlowLimiterOptions build() {
+      FlowLimiterOptions options = autoBuild();
+      if (options.maxInFlight() < 1) {
+        throw new IllegalArgumentException(
+            String.format(
+                "The maximum number of inputs in flight must be positive, found: %d.",
+                options.maxInFlight()));
+      }
+      if (options.maxInQueue() < 0) {
+        throw new IllegalArgumentException(
+            String.format(
+                "The maximum number of queued inputs must be non-negative, found: %d.",
+                options.maxInQueue()));
+      }
+      if (options.targetLatencyMs().isPresent() && options.targetLatencyMs().get() <= 0) {
+        throw new IllegalArgumentException(
+            String.format(
+                "The target latency must be positive, found: %d.",
+                options.targetLatencyMs().get()));
+      }
+      return options;
+    }
+  }
+
+  public abstract Integer maxInFlight();
+
+  public abstract Integer maxInQueue();
+
+  public abstract Optional<Long> targetLatencyMs();
+
+  public abstract Optional<DropListener> dropListener();
+
+  /** Returns true if the number of inputs in flight is adapted to the target latency. */
+  public boolean isAdaptive() {
+    return targetLatencyMs().isPresent();
+  }
+
+  public static Builder builder() {
+    return new AutoValue_FlowLimiterOptions.Builder().setMaxInFlight(1).setMaxInQueue(1);
+  }
+}
@@ -0,0 +1,156 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A process-wide registry of reference-counted, read-only memory mappings of model asset files.
+ *
+ * <p>Each version of a model file, identified by its canonical path, length, and last modified
+ * time, is mapped once and the mapping is shared by all the {@link TaskRunner}s that load the
+ * file. The native model resources point directly into the mapping, so the model weights are
+ * backed by the OS page cache, shared with other processes, and only read from storage when they
+ * are accessed.
+ *
+ * <p>A mapping is dropped from the registry when the last {@link TaskRunner} that uses it is
+ * closed, and unmapped once it is garbage collected.
+ */
+final class MappedModelFiles {
+  // How long the prefetch thread is kept alive without prefetching a model.
+  private static final long PREFETCH_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+  private static final class Entry {
+    final MappedByteBuffer mapping;
+    int referenceCount;
+
+    Entry(MappedByteBuffer mapping) {
+      this.mapping = mapping;
+    }
+  }
+
+  private static final Map<String, Entry> entries = new HashMap<>();
+
+  // Prefetches the newly mapped files one at a time on a single daemon thread, which is only
+  // kept alive while there are files to prefetch.
+  private static final ExecutorService prefetchExecutor = createPrefetchExecutor();
+
+  /**
+   * Acquires a reference to the memory mapping of {@code file}, mapping the file if it isn't
+   * mapped yet. Each call must be balanced by a call to {@link #release} with the returned key.
+   *
+   * @param file the model asset file.
+   * @param prefetch whether to read the content of a newly mapped file into the page cache on a
+   *     background thread.
+   * @return the key of the mapping.
+   * @throws IOException if the file can't be opened or mapped.
+   */
+  static synchronized String acquire(File file, boolean prefetch) throws IOException {
+    String key = getIdentity(file);
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      try (FileInputStream inputStream = new FileInputStream(file);
+          FileChannel channel = inputStream.getChannel()) {
+        entry = new Entry(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+      entries.put(key, entry);
+      if (prefetch) {
+        prefetchExecutor.execute(entry.mapping::load);
+      }
+    }
+    entry.referenceCount++;
+    return key;
+  }
+
+  /**
+   * Returns the memory mapping of the current version of {@code file}, which must have been
+   * acquired with {@link #acquire}.
+   *
+   * @throws IOException if the canonical path of the file can't be resolved.
+   * @throws IllegalStateException if the current version of the file isn't mapped.
+   */
+  static synchronized MappedByteBuffer get(File file) throws IOException {
+    Entry entry = entries.get(getIdentity(file));
+    if (entry == null) {
+      throw new IllegalStateException(
+          "The model asset file " + file + " isn't mapped, or was modified since it was mapped.");
+    }
+    return entry.mapping;
+  }
+
+  /**
+   * Releases a reference acquired with {@link #acquire}, dropping the mapping when it is no
+   * longer referenced.
+   */
+  static synchronized void release(String key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return;
+    }
+    if (--entry.referenceCount == 0) {
+      entries.remove(key);
+    }
+  }
+
+  /**
+   * Returns a {@link String} that identifies the current version of {@code file}.
+   *
+   * @throws IOException if the canonical path of the file can't be resolved.
+   */
+  static String getIdentity(File file) throws IOException {
+    return String.format(
+        "%s:%d:%d", file.getCanonicalPath(), file.length(), file.lastModified());
+  }
+
+  /**
+   * Returns the native address of the first byte of {@code buffer}, which must be a direct buffer
+   * such as a mapping, or 0 if it isn't.
+   */
+  static long getAddress(ByteBuffer buffer) {
+    return nativeGetDirectBufferAddress(buffer);
+  }
+
+  private static ExecutorService createPrefetchExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ 1,
+            /* maximumPoolSize= */ 1,
+            PREFETCH_THREAD_KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+              Thread thread = new Thread(runnable, "MediaPipeModelPrefetch");
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static native long nativeGetDirectBufferAddress(ByteBuffer buffer);
+
+  private MappedModelFiles() {}
+}
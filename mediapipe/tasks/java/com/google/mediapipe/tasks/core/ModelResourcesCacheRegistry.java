@@ -0,0 +1,153 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.core;
+
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A process-wide registry of reference-counted {@link ModelResourcesCache}s, keyed by the task
+ * graph and the identity of its model.
+ *
+ * <p>{@link TaskRunner}s of the same task graph that run the same model share one cache, so the
+ * model is only loaded once. The cache is released when the last {@link TaskRunner} that uses it
+ * is closed.
+ */
+final class ModelResourcesCacheRegistry {
+  private static final String TAG = ModelResourcesCacheRegistry.class.getSimpleName();
+
+  private static final class Entry {
+    final ModelResourcesCache cache = new ModelResourcesCache();
+    // The model buffer identified by its address, if any. Keeps the memory of the buffer from being
+    // reused by another model while its address identifies this entry.
+    final ByteBuffer modelBuffer;
+    int referenceCount;
+
+    Entry(ByteBuffer modelBuffer) {
+      this.modelBuffer = modelBuffer;
+    }
+  }
+
+  private static final Map<String, Entry> entries = new HashMap<>();
+
+  /**
+   * Returns the registry key of the model run by {@code taskInfo}, or null if the model can't be
+   * identified and the task should use a private {@link ModelResourcesCache}.
+   *
+   * <p>Models are identified by their asset path, by the device and inode of their file
+   * descriptor, by the address and capacity of their direct buffer, or by the canonical path and
+   * version of their mapped file. A model buffer is identified by the memory it occupies rather
+   * than by its content, so it must not be modified while tasks use it.
+   */
+  static String createKey(TaskInfo<? extends TaskOptions> taskInfo) {
+    if (!taskInfo.baseOptions().isPresent()) {
+      return null;
+    }
+    BaseOptions baseOptions = taskInfo.baseOptions().get();
+    String modelIdentity;
+    if (baseOptions.modelAssetPath().isPresent()) {
+      modelIdentity = "path:" + baseOptions.modelAssetPath().get();
+    } else if (baseOptions.modelAssetFileDescriptor().isPresent()) {
+      modelIdentity = getFileDescriptorIdentity(baseOptions.modelAssetFileDescriptor().get());
+    } else if (baseOptions.modelAssetBuffer().isPresent()) {
+      modelIdentity = getBufferIdentity(baseOptions.modelAssetBuffer().get());
+    } else if (baseOptions.modelAssetMappedFile().isPresent()) {
+      modelIdentity = getMappedFileIdentity(baseOptions.modelAssetMappedFile().get());
+    } else {
+      return null;
+    }
+    return modelIdentity == null ? null : taskInfo.taskGraphName() + "|" + modelIdentity;
+  }
+
+  /**
+   * Acquires a reference to the {@link ModelResourcesCache} registered under {@code key}, creating
+   * the cache if needed. Each call must be balanced by a call to {@link #release}.
+   *
+   * @param key the registry key created by {@link #createKey} from {@code taskInfo}.
+   * @param taskInfo the {@link TaskInfo} of the task that uses the cache.
+   */
+  static synchronized ModelResourcesCache acquire(
+      String key, TaskInfo<? extends TaskOptions> taskInfo) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry =
+          new Entry(
+              taskInfo.baseOptions().isPresent()
+                  ? taskInfo.baseOptions().get().modelAssetBuffer().orElse(null)
+                  : null);
+      entries.put(key, entry);
+    }
+    entry.referenceCount++;
+    return entry.cache;
+  }
+
+  /**
+   * Releases a reference acquired with {@link #acquire}, releasing the {@link ModelResourcesCache}
+   * when it is no longer referenced.
+   */
+  static synchronized void release(String key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return;
+    }
+    if (--entry.referenceCount == 0) {
+      entries.remove(key);
+      entry.cache.release();
+    }
+  }
+
+  private static String getFileDescriptorIdentity(int fd) {
+    // fromFd duplicates the file descriptor, which is closed again once stat'ed.
+    try (ParcelFileDescriptor descriptor = ParcelFileDescriptor.fromFd(fd)) {
+      StructStat stat = Os.fstat(descriptor.getFileDescriptor());
+      return String.format(
+          "fd:%d:%d:%d:%d", stat.st_dev, stat.st_ino, stat.st_size, stat.st_mtime);
+    } catch (IOException | ErrnoException e) {
+      Log.w(TAG, "Failed to identify the model file descriptor, not sharing its resources.", e);
+      return null;
+    }
+  }
+
+  private static String getMappedFileIdentity(File file) {
+    try {
+      return "mapped:" + MappedModelFiles.getIdentity(file);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to identify the mapped model file, not sharing its resources.", e);
+      return null;
+    }
+  }
+
+  private static String getBufferIdentity(ByteBuffer buffer) {
+    // Identifies the buffer by its memory rather than hashing its content, which would read the
+    // whole model. Duplicates of the buffer share its address, and the address of a registered
+    // buffer can't be reused by another one as long as the registry keeps the buffer reachable.
+    long address = MappedModelFiles.getAddress(buffer);
+    if (address == 0) {
+      Log.w(TAG, "Failed to identify the model buffer, not sharing its resources.");
+      return null;
+    }
+    return String.format("buffer:%x:%d", address, buffer.capacity());
+  }
+
+  private ModelResourcesCacheRegistry() {}
+}
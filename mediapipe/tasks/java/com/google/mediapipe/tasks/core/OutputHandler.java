@@ -18,6 +18,10 @@ import android.util.Log;
 import com.google.mediapipe.framework.MediaPipeException;
 import com.google.mediapipe.framework.Packet;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
 
 /** Base class for handling MediaPipe task graph outputs. */
 public class OutputHandler<OutputT extends TaskResult, InputT> {
@@ -29,6 +33,19 @@ public class OutputHandler<OutputT extends TaskResult, InputT> {
     OutputT convertToTaskResult(List<Packet> packets);
 
     InputT convertToTaskInput(List<Packet> packets);
+
+    /**
+     * Invoked once the result listener returns, with the task input object it received. The task
+     * input objects that are views over output {@link Packet}s release them here, unless the
+     * listener retained them. Does nothing by default.
+     */
+    default void releaseTaskInput(InputT input) {}
+
+    /**
+     * Invoked when the task is closed, before the graph is torn down. The task input objects that
+     * are still views over output {@link Packet}s must release them here. Does nothing by default.
+     */
+    default void close() {}
   }
 
   /**
@@ -54,12 +71,48 @@ public class OutputHandler<OutputT extends TaskResult, InputT> {
   private ResultListener<OutputT, InputT> resultListener;
   // The user-defined error listener.
   protected ErrorListener errorListener;
-  // The cached task result for non latency sensitive use cases.
-  protected OutputT cachedTaskResult;
-  // The latest output timestamp.
-  protected long latestOutputTimestamp = -1;
+  /**
+   * The cached task result of the latest output that no invocation is waiting for.
+   *
+   * @deprecated concurrent invocations may overwrite each other's result. The invocations of {@link
+   *     TaskRunner} receive their own result through {@link #registerPendingResult} instead.
+   */
+  @Deprecated protected volatile OutputT cachedTaskResult;
+  // The latest output timestamp, only written by the graph output callback thread.
+  protected volatile long latestOutputTimestamp = -1;
   // Whether the output handler should react to timestamp-bound changes by outputting empty packets.
   private boolean handleTimestampBoundChanges = false;
+  // The pending results of the invocations waiting for their output, keyed by the input timestamp.
+  // Handed off without locking between the callers and the graph output callback thread.
+  private final ConcurrentSkipListMap<Long, PendingResult<OutputT>> pendingResults =
+      new ConcurrentSkipListMap<>();
+
+  /** The future of an invocation, and the optional executor that completes it. */
+  private static final class PendingResult<OutputT> {
+    final CompletableFuture<OutputT> future = new CompletableFuture<>();
+    // The executor that completes the future, or null to complete it on the calling thread.
+    final Executor executor;
+
+    PendingResult(Executor executor) {
+      this.executor = executor;
+    }
+
+    void complete(OutputT result) {
+      if (executor == null) {
+        future.complete(result);
+      } else {
+        executor.execute(() -> future.complete(result));
+      }
+    }
+
+    void completeExceptionally(Throwable e) {
+      if (executor == null) {
+        future.completeExceptionally(e);
+      } else {
+        executor.execute(() -> future.completeExceptionally(e));
+      }
+    }
+  }
 
   /**
    * Sets a callback to be invoked to convert a {@link Packet} list to a task result object and a
@@ -105,6 +158,7 @@ public class OutputHandler<OutputT extends TaskResult, InputT> {
   }
 
   /* Returns the cached task result object. */
+  @SuppressWarnings("deprecation") // Hands off the legacy cached result.
   public OutputT retrieveCachedTaskResult() {
     OutputT taskResult = cachedTaskResult;
     cachedTaskResult = null;
@@ -116,21 +170,106 @@ public class OutputHandler<OutputT extends TaskResult, InputT> {
     return latestOutputTimestamp;
   }
 
+  /**
+   * Registers a pending result for an invocation. The returned future is completed exactly once:
+   * with the task result when the output packets of the given timestamp are handled, with null if
+   * the invocation produced no output, or exceptionally if it failed.
+   *
+   * <p>The pending result is only removed once it is completed or by {@link
+   * #removePendingResult}, however many results are pending.
+   *
+   * @param timestamp the input timestamp of the invocation.
+   * @param executor the {@link Executor} that completes the future, or null to complete it on the
+   *     thread that handles the outputs.
+   */
+  CompletableFuture<OutputT> registerPendingResult(long timestamp, Executor executor) {
+    PendingResult<OutputT> pendingResult = new PendingResult<>(executor);
+    pendingResults.put(timestamp, pendingResult);
+    return pendingResult.future;
+  }
+
+  /**
+   * Stops tracking the pending result of the given timestamp, which will not be completed anymore
+   * if it isn't yet. Invoked by the callers that stop waiting for their result.
+   *
+   * @param timestamp the input timestamp of the invocation.
+   */
+  void removePendingResult(long timestamp) {
+    pendingResults.remove(timestamp);
+  }
+
+  /**
+   * Completes all the pending results exceptionally and stops tracking them. Invoked when the task
+   * graph fails, as the pending invocations will not produce any output.
+   *
+   * @param e the exception that caused the task graph to fail.
+   */
+  void failPendingResults(RuntimeException e) {
+    for (Long timestamp : pendingResults.keySet()) {
+      PendingResult<OutputT> pendingResult = pendingResults.remove(timestamp);
+      if (pendingResult != null) {
+        pendingResult.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * Completes all the pending results with null. Only invoke this method when the task graph is
+   * idle, as the remaining invocations will not produce any output.
+   */
+  void completePendingResults() {
+    for (Long timestamp : pendingResults.keySet()) {
+      PendingResult<OutputT> pendingResult = pendingResults.remove(timestamp);
+      if (pendingResult != null) {
+        pendingResult.complete(null);
+      }
+    }
+  }
+
+  /** Releases the task input objects that are still views over the graph output. */
+  void close() {
+    if (outputPacketConverter != null) {
+      outputPacketConverter.close();
+    }
+  }
+
   /**
    * Handles a list of output {@link Packet}s. Invoked when a packet list become available.
    *
    * @param packets A list of output {@link Packet}s.
    */
   void run(List<Packet> packets) {
-    OutputT taskResult = null;
+    run(packets.get(0).getTimestamp(), packets);
+  }
+
+  /**
+   * Handles the output {@link Packet}s of the given timestamp.
+   *
+   * @param timestamp the timestamp of the output {@link Packet}s.
+   * @param packets A list of output {@link Packet}s.
+   */
+  void run(long timestamp, List<Packet> packets) {
+    PendingResult<OutputT> pendingResult = takePendingResult(timestamp);
+    if (pendingResult != null) {
+      latestOutputTimestamp = timestamp;
+      try {
+        pendingResult.complete(outputPacketConverter.convertToTaskResult(packets));
+      } catch (RuntimeException e) {
+        pendingResult.completeExceptionally(e);
+      }
+      return;
+    }
     try {
-      taskResult = outputPacketConverter.convertToTaskResult(packets);
+      OutputT taskResult = outputPacketConverter.convertToTaskResult(packets);
       if (resultListener == null) {
-        cachedTaskResult = taskResult;
-        latestOutputTimestamp = packets.get(0).getTimestamp();
+        cacheTaskResult(timestamp, taskResult);
       } else {
         InputT taskInput = outputPacketConverter.convertToTaskInput(packets);
-        resultListener.run(taskResult, taskInput);
+        try {
+          resultListener.run(taskResult, taskInput);
+        } finally {
+          outputPacketConverter.releaseTaskInput(taskInput);
+        }
       }
     } catch (MediaPipeException e) {
       if (errorListener != null) {
@@ -140,4 +279,30 @@ public class OutputHandler<OutputT extends TaskResult, InputT> {
       }
     }
   }
+
+  @SuppressWarnings("deprecation") // Keeps the legacy cached result for subclasses.
+  private void cacheTaskResult(long timestamp, OutputT taskResult) {
+    cachedTaskResult = taskResult;
+    latestOutputTimestamp = timestamp;
+  }
+
+  /**
+   * Removes and returns the pending result of the given timestamp, or null if the invocation isn't
+   * pipelined. As the graph outputs are in timestamp order, the pending results of any smaller
+   * timestamps are completed with null since their invocations didn't produce any output.
+   */
+  private PendingResult<OutputT> takePendingResult(long timestamp) {
+    if (pendingResults.isEmpty()) {
+      return null;
+    }
+    NavigableMap<Long, PendingResult<OutputT>> skippedResults =
+        pendingResults.headMap(timestamp, /* inclusive= */ false);
+    for (Long skippedTimestamp : skippedResults.keySet()) {
+      PendingResult<OutputT> skippedResult = skippedResults.remove(skippedTimestamp);
+      if (skippedResult != null) {
+        skippedResult.complete(null);
+      }
+    }
+    return pendingResults.remove(timestamp);
+  }
 }
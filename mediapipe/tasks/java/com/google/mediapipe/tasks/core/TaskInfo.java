@@ -22,6 +22,7 @@ import com.google.mediapipe.proto.CalculatorProto.InputStreamInfo;
 import com.google.mediapipe.calculator.proto.FlowLimiterCalculatorProto.FlowLimiterCalculatorOptions;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * {@link TaskInfo} contains all needed informaton to initialize a MediaPipe Task {@link
@@ -57,6 +58,12 @@ public abstract class TaskInfo<T extends TaskOptions> {
      */
     public abstract Builder<T> setTaskOptions(T value);
 
+    /**
+     * Sets the {@link BaseOptions} the task options were created with. Tasks running the same
+     * model share its loaded resources.
+     */
+    public abstract Builder<T> setBaseOptions(BaseOptions value);
+
     public abstract TaskInfo<T> autoBuild();
 
     /**
@@ -91,10 +98,25 @@ public abstract class TaskInfo<T extends TaskOptions> {
 
   abstract Boolean enableFlowLimiting();
 
+  abstract Optional<BaseOptions> baseOptions();
+
+  /** The graph input stream that updates the flow limiter options in the adaptive mode. */
+  static final String FLOW_LIMITER_OPTIONS_STREAM_NAME = "flow_limiter_options";
+
+  /** The graph output stream that tells whether each input was processed or dropped. */
+  static final String FLOW_LIMITER_ALLOW_STREAM_NAME = "flow_limiter_allow";
+
   public static <T extends TaskOptions> Builder<T> builder() {
     return new AutoValue_TaskInfo.Builder<T>().setTaskName("").setTaskRunningModeName("");
   }
 
+  /** Returns the {@link FlowLimiterOptions} of the task, or the default options if not set. */
+  FlowLimiterOptions flowLimiterOptions() {
+    return baseOptions().isPresent()
+        ? baseOptions().get().flowLimiterOptions()
+        : FlowLimiterOptions.builder().build();
+  }
+
   /* Returns a list of the output stream names without the stream tags. */
   List<String> outputStreamNames() {
     List<String> streamNames = new ArrayList<>(outputStreams().size());
@@ -126,6 +148,7 @@ public abstract class TaskInfo<T extends TaskOptions> {
       graphBuilder.addNode(taskSubgraphBuilder.build());
       return graphBuilder.build();
     }
+    FlowLimiterOptions flowLimiterOptions = flowLimiterOptions();
     Node.Builder flowLimiterCalculatorBuilder =
         Node.newBuilder()
             .setCalculator("FlowLimiterCalculator")
@@ -136,10 +159,16 @@ public abstract class TaskInfo<T extends TaskOptions> {
                     .setExtension(
                         FlowLimiterCalculatorOptions.ext,
                         FlowLimiterCalculatorOptions.newBuilder()
-                            .setMaxInFlight(1)
-                            .setMaxInQueue(1)
+                            .setMaxInFlight(initialMaxInFlight(flowLimiterOptions))
+                            .setMaxInQueue(flowLimiterOptions.maxInQueue())
                             .build())
                     .build());
+    flowLimiterCalculatorBuilder.addOutputStream("ALLOW:" + FLOW_LIMITER_ALLOW_STREAM_NAME);
+    if (flowLimiterOptions.isAdaptive()) {
+      String optionsStream = "OPTIONS:" + FLOW_LIMITER_OPTIONS_STREAM_NAME;
+      graphBuilder.addInputStream(optionsStream);
+      flowLimiterCalculatorBuilder.addInputStream(optionsStream);
+    }
     for (String inputStream : inputStreams()) {
       graphBuilder.addInputStream(inputStream);
       flowLimiterCalculatorBuilder.addInputStream(stripTagIndex(inputStream));
@@ -154,6 +183,14 @@ public abstract class TaskInfo<T extends TaskOptions> {
     return graphBuilder.build();
   }
 
+  /**
+   * Returns the number of inputs in flight the flow limiter starts with. In the adaptive mode, the
+   * number starts from 1 and is raised at runtime while the latency allows it.
+   */
+  static int initialMaxInFlight(FlowLimiterOptions flowLimiterOptions) {
+    return flowLimiterOptions.isAdaptive() ? 1 : flowLimiterOptions.maxInFlight();
+  }
+
   private String stripTagIndex(String tagIndexName) {
     return tagIndexName.substring(tagIndexName.lastIndexOf(':') + 1);
   }
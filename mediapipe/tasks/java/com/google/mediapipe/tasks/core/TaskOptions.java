@@ -21,6 +21,8 @@ import com.google.mediapipe.tasks.core.proto.AccelerationProto;
 import com.google.mediapipe.tasks.core.proto.BaseOptionsProto;
 import com.google.mediapipe.tasks.core.proto.ExternalFileProto;
 import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
 
 /**
  * MediaPipe Tasks options base class. Any MediaPipe task-specific options class should extend
@@ -54,6 +56,21 @@ public abstract class TaskOptions {
               modelBuffer.rewind();
               externalFileBuilder.setFileContent(ByteString.copyFrom(modelBuffer));
             });
+    if (options.modelAssetMappedFile().isPresent()) {
+      MappedByteBuffer mapping;
+      try {
+        mapping = MappedModelFiles.get(options.modelAssetMappedFile().get());
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Failed to map the model asset file.", e);
+      }
+      // The native model resources read the model directly from the mapping, which is acquired
+      // by the TaskRunner and kept alive by MappedModelFiles until the TaskRunner is closed.
+      externalFileBuilder.setFilePointerMeta(
+          ExternalFileProto.FilePointerMeta.newBuilder()
+              .setPointer(MappedModelFiles.getAddress(mapping))
+              .setLength(mapping.capacity())
+              .build());
+    }
     AccelerationProto.Acceleration.Builder accelerationBuilder =
         AccelerationProto.Acceleration.newBuilder();
     switch (options.delegate()) {
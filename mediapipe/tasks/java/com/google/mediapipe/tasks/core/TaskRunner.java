@@ -16,33 +16,57 @@ package com.google.mediapipe.tasks.core;
 
 import android.content.Context;
 import android.util.Log;
+import com.google.mediapipe.calculator.proto.FlowLimiterCalculatorProto.FlowLimiterCalculatorOptions;
 import com.google.mediapipe.framework.AndroidAssetUtil;
 import com.google.mediapipe.framework.AndroidPacketCreator;
 import com.google.mediapipe.framework.Graph;
 import com.google.mediapipe.framework.MediaPipeException;
 import com.google.mediapipe.framework.Packet;
+import com.google.mediapipe.framework.PacketGetter;
+import com.google.mediapipe.tasks.core.logging.TasksStatsHistogramLogger;
 import com.google.mediapipe.tasks.core.logging.TasksStatsLogger;
-import com.google.mediapipe.tasks.core.logging.TasksStatsDummyLogger;
+import com.google.mediapipe.tasks.core.logging.TasksStatsLogger.StatsSnapshot;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** The runner of MediaPipe task graphs. */
 public class TaskRunner implements AutoCloseable {
   private static final String TAG = TaskRunner.class.getSimpleName();
   private static final long TIMESATMP_UNITS_PER_SECOND = 1000000;
+  private static final long MICROSECONDS_PER_MILLISECOND = 1000;
+  // How long a synchronous invocation waits for its output before checking whether it is the
+  // latest invocation, which has to wait for the graph to be idle if it produced no output.
+  private static final long RESULT_POLL_INTERVAL_MS = 10;
 
   private final OutputHandler<? extends TaskResult, ?> outputHandler;
   private final AtomicBoolean graphStarted = new AtomicBoolean(false);
   private final Graph graph;
-  private final ModelResourcesCache modelResourcesCache;
+  // Releases the model resources cache and the mapped model file used by the graph.
+  private final Runnable modelResourcesReleaser;
   private final AndroidPacketCreator packetCreator;
   private final TasksStatsLogger statsLogger;
+  // Adapts the flow limiter to the target latency in the live stream mode, or null if disabled.
+  private final AdaptiveFlowController flowController;
+  // The number of live stream inputs dropped by the flow limiter.
+  private final AtomicLong droppedInputCount;
   private long lastSeenTimestamp = Long.MIN_VALUE;
   private ErrorListener errorListener;
 
   /**
    * Create a {@link TaskRunner} instance.
    *
+   * <p>{@link TaskRunner}s that run the same task graph with the same model, identified by the
+   * {@link BaseOptions} of {@code taskInfo}, share one process-wide {@link ModelResourcesCache}
+   * so that the model is only loaded once.
+   *
    * @param context an Android {@link Context}.
    * @param taskInfo a {@link TaskInfo} instance contains task graph name, task options, and graph
    *     input and output stream names.
@@ -54,24 +78,146 @@ public class TaskRunner implements AutoCloseable {
       Context context,
       TaskInfo<? extends TaskOptions> taskInfo,
       OutputHandler<? extends TaskResult, ?> outputHandler) {
+    String registryKey = ModelResourcesCacheRegistry.createKey(taskInfo);
+    if (registryKey == null) {
+      ModelResourcesCache modelResourcesCache = new ModelResourcesCache();
+      return create(
+          context, taskInfo, outputHandler, modelResourcesCache, modelResourcesCache::release);
+    }
+    return create(
+        context,
+        taskInfo,
+        outputHandler,
+        ModelResourcesCacheRegistry.acquire(registryKey, taskInfo),
+        () -> ModelResourcesCacheRegistry.release(registryKey));
+  }
+
+  /**
+   * Create a {@link TaskRunner} instance that optionally shares a {@link ModelResourcesCache} with
+   * other {@link TaskRunner}s.
+   *
+   * @param context an Android {@link Context}.
+   * @param taskInfo a {@link TaskInfo} instance contains task graph name, task options, and graph
+   *     input and output stream names.
+   * @param outputHandler a {@link OutputHandler} instance handles task result object and runtime
+   *     exception.
+   * @param sharedModelResourcesCache a {@link ModelResourcesCache} owned by the caller, or null to
+   *     share the cache of the same model with other {@link TaskRunner}s as in {@link #create(
+   *     Context, TaskInfo, OutputHandler)}.
+   * @throws MediaPipeException for any error during {@link TaskRunner} creation.
+   */
+  static TaskRunner create(
+      Context context,
+      TaskInfo<? extends TaskOptions> taskInfo,
+      OutputHandler<? extends TaskResult, ?> outputHandler,
+      ModelResourcesCache sharedModelResourcesCache) {
+    if (sharedModelResourcesCache == null) {
+      return create(context, taskInfo, outputHandler);
+    }
+    return create(context, taskInfo, outputHandler, sharedModelResourcesCache, () -> {});
+  }
+
+  private static TaskRunner create(
+      Context context,
+      TaskInfo<? extends TaskOptions> taskInfo,
+      OutputHandler<? extends TaskResult, ?> outputHandler,
+      ModelResourcesCache graphModelResourcesCache,
+      Runnable modelResourcesCacheReleaser) {
+    String mappedModelFileKey;
+    try {
+      mappedModelFileKey = acquireMappedModelFile(taskInfo);
+    } catch (RuntimeException e) {
+      modelResourcesCacheReleaser.run();
+      throw e;
+    }
+    // The mapped model file is released after the cached model resources that point into it.
+    Runnable modelResourcesReleaser =
+        () -> {
+          try {
+            modelResourcesCacheReleaser.run();
+          } finally {
+            if (mappedModelFileKey != null) {
+              MappedModelFiles.release(mappedModelFileKey);
+            }
+          }
+        };
     TasksStatsLogger statsLogger =
-        TasksStatsDummyLogger.create(context, taskInfo.taskName(), taskInfo.taskRunningModeName());
-    AndroidAssetUtil.initializeNativeAssetManager(context);
-    Graph mediapipeGraph = new Graph();
-    mediapipeGraph.loadBinaryGraph(taskInfo.generateGraphConfig());
-    ModelResourcesCache graphModelResourcesCache = new ModelResourcesCache();
-    mediapipeGraph.setServiceObject(new ModelResourcesCacheService(), graphModelResourcesCache);
-    mediapipeGraph.addMultiStreamCallback(
-        taskInfo.outputStreamNames(),
-        packets -> {
-          outputHandler.run(packets);
-          statsLogger.recordInvocationEnd(packets.get(0).getTimestamp());
-        },
-        /* observeTimestampBounds= */ outputHandler.handleTimestampBoundChanges());
-    mediapipeGraph.startRunningGraph();
-    // Waits until all calculators are opened and the graph is fully started.
-    mediapipeGraph.waitUntilGraphIdle();
-    return new TaskRunner(mediapipeGraph, graphModelResourcesCache, outputHandler, statsLogger);
+        TasksStatsHistogramLogger.create(taskInfo.taskName(), taskInfo.taskRunningModeName());
+    AtomicLong droppedInputCount = new AtomicLong();
+    AdaptiveFlowController flowController =
+        taskInfo.enableFlowLimiting() && taskInfo.flowLimiterOptions().isAdaptive()
+            ? new AdaptiveFlowController(taskInfo.flowLimiterOptions())
+            : null;
+    try {
+      AndroidAssetUtil.initializeNativeAssetManager(context);
+      Graph mediapipeGraph = new Graph();
+      mediapipeGraph.loadBinaryGraph(taskInfo.generateGraphConfig());
+      mediapipeGraph.setServiceObject(new ModelResourcesCacheService(), graphModelResourcesCache);
+      mediapipeGraph.addMultiStreamCallback(
+          taskInfo.outputStreamNames(),
+          packets -> {
+            outputHandler.run(packets);
+            statsLogger.recordInvocationEnd(packets.get(0).getTimestamp());
+            if (flowController != null) {
+              flowController.recordResult(packets.get(0).getTimestamp());
+            }
+          },
+          /* observeTimestampBounds= */ outputHandler.handleTimestampBoundChanges());
+      if (taskInfo.enableFlowLimiting()) {
+        DropListener dropListener = taskInfo.flowLimiterOptions().dropListener().orElse(null);
+        mediapipeGraph.addPacketCallback(
+            TaskInfo.FLOW_LIMITER_ALLOW_STREAM_NAME,
+            packet -> {
+              if (PacketGetter.getBool(packet)) {
+                return;
+              }
+              droppedInputCount.incrementAndGet();
+              if (dropListener != null) {
+                dropListener.onDrop(packet.getTimestamp() / MICROSECONDS_PER_MILLISECOND);
+              }
+            });
+      }
+      // Graphs sharing a cache are started one at a time, so that only the first one loads the
+      // model resources and the others find them in the cache.
+      synchronized (graphModelResourcesCache) {
+        mediapipeGraph.startRunningGraph();
+        // Waits until all calculators are opened and the graph is fully started.
+        mediapipeGraph.waitUntilGraphIdle();
+      }
+      return new TaskRunner(
+          mediapipeGraph,
+          modelResourcesReleaser,
+          outputHandler,
+          statsLogger,
+          flowController,
+          droppedInputCount);
+    } catch (RuntimeException e) {
+      statsLogger.logInitError();
+      modelResourcesReleaser.run();
+      throw e;
+    }
+  }
+
+  /**
+   * Maps the model asset file of {@code taskInfo} for the lifetime of the {@link TaskRunner}, if
+   * the model is a mapped file.
+   *
+   * @return the {@link MappedModelFiles} key to release the mapping with, or null if the model
+   *     isn't a mapped file.
+   * @throws IllegalArgumentException if the model file can't be mapped.
+   */
+  private static String acquireMappedModelFile(TaskInfo<? extends TaskOptions> taskInfo) {
+    if (!taskInfo.baseOptions().isPresent()
+        || !taskInfo.baseOptions().get().modelAssetMappedFile().isPresent()) {
+      return null;
+    }
+    BaseOptions baseOptions = taskInfo.baseOptions().get();
+    try {
+      return MappedModelFiles.acquire(
+          baseOptions.modelAssetMappedFile().get(), baseOptions.prefetchModelAsset());
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Failed to map the model asset file.", e);
+    }
   }
 
   /**
@@ -83,6 +229,23 @@ public class TaskRunner implements AutoCloseable {
     this.errorListener = listener;
   }
 
+  /**
+   * Returns the stats of the current session of the {@link TaskRunner} instance, such as the
+   * invocation counts and the latency percentiles. A session starts when the task graph is started
+   * or restarted.
+   */
+  public StatsSnapshot getStatsSnapshot() {
+    return statsLogger.getStatsSnapshot();
+  }
+
+  /**
+   * Returns the number of inputs that have been dropped by the flow limiter in the live stream
+   * mode without being processed.
+   */
+  public long getDroppedInputCount() {
+    return droppedInputCount.get();
+  }
+
   /** Returns the {@link AndroidPacketCreator} associated to the {@link TaskRunner} instance. */
   public AndroidPacketCreator getPacketCreator() {
     return packetCreator;
@@ -94,18 +257,120 @@ public class TaskRunner implements AutoCloseable {
    * <p>Note: This method is designed for processing batch data such as unrelated images and texts.
    * The call blocks the current thread until a failure status or a successful result is returned.
    * An internal timestamp will be assigend per invocation. This method is thread-safe and allows
-   * clients to call it from different threads.
+   * clients to call it from different threads. The task runner is only locked while the input
+   * packets are added, and each caller waits for the result of its own timestamp, which the graph
+   * output callback hands off to it.
+   *
+   * @param inputs a map contains (input stream {@link String}, data {@link Packet}) pairs.
+   */
+  public TaskResult process(Map<String, Packet> inputs) {
+    long syntheticInputTimestamp;
+    CompletableFuture<? extends TaskResult> result;
+    synchronized (this) {
+      syntheticInputTimestamp = generateSyntheticTimestamp();
+      // TODO: Support recording GPU input arrival.
+      statsLogger.recordCpuInputArrival(syntheticInputTimestamp);
+      result = addPacketsForResult(inputs, syntheticInputTimestamp);
+    }
+    return awaitResult(result, syntheticInputTimestamp);
+  }
+
+  /**
+   * An asynchronous method for pipelined processing of batch data.
+   *
+   * <p>Note: This method is designed for processing batch data such as unrelated images and texts
+   * at a high throughput. Unlike {@link #process(Map)}, the call returns as soon as the input
+   * packets are added to the graph, so that several invocations can be in flight at once and the
+   * graph calculators work on consecutive inputs concurrently. An internal timestamp will be
+   * assigend per invocation. This method is thread-safe and allows clients to call it from
+   * different threads.
+   *
+   * <p>The returned future is completed exactly once, by the thread that observes the outcome of
+   * the invocation, which is usually the graph output callback thread:
+   *
+   * <ul>
+   *   <li>with the task result of the invocation's timestamp;
+   *   <li>with null if the invocation produced no output, once a later output is handled or the
+   *       graph is flushed;
+   *   <li>exceptionally if the input packets can't be added to the graph or the graph fails. A
+   *       failed graph rejects all further inputs, so the futures of all the pending invocations
+   *       are completed exceptionally with the graph error at the latest by the next call to this
+   *       method, {@link #flush()}, {@link #restart()} or {@link #close()}.
+   * </ul>
+   *
+   * @param inputs a map contains (input stream {@link String}, data {@link Packet}) pairs.
+   */
+  public synchronized CompletableFuture<? extends TaskResult> submit(Map<String, Packet> inputs) {
+    long syntheticInputTimestamp = generateSyntheticTimestamp();
+    statsLogger.recordCpuInputArrival(syntheticInputTimestamp);
+    return submitPackets(inputs, syntheticInputTimestamp, /* executor= */ null);
+  }
+
+  /**
+   * An asynchronous method for pipelined processing of batch data, whose returned future is
+   * completed on the given {@link Executor}. The task result is still created on the graph output
+   * callback thread while the output packets are valid, but the future and its dependent stages are
+   * completed on {@code executor}, so that they never block the graph. See {@link #submit(Map)} for
+   * the completion guarantees.
    *
    * @param inputs a map contains (input stream {@link String}, data {@link Packet}) pairs.
+   * @param executor the {@link Executor} that completes the returned future.
    */
-  public synchronized TaskResult process(Map<String, Packet> inputs) {
+  public synchronized CompletableFuture<? extends TaskResult> submit(
+      Map<String, Packet> inputs, Executor executor) {
     long syntheticInputTimestamp = generateSyntheticTimestamp();
-    // TODO: Support recording GPU input arrival.
     statsLogger.recordCpuInputArrival(syntheticInputTimestamp);
-    addPackets(inputs, syntheticInputTimestamp);
-    graph.waitUntilGraphIdle();
-    lastSeenTimestamp = outputHandler.getLatestOutputTimestamp();
-    return outputHandler.retrieveCachedTaskResult();
+    return submitPackets(inputs, syntheticInputTimestamp, executor);
+  }
+
+  /**
+   * An asynchronous method for pipelined processing of offline streaming data.
+   *
+   * <p>Note: This method is designed for processing offline streaming data such as the decoded
+   * frames from a video file without blocking the current thread. The caller must ensure that the
+   * input timestamp is greater than the timestamps of previous invocations. The returned future
+   * has the same completion guarantees as the one of {@link #submit(Map)}.
+   *
+   * @param inputs a map contains (input stream {@link String}, data {@link Packet}) pairs.
+   * @param inputTimestamp the timestamp of the input packets.
+   */
+  public synchronized CompletableFuture<? extends TaskResult> submit(
+      Map<String, Packet> inputs, long inputTimestamp) {
+    validateInputTimstamp(inputTimestamp);
+    statsLogger.recordCpuInputArrival(inputTimestamp);
+    return submitPackets(inputs, inputTimestamp, /* executor= */ null);
+  }
+
+  /**
+   * An asynchronous method for pipelined processing of offline streaming data, whose returned
+   * future is completed on the given {@link Executor}. See {@link #submit(Map)} and {@link
+   * #submit(Map, Executor)}.
+   *
+   * @param inputs a map contains (input stream {@link String}, data {@link Packet}) pairs.
+   * @param inputTimestamp the timestamp of the input packets.
+   * @param executor the {@link Executor} that completes the returned future.
+   */
+  public synchronized CompletableFuture<? extends TaskResult> submit(
+      Map<String, Packet> inputs, long inputTimestamp, Executor executor) {
+    validateInputTimstamp(inputTimestamp);
+    statsLogger.recordCpuInputArrival(inputTimestamp);
+    return submitPackets(inputs, inputTimestamp, executor);
+  }
+
+  /**
+   * Blocks the current thread until the graph is idle, and completes the futures of all the
+   * invocations submitted by the {@code submit} methods.
+   *
+   * @throws MediaPipeException if the graph fails, after completing the futures exceptionally.
+   */
+  public synchronized void flush() {
+    try {
+      graph.waitUntilGraphIdle();
+    } catch (MediaPipeException e) {
+      outputHandler.failPendingResults(e);
+      throw e;
+    }
+    outputHandler.completePendingResults();
   }
 
   /**
@@ -121,12 +386,14 @@ public class TaskRunner implements AutoCloseable {
    * @param inputs a map contains (input stream {@link String}, data {@link Packet}) pairs.
    * @param inputTimestamp the timestamp of the input packets.
    */
-  public synchronized TaskResult process(Map<String, Packet> inputs, long inputTimestamp) {
-    validateInputTimstamp(inputTimestamp);
-    statsLogger.recordCpuInputArrival(inputTimestamp);
-    addPackets(inputs, inputTimestamp);
-    graph.waitUntilGraphIdle();
-    return outputHandler.retrieveCachedTaskResult();
+  public TaskResult process(Map<String, Packet> inputs, long inputTimestamp) {
+    CompletableFuture<? extends TaskResult> result;
+    synchronized (this) {
+      validateInputTimstamp(inputTimestamp);
+      statsLogger.recordCpuInputArrival(inputTimestamp);
+      result = addPacketsForResult(inputs, inputTimestamp);
+    }
+    return awaitResult(result, inputTimestamp);
   }
 
   /**
@@ -145,6 +412,18 @@ public class TaskRunner implements AutoCloseable {
   public synchronized void send(Map<String, Packet> inputs, long inputTimestamp) {
     validateInputTimstamp(inputTimestamp);
     statsLogger.recordCpuInputArrival(inputTimestamp);
+    if (flowController != null) {
+      flowController.recordInputSent(inputTimestamp);
+      int maxInFlight = flowController.pollInFlightChange();
+      if (maxInFlight > 0) {
+        // Copies the caller's map, which may be immutable or reused for the next inputs.
+        inputs = new HashMap<>(inputs);
+        inputs.put(
+            TaskInfo.FLOW_LIMITER_OPTIONS_STREAM_NAME,
+            packetCreator.createProto(
+                FlowLimiterCalculatorOptions.newBuilder().setMaxInFlight(maxInFlight).build()));
+      }
+    }
     addPackets(inputs, inputTimestamp);
   }
 
@@ -158,8 +437,10 @@ public class TaskRunner implements AutoCloseable {
         graphStarted.set(false);
         graph.closeAllPacketSources();
         graph.waitUntilGraphDone();
+        outputHandler.completePendingResults();
         statsLogger.logSessionEnd();
       } catch (MediaPipeException e) {
+        outputHandler.failPendingResults(e);
         reportError(e);
       }
     }
@@ -184,50 +465,163 @@ public class TaskRunner implements AutoCloseable {
       graphStarted.set(false);
       graph.closeAllPacketSources();
       graph.waitUntilGraphDone();
+      outputHandler.completePendingResults();
       statsLogger.logSessionEnd();
-      if (modelResourcesCache != null) {
-        modelResourcesCache.release();
-      }
     } catch (MediaPipeException e) {
+      outputHandler.failPendingResults(e);
       // Note: errors during Process are reported at the earliest opportunity,
       // which may be addPacket or waitUntilDone, depending on timing. For consistency,
       // we want to always report them using the same async handler if installed.
       reportError(e);
+    } finally {
+      outputHandler.close();
+      try {
+        graph.tearDown();
+      } catch (MediaPipeException e) {
+        reportError(e);
+      } finally {
+        // Released once the graph no longer uses the model resources, even if the graph failed.
+        modelResourcesReleaser.run();
+      }
     }
+  }
+
+  private synchronized void addPackets(Map<String, Packet> inputs, long inputTimestamp) {
+    checkGraphStarted();
     try {
-      graph.tearDown();
+      addPacketsToGraph(inputs, inputTimestamp);
     } catch (MediaPipeException e) {
-      reportError(e);
+      // TODO: do not suppress exceptions here!
+      if (errorListener == null) {
+        Log.e(TAG, "Mediapipe error: ", e);
+      } else {
+        throw e;
+      }
     }
   }
 
-  private synchronized void addPackets(Map<String, Packet> inputs, long inputTimestamp) {
-    if (!graphStarted.get()) {
-      reportError(
-          new MediaPipeException(
-              MediaPipeException.StatusCode.FAILED_PRECONDITION.ordinal(),
-              "The task graph hasn't been successfully started or error occurs during graph"
-                  + " initializaton."));
-    }
+  /**
+   * Registers the pending result of a synchronous invocation and adds its input packets to the
+   * graph. Errors are handled as in {@link #addPackets}, after failing the pending results.
+   */
+  private CompletableFuture<? extends TaskResult> addPacketsForResult(
+      Map<String, Packet> inputs, long inputTimestamp) {
+    checkGraphStarted();
+    // Registered first, as the graph may output the result before the packets are all added.
+    CompletableFuture<? extends TaskResult> result =
+        outputHandler.registerPendingResult(inputTimestamp, /* executor= */ null);
     try {
-      for (Map.Entry<String, Packet> entry : inputs.entrySet()) {
-        // addConsumablePacketToInputStream allows the graph to take exclusive ownership of the
-        // packet, which may allow for more memory optimizations.
-        graph.addConsumablePacketToInputStream(entry.getKey(), entry.getValue(), inputTimestamp);
-        // If addConsumablePacket succeeded, we don't need to release the packet ourselves.
-        entry.setValue(null);
-      }
+      addPacketsToGraph(inputs, inputTimestamp);
     } catch (MediaPipeException e) {
+      outputHandler.failPendingResults(e);
       // TODO: do not suppress exceptions here!
       if (errorListener == null) {
         Log.e(TAG, "Mediapipe error: ", e);
       } else {
         throw e;
       }
+    }
+    return result;
+  }
+
+  /**
+   * Waits for the result of a synchronous invocation, and stops tracking it on return.
+   *
+   * <p>The result is handed off by the graph output callback, or completed with null by the output
+   * of a later invocation if the invocation produced no output. Only the latest invocation has to
+   * wait for the graph to be idle to find out that it produced no output or that the graph failed,
+   * so that callers don't wait for the graph to be idle while other callers keep adding inputs.
+   *
+   * @throws MediaPipeException if the graph fails.
+   */
+  private TaskResult awaitResult(
+      CompletableFuture<? extends TaskResult> result, long inputTimestamp) {
+    try {
+      while (true) {
+        try {
+          return result.get(RESULT_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+          if (isLatestInvocation(inputTimestamp)) {
+            try {
+              graph.waitUntilGraphIdle();
+            } catch (MediaPipeException graphError) {
+              outputHandler.failPendingResults(graphError);
+              throw graphError;
+            }
+            // All the outputs of the invocation have been handled once the graph is idle.
+            return result.isDone() ? result.get() : null;
+          }
+        }
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new MediaPipeException(
+          MediaPipeException.StatusCode.INTERNAL.ordinal(), e.getCause().getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MediaPipeException(
+          MediaPipeException.StatusCode.CANCELLED.ordinal(),
+          "Interrupted while waiting for the task result.");
+    } finally {
+      outputHandler.removePendingResult(inputTimestamp);
+    }
+  }
+
+  /** Returns true if no invocation was added to the graph after the one of the given timestamp. */
+  private synchronized boolean isLatestInvocation(long inputTimestamp) {
+    return lastSeenTimestamp == inputTimestamp;
+  }
+
+  /**
+   * Registers the pending result of a pipelined invocation and adds its input packets to the
+   * graph. Errors are reported through the returned future rather than thrown.
+   */
+  private CompletableFuture<? extends TaskResult> submitPackets(
+      Map<String, Packet> inputs, long inputTimestamp, Executor executor) {
+    checkGraphStarted();
+    // Registered first, as the graph may output the result before the packets are all added.
+    CompletableFuture<? extends TaskResult> result =
+        outputHandler.registerPendingResult(inputTimestamp, executor);
+    try {
+      addPacketsToGraph(inputs, inputTimestamp);
+    } catch (MediaPipeException e) {
+      // The graph rejects all the inputs once a calculator has failed, in which case none of the
+      // pending invocations will produce an output.
+      outputHandler.failPendingResults(e);
+    }
+    return result;
+  }
+
+  private void checkGraphStarted() {
+    if (!graphStarted.get()) {
+      reportError(
+          new MediaPipeException(
+              MediaPipeException.StatusCode.FAILED_PRECONDITION.ordinal(),
+              "The task graph hasn't been successfully started or error occurs during graph"
+                  + " initializaton."));
+    }
+  }
+
+  private void addPacketsToGraph(Map<String, Packet> inputs, long inputTimestamp) {
+    String[] streamNames = new String[inputs.size()];
+    Packet[] packets = new Packet[inputs.size()];
+    int i = 0;
+    for (Map.Entry<String, Packet> entry : inputs.entrySet()) {
+      streamNames[i] = entry.getKey();
+      packets[i] = entry.getValue();
+      ++i;
+    }
+    try {
+      // addConsumablePacketsToInputStreams adds all the packets in a single native call, and
+      // allows the graph to take exclusive ownership of the packets, which may allow for more
+      // memory optimizations. The packets it consumes are set to null in the array.
+      graph.addConsumablePacketsToInputStreams(streamNames, packets, inputTimestamp);
     } finally {
-      for (Packet packet : inputs.values()) {
-        // In case of error, addConsumablePacketToInputStream will not release the packet, so we
-        // have to release it ourselves.
+      for (Packet packet : packets) {
+        // In case of error, addConsumablePacketsToInputStreams will not release the remaining
+        // packets, so we have to release them ourselves.
         if (packet != null) {
           packet.release();
         }
@@ -262,14 +656,18 @@ public class TaskRunner implements AutoCloseable {
   /** Private constructor. */
   private TaskRunner(
       Graph graph,
-      ModelResourcesCache modelResourcesCache,
+      Runnable modelResourcesReleaser,
       OutputHandler<? extends TaskResult, ?> outputHandler,
-      TasksStatsLogger statsLogger) {
+      TasksStatsLogger statsLogger,
+      AdaptiveFlowController flowController,
+      AtomicLong droppedInputCount) {
     this.outputHandler = outputHandler;
     this.graph = graph;
-    this.modelResourcesCache = modelResourcesCache;
+    this.modelResourcesReleaser = modelResourcesReleaser;
     this.packetCreator = new AndroidPacketCreator(graph);
     this.statsLogger = statsLogger;
+    this.flowController = flowController;
+    this.droppedInputCount = droppedInputCount;
     graphStarted.set(true);
     this.statsLogger.logSessionStart();
   }
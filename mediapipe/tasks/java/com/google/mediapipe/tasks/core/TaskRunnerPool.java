@@ -0,0 +1,247 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.core;
+
+import android.content.Context;
+import com.google.mediapipe.framework.AndroidPacketCreator;
+import com.google.mediapipe.framework.MediaPipeException;
+import com.google.mediapipe.framework.Packet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A pool of independently started {@link TaskRunner}s that are built from the same {@link
+ * TaskInfo} and share the same {@link ModelResourcesCache}.
+ *
+ * <p>A single {@link TaskRunner} runs all its invocations through one task graph, whose inference
+ * runs on one input at a time. {@link TaskRunnerPool} dispatches each call to an idle runner
+ * instead, so that the calls from different threads run inference concurrently on different
+ * graphs, while the model resources are only loaded once.
+ *
+ * <p>Note: This class is designed for processing batch data such as unrelated images and texts.
+ * Streaming data must be sent to a single {@link TaskRunner} to keep its timestamps in order.
+ */
+public class TaskRunnerPool implements AutoCloseable {
+  /**
+   * Interface for creating the input packets of one invocation. The packets must be created with
+   * the given {@link AndroidPacketCreator} as it is bound to the {@link TaskRunner} that will
+   * consume them.
+   */
+  public interface InputPacketsCreator {
+    Map<String, Packet> createInputPackets(AndroidPacketCreator packetCreator);
+  }
+
+  private final List<TaskRunner> runners;
+  private final BlockingQueue<TaskRunner> idleRunners;
+  // The cache shared by the runners of a model that the registry can't identify, or null if the
+  // runners share the registered cache of their model.
+  private final ModelResourcesCache privateModelResourcesCache;
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  /**
+   * Create a {@link TaskRunnerPool} instance.
+   *
+   * <p>The runners share the process-wide {@link ModelResourcesCache} of their model with the other
+   * {@link TaskRunner}s of the same model, as in {@link TaskRunner#create(Context, TaskInfo,
+   * OutputHandler)}.
+   *
+   * @param context an Android {@link Context}.
+   * @param taskInfo a {@link TaskInfo} instance contains task graph name, task options, and graph
+   *     input and output stream names.
+   * @param outputHandlerFactory creates a new {@link OutputHandler} for each runner in the pool.
+   * @param numRunners the number of task graphs to start.
+   * @throws IllegalArgumentException if {@code numRunners} is not positive.
+   * @throws MediaPipeException for any error during {@link TaskRunnerPool} creation.
+   */
+  public static TaskRunnerPool create(
+      Context context,
+      TaskInfo<? extends TaskOptions> taskInfo,
+      Supplier<OutputHandler<? extends TaskResult, ?>> outputHandlerFactory,
+      int numRunners) {
+    if (numRunners <= 0) {
+      throw new IllegalArgumentException(
+          String.format("The number of runners must be positive, found: %d.", numRunners));
+    }
+    ModelResourcesCache privateModelResourcesCache =
+        ModelResourcesCacheRegistry.createKey(taskInfo) == null ? new ModelResourcesCache() : null;
+    List<TaskRunner> runners = new ArrayList<>(numRunners);
+    try {
+      for (int i = 0; i < numRunners; ++i) {
+        runners.add(
+            TaskRunner.create(
+                context, taskInfo, outputHandlerFactory.get(), privateModelResourcesCache));
+      }
+    } catch (RuntimeException e) {
+      for (TaskRunner runner : runners) {
+        runner.close();
+      }
+      if (privateModelResourcesCache != null) {
+        privateModelResourcesCache.release();
+      }
+      throw e;
+    }
+    return new TaskRunnerPool(runners, privateModelResourcesCache);
+  }
+
+  /**
+   * Sets a callback to be invoked when exceptions are thrown by any {@link TaskRunner} in the
+   * pool.
+   *
+   * @param listener an {@link ErrorListener} callback.
+   */
+  public void setErrorListener(ErrorListener listener) {
+    for (TaskRunner runner : runners) {
+      runner.setErrorListener(listener);
+    }
+  }
+
+  /** Returns the number of {@link TaskRunner}s in the pool. */
+  public int size() {
+    return runners.size();
+  }
+
+  /**
+   * Returns the {@code index}-th {@link TaskRunner} of the pool, for instance to query its stats.
+   * The inputs must be sent with {@link #run} instead, so that the pool doesn't close the runner
+   * while it processes them. The runner is closed with the pool.
+   *
+   * @throws IndexOutOfBoundsException if {@code index} is not in [0, {@link #size()}).
+   */
+  public TaskRunner getRunner(int index) {
+    return runners.get(index);
+  }
+
+  /**
+   * A synchronous method for processing batch data on the first idle {@link TaskRunner}.
+   *
+   * <p>Note: The call blocks the current thread until a runner becomes idle and then until a
+   * failure status or a successful result is returned. This method is thread-safe, and up to
+   * {@link #size()} calls from different threads run concurrently.
+   *
+   * @param inputsCreator an {@link InputPacketsCreator} that creates the (input stream {@link
+   *     String}, data {@link Packet}) pairs with the packet creator of the selected runner.
+   * @throws MediaPipeException if the pool is closed or the calling thread is interrupted while
+   *     waiting for an idle runner.
+   */
+  public TaskResult process(InputPacketsCreator inputsCreator) {
+    return run(
+        runner -> runner.process(inputsCreator.createInputPackets(runner.getPacketCreator())));
+  }
+
+  /**
+   * Applies {@code function} to the first idle {@link TaskRunner}, which no other call uses until
+   * {@code function} returns, and returns its result. The inputs must be created with the packet
+   * creator of the given runner, e.g. to submit a batch of inputs to it.
+   *
+   * <p>Note: The call blocks the current thread until a runner becomes idle. This method is
+   * thread-safe, and {@link #close()} waits for the calls in flight to return.
+   *
+   * @param <T> the result type of {@code function}.
+   * @param function the function to apply to the selected runner.
+   * @throws MediaPipeException if the pool is closed or the calling thread is interrupted while
+   *     waiting for an idle runner.
+   */
+  public <T> T run(Function<TaskRunner, T> function) {
+    TaskRunner runner = acquireIdleRunner();
+    try {
+      return function.apply(runner);
+    } finally {
+      idleRunners.add(runner);
+    }
+  }
+
+  /**
+   * Closes and cleans up all {@link TaskRunner}s and their {@link ModelResourcesCache}. The calls
+   * in flight are awaited, and the later calls are rejected.
+   */
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    boolean interrupted = false;
+    RuntimeException closeError = null;
+    // Each runner is closed once it is back in the idle queue, i.e. once its call returned.
+    List<TaskRunner> closedRunners = new ArrayList<>(runners.size());
+    while (closedRunners.size() < runners.size()) {
+      TaskRunner runner;
+      try {
+        runner = idleRunners.take();
+      } catch (InterruptedException e) {
+        interrupted = true;
+        continue;
+      }
+      try {
+        runner.close();
+      } catch (RuntimeException e) {
+        closeError = closeError == null ? e : closeError;
+      }
+      closedRunners.add(runner);
+    }
+    // Wakes up the calls still waiting for an idle runner, which are then rejected.
+    idleRunners.addAll(closedRunners);
+    if (privateModelResourcesCache != null) {
+      privateModelResourcesCache.release();
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (closeError != null) {
+      throw closeError;
+    }
+  }
+
+  private TaskRunner acquireIdleRunner() {
+    checkNotClosed();
+    TaskRunner runner;
+    try {
+      runner = idleRunners.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MediaPipeException(
+          MediaPipeException.StatusCode.CANCELLED.ordinal(),
+          "Interrupted while waiting for an idle task runner.");
+    }
+    if (closed.get()) {
+      // Hands the runner over to close().
+      idleRunners.add(runner);
+      checkNotClosed();
+    }
+    return runner;
+  }
+
+  private void checkNotClosed() {
+    if (closed.get()) {
+      throw new MediaPipeException(
+          MediaPipeException.StatusCode.FAILED_PRECONDITION.ordinal(),
+          "The task runner pool has been closed.");
+    }
+  }
+
+  /** Private constructor. */
+  private TaskRunnerPool(
+      List<TaskRunner> runners, ModelResourcesCache privateModelResourcesCache) {
+    this.runners = Collections.unmodifiableList(runners);
+    this.idleRunners = new ArrayBlockingQueue<>(runners.size(), /* fair= */ true, runners);
+    this.privateModelResourcesCache = privateModelResourcesCache;
+  }
+}
@@ -0,0 +1,23 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#include "mediapipe/tasks/java/com/google/mediapipe/tasks/core/jni/mapped_model_files_jni.h"
+
+#include <cstdint>
+
+JNIEXPORT jlong JNICALL MAPPED_MODEL_FILES_METHOD(
+    nativeGetDirectBufferAddress)(JNIEnv* env, jclass clazz, jobject buffer) {
+  return static_cast<jlong>(
+      reinterpret_cast<intptr_t>(env->GetDirectBufferAddress(buffer)));
+}
@@ -0,0 +1,126 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.core.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in microseconds.
+ *
+ * <p>Latencies are counted in log-linear buckets: each power of two range is split into {@link
+ * #SUB_BUCKET_COUNT} linear buckets, so that quantiles are accurate to within about 6% of their
+ * value. Recording a latency is a few atomic updates and never allocates.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Latencies up to 2^MAX_EXPONENT microseconds (about 12 days) are counted exactly, larger ones
+  // are counted in the last bucket.
+  private static final int MAX_EXPONENT = 40;
+  private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  /** Records a latency in microseconds. Negative latencies are recorded as 0. */
+  void record(long latencyMicros) {
+    long value = Math.max(latencyMicros, 0);
+    bucketCounts.incrementAndGet(bucketIndex(value));
+    count.incrementAndGet();
+    totalMicros.addAndGet(value);
+    long max = maxMicros.get();
+    while (value > max && !maxMicros.compareAndSet(max, value)) {
+      max = maxMicros.get();
+    }
+  }
+
+  /** Returns the number of recorded latencies. */
+  long count() {
+    return count.get();
+  }
+
+  /** Returns the sum of the recorded latencies in microseconds. */
+  long totalMicros() {
+    return totalMicros.get();
+  }
+
+  /** Returns the maximum recorded latency in microseconds. */
+  long maxMicros() {
+    return maxMicros.get();
+  }
+
+  /**
+   * Returns the estimated latency in microseconds below which the {@code quantile} fraction of the
+   * recorded latencies fall, or 0 if no latency has been recorded.
+   *
+   * <p>The quantile is estimated from a racy read of the buckets, and may not account for the
+   * latencies that are recorded concurrently.
+   */
+  double quantileMicros(double quantile) {
+    long[] counts = new long[BUCKET_COUNT];
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      counts[i] = bucketCounts.get(i);
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long cumulative = 0;
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      cumulative += counts[i];
+      if (cumulative >= rank && i < BUCKET_COUNT - 1) {
+        // The midpoint of the bucket, capped by the maximum latency.
+        return Math.min((bucketLowerBound(i) + bucketLowerBound(i + 1)) / 2.0, maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+
+  /** Clears all the recorded latencies. */
+  void reset() {
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      bucketCounts.set(i, 0);
+    }
+    count.set(0);
+    totalMicros.set(0);
+    maxMicros.set(0);
+  }
+
+  private static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  private static long bucketLowerBound(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+    int subBucket = index % SUB_BUCKET_COUNT;
+    return (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+  }
+}
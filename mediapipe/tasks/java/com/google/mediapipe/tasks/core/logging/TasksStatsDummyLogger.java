@@ -75,4 +75,10 @@ public class TasksStatsDummyLogger implements TasksStatsLogger {
   /** Logs the MediaPipe Tasks API initialization error. */
   @Override
   public void logInitError() {}
+
+  /** Returns an empty stats snapshot. */
+  @Override
+  public StatsSnapshot getStatsSnapshot() {
+    return StatsSnapshot.createDefault();
+  }
 }
@@ -0,0 +1,214 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.core.logging;
+
+import android.util.Log;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A MediaPipe Tasks stats logger that keeps the invocation counts and a latency histogram of the
+ * current session in memory, to be pulled with {@link #getStatsSnapshot()}.
+ *
+ * <p>The invocations that received input data are tracked in a fixed size ring buffer in the
+ * order of their timestamps. When an invocation ends, the invocations of smaller timestamps that
+ * are still pending never finished, and are counted as dropped. Recording an event is a few
+ * atomic updates, never blocks, and never allocates, so the logger can be left on in production.
+ *
+ * <p>Note: The input arrivals must be recorded by one thread at a time, and so must the invocation
+ * ends, which is how {@link com.google.mediapipe.tasks.core.TaskRunner} records them. The session
+ * may start or end while invocations are still ending on the graph thread: the pending invocations
+ * are claimed with compare-and-set, so that each of them is counted once.
+ */
+public class TasksStatsHistogramLogger implements TasksStatsLogger {
+  private static final String TAG = TasksStatsHistogramLogger.class.getSimpleName();
+  // The maximum number of invocations that are tracked while pending. The latencies of the
+  // invocations that arrive while the buffer is full are not recorded.
+  private static final int MAX_PENDING_INVOCATIONS = 256;
+
+  private final String taskName;
+  private final String taskRunningMode;
+  private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+  private final AtomicInteger cpuInputCount = new AtomicInteger();
+  private final AtomicInteger gpuInputCount = new AtomicInteger();
+  private final AtomicInteger droppedCount = new AtomicInteger();
+  private final long[] pendingTimestamps = new long[MAX_PENDING_INVOCATIONS];
+  private final long[] pendingArrivalNanos = new long[MAX_PENDING_INVOCATIONS];
+  // The sequence numbers of the next pending invocation to write and to read. The writer publishes
+  // a slot by advancing writeSequence, and the reader or a session boundary releases it by
+  // advancing readSequence, which never decreases.
+  private final AtomicLong writeSequence = new AtomicLong();
+  private final AtomicLong readSequence = new AtomicLong();
+  private volatile long sessionStartNanos = System.nanoTime();
+
+  /**
+   * Creates the MediaPipe Tasks stats histogram logger.
+   *
+   * @param taskNameStr the task api name.
+   * @param taskRunningModeStr the task running mode string representation.
+   */
+  public static TasksStatsHistogramLogger create(String taskNameStr, String taskRunningModeStr) {
+    return new TasksStatsHistogramLogger(taskNameStr, taskRunningModeStr);
+  }
+
+  private TasksStatsHistogramLogger(String taskName, String taskRunningMode) {
+    this.taskName = taskName;
+    this.taskRunningMode = taskRunningMode;
+  }
+
+  /** Logs the start of a MediaPipe Tasks API session, and resets the stats. */
+  @Override
+  public void logSessionStart() {
+    latencyHistogram.reset();
+    cpuInputCount.set(0);
+    gpuInputCount.set(0);
+    droppedCount.set(0);
+    releasePendingInvocations();
+    sessionStartNanos = System.nanoTime();
+  }
+
+  /**
+   * Records MediaPipe Tasks API receiving CPU input data.
+   *
+   * @param packetTimestamp the input packet timestamp that acts as the identifier of the api
+   *     invocation.
+   */
+  @Override
+  public void recordCpuInputArrival(long packetTimestamp) {
+    cpuInputCount.incrementAndGet();
+    recordInputArrival(packetTimestamp);
+  }
+
+  /**
+   * Records MediaPipe Tasks API receiving GPU input data.
+   *
+   * @param packetTimestamp the input packet timestamp that acts as the identifier of the api
+   *     invocation.
+   */
+  @Override
+  public void recordGpuInputArrival(long packetTimestamp) {
+    gpuInputCount.incrementAndGet();
+    recordInputArrival(packetTimestamp);
+  }
+
+  /**
+   * Records the end of a Mediapipe Tasks API invocation.
+   *
+   * @param packetTimestamp the output packet timestamp that acts as the identifier of the api
+   *     invocation.
+   */
+  @Override
+  public void recordInvocationEnd(long packetTimestamp) {
+    long now = System.nanoTime();
+    long read = readSequence.get();
+    while (read < writeSequence.get()) {
+      int slot = (int) (read % MAX_PENDING_INVOCATIONS);
+      long pendingTimestamp = pendingTimestamps[slot];
+      long pendingArrival = pendingArrivalNanos[slot];
+      if (pendingTimestamp > packetTimestamp) {
+        break;
+      }
+      // Claims the slot, unless the session started or ended meanwhile and released it, in which
+      // case the slot may have been reused and is read again from the new read sequence.
+      if (!readSequence.compareAndSet(read, read + 1)) {
+        read = readSequence.get();
+        continue;
+      }
+      if (pendingTimestamp == packetTimestamp) {
+        latencyHistogram.record(TimeUnit.NANOSECONDS.toMicros(now - pendingArrival));
+      } else {
+        droppedCount.incrementAndGet();
+      }
+      ++read;
+    }
+  }
+
+  /** Logs the MediaPipe Tasks API periodic invocation report. */
+  @Override
+  public void logInvocationReport(StatsSnapshot stats) {
+    if (!Log.isLoggable(TAG, Log.DEBUG)) {
+      return;
+    }
+    Log.d(
+        TAG,
+        String.format(
+            "%s (%s): %d finished, %d dropped, %.1f/s, latency p50 %.2f ms, p90 %.2f ms, p99 %.2f"
+                + " ms, max %d ms.",
+            taskName,
+            taskRunningMode,
+            stats.finishedCount(),
+            stats.droppedCount(),
+            stats.throughputPerSecond(),
+            stats.p50LatencyMs(),
+            stats.p90LatencyMs(),
+            stats.p99LatencyMs(),
+            stats.peakLatencyMs()));
+  }
+
+  /**
+   * Logs the Tasks API session end event. The invocations still pending at the end of the session
+   * never finished, and are counted as dropped.
+   */
+  @Override
+  public void logSessionEnd() {
+    droppedCount.addAndGet(releasePendingInvocations());
+    logInvocationReport(getStatsSnapshot());
+  }
+
+  /** Logs the MediaPipe Tasks API initialization error. */
+  @Override
+  public void logInitError() {
+    Log.e(TAG, String.format("%s (%s) failed to initialize.", taskName, taskRunningMode));
+  }
+
+  /** Returns the stats of the current MediaPipe Tasks API session. */
+  @Override
+  public StatsSnapshot getStatsSnapshot() {
+    return StatsSnapshot.create(
+        cpuInputCount.get(),
+        gpuInputCount.get(),
+        (int) latencyHistogram.count(),
+        droppedCount.get(),
+        TimeUnit.MICROSECONDS.toMillis(latencyHistogram.totalMicros()),
+        TimeUnit.MICROSECONDS.toMillis(latencyHistogram.maxMicros()),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sessionStartNanos),
+        latencyHistogram.quantileMicros(0.5) / 1000.0,
+        latencyHistogram.quantileMicros(0.9) / 1000.0,
+        latencyHistogram.quantileMicros(0.99) / 1000.0);
+  }
+
+  /** Releases all the pending invocations, and returns how many were released. */
+  private int releasePendingInvocations() {
+    while (true) {
+      long read = readSequence.get();
+      long write = writeSequence.get();
+      if (readSequence.compareAndSet(read, write)) {
+        return (int) (write - read);
+      }
+    }
+  }
+
+  private void recordInputArrival(long packetTimestamp) {
+    long write = writeSequence.get();
+    if (write - readSequence.get() >= MAX_PENDING_INVOCATIONS) {
+      return;
+    }
+    int slot = (int) (write % MAX_PENDING_INVOCATIONS);
+    pendingTimestamps[slot] = packetTimestamp;
+    pendingArrivalNanos[slot] = System.nanoTime();
+    writeSequence.set(write + 1);
+  }
+}
@@ -29,6 +29,30 @@ public interface TasksStatsLogger {
         long totalLatencyMs,
         long peakLatencyMs,
         long elapsedTimeMs) {
+      return create(
+          cpuInputCount,
+          gpuInputCount,
+          finishedCount,
+          droppedCount,
+          totalLatencyMs,
+          peakLatencyMs,
+          elapsedTimeMs,
+          /* p50LatencyMs= */ 0,
+          /* p90LatencyMs= */ 0,
+          /* p99LatencyMs= */ 0);
+    }
+
+    static StatsSnapshot create(
+        int cpuInputCount,
+        int gpuInputCount,
+        int finishedCount,
+        int droppedCount,
+        long totalLatencyMs,
+        long peakLatencyMs,
+        long elapsedTimeMs,
+        double p50LatencyMs,
+        double p90LatencyMs,
+        double p99LatencyMs) {
       return new AutoValue_TasksStatsLogger_StatsSnapshot(
           cpuInputCount,
           gpuInputCount,
@@ -36,26 +60,50 @@ public interface TasksStatsLogger {
           droppedCount,
           totalLatencyMs,
           peakLatencyMs,
-          elapsedTimeMs);
+          elapsedTimeMs,
+          p50LatencyMs,
+          p90LatencyMs,
+          p99LatencyMs);
     }
 
     static StatsSnapshot createDefault() {
-      return new AutoValue_TasksStatsLogger_StatsSnapshot(0, 0, 0, 0, 0, 0, 0);
+      return create(0, 0, 0, 0, 0, 0, 0);
     }
 
-    abstract int cpuInputCount();
+    /** The number of invocations that received CPU input data. */
+    public abstract int cpuInputCount();
+
+    /** The number of invocations that received GPU input data. */
+    public abstract int gpuInputCount();
 
-    abstract int gpuInputCount();
+    /** The number of invocations that finished. */
+    public abstract int finishedCount();
 
-    abstract int finishedCount();
+    /** The number of invocations that received input data but never finished. */
+    public abstract int droppedCount();
 
-    abstract int droppedCount();
+    /** The sum of the latencies of the finished invocations in milliseconds. */
+    public abstract long totalLatencyMs();
 
-    abstract long totalLatencyMs();
+    /** The maximum latency of the finished invocations in milliseconds. */
+    public abstract long peakLatencyMs();
 
-    abstract long peakLatencyMs();
+    /** The time elapsed since the start of the session in milliseconds. */
+    public abstract long elapsedTimeMs();
 
-    abstract long elapsedTimeMs();
+    /** The median latency of the finished invocations in milliseconds. */
+    public abstract double p50LatencyMs();
+
+    /** The 90th percentile latency of the finished invocations in milliseconds. */
+    public abstract double p90LatencyMs();
+
+    /** The 99th percentile latency of the finished invocations in milliseconds. */
+    public abstract double p99LatencyMs();
+
+    /** The number of finished invocations per second since the start of the session. */
+    public double throughputPerSecond() {
+      return elapsedTimeMs() == 0 ? 0 : finishedCount() * 1000.0 / elapsedTimeMs();
+    }
   }
 
   /** Logs the start of a MediaPipe Tasks API session. */
@@ -94,5 +142,8 @@ public interface TasksStatsLogger {
   /** Logs the MediaPipe Tasks API initialization error. */
   public void logInitError();
 
+  /** Returns the stats of the current MediaPipe Tasks API session. */
+  public StatsSnapshot getStatsSnapshot();
+
   // TODO: Logs more error types.
 }
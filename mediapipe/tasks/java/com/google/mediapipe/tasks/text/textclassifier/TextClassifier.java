@@ -23,6 +23,7 @@ import com.google.mediapipe.framework.Packet;
 import com.google.mediapipe.framework.PacketGetter;
 import com.google.mediapipe.framework.ProtoUtil;
 import com.google.mediapipe.tasks.components.containers.ClassificationResult;
+import com.google.mediapipe.tasks.components.containers.CompactClassificationResult;
 import com.google.mediapipe.tasks.components.containers.proto.ClassificationsProto;
 import com.google.mediapipe.tasks.components.processors.proto.ClassifierOptionsProto;
 import com.google.mediapipe.tasks.core.BaseOptions;
@@ -30,6 +31,7 @@ import com.google.mediapipe.tasks.core.OutputHandler;
 import com.google.mediapipe.tasks.core.TaskInfo;
 import com.google.mediapipe.tasks.core.TaskOptions;
 import com.google.mediapipe.tasks.core.TaskRunner;
+import com.google.mediapipe.tasks.core.logging.TasksStatsLogger.StatsSnapshot;
 import com.google.mediapipe.tasks.core.proto.BaseOptionsProto;
 import com.google.mediapipe.tasks.text.textclassifier.proto.TextClassifierGraphOptionsProto;
 import java.io.File;
@@ -143,10 +145,18 @@ public final class TextClassifier implements AutoCloseable {
    */
   public static TextClassifier createFromOptions(Context context, TextClassifierOptions options) {
     OutputHandler<TextClassifierResult, Void> handler = new OutputHandler<>();
+    CompactClassificationResult.LabelTable labelTable =
+        options.useCompactResult() ? new CompactClassificationResult.LabelTable() : null;
     handler.setOutputPacketConverter(
         new OutputHandler.OutputPacketConverter<TextClassifierResult, Void>() {
           @Override
           public TextClassifierResult convertToTaskResult(List<Packet> packets) {
+            if (labelTable != null) {
+              return TextClassifierResult.create(
+                  CompactClassificationResult.createFromPacket(
+                      labelTable, packets.get(CLASSIFICATIONS_OUT_STREAM_INDEX)),
+                  packets.get(CLASSIFICATIONS_OUT_STREAM_INDEX).getTimestamp());
+            }
             try {
               return TextClassifierResult.create(
                   ClassificationResult.createFromProto(
@@ -174,6 +184,7 @@ public final class TextClassifier implements AutoCloseable {
                 .setInputStreams(INPUT_STREAMS)
                 .setOutputStreams(OUTPUT_STREAMS)
                 .setTaskOptions(options)
+                .setBaseOptions(options.baseOptions())
                 .setEnableFlowLimiting(false)
                 .build(),
             handler);
@@ -200,6 +211,14 @@ public final class TextClassifier implements AutoCloseable {
     return (TextClassifierResult) runner.process(inputPackets);
   }
 
+  /**
+   * Returns the stats of the {@link TextClassifier} since it was created, such as the invocation
+   * counts, the throughput, and the latency percentiles.
+   */
+  public StatsSnapshot getStatsSnapshot() {
+    return runner.getStatsSnapshot();
+  }
+
   /** Closes and cleans up the {@link TextClassifier}. */
   @Override
   public void close() {
@@ -254,6 +273,13 @@ public final class TextClassifier implements AutoCloseable {
        */
       public abstract Builder setCategoryDenylist(List<String> categoryDenylist);
 
+      /**
+       * Sets whether the text classifier returns {@link CompactClassificationResult}s, which store
+       * the categories in primitive arrays decoded natively from the graph output, with labels
+       * looked up in a table shared by all the results. Default to false.
+       */
+      public abstract Builder setUseCompactResult(Boolean value);
+
       abstract TextClassifierOptions autoBuild();
 
       /**
@@ -286,10 +312,13 @@ public final class TextClassifier implements AutoCloseable {
 
     abstract List<String> categoryDenylist();
 
+    abstract Boolean useCompactResult();
+
     public static Builder builder() {
       return new AutoValue_TextClassifier_TextClassifierOptions.Builder()
           .setCategoryAllowlist(Collections.emptyList())
-          .setCategoryDenylist(Collections.emptyList());
+          .setCategoryDenylist(Collections.emptyList())
+          .setUseCompactResult(false);
     }
 
     /** Converts a {@link TextClassifierOptions} to a {@link CalculatorOptions} protobuf message. */
@@ -20,9 +20,9 @@ import com.google.auto.value.AutoValue;
 import com.google.mediapipe.proto.CalculatorOptionsProto.CalculatorOptions;
 import com.google.mediapipe.framework.MediaPipeException;
 import com.google.mediapipe.framework.Packet;
-import com.google.mediapipe.framework.PacketGetter;
 import com.google.mediapipe.framework.ProtoUtil;
 import com.google.mediapipe.tasks.components.containers.Embedding;
+import com.google.mediapipe.tasks.components.containers.EmbeddingPacketGetter;
 import com.google.mediapipe.tasks.components.containers.EmbeddingResult;
 import com.google.mediapipe.tasks.components.containers.proto.EmbeddingsProto;
 import com.google.mediapipe.tasks.components.processors.proto.EmbedderOptionsProto;
@@ -32,6 +32,7 @@ import com.google.mediapipe.tasks.core.OutputHandler;
 import com.google.mediapipe.tasks.core.TaskInfo;
 import com.google.mediapipe.tasks.core.TaskOptions;
 import com.google.mediapipe.tasks.core.TaskRunner;
+import com.google.mediapipe.tasks.core.logging.TasksStatsLogger.StatsSnapshot;
 import com.google.mediapipe.tasks.core.proto.BaseOptionsProto;
 import com.google.mediapipe.tasks.text.textembedder.proto.TextEmbedderGraphOptionsProto;
 import java.io.File;
@@ -137,17 +138,11 @@ public final class TextEmbedder implements AutoCloseable {
         new OutputHandler.OutputPacketConverter<TextEmbedderResult, Void>() {
           @Override
           public TextEmbedderResult convertToTaskResult(List<Packet> packets) {
-            try {
-              return TextEmbedderResult.create(
-                  EmbeddingResult.createFromProto(
-                      PacketGetter.getProto(
-                          packets.get(EMBEDDINGS_OUT_STREAM_INDEX),
-                          EmbeddingsProto.EmbeddingResult.getDefaultInstance())),
-                  packets.get(EMBEDDINGS_OUT_STREAM_INDEX).getTimestamp());
-            } catch (IOException e) {
-              throw new MediaPipeException(
-                  MediaPipeException.StatusCode.INTERNAL.ordinal(), e.getMessage());
-            }
+            // The embeddings are copied natively from the packet, without serializing and
+            // parsing the embedding result protobuf message.
+            return TextEmbedderResult.create(
+                EmbeddingPacketGetter.getEmbeddingResult(packets.get(EMBEDDINGS_OUT_STREAM_INDEX)),
+                packets.get(EMBEDDINGS_OUT_STREAM_INDEX).getTimestamp());
           }
 
           @Override
@@ -164,6 +159,7 @@ public final class TextEmbedder implements AutoCloseable {
                 .setInputStreams(INPUT_STREAMS)
                 .setOutputStreams(OUTPUT_STREAMS)
                 .setTaskOptions(options)
+                .setBaseOptions(options.baseOptions())
                 .setEnableFlowLimiting(false)
                 .build(),
             handler);
@@ -190,6 +186,14 @@ public final class TextEmbedder implements AutoCloseable {
     return (TextEmbedderResult) runner.process(inputPackets);
   }
 
+  /**
+   * Returns the stats of the {@link TextEmbedder} since it was created, such as the invocation
+   * counts, the throughput, and the latency percentiles.
+   */
+  public StatsSnapshot getStatsSnapshot() {
+    return runner.getStatsSnapshot();
+  }
+
   /** Closes and cleans up the {@link TextEmbedder}. */
   @Override
   public void close() {
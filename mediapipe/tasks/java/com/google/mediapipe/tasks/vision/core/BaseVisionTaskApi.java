@@ -16,22 +16,50 @@ package com.google.mediapipe.tasks.vision.core;
 
 import android.graphics.RectF;
 import com.google.mediapipe.formats.proto.RectProto.NormalizedRect;
+import com.google.mediapipe.framework.AndroidPacketCreator;
 import com.google.mediapipe.framework.MediaPipeException;
 import com.google.mediapipe.framework.Packet;
 import com.google.mediapipe.framework.ProtoUtil;
 import com.google.mediapipe.framework.image.MPImage;
 import com.google.mediapipe.tasks.core.TaskResult;
 import com.google.mediapipe.tasks.core.TaskRunner;
+import com.google.mediapipe.tasks.core.TaskRunnerPool;
+import com.google.mediapipe.tasks.core.logging.TasksStatsLogger.StatsSnapshot;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /** The base class of MediaPipe vision tasks. */
 public class BaseVisionTaskApi implements AutoCloseable {
   private static final long MICROSECONDS_PER_MILLISECOND = 1000;
+  // The x center, y center, width, height and rotation of a normalized rect.
+  private static final int NORM_RECT_VALUE_COUNT = 5;
+  // The maximum number of images of a batch that are in the task graph at once, which bounds the
+  // number of input packets alive during a batch however large the batch is.
+  private static final int MAX_IN_FLIGHT_BATCH_IMAGES = 8;
+  // How long the oldest in-flight image of a batch is awaited before flushing the task graph, in
+  // case none of the in-flight images produces an output or the graph failed.
+  private static final long BATCH_RESULT_WAIT_MS = 100;
   private final TaskRunner runner;
+  // The pool that processes the image inputs concurrently, or null if there is only one task
+  // graph. The runner is then the first runner of the pool, only used to query its stats.
+  private final TaskRunnerPool runnerPool;
   private final RunningMode runningMode;
   private final String imageStreamName;
   private final String normRectStreamName;
+  // The normalized rect packet of the last processed image, and the rect values it holds. Frames
+  // with unchanged image processing options share the packet instead of creating a new one.
+  private Packet cachedNormRectPacket;
+  private final float[] cachedNormRectValues = new float[NORM_RECT_VALUE_COUNT];
+  private final float[] normRectValues = new float[NORM_RECT_VALUE_COUNT];
 
   static {
     System.loadLibrary("mediapipe_tasks_vision_jni");
@@ -52,7 +80,37 @@ public class BaseVisionTaskApi implements AutoCloseable {
       RunningMode runningMode,
       String imageStreamName,
       String normRectStreamName) {
+    this(runner, /* runnerPool= */ null, runningMode, imageStreamName, normRectStreamName);
+  }
+
+  /**
+   * Constructor to initialize a {@link BaseVisionTaskApi} whose image inputs are processed
+   * concurrently by the idle runners of a {@link TaskRunnerPool}. The first runner of the pool
+   * provides the stats of the task.
+   *
+   * @param runnerPool a {@link TaskRunnerPool} created in the image mode.
+   * @param imageStreamName the name of the input image stream.
+   * @param normRectStreamName the name of the input normalized rect image stream used to provide
+   *     (mandatory) rotation and (optional) region-of-interest.
+   */
+  public BaseVisionTaskApi(
+      TaskRunnerPool runnerPool, String imageStreamName, String normRectStreamName) {
+    this(
+        runnerPool.getRunner(0),
+        runnerPool,
+        RunningMode.IMAGE,
+        imageStreamName,
+        normRectStreamName);
+  }
+
+  private BaseVisionTaskApi(
+      TaskRunner runner,
+      TaskRunnerPool runnerPool,
+      RunningMode runningMode,
+      String imageStreamName,
+      String normRectStreamName) {
     this.runner = runner;
+    this.runnerPool = runnerPool;
     this.runningMode = runningMode;
     this.imageStreamName = imageStreamName;
     this.normRectStreamName = normRectStreamName;
@@ -62,6 +120,9 @@ public class BaseVisionTaskApi implements AutoCloseable {
    * A synchronous method to process single image inputs. The call blocks the current thread until a
    * failure status or a successful result is returned.
    *
+   * <p>If the task was created with a {@link TaskRunnerPool}, concurrent calls are processed by the
+   * idle runners of the pool.
+   *
    * @param image a MediaPipe {@link MPImage} object for processing.
    * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
    *     input image before running inference.
@@ -69,18 +130,155 @@ public class BaseVisionTaskApi implements AutoCloseable {
    */
   protected TaskResult processImageData(
       MPImage image, ImageProcessingOptions imageProcessingOptions) {
-    if (runningMode != RunningMode.IMAGE) {
+    checkImageMode();
+    if (runnerPool != null) {
+      return runnerPool.process(
+          packetCreator -> createInputPackets(packetCreator, image, imageProcessingOptions));
+    }
+    return runner.process(createInputPackets(image, imageProcessingOptions));
+  }
+
+  /**
+   * An asynchronous method to process single image inputs. The call returns as soon as the input
+   * is sent to the task graph, and the returned future is completed by the graph output callback.
+   * See {@link TaskRunner#submit(Map)} for the completion guarantees.
+   *
+   * @param <T> the result type of the task.
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @throws MediaPipeException if the task is not in the image mode.
+   */
+  protected <T extends TaskResult> CompletableFuture<T> processImageDataAsync(
+      MPImage image, ImageProcessingOptions imageProcessingOptions) {
+    checkImageMode();
+    if (runnerPool != null) {
+      return asTaskResultFuture(
+          runnerPool.run(
+              poolRunner ->
+                  poolRunner.submit(
+                      createInputPackets(
+                          poolRunner.getPacketCreator(), image, imageProcessingOptions))));
+    }
+    return asTaskResultFuture(runner.submit(createInputPackets(image, imageProcessingOptions)));
+  }
+
+  /**
+   * An asynchronous method to process single image inputs, whose returned future is completed on
+   * the given {@link Executor} rather than on the graph output callback thread. See {@link
+   * TaskRunner#submit(Map, Executor)}.
+   *
+   * @param <T> the result type of the task.
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @param executor the {@link Executor} that completes the returned future.
+   * @throws MediaPipeException if the task is not in the image mode.
+   */
+  protected <T extends TaskResult> CompletableFuture<T> processImageDataAsync(
+      MPImage image, ImageProcessingOptions imageProcessingOptions, Executor executor) {
+    checkImageMode();
+    if (runnerPool != null) {
+      return asTaskResultFuture(
+          runnerPool.run(
+              poolRunner ->
+                  poolRunner.submit(
+                      createInputPackets(
+                          poolRunner.getPacketCreator(), image, imageProcessingOptions),
+                      executor)));
+    }
+    return asTaskResultFuture(
+        runner.submit(createInputPackets(image, imageProcessingOptions), executor));
+  }
+
+  /**
+   * A synchronous method to process a batch of unrelated image inputs. The call blocks the current
+   * thread until a failure status or the results of all the images are returned.
+   *
+   * <p>The images are pipelined through the task graph instead of being processed one by one, and
+   * the graph-idle wait is usually paid once per batch rather than once per image. Only a bounded
+   * window of images is in flight at once: the result of the oldest one is awaited before the next
+   * image is sent, so that large batches don't keep all their input packets alive. If the task was
+   * created with a {@link TaskRunnerPool}, the batch is processed by an idle runner of the pool, so
+   * that concurrent batches run on different graphs.
+   *
+   * @param images a list of MediaPipe {@link MPImage} objects for processing.
+   * @param imageProcessingOptions a list of {@link ImageProcessingOptions} specifying how to
+   *     process each input image before running inference. Must have the same size as {@code
+   *     images}.
+   * @return the task results in the same order as the input images.
+   * @throws IllegalArgumentException if {@code images} and {@code imageProcessingOptions} have
+   *     different sizes.
+   * @throws MediaPipeException if the task is not in the image mode or if there is an internal
+   *     error.
+   */
+  protected List<TaskResult> processImageBatch(
+      List<MPImage> images, List<ImageProcessingOptions> imageProcessingOptions) {
+    checkImageMode();
+    if (images.size() != imageProcessingOptions.size()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Expected as many image processing options as images, found: %d vs. %d.",
+              imageProcessingOptions.size(), images.size()));
+    }
+    if (runnerPool != null) {
+      return runnerPool.run(
+          poolRunner -> processImageBatch(poolRunner, images, imageProcessingOptions));
+    }
+    return processImageBatch(runner, images, imageProcessingOptions);
+  }
+
+  /** Processes a batch of image inputs on the given {@link TaskRunner}. */
+  private List<TaskResult> processImageBatch(
+      TaskRunner batchRunner,
+      List<MPImage> images,
+      List<ImageProcessingOptions> imageProcessingOptions) {
+    AndroidPacketCreator packetCreator = batchRunner.getPacketCreator();
+    List<CompletableFuture<? extends TaskResult>> pendingResults = new ArrayList<>(images.size());
+    for (int i = 0; i < images.size(); ++i) {
+      if (i >= MAX_IN_FLIGHT_BATCH_IMAGES) {
+        awaitBatchResult(batchRunner, pendingResults.get(i - MAX_IN_FLIGHT_BATCH_IMAGES));
+      }
+      pendingResults.add(
+          batchRunner.submit(
+              createInputPackets(packetCreator, images.get(i), imageProcessingOptions.get(i))));
+    }
+    batchRunner.flush();
+    List<TaskResult> results = new ArrayList<>(pendingResults.size());
+    for (CompletableFuture<? extends TaskResult> pendingResult : pendingResults) {
+      try {
+        results.add(pendingResult.join());
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Waits until the result of an in-flight image of a batch is completed. The result is completed
+   * by its output, or with null by the output of a later image. If it isn't completed within
+   * {@code BATCH_RESULT_WAIT_MS}, the task graph is flushed, which completes the results of all the
+   * in-flight images, and reports the graph failure if any. The result itself is read after the
+   * whole batch is flushed.
+   */
+  private static void awaitBatchResult(
+      TaskRunner batchRunner, CompletableFuture<? extends TaskResult> pendingResult) {
+    try {
+      pendingResult.get(BATCH_RESULT_WAIT_MS, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      batchRunner.flush();
+    } catch (ExecutionException e) {
+      // Reported once the whole batch is flushed.
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       throw new MediaPipeException(
-          MediaPipeException.StatusCode.FAILED_PRECONDITION.ordinal(),
-          "Task is not initialized with the image mode. Current running mode:"
-              + runningMode.name());
+          MediaPipeException.StatusCode.CANCELLED.ordinal(),
+          "Interrupted while waiting for the results of the batch.");
     }
-    Map<String, Packet> inputPackets = new HashMap<>();
-    inputPackets.put(imageStreamName, runner.getPacketCreator().createImage(image));
-    inputPackets.put(
-        normRectStreamName,
-        runner.getPacketCreator().createProto(convertToNormalizedRect(imageProcessingOptions)));
-    return runner.process(inputPackets);
   }
 
   /**
@@ -95,18 +293,57 @@ public class BaseVisionTaskApi implements AutoCloseable {
    */
   protected TaskResult processVideoData(
       MPImage image, ImageProcessingOptions imageProcessingOptions, long timestampMs) {
-    if (runningMode != RunningMode.VIDEO) {
-      throw new MediaPipeException(
-          MediaPipeException.StatusCode.FAILED_PRECONDITION.ordinal(),
-          "Task is not initialized with the video mode. Current running mode:"
-              + runningMode.name());
-    }
-    Map<String, Packet> inputPackets = new HashMap<>();
-    inputPackets.put(imageStreamName, runner.getPacketCreator().createImage(image));
-    inputPackets.put(
-        normRectStreamName,
-        runner.getPacketCreator().createProto(convertToNormalizedRect(imageProcessingOptions)));
-    return runner.process(inputPackets, timestampMs * MICROSECONDS_PER_MILLISECOND);
+    checkVideoMode();
+    return runner.process(
+        createInputPackets(image, imageProcessingOptions),
+        timestampMs * MICROSECONDS_PER_MILLISECOND);
+  }
+
+  /**
+   * An asynchronous method to process continuous video frames. The call returns as soon as the
+   * frame is sent to the task graph, and the returned future is completed by the graph output
+   * callback. See {@link TaskRunner#submit(Map)} for the completion guarantees.
+   *
+   * @param <T> the result type of the task.
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @param timestampMs the corresponding timestamp of the input image in milliseconds.
+   * @throws MediaPipeException if the task is not in the video mode.
+   */
+  protected <T extends TaskResult> CompletableFuture<T> processVideoDataAsync(
+      MPImage image, ImageProcessingOptions imageProcessingOptions, long timestampMs) {
+    checkVideoMode();
+    return asTaskResultFuture(
+        runner.submit(
+            createInputPackets(image, imageProcessingOptions),
+            timestampMs * MICROSECONDS_PER_MILLISECOND));
+  }
+
+  /**
+   * An asynchronous method to process continuous video frames, whose returned future is completed
+   * on the given {@link Executor} rather than on the graph output callback thread. See {@link
+   * TaskRunner#submit(Map, long, Executor)}.
+   *
+   * @param <T> the result type of the task.
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @param timestampMs the corresponding timestamp of the input image in milliseconds.
+   * @param executor the {@link Executor} that completes the returned future.
+   * @throws MediaPipeException if the task is not in the video mode.
+   */
+  protected <T extends TaskResult> CompletableFuture<T> processVideoDataAsync(
+      MPImage image,
+      ImageProcessingOptions imageProcessingOptions,
+      long timestampMs,
+      Executor executor) {
+    checkVideoMode();
+    return asTaskResultFuture(
+        runner.submit(
+            createInputPackets(image, imageProcessingOptions),
+            timestampMs * MICROSECONDS_PER_MILLISECOND,
+            executor));
   }
 
   /**
@@ -127,38 +364,128 @@ public class BaseVisionTaskApi implements AutoCloseable {
           "Task is not initialized with the live stream mode. Current running mode:"
               + runningMode.name());
     }
-    Map<String, Packet> inputPackets = new HashMap<>();
-    inputPackets.put(imageStreamName, runner.getPacketCreator().createImage(image));
-    inputPackets.put(
-        normRectStreamName,
-        runner.getPacketCreator().createProto(convertToNormalizedRect(imageProcessingOptions)));
-    runner.send(inputPackets, timestampMs * MICROSECONDS_PER_MILLISECOND);
+    runner.send(
+        createInputPackets(image, imageProcessingOptions),
+        timestampMs * MICROSECONDS_PER_MILLISECOND);
+  }
+
+  /**
+   * Returns the number of inputs that have been dropped without being processed in the live stream
+   * mode, because the MediaPipe vision task was busy.
+   */
+  public long getDroppedInputCount() {
+    return runner.getDroppedInputCount();
+  }
+
+  /**
+   * Returns the stats of the MediaPipe vision task since it was created, such as the invocation
+   * counts, the throughput, and the latency percentiles.
+   */
+  public StatsSnapshot getStatsSnapshot() {
+    return runner.getStatsSnapshot();
   }
 
   /** Closes and cleans up the MediaPipe vision task. */
   @Override
   public void close() {
-    runner.close();
+    releaseCachedNormRectPacket();
+    if (runnerPool != null) {
+      runnerPool.close();
+    } else {
+      runner.close();
+    }
+  }
+
+  private void checkImageMode() {
+    if (runningMode != RunningMode.IMAGE) {
+      throw new MediaPipeException(
+          MediaPipeException.StatusCode.FAILED_PRECONDITION.ordinal(),
+          "Task is not initialized with the image mode. Current running mode:"
+              + runningMode.name());
+    }
+  }
+
+  private void checkVideoMode() {
+    if (runningMode != RunningMode.VIDEO) {
+      throw new MediaPipeException(
+          MediaPipeException.StatusCode.FAILED_PRECONDITION.ordinal(),
+          "Task is not initialized with the video mode. Current running mode:"
+              + runningMode.name());
+    }
+  }
+
+  /**
+   * Returns the future of a task graph invocation as a future of the task's own result type, which
+   * is the type produced by the {@link com.google.mediapipe.tasks.core.OutputHandler} of the task.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T extends TaskResult> CompletableFuture<T> asTaskResultFuture(
+      CompletableFuture<? extends TaskResult> future) {
+    return (CompletableFuture<T>) future;
+  }
+
+  /** Creates the input packets of an image and its {@link ImageProcessingOptions}. */
+  private Map<String, Packet> createInputPackets(
+      MPImage image, ImageProcessingOptions imageProcessingOptions) {
+    return createInputPackets(runner.getPacketCreator(), image, imageProcessingOptions);
   }
 
   /**
-   * Converts an {@link ImageProcessingOptions} instance into a {@link NormalizedRect} protobuf
-   * message.
+   * Creates the input packets of an image and its {@link ImageProcessingOptions} with the packet
+   * creator of the runner that will consume them.
    */
-  private static NormalizedRect convertToNormalizedRect(
+  private Map<String, Packet> createInputPackets(
+      AndroidPacketCreator packetCreator,
+      MPImage image,
       ImageProcessingOptions imageProcessingOptions) {
+    Map<String, Packet> inputPackets = new HashMap<>();
+    inputPackets.put(imageStreamName, packetCreator.createImage(image));
+    inputPackets.put(
+        normRectStreamName, createNormRectPacket(packetCreator, imageProcessingOptions));
+    return inputPackets;
+  }
+
+  /**
+   * Creates the normalized rect packet of an {@link ImageProcessingOptions} with the given packet
+   * creator. The packet is created natively, without encoding a {@link NormalizedRect} protobuf
+   * message. The packets of the runner are shared with the previous frame if the rect values are
+   * unchanged.
+   */
+  private synchronized Packet createNormRectPacket(
+      AndroidPacketCreator packetCreator, ImageProcessingOptions imageProcessingOptions) {
     RectF regionOfInterest =
         imageProcessingOptions.regionOfInterest().isPresent()
             ? imageProcessingOptions.regionOfInterest().get()
             : new RectF(0, 0, 1, 1);
-    return NormalizedRect.newBuilder()
-        .setXCenter(regionOfInterest.centerX())
-        .setYCenter(regionOfInterest.centerY())
-        .setWidth(regionOfInterest.width())
-        .setHeight(regionOfInterest.height())
-        // Convert to radians anti-clockwise.
-        .setRotation(-(float) Math.PI * imageProcessingOptions.rotationDegrees() / 180.0f)
-        .build();
+    // The rect values are compared rather than the options, as the region of interest is mutable.
+    normRectValues[0] = regionOfInterest.centerX();
+    normRectValues[1] = regionOfInterest.centerY();
+    normRectValues[2] = regionOfInterest.width();
+    normRectValues[3] = regionOfInterest.height();
+    // Convert to radians anti-clockwise.
+    normRectValues[4] = -(float) Math.PI * imageProcessingOptions.rotationDegrees() / 180.0f;
+    if (packetCreator != runner.getPacketCreator()) {
+      // The cached packet belongs to the graph of the runner, other graphs get their own packet.
+      return createNormalizedRect(packetCreator, normRectValues);
+    }
+    if (cachedNormRectPacket == null || !Arrays.equals(cachedNormRectValues, normRectValues)) {
+      releaseCachedNormRectPacket();
+      cachedNormRectPacket = createNormalizedRect(packetCreator, normRectValues);
+      System.arraycopy(normRectValues, 0, cachedNormRectValues, 0, NORM_RECT_VALUE_COUNT);
+    }
+    return cachedNormRectPacket.copy();
+  }
+
+  private static Packet createNormalizedRect(AndroidPacketCreator packetCreator, float[] values) {
+    return packetCreator.createNormalizedRect(
+        values[0], values[1], values[2], values[3], values[4]);
+  }
+
+  private synchronized void releaseCachedNormRectPacket() {
+    if (cachedNormRectPacket != null) {
+      cachedNormRectPacket.release();
+      cachedNormRectPacket = null;
+    }
   }
 
   /**
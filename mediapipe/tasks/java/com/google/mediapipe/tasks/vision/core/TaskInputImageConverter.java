@@ -0,0 +1,139 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.vision.core;
+
+import android.graphics.Bitmap;
+import com.google.mediapipe.framework.AndroidPacketGetter;
+import com.google.mediapipe.framework.Packet;
+import com.google.mediapipe.framework.PacketGetter;
+import com.google.mediapipe.framework.image.LazyBitmapImageBuilder;
+import com.google.mediapipe.framework.image.MPImage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Converts the input images output by the vision task graphs to the {@link MPImage}s passed to
+ * the result listeners.
+ *
+ * <p>The images are lazy views over the output packets: the pixels are only copied out of a packet
+ * the first time the image is extracted, e.g. with {@link
+ * com.google.mediapipe.framework.image.BitmapExtractor}. By default, an image is closed, and its
+ * output packet released, as soon as the result listener returns. A result listener that extracts
+ * the image later, e.g. on another thread, must acquire a reference on it with {@code
+ * image.getInternal().acquire()} before returning, and close the image once it is done with it.
+ * The images that are still views over output packets when the task is closed can't be extracted
+ * anymore.
+ */
+public final class TaskInputImageConverter {
+  private final int imageOutStreamIndex;
+  // The loaders that still hold a reference to their output packet.
+  private final Set<PacketBitmapLoader> liveLoaders = new HashSet<>();
+
+  /**
+   * Creates a converter of the input images output by a vision task graph.
+   *
+   * @param imageOutStreamIndex the index of the input image output stream.
+   */
+  public TaskInputImageConverter(int imageOutStreamIndex) {
+    this.imageOutStreamIndex = imageOutStreamIndex;
+  }
+
+  /**
+   * Returns a lazy view over the input image output packet, or null if the task graph doesn't
+   * output the input image. The image must be passed to {@link #release} once the result listener
+   * returns.
+   *
+   * @param packets the output {@link Packet}s of the vision task graph.
+   */
+  public MPImage convert(List<Packet> packets) {
+    if (packets.size() <= imageOutStreamIndex) {
+      return null;
+    }
+    Packet packet = packets.get(imageOutStreamIndex);
+    PacketBitmapLoader loader = new PacketBitmapLoader(packet.copy());
+    synchronized (this) {
+      liveLoaders.add(loader);
+    }
+    return new LazyBitmapImageBuilder(
+            PacketGetter.getImageWidth(packet),
+            PacketGetter.getImageHeight(packet),
+            Bitmap.Config.ARGB_8888,
+            loader)
+        .build();
+  }
+
+  /**
+   * Closes an image returned by {@link #convert} once the result listener returns. Its output
+   * packet is released, unless the result listener acquired a reference on the image.
+   *
+   * @param image the converted image, or null.
+   */
+  public void release(MPImage image) {
+    if (image != null) {
+      image.close();
+    }
+  }
+
+  /**
+   * Releases the output packets still referenced by the converted images. Invoke this method when
+   * the task is closed, before its graph is torn down.
+   */
+  public void close() {
+    List<PacketBitmapLoader> loaders;
+    synchronized (this) {
+      loaders = new ArrayList<>(liveLoaders);
+      liveLoaders.clear();
+    }
+    for (PacketBitmapLoader loader : loaders) {
+      loader.close();
+    }
+  }
+
+  private synchronized void untrack(PacketBitmapLoader loader) {
+    liveLoaders.remove(loader);
+  }
+
+  /** Copies the pixels of an RGB image packet to a bitmap, as long as the packet is alive. */
+  private final class PacketBitmapLoader implements LazyBitmapImageBuilder.BitmapLoader {
+    private Packet packet;
+
+    PacketBitmapLoader(Packet packet) {
+      this.packet = packet;
+    }
+
+    @Override
+    public synchronized Bitmap load() {
+      if (packet == null) {
+        throw new IllegalStateException(
+            "The input image of a vision task result can't be extracted once the image or the task"
+                + " is closed.");
+      }
+      Bitmap bitmap = AndroidPacketGetter.getBitmapFromRgb(packet);
+      close();
+      return bitmap;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (packet != null) {
+        packet.release();
+        packet = null;
+        untrack(this);
+      }
+    }
+  }
+}
@@ -21,10 +21,8 @@ import com.google.mediapipe.formats.proto.LandmarkProto.LandmarkList;
 import com.google.mediapipe.formats.proto.LandmarkProto.NormalizedLandmarkList;
 import com.google.mediapipe.proto.CalculatorOptionsProto.CalculatorOptions;
 import com.google.mediapipe.formats.proto.ClassificationProto.ClassificationList;
-import com.google.mediapipe.framework.AndroidPacketGetter;
 import com.google.mediapipe.framework.Packet;
 import com.google.mediapipe.framework.PacketGetter;
-import com.google.mediapipe.framework.image.BitmapImageBuilder;
 import com.google.mediapipe.framework.image.MPImage;
 import com.google.mediapipe.tasks.components.processors.ClassifierOptions;
 import com.google.mediapipe.tasks.core.BaseOptions;
@@ -38,6 +36,7 @@ import com.google.mediapipe.tasks.core.proto.BaseOptionsProto;
 import com.google.mediapipe.tasks.vision.core.BaseVisionTaskApi;
 import com.google.mediapipe.tasks.vision.core.ImageProcessingOptions;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.google.mediapipe.tasks.vision.core.TaskInputImageConverter;
 import com.google.mediapipe.tasks.vision.gesturerecognizer.proto.GestureClassifierGraphOptionsProto;
 import com.google.mediapipe.tasks.vision.gesturerecognizer.proto.GestureRecognizerGraphOptionsProto;
 import com.google.mediapipe.tasks.vision.gesturerecognizer.proto.HandGestureRecognizerGraphOptionsProto;
@@ -151,6 +150,11 @@ public final class GestureRecognizer extends BaseVisionTaskApi {
    */
   public static GestureRecognizer createFromOptions(
       Context context, GestureRecognizerOptions recognizerOptions) {
+    // The input image is only needed by the result listener, and can be opted out of.
+    boolean outputInputImage =
+        recognizerOptions.resultListener().isPresent() && recognizerOptions.outputInputImage();
+    TaskInputImageConverter inputImageConverter =
+        new TaskInputImageConverter(IMAGE_OUT_STREAM_INDEX);
     // TODO: Consolidate OutputHandler and TaskRunner.
     OutputHandler<GestureRecognizerResult, MPImage> handler = new OutputHandler<>();
     handler.setOutputPacketConverter(
@@ -183,9 +187,17 @@ public final class GestureRecognizer extends BaseVisionTaskApi {
 
           @Override
           public MPImage convertToTaskInput(List<Packet> packets) {
-            return new BitmapImageBuilder(
-                    AndroidPacketGetter.getBitmapFromRgb(packets.get(IMAGE_OUT_STREAM_INDEX)))
-                .build();
+            return inputImageConverter.convert(packets);
+          }
+
+          @Override
+          public void releaseTaskInput(MPImage image) {
+            inputImageConverter.release(image);
+          }
+
+          @Override
+          public void close() {
+            inputImageConverter.close();
           }
         });
     recognizerOptions.resultListener().ifPresent(handler::setResultListener);
@@ -198,8 +210,12 @@ public final class GestureRecognizer extends BaseVisionTaskApi {
                 .setTaskRunningModeName(recognizerOptions.runningMode().name())
                 .setTaskGraphName(TASK_GRAPH_NAME)
                 .setInputStreams(INPUT_STREAMS)
-                .setOutputStreams(OUTPUT_STREAMS)
+                .setOutputStreams(
+                    outputInputImage
+                        ? OUTPUT_STREAMS
+                        : OUTPUT_STREAMS.subList(0, IMAGE_OUT_STREAM_INDEX))
                 .setTaskOptions(recognizerOptions)
+                .setBaseOptions(recognizerOptions.baseOptions())
                 .setEnableFlowLimiting(recognizerOptions.runningMode() == RunningMode.LIVE_STREAM)
                 .build(),
             handler);
@@ -431,6 +447,17 @@ public final class GestureRecognizer extends BaseVisionTaskApi {
       public abstract Builder setResultListener(
           ResultListener<GestureRecognizerResult, MPImage> value);
 
+      /**
+       * Sets whether the input image is passed to the {@link ResultListener} along with the
+       * results. Defaults to true. If false, the gesture recognizer doesn't output the input image,
+       * and the {@link ResultListener} receives null instead.
+       *
+       * <p>The input image is closed once the {@link ResultListener} returns. A listener that uses
+       * the image later must acquire a reference on it with {@code image.getInternal().acquire()},
+       * and close it once done.
+       */
+      public abstract Builder setOutputInputImage(Boolean value);
+
       /** Sets an optional error listener. */
       public abstract Builder setErrorListener(ErrorListener value);
 
@@ -478,11 +505,14 @@ public final class GestureRecognizer extends BaseVisionTaskApi {
 
     abstract Optional<ResultListener<GestureRecognizerResult, MPImage>> resultListener();
 
+    abstract Boolean outputInputImage();
+
     abstract Optional<ErrorListener> errorListener();
 
     public static Builder builder() {
       return new AutoValue_GestureRecognizer_GestureRecognizerOptions.Builder()
           .setRunningMode(RunningMode.IMAGE)
+          .setOutputInputImage(true)
           .setNumHands(1)
           .setMinHandDetectionConfidence(0.5f)
           .setMinHandPresenceConfidence(0.5f)
@@ -0,0 +1,422 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.vision.handlandmarker;
+
+import com.google.mediapipe.framework.Packet;
+import com.google.mediapipe.tasks.components.containers.Category;
+import com.google.mediapipe.tasks.components.containers.Landmark;
+import com.google.mediapipe.tasks.components.containers.NormalizedLandmark;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link HandLandmarkerResult} that stores the landmarks of all hands in flat primitive arrays
+ * instead of one object per landmark. Produced by {@link HandLandmarker} when {@link
+ * HandLandmarker.HandLandmarkerOptions.Builder#setUseFlatResult} is enabled.
+ *
+ * <p>The landmarks of hand {@code h} are stored as consecutive (x, y, z) triples, see {@link
+ * #landmarksBuffer(int)} and {@link #worldLandmarksBuffer(int)}. The {@link List} views of {@link
+ * HandLandmarkerResult} are built lazily on first access.
+ *
+ * <p>The arrays are filled natively from the graph output, without serializing and parsing the
+ * landmark protos. The handedness category names and display names are interned in a label table
+ * shared by all the results of the {@link HandLandmarker}, so that each distinct label is only
+ * converted to a {@link String} once.
+ *
+ * <p>Call {@link #close()} once the result is no longer needed, so that its arrays can be reused
+ * for a later frame. The result must not be accessed after it is closed. Results that are never
+ * closed are simply garbage collected.
+ */
+public final class FlatHandLandmarkerResult extends HandLandmarkerResult implements AutoCloseable {
+  /** The number of floats stored per landmark. */
+  public static final int LANDMARK_STRIDE = 3;
+  // The number of hands, landmarks, world landmarks, handedness categories and the size of the
+  // label table.
+  private static final int HAND_COUNTS_SIZE = 5;
+
+  private final Pool pool;
+
+  private long timestampMs;
+  private int numHands;
+  // The first landmark of hand h is at landmarkOffsets[h], hand h has
+  // landmarkOffsets[h + 1] - landmarkOffsets[h] landmarks.
+  private int[] landmarkOffsets = new int[1];
+  private float[] landmarks = new float[0];
+  private int[] worldLandmarkOffsets = new int[1];
+  private float[] worldLandmarks = new float[0];
+  private int[] handednessOffsets = new int[1];
+  private float[] handednessScores = new float[0];
+  private int[] handednessIndices = new int[0];
+  // The ids of the handedness category names and display names in the label table.
+  private int[] handednessCategoryNameIds = new int[0];
+  private int[] handednessDisplayNameIds = new int[0];
+  // The label table of the pool when this result was filled. Its entries are never changed once
+  // set.
+  private String[] labels = new String[0];
+
+  private List<List<NormalizedLandmark>> landmarksView;
+  private List<List<Landmark>> worldLandmarksView;
+  private List<List<Category>> handednessesView;
+
+  private FlatHandLandmarkerResult(Pool pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public long timestampMs() {
+    return timestampMs;
+  }
+
+  /** Returns the number of detected hands. */
+  public int handsCount() {
+    return numHands;
+  }
+
+  /** Returns the number of landmarks of the {@code hand}-th detected hand. */
+  public int landmarksCount(int hand) {
+    checkHand(hand);
+    return landmarkOffsets[hand + 1] - landmarkOffsets[hand];
+  }
+
+  /** Returns the number of world landmarks of the {@code hand}-th detected hand. */
+  public int worldLandmarksCount(int hand) {
+    checkHand(hand);
+    return worldLandmarkOffsets[hand + 1] - worldLandmarkOffsets[hand];
+  }
+
+  /**
+   * Returns a read-only view of the normalized landmarks of the {@code hand}-th detected hand, as
+   * {@link #landmarksCount(int)} consecutive (x, y, z) triples.
+   */
+  public FloatBuffer landmarksBuffer(int hand) {
+    checkHand(hand);
+    return wrap(landmarks, landmarkOffsets[hand], landmarkOffsets[hand + 1]);
+  }
+
+  /**
+   * Returns a read-only view of the world landmarks of the {@code hand}-th detected hand, as
+   * {@link #worldLandmarksCount(int)} consecutive (x, y, z) triples in meters.
+   */
+  public FloatBuffer worldLandmarksBuffer(int hand) {
+    checkHand(hand);
+    return wrap(worldLandmarks, worldLandmarkOffsets[hand], worldLandmarkOffsets[hand + 1]);
+  }
+
+  /** Hand landmarks of detected hands. Built on first access. */
+  @Override
+  public List<List<NormalizedLandmark>> landmarks() {
+    if (landmarksView == null) {
+      List<List<NormalizedLandmark>> multiHandLandmarks = new ArrayList<>(numHands);
+      for (int hand = 0; hand < numHands; ++hand) {
+        List<NormalizedLandmark> handLandmarks = new ArrayList<>(landmarksCount(hand));
+        for (int i = landmarkOffsets[hand]; i < landmarkOffsets[hand + 1]; ++i) {
+          int base = i * LANDMARK_STRIDE;
+          handLandmarks.add(
+              NormalizedLandmark.create(landmarks[base], landmarks[base + 1], landmarks[base + 2]));
+        }
+        multiHandLandmarks.add(Collections.unmodifiableList(handLandmarks));
+      }
+      landmarksView = Collections.unmodifiableList(multiHandLandmarks);
+    }
+    return landmarksView;
+  }
+
+  /** Hand landmarks in world coordniates of detected hands. Built on first access. */
+  @Override
+  public List<List<Landmark>> worldLandmarks() {
+    if (worldLandmarksView == null) {
+      List<List<Landmark>> multiHandWorldLandmarks = new ArrayList<>(numHands);
+      for (int hand = 0; hand < numHands; ++hand) {
+        List<Landmark> handWorldLandmarks = new ArrayList<>(worldLandmarksCount(hand));
+        for (int i = worldLandmarkOffsets[hand]; i < worldLandmarkOffsets[hand + 1]; ++i) {
+          int base = i * LANDMARK_STRIDE;
+          handWorldLandmarks.add(
+              Landmark.create(
+                  worldLandmarks[base], worldLandmarks[base + 1], worldLandmarks[base + 2]));
+        }
+        multiHandWorldLandmarks.add(Collections.unmodifiableList(handWorldLandmarks));
+      }
+      worldLandmarksView = Collections.unmodifiableList(multiHandWorldLandmarks);
+    }
+    return worldLandmarksView;
+  }
+
+  /** Handedness of detected hands. Built on first access. */
+  @Override
+  public List<List<Category>> handednesses() {
+    if (handednessesView == null) {
+      List<List<Category>> multiHandHandednesses = new ArrayList<>(numHands);
+      for (int hand = 0; hand < numHands; ++hand) {
+        List<Category> handedness = new ArrayList<>();
+        for (int i = handednessOffsets[hand]; i < handednessOffsets[hand + 1]; ++i) {
+          handedness.add(
+              Category.create(
+                  handednessScores[i],
+                  handednessIndices[i],
+                  labels[handednessCategoryNameIds[i]],
+                  labels[handednessDisplayNameIds[i]]));
+        }
+        multiHandHandednesses.add(Collections.unmodifiableList(handedness));
+      }
+      handednessesView = Collections.unmodifiableList(multiHandHandednesses);
+    }
+    return handednessesView;
+  }
+
+  /** Returns this result to the pool it was acquired from, so its arrays can be reused. */
+  @Override
+  public void close() {
+    pool.release(this);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof HandLandmarkerResult)) {
+      return false;
+    }
+    HandLandmarkerResult that = (HandLandmarkerResult) o;
+    return timestampMs() == that.timestampMs()
+        && landmarks().equals(that.landmarks())
+        && worldLandmarks().equals(that.worldLandmarks())
+        && handednesses().equals(that.handednesses());
+  }
+
+  @Override
+  public int hashCode() {
+    // Matches the hash code of the AutoValue implementation of HandLandmarkerResult.
+    int h = 1;
+    h *= 1000003;
+    h ^= (int) ((timestampMs() >>> 32) ^ timestampMs());
+    h *= 1000003;
+    h ^= landmarks().hashCode();
+    h *= 1000003;
+    h ^= worldLandmarks().hashCode();
+    h *= 1000003;
+    h ^= handednesses().hashCode();
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return "FlatHandLandmarkerResult{timestampMs="
+        + timestampMs()
+        + ", landmarks="
+        + landmarks()
+        + ", worldLandmarks="
+        + worldLandmarks()
+        + ", handednesses="
+        + handednesses()
+        + "}";
+  }
+
+  /**
+   * Fills this result from the graph output packets, reusing the existing arrays if possible. The
+   * packet handles are ignored if there are no hands.
+   */
+  private void fill(
+      long labelTableHandle,
+      long landmarksPacketHandle,
+      long worldLandmarksPacketHandle,
+      long handednessPacketHandle,
+      int[] handCounts,
+      String[] labels,
+      long timestampMs) {
+    this.timestampMs = timestampMs;
+    this.numHands = handCounts[0];
+    this.labels = labels;
+    landmarksView = null;
+    worldLandmarksView = null;
+    handednessesView = null;
+    landmarkOffsets = ensureCapacity(landmarkOffsets, numHands + 1);
+    landmarks = ensureCapacity(landmarks, handCounts[1] * LANDMARK_STRIDE);
+    worldLandmarkOffsets = ensureCapacity(worldLandmarkOffsets, numHands + 1);
+    worldLandmarks = ensureCapacity(worldLandmarks, handCounts[2] * LANDMARK_STRIDE);
+    handednessOffsets = ensureCapacity(handednessOffsets, numHands + 1);
+    int numCategories = handCounts[3];
+    handednessScores = ensureCapacity(handednessScores, numCategories);
+    handednessIndices = ensureCapacity(handednessIndices, numCategories);
+    handednessCategoryNameIds = ensureCapacity(handednessCategoryNameIds, numCategories);
+    handednessDisplayNameIds = ensureCapacity(handednessDisplayNameIds, numCategories);
+    if (numHands == 0) {
+      landmarkOffsets[0] = 0;
+      worldLandmarkOffsets[0] = 0;
+      handednessOffsets[0] = 0;
+      return;
+    }
+    nativeFillHands(
+        labelTableHandle,
+        landmarksPacketHandle,
+        worldLandmarksPacketHandle,
+        handednessPacketHandle,
+        landmarkOffsets,
+        landmarks,
+        worldLandmarkOffsets,
+        worldLandmarks,
+        handednessOffsets,
+        handednessScores,
+        handednessIndices,
+        handednessCategoryNameIds,
+        handednessDisplayNameIds,
+        labels);
+  }
+
+  private void checkHand(int hand) {
+    if (hand < 0 || hand >= numHands) {
+      throw new IndexOutOfBoundsException(
+          String.format("Hand index %d is out of range [0, %d).", hand, numHands));
+    }
+  }
+
+  private static FloatBuffer wrap(float[] data, int startLandmark, int endLandmark) {
+    return FloatBuffer.wrap(
+            data,
+            startLandmark * LANDMARK_STRIDE,
+            (endLandmark - startLandmark) * LANDMARK_STRIDE)
+        .slice()
+        .asReadOnlyBuffer();
+  }
+
+  private static float[] ensureCapacity(float[] array, int capacity) {
+    return array.length >= capacity ? array : new float[capacity];
+  }
+
+  private static int[] ensureCapacity(int[] array, int capacity) {
+    return array.length >= capacity ? array : new int[capacity];
+  }
+
+  /**
+   * A bounded pool of {@link FlatHandLandmarkerResult}s. Each {@link HandLandmarker} owns one pool,
+   * so results are only reused by the task that created them, and closes it when it is closed.
+   */
+  static final class Pool implements AutoCloseable {
+    private static final int MAX_POOLED_RESULTS = 4;
+
+    private final ArrayDeque<FlatHandLandmarkerResult> results = new ArrayDeque<>();
+    private final int[] handCounts = new int[HAND_COUNTS_SIZE];
+    // The handle of the native label table that interns the labels, created on first use.
+    private long labelTableHandle;
+    private boolean closed;
+    // The handedness category names and display names indexed by their id in the native label
+    // table, shared by all the results of the pool. The table is copied when it grows, so the
+    // results keep a consistent view.
+    private String[] labels = new String[0];
+
+    /**
+     * Returns a result filled from the graph output packets of landmarks, world landmarks and
+     * handedness. An empty landmarks packet means that no hands were detected.
+     *
+     * @throws IllegalStateException if the pool is closed.
+     */
+    synchronized FlatHandLandmarkerResult acquire(
+        Packet landmarksPacket,
+        Packet worldLandmarksPacket,
+        Packet handednessPacket,
+        long timestampMs) {
+      if (closed) {
+        throw new IllegalStateException("The flat hand landmarker result pool is closed.");
+      }
+      if (labelTableHandle == 0) {
+        labelTableHandle = nativeCreateLabelTable();
+      }
+      FlatHandLandmarkerResult result = results.pollFirst();
+      if (result == null) {
+        result = new FlatHandLandmarkerResult(this);
+      }
+      long landmarksHandle = 0;
+      long worldLandmarksHandle = 0;
+      long handednessHandle = 0;
+      if (landmarksPacket.isEmpty()) {
+        Arrays.fill(handCounts, 0);
+      } else {
+        landmarksHandle = landmarksPacket.getNativeHandle();
+        worldLandmarksHandle = worldLandmarksPacket.getNativeHandle();
+        handednessHandle = handednessPacket.getNativeHandle();
+        nativeGetHandCounts(
+            labelTableHandle, landmarksHandle, worldLandmarksHandle, handednessHandle, handCounts);
+      }
+      int labelTableSize = handCounts[4];
+      if (labels.length < labelTableSize) {
+        labels = Arrays.copyOf(labels, Math.max(labelTableSize, labels.length * 2));
+      }
+      result.fill(
+          labelTableHandle,
+          landmarksHandle,
+          worldLandmarksHandle,
+          handednessHandle,
+          handCounts,
+          labels,
+          timestampMs);
+      return result;
+    }
+
+    /**
+     * Releases the native label table. The results acquired before keep their labels, but no
+     * result can be acquired afterwards.
+     */
+    @Override
+    public synchronized void close() {
+      if (labelTableHandle != 0) {
+        nativeReleaseLabelTable(labelTableHandle);
+        labelTableHandle = 0;
+      }
+      closed = true;
+      results.clear();
+    }
+
+    private synchronized void release(FlatHandLandmarkerResult result) {
+      if (!closed && results.size() < MAX_POOLED_RESULTS && !results.contains(result)) {
+        // Drops the lazily built views, so they don't outlive the frame.
+        result.landmarksView = null;
+        result.worldLandmarksView = null;
+        result.handednessesView = null;
+        results.addFirst(result);
+      }
+    }
+  }
+
+  private static native long nativeCreateLabelTable();
+
+  private static native void nativeReleaseLabelTable(long labelTableHandle);
+
+  private static native void nativeGetHandCounts(
+      long labelTableHandle,
+      long landmarksPacketHandle,
+      long worldLandmarksPacketHandle,
+      long handednessPacketHandle,
+      int[] counts);
+
+  private static native void nativeFillHands(
+      long labelTableHandle,
+      long landmarksPacketHandle,
+      long worldLandmarksPacketHandle,
+      long handednessPacketHandle,
+      int[] landmarkOffsets,
+      float[] landmarks,
+      int[] worldLandmarkOffsets,
+      float[] worldLandmarks,
+      int[] handednessOffsets,
+      float[] handednessScores,
+      int[] handednessIndices,
+      int[] handednessCategoryNameIds,
+      int[] handednessDisplayNameIds,
+      String[] labels);
+}
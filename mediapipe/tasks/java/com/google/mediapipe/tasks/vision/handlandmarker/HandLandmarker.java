@@ -21,10 +21,8 @@ import com.google.mediapipe.formats.proto.LandmarkProto.LandmarkList;
 import com.google.mediapipe.formats.proto.LandmarkProto.NormalizedLandmarkList;
 import com.google.mediapipe.proto.CalculatorOptionsProto.CalculatorOptions;
 import com.google.mediapipe.formats.proto.ClassificationProto.ClassificationList;
-import com.google.mediapipe.framework.AndroidPacketGetter;
 import com.google.mediapipe.framework.Packet;
 import com.google.mediapipe.framework.PacketGetter;
-import com.google.mediapipe.framework.image.BitmapImageBuilder;
 import com.google.mediapipe.framework.image.MPImage;
 import com.google.mediapipe.tasks.core.BaseOptions;
 import com.google.mediapipe.tasks.core.ErrorListener;
@@ -37,6 +35,7 @@ import com.google.mediapipe.tasks.core.proto.BaseOptionsProto;
 import com.google.mediapipe.tasks.vision.core.BaseVisionTaskApi;
 import com.google.mediapipe.tasks.vision.core.ImageProcessingOptions;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.google.mediapipe.tasks.vision.core.TaskInputImageConverter;
 import com.google.mediapipe.tasks.vision.handdetector.proto.HandDetectorGraphOptionsProto;
 import com.google.mediapipe.tasks.vision.handlandmarker.proto.HandLandmarkerGraphOptionsProto;
 import com.google.mediapipe.tasks.vision.handlandmarker.proto.HandLandmarksDetectorGraphOptionsProto;
@@ -144,37 +143,69 @@ public final class HandLandmarker extends BaseVisionTaskApi {
    */
   public static HandLandmarker createFromOptions(
       Context context, HandLandmarkerOptions landmarkerOptions) {
+    // The input image is only needed by the result listener, and can be opted out of.
+    boolean outputInputImage =
+        landmarkerOptions.resultListener().isPresent() && landmarkerOptions.outputInputImage();
+    TaskInputImageConverter inputImageConverter =
+        new TaskInputImageConverter(IMAGE_OUT_STREAM_INDEX);
     // TODO: Consolidate OutputHandler and TaskRunner.
     OutputHandler<HandLandmarkerResult, MPImage> handler = new OutputHandler<>();
+    FlatHandLandmarkerResult.Pool flatResultPool =
+        landmarkerOptions.useFlatResult() ? new FlatHandLandmarkerResult.Pool() : null;
     handler.setOutputPacketConverter(
         new OutputHandler.OutputPacketConverter<HandLandmarkerResult, MPImage>() {
           @Override
           public HandLandmarkerResult convertToTaskResult(List<Packet> packets) {
+            long timestampMs =
+                BaseVisionTaskApi.generateResultTimestampMs(
+                    landmarkerOptions.runningMode(), packets.get(LANDMARKS_OUT_STREAM_INDEX));
+            if (flatResultPool != null) {
+              return flatResultPool.acquire(
+                  packets.get(LANDMARKS_OUT_STREAM_INDEX),
+                  packets.get(WORLD_LANDMARKS_OUT_STREAM_INDEX),
+                  packets.get(HANDEDNESS_OUT_STREAM_INDEX),
+                  timestampMs);
+            }
+            List<NormalizedLandmarkList> landmarksProto;
+            List<LandmarkList> worldLandmarksProto;
+            List<ClassificationList> handednessesProto;
             // If there is no hands detected in the image, just returns empty lists.
             if (packets.get(LANDMARKS_OUT_STREAM_INDEX).isEmpty()) {
-              return HandLandmarkerResult.create(
-                  new ArrayList<>(),
-                  new ArrayList<>(),
-                  new ArrayList<>(),
-                  BaseVisionTaskApi.generateResultTimestampMs(
-                      landmarkerOptions.runningMode(), packets.get(LANDMARKS_OUT_STREAM_INDEX)));
+              landmarksProto = new ArrayList<>();
+              worldLandmarksProto = new ArrayList<>();
+              handednessesProto = new ArrayList<>();
+            } else {
+              landmarksProto =
+                  PacketGetter.getProtoVector(
+                      packets.get(LANDMARKS_OUT_STREAM_INDEX), NormalizedLandmarkList.parser());
+              worldLandmarksProto =
+                  PacketGetter.getProtoVector(
+                      packets.get(WORLD_LANDMARKS_OUT_STREAM_INDEX), LandmarkList.parser());
+              handednessesProto =
+                  PacketGetter.getProtoVector(
+                      packets.get(HANDEDNESS_OUT_STREAM_INDEX), ClassificationList.parser());
             }
             return HandLandmarkerResult.create(
-                PacketGetter.getProtoVector(
-                    packets.get(LANDMARKS_OUT_STREAM_INDEX), NormalizedLandmarkList.parser()),
-                PacketGetter.getProtoVector(
-                    packets.get(WORLD_LANDMARKS_OUT_STREAM_INDEX), LandmarkList.parser()),
-                PacketGetter.getProtoVector(
-                    packets.get(HANDEDNESS_OUT_STREAM_INDEX), ClassificationList.parser()),
-                BaseVisionTaskApi.generateResultTimestampMs(
-                    landmarkerOptions.runningMode(), packets.get(LANDMARKS_OUT_STREAM_INDEX)));
+                landmarksProto, worldLandmarksProto, handednessesProto, timestampMs);
           }
 
           @Override
           public MPImage convertToTaskInput(List<Packet> packets) {
-            return new BitmapImageBuilder(
-                    AndroidPacketGetter.getBitmapFromRgb(packets.get(IMAGE_OUT_STREAM_INDEX)))
-                .build();
+            return inputImageConverter.convert(packets);
+          }
+
+          @Override
+          public void releaseTaskInput(MPImage image) {
+            inputImageConverter.release(image);
+          }
+
+          @Override
+          public void close() {
+            inputImageConverter.close();
+            // The graph is done, so no flat result is acquired anymore.
+            if (flatResultPool != null) {
+              flatResultPool.close();
+            }
           }
         });
     landmarkerOptions.resultListener().ifPresent(handler::setResultListener);
@@ -187,8 +218,12 @@ public final class HandLandmarker extends BaseVisionTaskApi {
                 .setTaskRunningModeName(landmarkerOptions.runningMode().name())
                 .setTaskGraphName(TASK_GRAPH_NAME)
                 .setInputStreams(INPUT_STREAMS)
-                .setOutputStreams(OUTPUT_STREAMS)
+                .setOutputStreams(
+                    outputInputImage
+                        ? OUTPUT_STREAMS
+                        : OUTPUT_STREAMS.subList(0, IMAGE_OUT_STREAM_INDEX))
                 .setTaskOptions(landmarkerOptions)
+                .setBaseOptions(landmarkerOptions.baseOptions())
                 .setEnableFlowLimiting(landmarkerOptions.runningMode() == RunningMode.LIVE_STREAM)
                 .build(),
             handler);
@@ -397,9 +432,27 @@ public final class HandLandmarker extends BaseVisionTaskApi {
       public abstract Builder setResultListener(
           ResultListener<HandLandmarkerResult, MPImage> value);
 
+      /**
+       * Sets whether the input image is passed to the {@link ResultListener} along with the
+       * results. Defaults to true. If false, the hand landmarker doesn't output the input image,
+       * and the {@link ResultListener} receives null instead.
+       *
+       * <p>The input image is closed once the {@link ResultListener} returns. A listener that uses
+       * the image later must acquire a reference on it with {@code image.getInternal().acquire()},
+       * and close it once done.
+       */
+      public abstract Builder setOutputInputImage(Boolean value);
+
       /** Sets an optional error listener. */
       public abstract Builder setErrorListener(ErrorListener value);
 
+      /**
+       * Sets whether the hand landmarker returns {@link FlatHandLandmarkerResult}s, which store the
+       * landmarks in primitive arrays and can be recycled across frames by calling {@link
+       * FlatHandLandmarkerResult#close()}. Default to false.
+       */
+      public abstract Builder setUseFlatResult(Boolean value);
+
       abstract HandLandmarkerOptions autoBuild();
 
       /**
@@ -440,11 +493,17 @@ public final class HandLandmarker extends BaseVisionTaskApi {
 
     abstract Optional<ResultListener<HandLandmarkerResult, MPImage>> resultListener();
 
+    abstract Boolean outputInputImage();
+
     abstract Optional<ErrorListener> errorListener();
 
+    abstract Boolean useFlatResult();
+
     public static Builder builder() {
       return new AutoValue_HandLandmarker_HandLandmarkerOptions.Builder()
           .setRunningMode(RunningMode.IMAGE)
+          .setOutputInputImage(true)
+          .setUseFlatResult(false)
           .setNumHands(1)
           .setMinHandDetectionConfidence(0.5f)
           .setMinHandPresenceConfidence(0.5f)
@@ -0,0 +1,265 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#include "mediapipe/tasks/java/com/google/mediapipe/tasks/vision/handlandmarker/jni/flat_hand_landmarker_result_jni.h"
+
+#include <string>
+#include <vector>
+
+#include "absl/container/flat_hash_map.h"
+#include "absl/status/status.h"
+#include "mediapipe/framework/formats/classification.pb.h"
+#include "mediapipe/framework/formats/landmark.pb.h"
+#include "mediapipe/java/com/google/mediapipe/framework/jni/graph.h"
+#include "mediapipe/java/com/google/mediapipe/framework/jni/jni_util.h"
+
+namespace {
+
+using ::mediapipe::ClassificationList;
+using ::mediapipe::LandmarkList;
+using ::mediapipe::NormalizedLandmarkList;
+using ::mediapipe::android::ThrowIfError;
+
+constexpr int kLandmarkStride = 3;
+
+// Interns the category names and display names of the handedness, so that
+// each distinct label is converted to a Java string only once per task.
+class LabelTable {
+ public:
+  // Returns the id of the label, and assigns the next id to new labels.
+  int Intern(const std::string& label) {
+    auto [it, inserted] = ids_.try_emplace(label, labels_.size());
+    if (inserted) {
+      labels_.push_back(label);
+    }
+    return it->second;
+  }
+
+  int size() const { return labels_.size(); }
+
+  // Sets the Java strings of the labels interned since the previous call in
+  // the Java label table, which must hold at least size() entries.
+  void Publish(JNIEnv* env, jobjectArray java_labels) {
+    for (; published_size_ < size(); ++published_size_) {
+      jstring label = env->NewStringUTF(labels_[published_size_].c_str());
+      env->SetObjectArrayElement(java_labels, published_size_, label);
+      env->DeleteLocalRef(label);
+    }
+  }
+
+ private:
+  absl::flat_hash_map<std::string, int> ids_;
+  std::vector<std::string> labels_;
+  int published_size_ = 0;
+};
+
+// Returns the vector held by the packet, or nullptr after throwing a Java
+// exception if the packet doesn't hold a vector of T.
+template <typename T>
+const std::vector<T>* GetVector(JNIEnv* env, jlong packet) {
+  mediapipe::Packet mediapipe_packet =
+      mediapipe::android::Graph::GetPacketFromHandle(packet);
+  absl::Status status = mediapipe_packet.ValidateAsType<std::vector<T>>();
+  if (ThrowIfError(env, status)) {
+    return nullptr;
+  }
+  return &mediapipe_packet.Get<std::vector<T>>();
+}
+
+// The landmarks, world landmarks and handedness of the hands, one element per
+// hand. The world landmarks and handedness may have fewer elements than the
+// landmarks, the missing hands then have none.
+struct Hands {
+  const std::vector<NormalizedLandmarkList>* landmarks;
+  const std::vector<LandmarkList>* world_landmarks;
+  const std::vector<ClassificationList>* handedness;
+
+  int size() const { return landmarks->size(); }
+
+  bool HasWorldLandmarks(int hand) const {
+    return hand < static_cast<int>(world_landmarks->size());
+  }
+
+  bool HasHandedness(int hand) const {
+    return hand < static_cast<int>(handedness->size());
+  }
+
+  int WorldLandmarksSize(int hand) const {
+    return HasWorldLandmarks(hand) ? (*world_landmarks)[hand].landmark_size()
+                                   : 0;
+  }
+
+  int HandednessSize(int hand) const {
+    return HasHandedness(hand) ? (*handedness)[hand].classification_size() : 0;
+  }
+};
+
+// Returns false after throwing a Java exception if a packet doesn't hold the
+// expected type.
+bool GetHands(JNIEnv* env, jlong landmarks_packet, jlong world_landmarks_packet,
+              jlong handedness_packet, Hands* hands) {
+  hands->landmarks = GetVector<NormalizedLandmarkList>(env, landmarks_packet);
+  if (hands->landmarks == nullptr) {
+    return false;
+  }
+  hands->world_landmarks = GetVector<LandmarkList>(env, world_landmarks_packet);
+  if (hands->world_landmarks == nullptr) {
+    return false;
+  }
+  hands->handedness = GetVector<ClassificationList>(env, handedness_packet);
+  return hands->handedness != nullptr;
+}
+
+// Writes the (x, y, z) triples of the landmarks to `values` from `cursor`,
+// and returns the cursor past them.
+template <typename LandmarkListT>
+int AppendLandmarks(const LandmarkListT& landmark_list, int cursor,
+                    std::vector<jfloat>* values) {
+  for (const auto& landmark : landmark_list.landmark()) {
+    (*values)[cursor++] = landmark.x();
+    (*values)[cursor++] = landmark.y();
+    (*values)[cursor++] = landmark.z();
+  }
+  return cursor;
+}
+
+}  // namespace
+
+JNIEXPORT jlong JNICALL FLAT_HAND_LANDMARKER_RESULT_METHOD(
+    nativeCreateLabelTable)(JNIEnv* env, jclass clazz) {
+  return reinterpret_cast<jlong>(new LabelTable());
+}
+
+JNIEXPORT void JNICALL FLAT_HAND_LANDMARKER_RESULT_METHOD(
+    nativeReleaseLabelTable)(JNIEnv* env, jclass clazz, jlong label_table) {
+  delete reinterpret_cast<LabelTable*>(label_table);
+}
+
+JNIEXPORT void JNICALL FLAT_HAND_LANDMARKER_RESULT_METHOD(nativeGetHandCounts)(
+    JNIEnv* env, jclass clazz, jlong label_table, jlong landmarks_packet,
+    jlong world_landmarks_packet, jlong handedness_packet, jintArray counts) {
+  Hands hands;
+  if (!GetHands(env, landmarks_packet, world_landmarks_packet,
+                handedness_packet, &hands)) {
+    return;
+  }
+  LabelTable* table = reinterpret_cast<LabelTable*>(label_table);
+  jint num_landmarks = 0;
+  jint num_world_landmarks = 0;
+  jint num_categories = 0;
+  for (int hand = 0; hand < hands.size(); ++hand) {
+    num_landmarks += (*hands.landmarks)[hand].landmark_size();
+    num_world_landmarks += hands.WorldLandmarksSize(hand);
+    num_categories += hands.HandednessSize(hand);
+    if (hands.HasHandedness(hand)) {
+      for (const auto& classification :
+           (*hands.handedness)[hand].classification()) {
+        table->Intern(classification.label());
+        table->Intern(classification.display_name());
+      }
+    }
+  }
+  const jint values[] = {hands.size(), num_landmarks, num_world_landmarks,
+                         num_categories, table->size()};
+  env->SetIntArrayRegion(counts, 0, 5, values);
+}
+
+JNIEXPORT void JNICALL FLAT_HAND_LANDMARKER_RESULT_METHOD(nativeFillHands)(
+    JNIEnv* env, jclass clazz, jlong label_table, jlong landmarks_packet,
+    jlong world_landmarks_packet, jlong handedness_packet,
+    jintArray landmark_offsets, jfloatArray landmarks,
+    jintArray world_landmark_offsets, jfloatArray world_landmarks,
+    jintArray handedness_offsets, jfloatArray handedness_scores,
+    jintArray handedness_indices, jintArray handedness_category_name_ids,
+    jintArray handedness_display_name_ids, jobjectArray labels) {
+  Hands hands;
+  if (!GetHands(env, landmarks_packet, world_landmarks_packet,
+                handedness_packet, &hands)) {
+    return;
+  }
+  LabelTable* table = reinterpret_cast<LabelTable*>(label_table);
+  const int num_hands = hands.size();
+  std::vector<jint> landmark_offsets_values(num_hands + 1);
+  std::vector<jint> world_landmark_offsets_values(num_hands + 1);
+  std::vector<jint> handedness_offsets_values(num_hands + 1);
+  int num_landmarks = 0;
+  int num_world_landmarks = 0;
+  int num_categories = 0;
+  for (int hand = 0; hand < num_hands; ++hand) {
+    landmark_offsets_values[hand] = num_landmarks;
+    world_landmark_offsets_values[hand] = num_world_landmarks;
+    handedness_offsets_values[hand] = num_categories;
+    num_landmarks += (*hands.landmarks)[hand].landmark_size();
+    num_world_landmarks += hands.WorldLandmarksSize(hand);
+    num_categories += hands.HandednessSize(hand);
+  }
+  landmark_offsets_values[num_hands] = num_landmarks;
+  world_landmark_offsets_values[num_hands] = num_world_landmarks;
+  handedness_offsets_values[num_hands] = num_categories;
+
+  std::vector<jfloat> landmarks_values(num_landmarks * kLandmarkStride);
+  std::vector<jfloat> world_landmarks_values(num_world_landmarks *
+                                             kLandmarkStride);
+  std::vector<jfloat> scores_values;
+  std::vector<jint> indices_values;
+  std::vector<jint> name_ids_values;
+  std::vector<jint> display_name_ids_values;
+  scores_values.reserve(num_categories);
+  indices_values.reserve(num_categories);
+  name_ids_values.reserve(num_categories);
+  display_name_ids_values.reserve(num_categories);
+  int landmarks_cursor = 0;
+  int world_landmarks_cursor = 0;
+  for (int hand = 0; hand < num_hands; ++hand) {
+    landmarks_cursor = AppendLandmarks((*hands.landmarks)[hand],
+                                       landmarks_cursor, &landmarks_values);
+    if (hands.HasWorldLandmarks(hand)) {
+      world_landmarks_cursor =
+          AppendLandmarks((*hands.world_landmarks)[hand],
+                          world_landmarks_cursor, &world_landmarks_values);
+    }
+    if (hands.HasHandedness(hand)) {
+      for (const auto& classification :
+           (*hands.handedness)[hand].classification()) {
+        scores_values.push_back(classification.score());
+        indices_values.push_back(classification.index());
+        // The labels were interned by nativeGetHandCounts, so these are
+        // lookups of existing ids.
+        name_ids_values.push_back(table->Intern(classification.label()));
+        display_name_ids_values.push_back(
+            table->Intern(classification.display_name()));
+      }
+    }
+  }
+  table->Publish(env, labels);
+  env->SetIntArrayRegion(landmark_offsets, 0, num_hands + 1,
+                         landmark_offsets_values.data());
+  env->SetFloatArrayRegion(landmarks, 0, landmarks_values.size(),
+                           landmarks_values.data());
+  env->SetIntArrayRegion(world_landmark_offsets, 0, num_hands + 1,
+                         world_landmark_offsets_values.data());
+  env->SetFloatArrayRegion(world_landmarks, 0, world_landmarks_values.size(),
+                           world_landmarks_values.data());
+  env->SetIntArrayRegion(handedness_offsets, 0, num_hands + 1,
+                         handedness_offsets_values.data());
+  env->SetFloatArrayRegion(handedness_scores, 0, scores_values.size(),
+                           scores_values.data());
+  env->SetIntArrayRegion(handedness_indices, 0, indices_values.size(),
+                         indices_values.data());
+  env->SetIntArrayRegion(handedness_category_name_ids, 0,
+                         name_ids_values.size(), name_ids_values.data());
+  env->SetIntArrayRegion(handedness_display_name_ids, 0,
+                         display_name_ids_values.size(),
+                         display_name_ids_values.data());
+}
@@ -0,0 +1,59 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#ifndef JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_VISION_HANDLANDMARKER_JNI_FLAT_HAND_LANDMARKER_RESULT_JNI_H_
+#define JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_VISION_HANDLANDMARKER_JNI_FLAT_HAND_LANDMARKER_RESULT_JNI_H_
+
+#include <jni.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif  // __cplusplus
+
+#define FLAT_HAND_LANDMARKER_RESULT_METHOD(METHOD_NAME) \
+  Java_com_google_mediapipe_tasks_vision_handlandmarker_FlatHandLandmarkerResult_##METHOD_NAME
+
+// Creates the native label table that interns the handedness labels, and
+// returns its handle.
+JNIEXPORT jlong JNICALL FLAT_HAND_LANDMARKER_RESULT_METHOD(
+    nativeCreateLabelTable)(JNIEnv* env, jclass clazz);
+
+// Deletes the native label table.
+JNIEXPORT void JNICALL FLAT_HAND_LANDMARKER_RESULT_METHOD(
+    nativeReleaseLabelTable)(JNIEnv* env, jclass clazz, jlong label_table);
+
+// Interns the handedness labels, and writes the number of hands, the total
+// number of landmarks, the total number of world landmarks, the total number
+// of handedness categories and the size of the label table to `counts`.
+JNIEXPORT void JNICALL FLAT_HAND_LANDMARKER_RESULT_METHOD(nativeGetHandCounts)(
+    JNIEnv* env, jclass clazz, jlong label_table, jlong landmarks_packet,
+    jlong world_landmarks_packet, jlong handedness_packet, jintArray counts);
+
+// Fills the flat arrays from the landmarks, world landmarks and handedness of
+// the hands, and sets the Java strings of the labels that were interned since
+// the previous call.
+JNIEXPORT void JNICALL FLAT_HAND_LANDMARKER_RESULT_METHOD(nativeFillHands)(
+    JNIEnv* env, jclass clazz, jlong label_table, jlong landmarks_packet,
+    jlong world_landmarks_packet, jlong handedness_packet,
+    jintArray landmark_offsets, jfloatArray landmarks,
+    jintArray world_landmark_offsets, jfloatArray world_landmarks,
+    jintArray handedness_offsets, jfloatArray handedness_scores,
+    jintArray handedness_indices, jintArray handedness_category_name_ids,
+    jintArray handedness_display_name_ids, jobjectArray labels);
+
+#ifdef __cplusplus
+}  // extern "C"
+#endif  // __cplusplus
+
+#endif  // JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_VISION_HANDLANDMARKER_JNI_FLAT_HAND_LANDMARKER_RESULT_JNI_H_
@@ -18,14 +18,13 @@ import android.content.Context;
 import android.os.ParcelFileDescriptor;
 import com.google.auto.value.AutoValue;
 import com.google.mediapipe.proto.CalculatorOptionsProto.CalculatorOptions;
-import com.google.mediapipe.framework.AndroidPacketGetter;
 import com.google.mediapipe.framework.MediaPipeException;
 import com.google.mediapipe.framework.Packet;
 import com.google.mediapipe.framework.PacketGetter;
 import com.google.mediapipe.framework.ProtoUtil;
-import com.google.mediapipe.framework.image.BitmapImageBuilder;
 import com.google.mediapipe.framework.image.MPImage;
 import com.google.mediapipe.tasks.components.containers.ClassificationResult;
+import com.google.mediapipe.tasks.components.containers.CompactClassificationResult;
 import com.google.mediapipe.tasks.components.containers.proto.ClassificationsProto;
 import com.google.mediapipe.tasks.components.processors.proto.ClassifierOptionsProto;
 import com.google.mediapipe.tasks.core.BaseOptions;
@@ -34,19 +33,25 @@ import com.google.mediapipe.tasks.core.OutputHandler;
 import com.google.mediapipe.tasks.core.OutputHandler.ResultListener;
 import com.google.mediapipe.tasks.core.TaskInfo;
 import com.google.mediapipe.tasks.core.TaskOptions;
+import com.google.mediapipe.tasks.core.TaskResult;
 import com.google.mediapipe.tasks.core.TaskRunner;
+import com.google.mediapipe.tasks.core.TaskRunnerPool;
 import com.google.mediapipe.tasks.core.proto.BaseOptionsProto;
 import com.google.mediapipe.tasks.vision.core.BaseVisionTaskApi;
 import com.google.mediapipe.tasks.vision.core.ImageProcessingOptions;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.google.mediapipe.tasks.vision.core.TaskInputImageConverter;
 import com.google.mediapipe.tasks.vision.imageclassifier.proto.ImageClassifierGraphOptionsProto;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Performs classification on images.
@@ -165,11 +170,58 @@ public final class ImageClassifier extends BaseVisionTaskApi {
    * @throws MediaPipeException if there is an error during {@link ImageClassifier} creation.
    */
   public static ImageClassifier createFromOptions(Context context, ImageClassifierOptions options) {
+    // The input image is only needed by the result listener, and can be opted out of.
+    boolean outputInputImage = options.resultListener().isPresent() && options.outputInputImage();
+    CompactClassificationResult.LabelTable labelTable =
+        options.useCompactResult() ? new CompactClassificationResult.LabelTable() : null;
+    TaskInfo<ImageClassifierOptions> taskInfo =
+        TaskInfo.<ImageClassifierOptions>builder()
+            .setTaskName(ImageClassifier.class.getSimpleName())
+            .setTaskRunningModeName(options.runningMode().name())
+            .setTaskGraphName(TASK_GRAPH_NAME)
+            .setInputStreams(INPUT_STREAMS)
+            .setOutputStreams(
+                outputInputImage
+                    ? OUTPUT_STREAMS
+                    : OUTPUT_STREAMS.subList(0, IMAGE_OUT_STREAM_INDEX))
+            .setTaskOptions(options)
+            .setBaseOptions(options.baseOptions())
+            .setEnableFlowLimiting(options.runningMode() == RunningMode.LIVE_STREAM)
+            .build();
+    if (options.numTaskRunners() > 1) {
+      TaskRunnerPool runnerPool =
+          TaskRunnerPool.create(
+              context,
+              taskInfo,
+              () -> createOutputHandler(options, labelTable),
+              options.numTaskRunners());
+      return new ImageClassifier(runnerPool);
+    }
+    TaskRunner runner =
+        TaskRunner.create(context, taskInfo, createOutputHandler(options, labelTable));
+    return new ImageClassifier(runner, options.runningMode());
+  }
+
+  /**
+   * Creates the {@link OutputHandler} of a task graph. The results of all the graphs share the
+   * same {@code labelTable}, if any.
+   */
+  private static OutputHandler<ImageClassifierResult, MPImage> createOutputHandler(
+      ImageClassifierOptions options, CompactClassificationResult.LabelTable labelTable) {
+    TaskInputImageConverter inputImageConverter =
+        new TaskInputImageConverter(IMAGE_OUT_STREAM_INDEX);
     OutputHandler<ImageClassifierResult, MPImage> handler = new OutputHandler<>();
     handler.setOutputPacketConverter(
         new OutputHandler.OutputPacketConverter<ImageClassifierResult, MPImage>() {
           @Override
           public ImageClassifierResult convertToTaskResult(List<Packet> packets) {
+            if (labelTable != null) {
+              return ImageClassifierResult.create(
+                  CompactClassificationResult.createFromPacket(
+                      labelTable, packets.get(CLASSIFICATIONS_OUT_STREAM_INDEX)),
+                  BaseVisionTaskApi.generateResultTimestampMs(
+                      options.runningMode(), packets.get(CLASSIFICATIONS_OUT_STREAM_INDEX)));
+            }
             try {
               return ImageClassifierResult.create(
                   ClassificationResult.createFromProto(
@@ -186,27 +238,22 @@ public final class ImageClassifier extends BaseVisionTaskApi {
 
           @Override
           public MPImage convertToTaskInput(List<Packet> packets) {
-            return new BitmapImageBuilder(
-                    AndroidPacketGetter.getBitmapFromRgb(packets.get(IMAGE_OUT_STREAM_INDEX)))
-                .build();
+            return inputImageConverter.convert(packets);
+          }
+
+          @Override
+          public void releaseTaskInput(MPImage image) {
+            inputImageConverter.release(image);
+          }
+
+          @Override
+          public void close() {
+            inputImageConverter.close();
           }
         });
     options.resultListener().ifPresent(handler::setResultListener);
     options.errorListener().ifPresent(handler::setErrorListener);
-    TaskRunner runner =
-        TaskRunner.create(
-            context,
-            TaskInfo.<ImageClassifierOptions>builder()
-                .setTaskName(ImageClassifier.class.getSimpleName())
-                .setTaskRunningModeName(options.runningMode().name())
-                .setTaskGraphName(TASK_GRAPH_NAME)
-                .setInputStreams(INPUT_STREAMS)
-                .setOutputStreams(OUTPUT_STREAMS)
-                .setTaskOptions(options)
-                .setEnableFlowLimiting(options.runningMode() == RunningMode.LIVE_STREAM)
-                .build(),
-            handler);
-    return new ImageClassifier(runner, options.runningMode());
+    return handler;
   }
 
   /**
@@ -220,6 +267,16 @@ public final class ImageClassifier extends BaseVisionTaskApi {
     super(taskRunner, runningMode, IMAGE_IN_STREAM_NAME, NORM_RECT_IN_STREAM_NAME);
   }
 
+  /**
+   * Constructor to initialize an {@link ImageClassifier} in the image mode from a {@link
+   * TaskRunnerPool}.
+   *
+   * @param taskRunnerPool a {@link TaskRunnerPool}.
+   */
+  private ImageClassifier(TaskRunnerPool taskRunnerPool) {
+    super(taskRunnerPool, IMAGE_IN_STREAM_NAME, NORM_RECT_IN_STREAM_NAME);
+  }
+
   /**
    * Performs classification on the provided single image with default image processing options,
    * i.e. using the whole image as region-of-interest and without any rotation applied. Only use
@@ -258,6 +315,83 @@ public final class ImageClassifier extends BaseVisionTaskApi {
     return (ImageClassifierResult) processImageData(image, imageProcessingOptions);
   }
 
+  /**
+   * Sends the provided single image to perform classification without blocking the current thread.
+   * Only use this method when the {@link ImageClassifier} is created with {@link
+   * RunningMode.IMAGE}.
+   *
+   * <p>The returned future is completed with the {@link ImageClassifierResult} by the task graph's
+   * output callback, so that many images can be in flight without dedicating a thread to each of
+   * them. The future is always completed: if the task graph fails, it is completed exceptionally
+   * with a {@link MediaPipeException}, as are the futures of all the other pending images.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ImageClassifierResult> classifyAsFuture(
+      MPImage image, ImageProcessingOptions imageProcessingOptions) {
+    return processImageDataAsync(image, imageProcessingOptions);
+  }
+
+  /**
+   * Sends the provided single image to perform classification without blocking the current thread,
+   * and completes the returned future on the given {@link Executor}. Only use this method when the
+   * {@link ImageClassifier} is created with {@link RunningMode.IMAGE}.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @param executor the {@link Executor} that completes the returned future.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ImageClassifierResult> classifyAsFuture(
+      MPImage image, ImageProcessingOptions imageProcessingOptions, Executor executor) {
+    return processImageDataAsync(image, imageProcessingOptions, executor);
+  }
+
+  /**
+   * Performs classification on the provided batch of images with default image processing options,
+   * i.e. using the whole image as region-of-interest and without any rotation applied. Only use
+   * this method when the {@link ImageClassifier} is created with {@link RunningMode.IMAGE}.
+   *
+   * <p>This is more efficient than calling {@link #classify(MPImage)} for each image, as the images
+   * are pipelined through the task graph.
+   *
+   * @param images a list of MediaPipe {@link MPImage} objects for processing.
+   * @return the classification results in the same order as the input images.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public List<ImageClassifierResult> classifyAll(List<MPImage> images) {
+    return classifyAll(
+        images, Collections.nCopies(images.size(), ImageProcessingOptions.builder().build()));
+  }
+
+  /**
+   * Performs classification on the provided batch of images. Only use this method when the {@link
+   * ImageClassifier} is created with {@link RunningMode.IMAGE}.
+   *
+   * <p>This is more efficient than calling {@link #classify(MPImage, ImageProcessingOptions)} for
+   * each image, as the images are pipelined through the task graph.
+   *
+   * @param images a list of MediaPipe {@link MPImage} objects for processing.
+   * @param imageProcessingOptions a list of {@link ImageProcessingOptions} specifying how to
+   *     process each input image before running inference.
+   * @return the classification results in the same order as the input images.
+   * @throws IllegalArgumentException if {@code images} and {@code imageProcessingOptions} have
+   *     different sizes.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public List<ImageClassifierResult> classifyAll(
+      List<MPImage> images, List<ImageProcessingOptions> imageProcessingOptions) {
+    List<ImageClassifierResult> results = new ArrayList<>(images.size());
+    for (TaskResult result : processImageBatch(images, imageProcessingOptions)) {
+      results.add((ImageClassifierResult) result);
+    }
+    return results;
+  }
+
   /**
    * Performs classification on the provided video frame with default image processing options, i.e.
    * using the whole image as region-of-interest and without any rotation applied. Only use this
@@ -304,6 +438,48 @@ public final class ImageClassifier extends BaseVisionTaskApi {
     return (ImageClassifierResult) processVideoData(image, imageProcessingOptions, timestampMs);
   }
 
+  /**
+   * Sends the provided video frame to perform classification without blocking the current thread.
+   * Only use this method when the {@link ImageClassifier} is created with {@link
+   * RunningMode.VIDEO}.
+   *
+   * <p>It's required to provide the video frame's timestamp (in milliseconds). The input timestamps
+   * must be monotonically increasing.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @param timestampMs the input timestamp (in milliseconds).
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ImageClassifierResult> classifyForVideoAsFuture(
+      MPImage image, ImageProcessingOptions imageProcessingOptions, long timestampMs) {
+    return processVideoDataAsync(image, imageProcessingOptions, timestampMs);
+  }
+
+  /**
+   * Sends the provided video frame to perform classification without blocking the current thread,
+   * and completes the returned future on the given {@link Executor}. Only use this method when the
+   * {@link ImageClassifier} is created with {@link RunningMode.VIDEO}.
+   *
+   * <p>It's required to provide the video frame's timestamp (in milliseconds). The input timestamps
+   * must be monotonically increasing.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @param timestampMs the input timestamp (in milliseconds).
+   * @param executor the {@link Executor} that completes the returned future.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ImageClassifierResult> classifyForVideoAsFuture(
+      MPImage image,
+      ImageProcessingOptions imageProcessingOptions,
+      long timestampMs,
+      Executor executor) {
+    return processVideoDataAsync(image, imageProcessingOptions, timestampMs, executor);
+  }
+
   /**
    * Sends live image data to perform classification with default image processing options, i.e.
    * using the whole image as region-of-interest and without any rotation applied, and the results
@@ -422,9 +598,36 @@ public final class ImageClassifier extends BaseVisionTaskApi {
       public abstract Builder setResultListener(
           ResultListener<ImageClassifierResult, MPImage> resultListener);
 
+      /**
+       * Sets whether the input image is passed to the {@link ResultListener} along with the
+       * results. Defaults to true. If false, the image classifier doesn't output the input image,
+       * and the {@link ResultListener} receives null instead.
+       *
+       * <p>The input image is closed once the {@link ResultListener} returns. A listener that uses
+       * the image later must acquire a reference on it with {@code image.getInternal().acquire()},
+       * and close it once done.
+       */
+      public abstract Builder setOutputInputImage(Boolean value);
+
       /** Sets an optional {@link ErrorListener}. */
       public abstract Builder setErrorListener(ErrorListener errorListener);
 
+      /**
+       * Sets whether the image classifier returns {@link CompactClassificationResult}s, which store
+       * the categories in primitive arrays decoded natively from the graph output, with labels
+       * looked up in a table shared by all the results. Default to false.
+       */
+      public abstract Builder setUseCompactResult(Boolean value);
+
+      /**
+       * Sets the number of task graphs of the image classifier in the image mode. The graphs share
+       * the model resources, and the {@link ImageClassifier#classify}, {@link
+       * ImageClassifier#classifyAsFuture} and {@link ImageClassifier#classifyAll} calls from
+       * different threads run on the idle graphs instead of waiting for each other. The first graph
+       * provides the stats of {@link ImageClassifier#getStatsSnapshot()}. Default to 1.
+       */
+      public abstract Builder setNumTaskRunners(Integer value);
+
       abstract ImageClassifierOptions autoBuild();
 
       /**
@@ -448,6 +651,13 @@ public final class ImageClassifier extends BaseVisionTaskApi {
         if (options.maxResults().isPresent() && options.maxResults().get() <= 0) {
           throw new IllegalArgumentException("If specified, maxResults must be > 0.");
         }
+        if (options.numTaskRunners() <= 0) {
+          throw new IllegalArgumentException("numTaskRunners must be > 0.");
+        }
+        if (options.numTaskRunners() > 1 && options.runningMode() != RunningMode.IMAGE) {
+          throw new IllegalArgumentException(
+              "Only the image classifier in the image mode can have more than one task runner.");
+        }
         if (!options.categoryAllowlist().isEmpty() && !options.categoryDenylist().isEmpty()) {
           throw new IllegalArgumentException(
               "Category allowlist and denylist are mutually exclusive.");
@@ -472,13 +682,22 @@ public final class ImageClassifier extends BaseVisionTaskApi {
 
     abstract Optional<ResultListener<ImageClassifierResult, MPImage>> resultListener();
 
+    abstract Boolean outputInputImage();
+
     abstract Optional<ErrorListener> errorListener();
 
+    abstract Boolean useCompactResult();
+
+    abstract Integer numTaskRunners();
+
     public static Builder builder() {
       return new AutoValue_ImageClassifier_ImageClassifierOptions.Builder()
           .setRunningMode(RunningMode.IMAGE)
+          .setOutputInputImage(true)
           .setCategoryAllowlist(Collections.emptyList())
-          .setCategoryDenylist(Collections.emptyList());
+          .setCategoryDenylist(Collections.emptyList())
+          .setUseCompactResult(false)
+          .setNumTaskRunners(1);
     }
 
     /**
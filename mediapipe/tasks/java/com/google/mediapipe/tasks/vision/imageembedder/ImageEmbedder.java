@@ -18,14 +18,12 @@ import android.content.Context;
 import android.os.ParcelFileDescriptor;
 import com.google.auto.value.AutoValue;
 import com.google.mediapipe.proto.CalculatorOptionsProto.CalculatorOptions;
-import com.google.mediapipe.framework.AndroidPacketGetter;
 import com.google.mediapipe.framework.MediaPipeException;
 import com.google.mediapipe.framework.Packet;
-import com.google.mediapipe.framework.PacketGetter;
 import com.google.mediapipe.framework.ProtoUtil;
-import com.google.mediapipe.framework.image.BitmapImageBuilder;
 import com.google.mediapipe.framework.image.MPImage;
 import com.google.mediapipe.tasks.components.containers.Embedding;
+import com.google.mediapipe.tasks.components.containers.EmbeddingPacketGetter;
 import com.google.mediapipe.tasks.components.containers.EmbeddingResult;
 import com.google.mediapipe.tasks.components.containers.proto.EmbeddingsProto;
 import com.google.mediapipe.tasks.components.processors.proto.EmbedderOptionsProto;
@@ -36,19 +34,25 @@ import com.google.mediapipe.tasks.core.OutputHandler;
 import com.google.mediapipe.tasks.core.OutputHandler.ResultListener;
 import com.google.mediapipe.tasks.core.TaskInfo;
 import com.google.mediapipe.tasks.core.TaskOptions;
+import com.google.mediapipe.tasks.core.TaskResult;
 import com.google.mediapipe.tasks.core.TaskRunner;
+import com.google.mediapipe.tasks.core.TaskRunnerPool;
 import com.google.mediapipe.tasks.core.proto.BaseOptionsProto;
 import com.google.mediapipe.tasks.vision.core.BaseVisionTaskApi;
 import com.google.mediapipe.tasks.vision.core.ImageProcessingOptions;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.google.mediapipe.tasks.vision.core.TaskInputImageConverter;
 import com.google.mediapipe.tasks.vision.imageembedder.proto.ImageEmbedderGraphOptionsProto;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Performs embedding extraction on images.
@@ -148,48 +152,68 @@ public final class ImageEmbedder extends BaseVisionTaskApi {
    * @throws MediaPipeException if there is an error during {@link ImageEmbedder} creation.
    */
   public static ImageEmbedder createFromOptions(Context context, ImageEmbedderOptions options) {
+    // The input image is only needed by the result listener, and can be opted out of.
+    boolean outputInputImage = options.resultListener().isPresent() && options.outputInputImage();
+    TaskInfo<ImageEmbedderOptions> taskInfo =
+        TaskInfo.<ImageEmbedderOptions>builder()
+            .setTaskName(ImageEmbedder.class.getSimpleName())
+            .setTaskRunningModeName(options.runningMode().name())
+            .setTaskGraphName(TASK_GRAPH_NAME)
+            .setInputStreams(INPUT_STREAMS)
+            .setOutputStreams(
+                outputInputImage
+                    ? OUTPUT_STREAMS
+                    : OUTPUT_STREAMS.subList(0, IMAGE_OUT_STREAM_INDEX))
+            .setTaskOptions(options)
+            .setBaseOptions(options.baseOptions())
+            .setEnableFlowLimiting(options.runningMode() == RunningMode.LIVE_STREAM)
+            .build();
+    if (options.numTaskRunners() > 1) {
+      TaskRunnerPool runnerPool =
+          TaskRunnerPool.create(
+              context, taskInfo, () -> createOutputHandler(options), options.numTaskRunners());
+      return new ImageEmbedder(runnerPool);
+    }
+    TaskRunner runner = TaskRunner.create(context, taskInfo, createOutputHandler(options));
+    return new ImageEmbedder(runner, options.runningMode());
+  }
+
+  /** Creates the {@link OutputHandler} of a task graph. */
+  private static OutputHandler<ImageEmbedderResult, MPImage> createOutputHandler(
+      ImageEmbedderOptions options) {
+    TaskInputImageConverter inputImageConverter =
+        new TaskInputImageConverter(IMAGE_OUT_STREAM_INDEX);
     OutputHandler<ImageEmbedderResult, MPImage> handler = new OutputHandler<>();
     handler.setOutputPacketConverter(
         new OutputHandler.OutputPacketConverter<ImageEmbedderResult, MPImage>() {
           @Override
           public ImageEmbedderResult convertToTaskResult(List<Packet> packets) {
-            try {
-              return ImageEmbedderResult.create(
-                  EmbeddingResult.createFromProto(
-                      PacketGetter.getProto(
-                          packets.get(EMBEDDINGS_OUT_STREAM_INDEX),
-                          EmbeddingsProto.EmbeddingResult.getDefaultInstance())),
-                  BaseVisionTaskApi.generateResultTimestampMs(
-                      options.runningMode(), packets.get(EMBEDDINGS_OUT_STREAM_INDEX)));
-            } catch (IOException e) {
-              throw new MediaPipeException(
-                  MediaPipeException.StatusCode.INTERNAL.ordinal(), e.getMessage());
-            }
+            // The embeddings are copied natively from the packet, without serializing and
+            // parsing the embedding result protobuf message.
+            return ImageEmbedderResult.create(
+                EmbeddingPacketGetter.getEmbeddingResult(packets.get(EMBEDDINGS_OUT_STREAM_INDEX)),
+                BaseVisionTaskApi.generateResultTimestampMs(
+                    options.runningMode(), packets.get(EMBEDDINGS_OUT_STREAM_INDEX)));
           }
 
           @Override
           public MPImage convertToTaskInput(List<Packet> packets) {
-            return new BitmapImageBuilder(
-                    AndroidPacketGetter.getBitmapFromRgb(packets.get(IMAGE_OUT_STREAM_INDEX)))
-                .build();
+            return inputImageConverter.convert(packets);
+          }
+
+          @Override
+          public void releaseTaskInput(MPImage image) {
+            inputImageConverter.release(image);
+          }
+
+          @Override
+          public void close() {
+            inputImageConverter.close();
           }
         });
     options.resultListener().ifPresent(handler::setResultListener);
     options.errorListener().ifPresent(handler::setErrorListener);
-    TaskRunner runner =
-        TaskRunner.create(
-            context,
-            TaskInfo.<ImageEmbedderOptions>builder()
-                .setTaskName(ImageEmbedder.class.getSimpleName())
-                .setTaskRunningModeName(options.runningMode().name())
-                .setTaskGraphName(TASK_GRAPH_NAME)
-                .setInputStreams(INPUT_STREAMS)
-                .setOutputStreams(OUTPUT_STREAMS)
-                .setTaskOptions(options)
-                .setEnableFlowLimiting(options.runningMode() == RunningMode.LIVE_STREAM)
-                .build(),
-            handler);
-    return new ImageEmbedder(runner, options.runningMode());
+    return handler;
   }
 
   /**
@@ -203,6 +227,16 @@ public final class ImageEmbedder extends BaseVisionTaskApi {
     super(taskRunner, runningMode, IMAGE_IN_STREAM_NAME, NORM_RECT_IN_STREAM_NAME);
   }
 
+  /**
+   * Constructor to initialize an {@link ImageEmbedder} in the image mode from a {@link
+   * TaskRunnerPool}.
+   *
+   * @param taskRunnerPool a {@link TaskRunnerPool}.
+   */
+  private ImageEmbedder(TaskRunnerPool taskRunnerPool) {
+    super(taskRunnerPool, IMAGE_IN_STREAM_NAME, NORM_RECT_IN_STREAM_NAME);
+  }
+
   /**
    * Performs embedding extraction on the provided single image with default image processing
    * options, i.e. using the whole image as region-of-interest and without any rotation applied.
@@ -240,6 +274,83 @@ public final class ImageEmbedder extends BaseVisionTaskApi {
     return (ImageEmbedderResult) processImageData(image, imageProcessingOptions);
   }
 
+  /**
+   * Sends the provided single image to perform embedding extraction without blocking the current
+   * thread. Only use this method when the {@link ImageEmbedder} is created with {@link
+   * RunningMode.IMAGE}.
+   *
+   * <p>The returned future is completed with the {@link ImageEmbedderResult} by the task graph's
+   * output callback, so that many images can be in flight without dedicating a thread to each of
+   * them. The future is always completed: if the task graph fails, it is completed exceptionally
+   * with a {@link MediaPipeException}, as are the futures of all the other pending images.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ImageEmbedderResult> embedAsFuture(
+      MPImage image, ImageProcessingOptions imageProcessingOptions) {
+    return processImageDataAsync(image, imageProcessingOptions);
+  }
+
+  /**
+   * Sends the provided single image to perform embedding extraction without blocking the current
+   * thread, and completes the returned future on the given {@link Executor}. Only use this method
+   * when the {@link ImageEmbedder} is created with {@link RunningMode.IMAGE}.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @param executor the {@link Executor} that completes the returned future.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ImageEmbedderResult> embedAsFuture(
+      MPImage image, ImageProcessingOptions imageProcessingOptions, Executor executor) {
+    return processImageDataAsync(image, imageProcessingOptions, executor);
+  }
+
+  /**
+   * Performs embedding extraction on the provided batch of images with default image processing
+   * options, i.e. using the whole image as region-of-interest and without any rotation applied.
+   * Only use this method when the {@link ImageEmbedder} is created with {@link RunningMode.IMAGE}.
+   *
+   * <p>This is more efficient than calling {@link #embed(MPImage)} for each image, as the images
+   * are pipelined through the task graph.
+   *
+   * @param images a list of MediaPipe {@link MPImage} objects for processing.
+   * @return the embedding results in the same order as the input images.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public List<ImageEmbedderResult> embedAll(List<MPImage> images) {
+    return embedAll(
+        images, Collections.nCopies(images.size(), ImageProcessingOptions.builder().build()));
+  }
+
+  /**
+   * Performs embedding extraction on the provided batch of images. Only use this method when the
+   * {@link ImageEmbedder} is created with {@link RunningMode.IMAGE}.
+   *
+   * <p>This is more efficient than calling {@link #embed(MPImage, ImageProcessingOptions)} for each
+   * image, as the images are pipelined through the task graph.
+   *
+   * @param images a list of MediaPipe {@link MPImage} objects for processing.
+   * @param imageProcessingOptions a list of {@link ImageProcessingOptions} specifying how to
+   *     process each input image before running inference.
+   * @return the embedding results in the same order as the input images.
+   * @throws IllegalArgumentException if {@code images} and {@code imageProcessingOptions} have
+   *     different sizes.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public List<ImageEmbedderResult> embedAll(
+      List<MPImage> images, List<ImageProcessingOptions> imageProcessingOptions) {
+    List<ImageEmbedderResult> results = new ArrayList<>(images.size());
+    for (TaskResult result : processImageBatch(images, imageProcessingOptions)) {
+      results.add((ImageEmbedderResult) result);
+    }
+    return results;
+  }
+
   /**
    * Performs embedding extraction on the provided video frame with default image processing
    * options, i.e. using the whole image as region-of-interest and without any rotation applied.
@@ -286,6 +397,48 @@ public final class ImageEmbedder extends BaseVisionTaskApi {
     return (ImageEmbedderResult) processVideoData(image, imageProcessingOptions, timestampMs);
   }
 
+  /**
+   * Sends the provided video frame to perform embedding extraction without blocking the current
+   * thread. Only use this method when the {@link ImageEmbedder} is created with {@link
+   * RunningMode.VIDEO}.
+   *
+   * <p>It's required to provide the video frame's timestamp (in milliseconds). The input timestamps
+   * must be monotonically increasing.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @param timestampMs the input timestamp (in milliseconds).
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ImageEmbedderResult> embedForVideoAsFuture(
+      MPImage image, ImageProcessingOptions imageProcessingOptions, long timestampMs) {
+    return processVideoDataAsync(image, imageProcessingOptions, timestampMs);
+  }
+
+  /**
+   * Sends the provided video frame to perform embedding extraction without blocking the current
+   * thread, and completes the returned future on the given {@link Executor}. Only use this method
+   * when the {@link ImageEmbedder} is created with {@link RunningMode.VIDEO}.
+   *
+   * <p>It's required to provide the video frame's timestamp (in milliseconds). The input timestamps
+   * must be monotonically increasing.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference.
+   * @param timestampMs the input timestamp (in milliseconds).
+   * @param executor the {@link Executor} that completes the returned future.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ImageEmbedderResult> embedForVideoAsFuture(
+      MPImage image,
+      ImageProcessingOptions imageProcessingOptions,
+      long timestampMs,
+      Executor executor) {
+    return processVideoDataAsync(image, imageProcessingOptions, timestampMs, executor);
+  }
+
   /**
    * Sends live image data to perform embedding extraction with default image processing options,
    * i.e. using the whole image as region-of-interest and without any rotation applied, and the
@@ -397,9 +550,29 @@ public final class ImageEmbedder extends BaseVisionTaskApi {
       public abstract Builder setResultListener(
           ResultListener<ImageEmbedderResult, MPImage> resultListener);
 
+      /**
+       * Sets whether the input image is passed to the {@link ResultListener} along with the
+       * results. Defaults to true. If false, the image embedder doesn't output the input image, and
+       * the {@link ResultListener} receives null instead.
+       *
+       * <p>The input image is closed once the {@link ResultListener} returns. A listener that uses
+       * the image later must acquire a reference on it with {@code image.getInternal().acquire()},
+       * and close it once done.
+       */
+      public abstract Builder setOutputInputImage(Boolean value);
+
       /** Sets an optional {@link ErrorListener}. */
       public abstract Builder setErrorListener(ErrorListener errorListener);
 
+      /**
+       * Sets the number of task graphs of the image embedder in the image mode. The graphs share
+       * the model resources, and the {@link ImageEmbedder#embed}, {@link
+       * ImageEmbedder#embedAsFuture} and {@link ImageEmbedder#embedAll} calls from different
+       * threads run on the idle graphs instead of waiting for each other. The first graph provides
+       * the stats of {@link ImageEmbedder#getStatsSnapshot()}. Default to 1.
+       */
+      public abstract Builder setNumTaskRunners(Integer value);
+
       abstract ImageEmbedderOptions autoBuild();
 
       /**
@@ -422,6 +595,13 @@ public final class ImageEmbedder extends BaseVisionTaskApi {
               "The image embedder is in the image or video mode, a user-defined result listener"
                   + " shouldn't be provided in ImageEmbedderOptions.");
         }
+        if (options.numTaskRunners() <= 0) {
+          throw new IllegalArgumentException("numTaskRunners must be > 0.");
+        }
+        if (options.numTaskRunners() > 1 && options.runningMode() != RunningMode.IMAGE) {
+          throw new IllegalArgumentException(
+              "Only the image embedder in the image mode can have more than one task runner.");
+        }
         return options;
       }
     }
@@ -436,13 +616,19 @@ public final class ImageEmbedder extends BaseVisionTaskApi {
 
     abstract Optional<ResultListener<ImageEmbedderResult, MPImage>> resultListener();
 
+    abstract Boolean outputInputImage();
+
     abstract Optional<ErrorListener> errorListener();
 
+    abstract Integer numTaskRunners();
+
     public static Builder builder() {
       return new AutoValue_ImageEmbedder_ImageEmbedderOptions.Builder()
           .setRunningMode(RunningMode.IMAGE)
+          .setOutputInputImage(true)
           .setL2Normalize(false)
-          .setQuantize(false);
+          .setQuantize(false)
+          .setNumTaskRunners(1);
     }
 
     /** Converts a {@link ImageEmbedderOptions} to a {@link CalculatorOptions} protobuf message. */
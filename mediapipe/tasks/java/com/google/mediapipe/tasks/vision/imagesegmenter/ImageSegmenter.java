@@ -17,11 +17,9 @@ package com.google.mediapipe.tasks.vision.imagesegmenter;
 import android.content.Context;
 import com.google.auto.value.AutoValue;
 import com.google.mediapipe.proto.CalculatorOptionsProto.CalculatorOptions;
-import com.google.mediapipe.framework.AndroidPacketGetter;
 import com.google.mediapipe.framework.MediaPipeException;
 import com.google.mediapipe.framework.Packet;
 import com.google.mediapipe.framework.PacketGetter;
-import com.google.mediapipe.framework.image.BitmapImageBuilder;
 import com.google.mediapipe.framework.image.ByteBufferImageBuilder;
 import com.google.mediapipe.framework.image.MPImage;
 import com.google.mediapipe.tasks.core.BaseOptions;
@@ -35,6 +33,7 @@ import com.google.mediapipe.tasks.core.proto.BaseOptionsProto;
 import com.google.mediapipe.tasks.vision.core.BaseVisionTaskApi;
 import com.google.mediapipe.tasks.vision.core.ImageProcessingOptions;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.google.mediapipe.tasks.vision.core.TaskInputImageConverter;
 import com.google.mediapipe.tasks.vision.imagesegmenter.proto.ImageSegmenterGraphOptionsProto;
 import com.google.mediapipe.tasks.vision.imagesegmenter.proto.SegmenterOptionsProto;
 import java.nio.ByteBuffer;
@@ -77,11 +76,12 @@ public final class ImageSegmenter extends BaseVisionTaskApi {
       Collections.unmodifiableList(
           Arrays.asList(
               "GROUPED_SEGMENTATION:segmented_mask_out",
-              "IMAGE:image_out",
-              "SEGMENTATION:0:segmentation"));
+              "SEGMENTATION:0:segmentation",
+              "IMAGE:image_out"));
   private static final int GROUPED_SEGMENTATION_OUT_STREAM_INDEX = 0;
-  private static final int IMAGE_OUT_STREAM_INDEX = 1;
-  private static final int SEGMENTATION_OUT_STREAM_INDEX = 2;
+  private static final int SEGMENTATION_OUT_STREAM_INDEX = 1;
+  // The input image is output last, so that it can be left out of the output streams.
+  private static final int IMAGE_OUT_STREAM_INDEX = 2;
   private static final String TASK_GRAPH_NAME =
       "mediapipe.tasks.vision.image_segmenter.ImageSegmenterGraph";
 
@@ -94,6 +94,10 @@ public final class ImageSegmenter extends BaseVisionTaskApi {
    */
   public static ImageSegmenter createFromOptions(
       Context context, ImageSegmenterOptions segmenterOptions) {
+    // The input image is only needed by the result listener, and can be opted out of.
+    boolean outputInputImage = segmenterOptions.outputInputImage();
+    TaskInputImageConverter inputImageConverter =
+        new TaskInputImageConverter(IMAGE_OUT_STREAM_INDEX);
     // TODO: Consolidate OutputHandler and TaskRunner.
     OutputHandler<ImageSegmenterResult, MPImage> handler = new OutputHandler<>();
     handler.setOutputPacketConverter(
@@ -138,9 +142,17 @@ public final class ImageSegmenter extends BaseVisionTaskApi {
 
           @Override
           public MPImage convertToTaskInput(List<Packet> packets) {
-            return new BitmapImageBuilder(
-                    AndroidPacketGetter.getBitmapFromRgb(packets.get(IMAGE_OUT_STREAM_INDEX)))
-                .build();
+            return inputImageConverter.convert(packets);
+          }
+
+          @Override
+          public void releaseTaskInput(MPImage image) {
+            inputImageConverter.release(image);
+          }
+
+          @Override
+          public void close() {
+            inputImageConverter.close();
           }
         });
     handler.setResultListener(segmenterOptions.resultListener());
@@ -153,8 +165,12 @@ public final class ImageSegmenter extends BaseVisionTaskApi {
                 .setTaskRunningModeName(segmenterOptions.runningMode().name())
                 .setTaskGraphName(TASK_GRAPH_NAME)
                 .setInputStreams(INPUT_STREAMS)
-                .setOutputStreams(OUTPUT_STREAMS)
+                .setOutputStreams(
+                    outputInputImage
+                        ? OUTPUT_STREAMS
+                        : OUTPUT_STREAMS.subList(0, IMAGE_OUT_STREAM_INDEX))
                 .setTaskOptions(segmenterOptions)
+                .setBaseOptions(segmenterOptions.baseOptions())
                 .setEnableFlowLimiting(segmenterOptions.runningMode() == RunningMode.LIVE_STREAM)
                 .build(),
             handler);
@@ -366,6 +382,17 @@ public final class ImageSegmenter extends BaseVisionTaskApi {
       public abstract Builder setResultListener(
           ResultListener<ImageSegmenterResult, MPImage> value);
 
+      /**
+       * Sets whether the input image is passed to the {@link ResultListener} along with the
+       * results. Defaults to true. If false, the image segmenter doesn't output the input image,
+       * and the {@link ResultListener} receives null instead.
+       *
+       * <p>The input image is closed once the {@link ResultListener} returns. A listener that uses
+       * the image later must acquire a reference on it with {@code image.getInternal().acquire()},
+       * and close it once done.
+       */
+      public abstract Builder setOutputInputImage(Boolean value);
+
       /** Sets an optional {@link ErrorListener}}. */
       public abstract Builder setErrorListener(ErrorListener value);
 
@@ -394,6 +421,8 @@ public final class ImageSegmenter extends BaseVisionTaskApi {
 
     abstract ResultListener<ImageSegmenterResult, MPImage> resultListener();
 
+    abstract Boolean outputInputImage();
+
     abstract Optional<ErrorListener> errorListener();
 
     /** The output type of segmentation results. */
@@ -409,6 +438,7 @@ public final class ImageSegmenter extends BaseVisionTaskApi {
     public static Builder builder() {
       return new AutoValue_ImageSegmenter_ImageSegmenterOptions.Builder()
           .setRunningMode(RunningMode.IMAGE)
+          .setOutputInputImage(true)
           .setDisplayNamesLocale("en")
           .setOutputType(OutputType.CATEGORY_MASK)
           .setResultListener((result, image) -> {});
@@ -0,0 +1,328 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.vision.objectdetector;
+
+import android.graphics.RectF;
+import com.google.mediapipe.framework.Packet;
+import com.google.mediapipe.tasks.components.containers.Category;
+import com.google.mediapipe.tasks.components.containers.Detection;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An {@link ObjectDetectionResult} that stores the detections in flat primitive arrays instead of
+ * one object per detection and category. Produced by {@link ObjectDetector} when {@link
+ * ObjectDetector.ObjectDetectorOptions.Builder#setUseFlatResult} is enabled.
+ *
+ * <p>The arrays are filled natively from the graph output, without serializing and parsing the
+ * detection protobuf messages. The bounding boxes of all detections are stored as consecutive
+ * (left, top, right, bottom) quadruples, see {@link #boundingBoxesBuffer()}, and the categories of
+ * detection {@code d} as parallel scores and category indices, see {@link #scoresBuffer(int)} and
+ * {@link #categoryIndicesBuffer(int)}. The category names and display names are interned in a label
+ * table shared by all the results of the {@link ObjectDetector}, so that each distinct label is
+ * only converted to a {@link String} once. The {@link List} view of {@link ObjectDetectionResult}
+ * is built lazily on first access.
+ *
+ * <p>Call {@link #close()} once the result is no longer needed, so that its arrays can be reused
+ * for a later frame. The result must not be accessed after it is closed. Results that are never
+ * closed are simply garbage collected.
+ */
+public final class FlatObjectDetectionResult extends ObjectDetectionResult
+    implements AutoCloseable {
+  /** The number of floats stored per bounding box. */
+  public static final int BOUNDING_BOX_STRIDE = 4;
+  // The number of detections, the number of categories and the size of the label table.
+  private static final int DETECTION_COUNTS_SIZE = 3;
+
+  private final Pool pool;
+
+  private long timestampMs;
+  private int numDetections;
+  private float[] boundingBoxes = new float[0];
+  // The first category of detection d is at categoryOffsets[d], detection d has
+  // categoryOffsets[d + 1] - categoryOffsets[d] categories.
+  private int[] categoryOffsets = new int[1];
+  private float[] scores = new float[0];
+  private int[] categoryIndices = new int[0];
+  // The ids of the category names and display names in the label table.
+  private int[] categoryNameIds = new int[0];
+  private int[] displayNameIds = new int[0];
+  // The label table of the pool when this result was filled. Its entries are never changed once
+  // set.
+  private String[] labels = new String[0];
+
+  private List<Detection> detectionsView;
+
+  private FlatObjectDetectionResult(Pool pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public long timestampMs() {
+    return timestampMs;
+  }
+
+  /** Returns the number of detected objects. */
+  public int detectionsCount() {
+    return numDetections;
+  }
+
+  /** Returns the number of categories of the {@code detection}-th detected object. */
+  public int categoriesCount(int detection) {
+    checkDetection(detection);
+    return categoryOffsets[detection + 1] - categoryOffsets[detection];
+  }
+
+  /**
+   * Returns a read-only view of the bounding boxes of all the detected objects, as {@link
+   * #detectionsCount()} consecutive (left, top, right, bottom) quadruples.
+   */
+  public FloatBuffer boundingBoxesBuffer() {
+    return FloatBuffer.wrap(boundingBoxes, 0, numDetections * BOUNDING_BOX_STRIDE)
+        .slice()
+        .asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns a read-only view of the category scores of the {@code detection}-th detected object,
+   * in the same order as {@link #categoryIndicesBuffer(int)}.
+   */
+  public FloatBuffer scoresBuffer(int detection) {
+    checkDetection(detection);
+    int start = categoryOffsets[detection];
+    return FloatBuffer.wrap(scores, start, categoryOffsets[detection + 1] - start)
+        .slice()
+        .asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns a read-only view of the category indices of the {@code detection}-th detected object,
+   * in the same order as {@link #scoresBuffer(int)}. Categories without an index have index -1.
+   */
+  public IntBuffer categoryIndicesBuffer(int detection) {
+    checkDetection(detection);
+    int start = categoryOffsets[detection];
+    return IntBuffer.wrap(categoryIndices, start, categoryOffsets[detection + 1] - start)
+        .slice()
+        .asReadOnlyBuffer();
+  }
+
+  /** Detected objects. Built on first access. */
+  @Override
+  public List<Detection> detections() {
+    if (detectionsView == null) {
+      List<Detection> detections = new ArrayList<>(numDetections);
+      for (int detection = 0; detection < numDetections; ++detection) {
+        List<Category> categories = new ArrayList<>(categoriesCount(detection));
+        for (int i = categoryOffsets[detection]; i < categoryOffsets[detection + 1]; ++i) {
+          categories.add(
+              Category.create(
+                  scores[i],
+                  categoryIndices[i],
+                  labels[categoryNameIds[i]],
+                  labels[displayNameIds[i]]));
+        }
+        int base = detection * BOUNDING_BOX_STRIDE;
+        detections.add(
+            Detection.create(
+                categories,
+                new RectF(
+                    boundingBoxes[base],
+                    boundingBoxes[base + 1],
+                    boundingBoxes[base + 2],
+                    boundingBoxes[base + 3])));
+      }
+      detectionsView = Collections.unmodifiableList(detections);
+    }
+    return detectionsView;
+  }
+
+  /** Returns this result to the pool it was acquired from, so its arrays can be reused. */
+  @Override
+  public void close() {
+    pool.release(this);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof ObjectDetectionResult)) {
+      return false;
+    }
+    ObjectDetectionResult that = (ObjectDetectionResult) o;
+    return timestampMs() == that.timestampMs() && detections().equals(that.detections());
+  }
+
+  @Override
+  public int hashCode() {
+    // Matches the hash code of the AutoValue implementation of ObjectDetectionResult.
+    int h = 1;
+    h *= 1000003;
+    h ^= (int) ((timestampMs() >>> 32) ^ timestampMs());
+    h *= 1000003;
+    h ^= detections().hashCode();
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return "FlatObjectDetectionResult{timestampMs="
+        + timestampMs()
+        + ", detections="
+        + detections()
+        + "}";
+  }
+
+  /**
+   * Fills this result from the graph output detections, reusing the existing arrays if possible.
+   */
+  private void fill(
+      long labelTableHandle,
+      long detectionsPacketHandle,
+      int numDetections,
+      int numCategories,
+      String[] labels,
+      long timestampMs) {
+    this.timestampMs = timestampMs;
+    this.numDetections = numDetections;
+    this.labels = labels;
+    detectionsView = null;
+    boundingBoxes = ensureCapacity(boundingBoxes, numDetections * BOUNDING_BOX_STRIDE);
+    categoryOffsets = ensureCapacity(categoryOffsets, numDetections + 1);
+    scores = ensureCapacity(scores, numCategories);
+    categoryIndices = ensureCapacity(categoryIndices, numCategories);
+    categoryNameIds = ensureCapacity(categoryNameIds, numCategories);
+    displayNameIds = ensureCapacity(displayNameIds, numCategories);
+    nativeFillDetections(
+        labelTableHandle,
+        detectionsPacketHandle,
+        boundingBoxes,
+        categoryOffsets,
+        scores,
+        categoryIndices,
+        categoryNameIds,
+        displayNameIds,
+        labels);
+  }
+
+  private void checkDetection(int detection) {
+    if (detection < 0 || detection >= numDetections) {
+      throw new IndexOutOfBoundsException(
+          String.format(
+              "Detection index %d is out of range [0, %d).", detection, numDetections));
+    }
+  }
+
+  private static float[] ensureCapacity(float[] array, int capacity) {
+    return array.length >= capacity ? array : new float[capacity];
+  }
+
+  private static int[] ensureCapacity(int[] array, int capacity) {
+    return array.length >= capacity ? array : new int[capacity];
+  }
+
+  /**
+   * A bounded pool of {@link FlatObjectDetectionResult}s. Each {@link ObjectDetector} owns one
+   * pool, so results are only reused by the task that created them, and closes it when it is
+   * closed.
+   */
+  static final class Pool implements AutoCloseable {
+    private static final int MAX_POOLED_RESULTS = 4;
+
+    private final ArrayDeque<FlatObjectDetectionResult> results = new ArrayDeque<>();
+    private final int[] detectionCounts = new int[DETECTION_COUNTS_SIZE];
+    // The handle of the native label table that interns the labels, created on first use.
+    private long labelTableHandle;
+    private boolean closed;
+    // The category names and display names indexed by their id in the native label table, shared
+    // by all the results of the pool. The table is copied when it grows, so the results keep a
+    // consistent view.
+    private String[] labels = new String[0];
+
+    /**
+     * Returns a result filled from the graph output packet of detections.
+     *
+     * @throws IllegalStateException if the pool is closed.
+     */
+    synchronized FlatObjectDetectionResult acquire(Packet detectionsPacket, long timestampMs) {
+      if (closed) {
+        throw new IllegalStateException("The flat object detection result pool is closed.");
+      }
+      if (labelTableHandle == 0) {
+        labelTableHandle = nativeCreateLabelTable();
+      }
+      FlatObjectDetectionResult result = results.pollFirst();
+      if (result == null) {
+        result = new FlatObjectDetectionResult(this);
+      }
+      long handle = detectionsPacket.getNativeHandle();
+      nativeGetDetectionCounts(labelTableHandle, handle, detectionCounts);
+      int labelTableSize = detectionCounts[2];
+      if (labels.length < labelTableSize) {
+        labels = Arrays.copyOf(labels, Math.max(labelTableSize, labels.length * 2));
+      }
+      result.fill(
+          labelTableHandle, handle, detectionCounts[0], detectionCounts[1], labels, timestampMs);
+      return result;
+    }
+
+    /**
+     * Releases the native label table. The results acquired before keep their labels, but no
+     * result can be acquired afterwards.
+     */
+    @Override
+    public synchronized void close() {
+      if (labelTableHandle != 0) {
+        nativeReleaseLabelTable(labelTableHandle);
+        labelTableHandle = 0;
+      }
+      closed = true;
+      results.clear();
+    }
+
+    private synchronized void release(FlatObjectDetectionResult result) {
+      if (!closed && results.size() < MAX_POOLED_RESULTS && !results.contains(result)) {
+        // Drops the lazily built view, so it doesn't outlive the frame.
+        result.detectionsView = null;
+        results.addFirst(result);
+      }
+    }
+  }
+
+  private static native long nativeCreateLabelTable();
+
+  private static native void nativeReleaseLabelTable(long labelTableHandle);
+
+  private static native void nativeGetDetectionCounts(
+      long labelTableHandle, long packetHandle, int[] counts);
+
+  private static native void nativeFillDetections(
+      long labelTableHandle,
+      long packetHandle,
+      float[] boundingBoxes,
+      int[] categoryOffsets,
+      float[] scores,
+      int[] categoryIndices,
+      int[] categoryNameIds,
+      int[] displayNameIds,
+      String[] labels);
+}
@@ -18,10 +18,8 @@ import android.content.Context;
 import android.os.ParcelFileDescriptor;
 import com.google.auto.value.AutoValue;
 import com.google.mediapipe.proto.CalculatorOptionsProto.CalculatorOptions;
-import com.google.mediapipe.framework.AndroidPacketGetter;
 import com.google.mediapipe.framework.Packet;
 import com.google.mediapipe.framework.PacketGetter;
-import com.google.mediapipe.framework.image.BitmapImageBuilder;
 import com.google.mediapipe.framework.image.MPImage;
 import com.google.mediapipe.tasks.core.BaseOptions;
 import com.google.mediapipe.tasks.core.ErrorListener;
@@ -29,20 +27,26 @@ import com.google.mediapipe.tasks.core.OutputHandler;
 import com.google.mediapipe.tasks.core.OutputHandler.ResultListener;
 import com.google.mediapipe.tasks.core.TaskInfo;
 import com.google.mediapipe.tasks.core.TaskOptions;
+import com.google.mediapipe.tasks.core.TaskResult;
 import com.google.mediapipe.tasks.core.TaskRunner;
+import com.google.mediapipe.tasks.core.TaskRunnerPool;
 import com.google.mediapipe.tasks.core.proto.BaseOptionsProto;
 import com.google.mediapipe.tasks.vision.core.BaseVisionTaskApi;
 import com.google.mediapipe.tasks.vision.core.ImageProcessingOptions;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
+import com.google.mediapipe.tasks.vision.core.TaskInputImageConverter;
 import com.google.mediapipe.tasks.vision.objectdetector.proto.ObjectDetectorOptionsProto;
 import com.google.mediapipe.formats.proto.DetectionProto.Detection;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Performs object detection on images.
@@ -107,6 +111,8 @@ public final class ObjectDetector extends BaseVisionTaskApi {
   private static final int IMAGE_OUT_STREAM_INDEX = 1;
   private static final String TASK_GRAPH_NAME = "mediapipe.tasks.vision.ObjectDetectorGraph";
 
+  private final FlatObjectDetectionResult.Pool flatResultPool;
+
   /**
    * Creates an {@link ObjectDetector} instance from a model file and the default {@link
    * ObjectDetectorOptions}.
@@ -164,42 +170,83 @@ public final class ObjectDetector extends BaseVisionTaskApi {
    */
   public static ObjectDetector createFromOptions(
       Context context, ObjectDetectorOptions detectorOptions) {
+    // The input image is only needed by the result listener, and can be opted out of.
+    boolean outputInputImage =
+        detectorOptions.resultListener().isPresent() && detectorOptions.outputInputImage();
+    FlatObjectDetectionResult.Pool flatResultPool =
+        detectorOptions.useFlatResult() ? new FlatObjectDetectionResult.Pool() : null;
+    TaskInfo<ObjectDetectorOptions> taskInfo =
+        TaskInfo.<ObjectDetectorOptions>builder()
+            .setTaskName(ObjectDetector.class.getSimpleName())
+            .setTaskRunningModeName(detectorOptions.runningMode().name())
+            .setTaskGraphName(TASK_GRAPH_NAME)
+            .setInputStreams(INPUT_STREAMS)
+            .setOutputStreams(
+                outputInputImage
+                    ? OUTPUT_STREAMS
+                    : OUTPUT_STREAMS.subList(0, IMAGE_OUT_STREAM_INDEX))
+            .setTaskOptions(detectorOptions)
+            .setBaseOptions(detectorOptions.baseOptions())
+            .setEnableFlowLimiting(detectorOptions.runningMode() == RunningMode.LIVE_STREAM)
+            .build();
+    if (detectorOptions.numTaskRunners() > 1) {
+      TaskRunnerPool runnerPool =
+          TaskRunnerPool.create(
+              context,
+              taskInfo,
+              () -> createOutputHandler(detectorOptions, flatResultPool),
+              detectorOptions.numTaskRunners());
+      return new ObjectDetector(runnerPool, flatResultPool);
+    }
+    TaskRunner runner =
+        TaskRunner.create(context, taskInfo, createOutputHandler(detectorOptions, flatResultPool));
+    return new ObjectDetector(runner, detectorOptions.runningMode(), flatResultPool);
+  }
+
+  /**
+   * Creates the {@link OutputHandler} of a task graph. The results of all the graphs share the
+   * same {@code flatResultPool}, if any.
+   */
+  private static OutputHandler<ObjectDetectionResult, MPImage> createOutputHandler(
+      ObjectDetectorOptions detectorOptions, FlatObjectDetectionResult.Pool flatResultPool) {
+    TaskInputImageConverter inputImageConverter =
+        new TaskInputImageConverter(IMAGE_OUT_STREAM_INDEX);
     // TODO: Consolidate OutputHandler and TaskRunner.
     OutputHandler<ObjectDetectionResult, MPImage> handler = new OutputHandler<>();
     handler.setOutputPacketConverter(
         new OutputHandler.OutputPacketConverter<ObjectDetectionResult, MPImage>() {
           @Override
           public ObjectDetectionResult convertToTaskResult(List<Packet> packets) {
+            long timestampMs =
+                BaseVisionTaskApi.generateResultTimestampMs(
+                    detectorOptions.runningMode(), packets.get(DETECTIONS_OUT_STREAM_INDEX));
+            if (flatResultPool != null) {
+              return flatResultPool.acquire(packets.get(DETECTIONS_OUT_STREAM_INDEX), timestampMs);
+            }
             return ObjectDetectionResult.create(
                 PacketGetter.getProtoVector(
                     packets.get(DETECTIONS_OUT_STREAM_INDEX), Detection.parser()),
-                BaseVisionTaskApi.generateResultTimestampMs(
-                    detectorOptions.runningMode(), packets.get(DETECTIONS_OUT_STREAM_INDEX)));
+                timestampMs);
           }
 
           @Override
           public MPImage convertToTaskInput(List<Packet> packets) {
-            return new BitmapImageBuilder(
-                    AndroidPacketGetter.getBitmapFromRgb(packets.get(IMAGE_OUT_STREAM_INDEX)))
-                .build();
+            return inputImageConverter.convert(packets);
+          }
+
+          @Override
+          public void releaseTaskInput(MPImage image) {
+            inputImageConverter.release(image);
+          }
+
+          @Override
+          public void close() {
+            inputImageConverter.close();
           }
         });
     detectorOptions.resultListener().ifPresent(handler::setResultListener);
     detectorOptions.errorListener().ifPresent(handler::setErrorListener);
-    TaskRunner runner =
-        TaskRunner.create(
-            context,
-            TaskInfo.<ObjectDetectorOptions>builder()
-                .setTaskName(ObjectDetector.class.getSimpleName())
-                .setTaskRunningModeName(detectorOptions.runningMode().name())
-                .setTaskGraphName(TASK_GRAPH_NAME)
-                .setInputStreams(INPUT_STREAMS)
-                .setOutputStreams(OUTPUT_STREAMS)
-                .setTaskOptions(detectorOptions)
-                .setEnableFlowLimiting(detectorOptions.runningMode() == RunningMode.LIVE_STREAM)
-                .build(),
-            handler);
-    return new ObjectDetector(runner, detectorOptions.runningMode());
+    return handler;
   }
 
   /**
@@ -208,9 +255,27 @@ public final class ObjectDetector extends BaseVisionTaskApi {
    *
    * @param taskRunner a {@link TaskRunner}.
    * @param runningMode a mediapipe vision task {@link RunningMode}.
+   * @param flatResultPool the pool of flat results, or null if flat results are not used.
    */
-  private ObjectDetector(TaskRunner taskRunner, RunningMode runningMode) {
+  private ObjectDetector(
+      TaskRunner taskRunner,
+      RunningMode runningMode,
+      FlatObjectDetectionResult.Pool flatResultPool) {
     super(taskRunner, runningMode, IMAGE_IN_STREAM_NAME, NORM_RECT_IN_STREAM_NAME);
+    this.flatResultPool = flatResultPool;
+  }
+
+  /**
+   * Constructor to initialize an {@link ObjectDetector} in the image mode from a {@link
+   * TaskRunnerPool}.
+   *
+   * @param taskRunnerPool a {@link TaskRunnerPool}.
+   * @param flatResultPool the pool of flat results, or null if flat results are not used.
+   */
+  private ObjectDetector(
+      TaskRunnerPool taskRunnerPool, FlatObjectDetectionResult.Pool flatResultPool) {
+    super(taskRunnerPool, IMAGE_IN_STREAM_NAME, NORM_RECT_IN_STREAM_NAME);
+    this.flatResultPool = flatResultPool;
   }
 
   /**
@@ -256,6 +321,95 @@ public final class ObjectDetector extends BaseVisionTaskApi {
     return (ObjectDetectionResult) processImageData(image, imageProcessingOptions);
   }
 
+  /**
+   * Sends the provided single image to perform object detection without blocking the current
+   * thread. Only use this method when the {@link ObjectDetector} is created with {@link
+   * RunningMode.IMAGE}.
+   *
+   * <p>The returned future is completed with the {@link ObjectDetectionResult} by the task graph's
+   * output callback, so that many images can be in flight without dedicating a thread to each of
+   * them. The future is always completed: if the task graph fails, it is completed exceptionally
+   * with a {@link MediaPipeException}, as are the futures of all the other pending images.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference. Note that region-of-interest is <b>not</b> supported
+   *     by this task.
+   * @throws IllegalArgumentException if the {@link ImageProcessingOptions} specify a
+   *     region-of-interest.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ObjectDetectionResult> detectAsFuture(
+      MPImage image, ImageProcessingOptions imageProcessingOptions) {
+    validateImageProcessingOptions(imageProcessingOptions);
+    return processImageDataAsync(image, imageProcessingOptions);
+  }
+
+  /**
+   * Sends the provided single image to perform object detection without blocking the current
+   * thread, and completes the returned future on the given {@link Executor}. Only use this method
+   * when the {@link ObjectDetector} is created with {@link RunningMode.IMAGE}.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference. Note that region-of-interest is <b>not</b> supported
+   *     by this task.
+   * @param executor the {@link Executor} that completes the returned future.
+   * @throws IllegalArgumentException if the {@link ImageProcessingOptions} specify a
+   *     region-of-interest.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ObjectDetectionResult> detectAsFuture(
+      MPImage image, ImageProcessingOptions imageProcessingOptions, Executor executor) {
+    validateImageProcessingOptions(imageProcessingOptions);
+    return processImageDataAsync(image, imageProcessingOptions, executor);
+  }
+
+  /**
+   * Performs object detection on the provided batch of images with default image processing
+   * options, i.e. without any rotation applied. Only use this method when the {@link
+   * ObjectDetector} is created with {@link RunningMode.IMAGE}.
+   *
+   * <p>This is more efficient than calling {@link #detect(MPImage)} for each image, as the images
+   * are pipelined through the task graph.
+   *
+   * @param images a list of MediaPipe {@link MPImage} objects for processing.
+   * @return the detection results in the same order as the input images.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public List<ObjectDetectionResult> detectAll(List<MPImage> images) {
+    return detectAll(
+        images, Collections.nCopies(images.size(), ImageProcessingOptions.builder().build()));
+  }
+
+  /**
+   * Performs object detection on the provided batch of images. Only use this method when the
+   * {@link ObjectDetector} is created with {@link RunningMode.IMAGE}.
+   *
+   * <p>This is more efficient than calling {@link #detect(MPImage, ImageProcessingOptions)} for
+   * each image, as the images are pipelined through the task graph.
+   *
+   * @param images a list of MediaPipe {@link MPImage} objects for processing.
+   * @param imageProcessingOptions a list of {@link ImageProcessingOptions} specifying how to
+   *     process each input image before running inference. Note that region-of-interest is
+   *     <b>not</b> supported by this task.
+   * @return the detection results in the same order as the input images.
+   * @throws IllegalArgumentException if {@code images} and {@code imageProcessingOptions} have
+   *     different sizes, or if any {@link ImageProcessingOptions} specify a region-of-interest.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public List<ObjectDetectionResult> detectAll(
+      List<MPImage> images, List<ImageProcessingOptions> imageProcessingOptions) {
+    for (ImageProcessingOptions options : imageProcessingOptions) {
+      validateImageProcessingOptions(options);
+    }
+    List<ObjectDetectionResult> results = new ArrayList<>(images.size());
+    for (TaskResult result : processImageBatch(images, imageProcessingOptions)) {
+      results.add((ObjectDetectionResult) result);
+    }
+    return results;
+  }
+
   /**
    * Performs object detection on the provided video frame with default image processing options,
    * i.e. without any rotation applied. Only use this method when the {@link ObjectDetector} is
@@ -307,6 +461,55 @@ public final class ObjectDetector extends BaseVisionTaskApi {
     return (ObjectDetectionResult) processVideoData(image, imageProcessingOptions, timestampMs);
   }
 
+  /**
+   * Sends the provided video frame to perform object detection without blocking the current thread.
+   * Only use this method when the {@link ObjectDetector} is created with {@link RunningMode.VIDEO}.
+   *
+   * <p>It's required to provide the video frame's timestamp (in milliseconds). The input timestamps
+   * must be monotonically increasing.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference. Note that region-of-interest is <b>not</b> supported
+   *     by this task.
+   * @param timestampMs the input timestamp (in milliseconds).
+   * @throws IllegalArgumentException if the {@link ImageProcessingOptions} specify a
+   *     region-of-interest.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ObjectDetectionResult> detectForVideoAsFuture(
+      MPImage image, ImageProcessingOptions imageProcessingOptions, long timestampMs) {
+    validateImageProcessingOptions(imageProcessingOptions);
+    return processVideoDataAsync(image, imageProcessingOptions, timestampMs);
+  }
+
+  /**
+   * Sends the provided video frame to perform object detection without blocking the current thread,
+   * and completes the returned future on the given {@link Executor}. Only use this method when the
+   * {@link ObjectDetector} is created with {@link RunningMode.VIDEO}.
+   *
+   * <p>It's required to provide the video frame's timestamp (in milliseconds). The input timestamps
+   * must be monotonically increasing.
+   *
+   * @param image a MediaPipe {@link MPImage} object for processing.
+   * @param imageProcessingOptions the {@link ImageProcessingOptions} specifying how to process the
+   *     input image before running inference. Note that region-of-interest is <b>not</b> supported
+   *     by this task.
+   * @param timestampMs the input timestamp (in milliseconds).
+   * @param executor the {@link Executor} that completes the returned future.
+   * @throws IllegalArgumentException if the {@link ImageProcessingOptions} specify a
+   *     region-of-interest.
+   * @throws MediaPipeException if there is an internal error.
+   */
+  public CompletableFuture<ObjectDetectionResult> detectForVideoAsFuture(
+      MPImage image,
+      ImageProcessingOptions imageProcessingOptions,
+      long timestampMs,
+      Executor executor) {
+    validateImageProcessingOptions(imageProcessingOptions);
+    return processVideoDataAsync(image, imageProcessingOptions, timestampMs, executor);
+  }
+
   /**
    * Sends live image data to perform object detection with default image processing options, i.e.
    * without any rotation applied, and the results will be available via the {@link ResultListener}
@@ -360,6 +563,15 @@ public final class ObjectDetector extends BaseVisionTaskApi {
     sendLiveStreamData(image, imageProcessingOptions, timestampMs);
   }
 
+  /** Closes and cleans up the {@link ObjectDetector}. */
+  @Override
+  public void close() {
+    super.close();
+    if (flatResultPool != null) {
+      flatResultPool.close();
+    }
+  }
+
   /** Options for setting up an {@link ObjectDetector}. */
   @AutoValue
   public abstract static class ObjectDetectorOptions extends TaskOptions {
@@ -429,9 +641,37 @@ public final class ObjectDetector extends BaseVisionTaskApi {
       public abstract Builder setResultListener(
           ResultListener<ObjectDetectionResult, MPImage> value);
 
+      /**
+       * Sets whether the input image is passed to the {@link ResultListener} along with the
+       * results. Defaults to true. If false, the object detector doesn't output the input image,
+       * and the {@link ResultListener} receives null instead.
+       *
+       * <p>The input image is closed once the {@link ResultListener} returns. A listener that uses
+       * the image later must acquire a reference on it with {@code image.getInternal().acquire()},
+       * and close it once done.
+       */
+      public abstract Builder setOutputInputImage(Boolean value);
+
       /** Sets an optional {@link ErrorListener}}. */
       public abstract Builder setErrorListener(ErrorListener value);
 
+      /**
+       * Sets whether the object detector returns {@link FlatObjectDetectionResult}s, which store
+       * the detections in primitive arrays decoded natively from the graph output, and can be
+       * recycled across frames by calling {@link FlatObjectDetectionResult#close()}. Default to
+       * false.
+       */
+      public abstract Builder setUseFlatResult(Boolean value);
+
+      /**
+       * Sets the number of task graphs of the object detector in the image mode. The graphs share
+       * the model resources, and the {@link ObjectDetector#detect}, {@link
+       * ObjectDetector#detectAsFuture} and {@link ObjectDetector#detectAll} calls from different
+       * threads run on the idle graphs instead of waiting for each other. The first graph provides
+       * the stats of {@link ObjectDetector#getStatsSnapshot()}. Default to 1.
+       */
+      public abstract Builder setNumTaskRunners(Integer value);
+
       abstract ObjectDetectorOptions autoBuild();
 
       /**
@@ -454,6 +694,13 @@ public final class ObjectDetector extends BaseVisionTaskApi {
               "The object detector is in the image or the video mode, a user-defined result"
                   + " listener shouldn't be provided in ObjectDetectorOptions.");
         }
+        if (options.numTaskRunners() <= 0) {
+          throw new IllegalArgumentException("numTaskRunners must be > 0.");
+        }
+        if (options.numTaskRunners() > 1 && options.runningMode() != RunningMode.IMAGE) {
+          throw new IllegalArgumentException(
+              "Only the object detector in the image mode can have more than one task runner.");
+        }
         return options;
       }
     }
@@ -474,13 +721,22 @@ public final class ObjectDetector extends BaseVisionTaskApi {
 
     abstract Optional<ResultListener<ObjectDetectionResult, MPImage>> resultListener();
 
+    abstract Boolean outputInputImage();
+
     abstract Optional<ErrorListener> errorListener();
 
+    abstract Boolean useFlatResult();
+
+    abstract Integer numTaskRunners();
+
     public static Builder builder() {
       return new AutoValue_ObjectDetector_ObjectDetectorOptions.Builder()
           .setRunningMode(RunningMode.IMAGE)
+          .setOutputInputImage(true)
+          .setUseFlatResult(false)
           .setCategoryAllowlist(Collections.emptyList())
-          .setCategoryDenylist(Collections.emptyList());
+          .setCategoryDenylist(Collections.emptyList())
+          .setNumTaskRunners(1);
     }
 
     /** Converts a {@link ObjectDetectorOptions} to a {@link CalculatorOptions} protobuf message. */
@@ -0,0 +1,181 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#include "mediapipe/tasks/java/com/google/mediapipe/tasks/vision/objectdetector/jni/flat_object_detection_result_jni.h"
+
+#include <string>
+#include <vector>
+
+#include "absl/container/flat_hash_map.h"
+#include "absl/status/status.h"
+#include "mediapipe/framework/formats/detection.pb.h"
+#include "mediapipe/framework/formats/location_data.pb.h"
+#include "mediapipe/java/com/google/mediapipe/framework/jni/graph.h"
+#include "mediapipe/java/com/google/mediapipe/framework/jni/jni_util.h"
+
+namespace {
+
+using ::mediapipe::Detection;
+using ::mediapipe::android::ThrowIfError;
+
+constexpr int kBoundingBoxStride = 4;
+
+// Interns the category names and display names of the detections, so that
+// each distinct label is converted to a Java string only once per task.
+class LabelTable {
+ public:
+  // Returns the id of the label, and assigns the next id to new labels.
+  int Intern(const std::string& label) {
+    auto [it, inserted] = ids_.try_emplace(label, labels_.size());
+    if (inserted) {
+      labels_.push_back(label);
+    }
+    return it->second;
+  }
+
+  int size() const { return labels_.size(); }
+
+  // Sets the Java strings of the labels interned since the previous call in
+  // the Java label table, which must hold at least size() entries.
+  void Publish(JNIEnv* env, jobjectArray java_labels) {
+    for (; published_size_ < size(); ++published_size_) {
+      jstring label = env->NewStringUTF(labels_[published_size_].c_str());
+      env->SetObjectArrayElement(java_labels, published_size_, label);
+      env->DeleteLocalRef(label);
+    }
+  }
+
+ private:
+  absl::flat_hash_map<std::string, int> ids_;
+  std::vector<std::string> labels_;
+  int published_size_ = 0;
+};
+
+// Returns the detections held by the packet, or nullptr after throwing a Java
+// exception if the packet doesn't hold detections.
+const std::vector<Detection>* GetDetections(JNIEnv* env, jlong packet) {
+  mediapipe::Packet mediapipe_packet =
+      mediapipe::android::Graph::GetPacketFromHandle(packet);
+  absl::Status status =
+      mediapipe_packet.ValidateAsType<std::vector<Detection>>();
+  if (ThrowIfError(env, status)) {
+    return nullptr;
+  }
+  return &mediapipe_packet.Get<std::vector<Detection>>();
+}
+
+const std::string& GetLabel(const Detection& detection, int category) {
+  static const std::string* const kEmptyLabel = new std::string();
+  return category < detection.label_size() ? detection.label(category)
+                                           : *kEmptyLabel;
+}
+
+const std::string& GetDisplayName(const Detection& detection, int category) {
+  static const std::string* const kEmptyDisplayName = new std::string();
+  return category < detection.display_name_size()
+             ? detection.display_name(category)
+             : *kEmptyDisplayName;
+}
+
+}  // namespace
+
+JNIEXPORT jlong JNICALL FLAT_OBJECT_DETECTION_RESULT_METHOD(
+    nativeCreateLabelTable)(JNIEnv* env, jclass clazz) {
+  return reinterpret_cast<jlong>(new LabelTable());
+}
+
+JNIEXPORT void JNICALL FLAT_OBJECT_DETECTION_RESULT_METHOD(
+    nativeReleaseLabelTable)(JNIEnv* env, jclass clazz, jlong label_table) {
+  delete reinterpret_cast<LabelTable*>(label_table);
+}
+
+JNIEXPORT void JNICALL FLAT_OBJECT_DETECTION_RESULT_METHOD(
+    nativeGetDetectionCounts)(JNIEnv* env, jclass clazz, jlong label_table,
+                              jlong packet, jintArray counts) {
+  const std::vector<Detection>* detections = GetDetections(env, packet);
+  if (detections == nullptr) {
+    return;
+  }
+  LabelTable* table = reinterpret_cast<LabelTable*>(label_table);
+  jint num_categories = 0;
+  for (const Detection& detection : *detections) {
+    num_categories += detection.score_size();
+    for (int j = 0; j < detection.score_size(); ++j) {
+      table->Intern(GetLabel(detection, j));
+      table->Intern(GetDisplayName(detection, j));
+    }
+  }
+  const jint values[] = {static_cast<jint>(detections->size()), num_categories,
+                         table->size()};
+  env->SetIntArrayRegion(counts, 0, 3, values);
+}
+
+JNIEXPORT void JNICALL FLAT_OBJECT_DETECTION_RESULT_METHOD(
+    nativeFillDetections)(JNIEnv* env, jclass clazz, jlong label_table,
+                          jlong packet, jfloatArray bounding_boxes,
+                          jintArray category_offsets, jfloatArray scores,
+                          jintArray category_indices,
+                          jintArray category_name_ids,
+                          jintArray display_name_ids, jobjectArray labels) {
+  const std::vector<Detection>* detections = GetDetections(env, packet);
+  if (detections == nullptr) {
+    return;
+  }
+  LabelTable* table = reinterpret_cast<LabelTable*>(label_table);
+  const int num_detections = detections->size();
+  std::vector<jfloat> boxes_values(num_detections * kBoundingBoxStride);
+  std::vector<jint> offsets_values(num_detections + 1);
+  std::vector<jfloat> scores_values;
+  std::vector<jint> indices_values;
+  std::vector<jint> name_ids_values;
+  std::vector<jint> display_name_ids_values;
+  for (int i = 0; i < num_detections; ++i) {
+    const Detection& detection = (*detections)[i];
+    // Bounding boxes are stored as (left, top, right, bottom), the same as
+    // the RectF built by ObjectDetectionResult.
+    if (detection.location_data().has_bounding_box()) {
+      const auto& box = detection.location_data().bounding_box();
+      jfloat* box_values = &boxes_values[i * kBoundingBoxStride];
+      box_values[0] = box.xmin();
+      box_values[1] = box.ymin();
+      box_values[2] = box.xmin() + box.width();
+      box_values[3] = box.ymin() + box.height();
+    }
+    offsets_values[i] = scores_values.size();
+    for (int j = 0; j < detection.score_size(); ++j) {
+      scores_values.push_back(detection.score(j));
+      indices_values.push_back(
+          j < detection.label_id_size() ? detection.label_id(j) : -1);
+      // The labels were interned by nativeGetDetectionCounts, so these are
+      // lookups of existing ids.
+      name_ids_values.push_back(table->Intern(GetLabel(detection, j)));
+      display_name_ids_values.push_back(
+          table->Intern(GetDisplayName(detection, j)));
+    }
+  }
+  offsets_values[num_detections] = scores_values.size();
+  table->Publish(env, labels);
+  env->SetFloatArrayRegion(bounding_boxes, 0, boxes_values.size(),
+                           boxes_values.data());
+  env->SetIntArrayRegion(category_offsets, 0, offsets_values.size(),
+                         offsets_values.data());
+  env->SetFloatArrayRegion(scores, 0, scores_values.size(),
+                           scores_values.data());
+  env->SetIntArrayRegion(category_indices, 0, indices_values.size(),
+                         indices_values.data());
+  env->SetIntArrayRegion(category_name_ids, 0, name_ids_values.size(),
+                         name_ids_values.data());
+  env->SetIntArrayRegion(display_name_ids, 0, display_name_ids_values.size(),
+                         display_name_ids_values.data());
+}
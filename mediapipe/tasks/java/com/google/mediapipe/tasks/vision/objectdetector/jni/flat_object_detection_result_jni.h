@@ -0,0 +1,56 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+#ifndef JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_VISION_OBJECTDETECTOR_JNI_FLAT_OBJECT_DETECTION_RESULT_JNI_H_
+#define JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_VISION_OBJECTDETECTOR_JNI_FLAT_OBJECT_DETECTION_RESULT_JNI_H_
+
+#include <jni.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif  // __cplusplus
+
+#define FLAT_OBJECT_DETECTION_RESULT_METHOD(METHOD_NAME) \
+  Java_com_google_mediapipe_tasks_vision_objectdetector_FlatObjectDetectionResult_##METHOD_NAME
+
+// Creates the native label table that interns the labels of the detections,
+// and returns its handle.
+JNIEXPORT jlong JNICALL FLAT_OBJECT_DETECTION_RESULT_METHOD(
+    nativeCreateLabelTable)(JNIEnv* env, jclass clazz);
+
+// Deletes the native label table.
+JNIEXPORT void JNICALL FLAT_OBJECT_DETECTION_RESULT_METHOD(
+    nativeReleaseLabelTable)(JNIEnv* env, jclass clazz, jlong label_table);
+
+// Interns the labels of the detections, and writes the number of detections,
+// the total number of categories and the size of the label table to `counts`.
+JNIEXPORT void JNICALL FLAT_OBJECT_DETECTION_RESULT_METHOD(
+    nativeGetDetectionCounts)(JNIEnv* env, jclass clazz, jlong label_table,
+                              jlong packet, jintArray counts);
+
+// Fills the flat arrays from the detections, and sets the Java strings of the
+// labels that were interned since the previous call.
+JNIEXPORT void JNICALL FLAT_OBJECT_DETECTION_RESULT_METHOD(
+    nativeFillDetections)(JNIEnv* env, jclass clazz, jlong label_table,
+                          jlong packet, jfloatArray bounding_boxes,
+                          jintArray category_offsets, jfloatArray scores,
+                          jintArray category_indices,
+                          jintArray category_name_ids,
+                          jintArray display_name_ids, jobjectArray labels);
+
+#ifdef __cplusplus
+}  // extern "C"
+#endif  // __cplusplus
+
+#endif  // JAVA_COM_GOOGLE_MEDIAPIPE_TASKS_VISION_OBJECTDETECTOR_JNI_FLAT_OBJECT_DETECTION_RESULT_JNI_H_
@@ -19,6 +19,8 @@ import static org.junit.Assert.assertThrows;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.mediapipe.tasks.components.containers.Embedding;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -26,6 +28,7 @@ import org.junit.runner.RunWith;
 /** Tests for {@link CosineSimilarity}. */
 @RunWith(AndroidJUnit4.class)
 public final class CosineSimilarityTest {
+  private static final double SIMILARITY_TOLERANCE = 1e-9;
 
   @Test
   public void failsWithQuantizedAndFloatEmbeddings() {
@@ -113,4 +116,120 @@ public final class CosineSimilarityTest {
 
     assertThat(CosineSimilarity.compute(u, v)).isEqualTo(-1.0);
   }
+
+  @Test
+  public void computeAll_succeedsWithFloatEmbeddings() {
+    // Large enough to be computed in parallel.
+    List<Embedding> embeddings = createFloatEmbeddings(/* count= */ 2000, /* dimension= */ 257);
+    Embedding query = createFloatEmbeddings(/* count= */ 1, /* dimension= */ 257).get(0);
+
+    double[] similarities = CosineSimilarity.computeAll(query, embeddings);
+
+    assertThat(similarities).hasLength(embeddings.size());
+    for (int i = 0; i < embeddings.size(); ++i) {
+      assertThat(similarities[i])
+          .isWithin(SIMILARITY_TOLERANCE)
+          .of(CosineSimilarity.compute(query, embeddings.get(i)));
+    }
+  }
+
+  @Test
+  public void computeAll_succeedsWithQuantizedEmbeddings() {
+    Embedding query = createQuantizedEmbedding(new byte[] {127, 0, 0, 0});
+    List<Embedding> embeddings =
+        Arrays.asList(
+            createQuantizedEmbedding(new byte[] {-128, 0, 0, 0}),
+            createQuantizedEmbedding(new byte[] {5, 0, 0, 0}),
+            createQuantizedEmbedding(new byte[] {0, 1, 0, 0}));
+
+    assertThat(CosineSimilarity.computeAll(query, embeddings))
+        .usingExactEquality()
+        .containsExactly(-1.0, 1.0, 0.0)
+        .inOrder();
+  }
+
+  @Test
+  public void computeAll_failsWithDifferentSizes() {
+    Embedding query = createFloatEmbeddings(/* count= */ 1, /* dimension= */ 3).get(0);
+    List<Embedding> embeddings = createFloatEmbeddings(/* count= */ 2, /* dimension= */ 4);
+
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class, () -> CosineSimilarity.computeAll(query, embeddings));
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("Cannot compute cosine similarity between embeddings of different sizes");
+  }
+
+  @Test
+  public void computeAll_failsWithQuantizedAndFloatEmbeddings() {
+    Embedding query = createQuantizedEmbedding(new byte[] {1, 2, 3});
+    List<Embedding> embeddings = createFloatEmbeddings(/* count= */ 2, /* dimension= */ 3);
+
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class, () -> CosineSimilarity.computeAll(query, embeddings));
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("Cannot compute cosine similarity between quantized and float embeddings");
+  }
+
+  @Test
+  public void embeddingSet_succeedsWithManyQueries() {
+    List<Embedding> embeddings = createFloatEmbeddings(/* count= */ 10, /* dimension= */ 8);
+    CosineSimilarity.EmbeddingSet embeddingSet = CosineSimilarity.EmbeddingSet.create(embeddings);
+
+    assertThat(embeddingSet.size()).isEqualTo(10);
+    for (Embedding query : createFloatEmbeddings(/* count= */ 3, /* dimension= */ 8)) {
+      double[] similarities = embeddingSet.computeAll(query);
+      for (int i = 0; i < embeddings.size(); ++i) {
+        assertThat(similarities[i])
+            .isWithin(SIMILARITY_TOLERANCE)
+            .of(CosineSimilarity.compute(query, embeddings.get(i)));
+      }
+    }
+  }
+
+  @Test
+  public void computeMatrix_succeedsWithRowsAndColumns() {
+    List<Embedding> rows = createFloatEmbeddings(/* count= */ 70, /* dimension= */ 16);
+    List<Embedding> columns = createFloatEmbeddings(/* count= */ 130, /* dimension= */ 16);
+
+    double[][] similarities = CosineSimilarity.computeMatrix(rows, columns);
+
+    assertThat(similarities).hasLength(rows.size());
+    for (int i = 0; i < rows.size(); ++i) {
+      assertThat(similarities[i]).hasLength(columns.size());
+      for (int j = 0; j < columns.size(); ++j) {
+        assertThat(similarities[i][j])
+            .isWithin(SIMILARITY_TOLERANCE)
+            .of(CosineSimilarity.compute(rows.get(i), columns.get(j)));
+      }
+    }
+  }
+
+  @Test
+  public void computeMatrix_succeedsWithAllPairs() {
+    // Large enough to be computed in parallel, over several tiles.
+    List<Embedding> embeddings = createFloatEmbeddings(/* count= */ 300, /* dimension= */ 64);
+
+    double[][] similarities = CosineSimilarity.computeMatrix(embeddings);
+
+    for (int i = 0; i < embeddings.size(); ++i) {
+      for (int j = 0; j < embeddings.size(); ++j) {
+        assertThat(similarities[i][j])
+            .isWithin(SIMILARITY_TOLERANCE)
+            .of(CosineSimilarity.compute(embeddings.get(i), embeddings.get(j)));
+      }
+    }
+  }
+
+  private static List<Embedding> createFloatEmbeddings(int count, int dimension) {
+    return EmbeddingTestUtils.createFloatEmbeddings(count, dimension, count * 31L + dimension);
+  }
+
+  private static Embedding createQuantizedEmbedding(byte[] values) {
+    return Embedding.create(
+        new float[0], values, /*headIndex=*/ 0, /*headName=*/ Optional.empty());
+  }
 }
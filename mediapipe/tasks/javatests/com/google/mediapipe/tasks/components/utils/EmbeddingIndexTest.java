@@ -0,0 +1,231 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.components.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.mediapipe.tasks.components.utils.EmbeddingTestUtils.createFloatEmbeddings;
+import static com.google.mediapipe.tasks.components.utils.EmbeddingTestUtils.createQuantizedEmbeddings;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.mediapipe.tasks.components.containers.Embedding;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link EmbeddingIndex}. */
+@RunWith(AndroidJUnit4.class)
+public final class EmbeddingIndexTest {
+  private static final double SIMILARITY_TOLERANCE = 1e-6;
+  private static final int NUM_EMBEDDINGS = 2000;
+  private static final int DIMENSION = 32;
+  private static final int NUM_RESULTS = 10;
+  private static final double MIN_RECALL = 0.9;
+
+  @Test
+  public void search_succeedsWithEmptyIndex() {
+    EmbeddingIndex index = EmbeddingIndex.create();
+
+    assertThat(index.size()).isEqualTo(0);
+    assertThat(index.search(createFloatEmbeddings(1, DIMENSION, 0).get(0), NUM_RESULTS)).isEmpty();
+  }
+
+  @Test
+  public void add_returnsConsecutiveIds() {
+    EmbeddingIndex index = EmbeddingIndex.create();
+
+    for (int i = 0; i < 10; ++i) {
+      assertThat(index.add(createFloatEmbeddings(1, DIMENSION, i).get(0))).isEqualTo(i);
+    }
+    assertThat(index.size()).isEqualTo(10);
+  }
+
+  @Test
+  public void search_findsIndexedEmbeddings() {
+    List<Embedding> embeddings = createFloatEmbeddings(NUM_EMBEDDINGS, DIMENSION, 1);
+    EmbeddingIndex index = EmbeddingIndex.create();
+    for (Embedding embedding : embeddings) {
+      index.add(embedding);
+    }
+
+    for (int i = 0; i < embeddings.size(); i += 20) {
+      List<EmbeddingIndex.SearchResult> results = index.search(embeddings.get(i), 1);
+
+      assertThat(results).hasSize(1);
+      assertThat(results.get(0).id()).isEqualTo(i);
+      assertThat(results.get(0).similarity()).isWithin(SIMILARITY_TOLERANCE).of(1.0);
+    }
+  }
+
+  @Test
+  public void search_matchesExactSearchWithFloatEmbeddings() {
+    List<Embedding> embeddings = createFloatEmbeddings(NUM_EMBEDDINGS, DIMENSION, 2);
+    EmbeddingIndex index = EmbeddingIndex.create();
+    for (Embedding embedding : embeddings) {
+      index.add(embedding);
+    }
+
+    assertRecall(index, embeddings, createFloatEmbeddings(50, DIMENSION, 3));
+  }
+
+  @Test
+  public void search_matchesExactSearchWithQuantizedEmbeddings() {
+    List<Embedding> embeddings = createQuantizedEmbeddings(NUM_EMBEDDINGS, DIMENSION, 4);
+    EmbeddingIndex index = EmbeddingIndex.create();
+    for (Embedding embedding : embeddings) {
+      index.add(embedding);
+    }
+
+    assertRecall(index, embeddings, createQuantizedEmbeddings(50, DIMENSION, 5));
+  }
+
+  @Test
+  public void add_succeedsFromSeveralThreads() throws Exception {
+    List<Embedding> embeddings = createFloatEmbeddings(NUM_EMBEDDINGS, DIMENSION, 6);
+    EmbeddingIndex index = EmbeddingIndex.create();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> futures = new ArrayList<>();
+    for (Embedding embedding : embeddings) {
+      futures.add(executor.submit(() -> index.add(embedding)));
+    }
+    List<Embedding> indexedEmbeddings = new ArrayList<>(embeddings);
+    for (int i = 0; i < embeddings.size(); ++i) {
+      indexedEmbeddings.set(futures.get(i).get(), embeddings.get(i));
+    }
+    executor.shutdown();
+
+    assertThat(index.size()).isEqualTo(NUM_EMBEDDINGS);
+    assertRecall(index, indexedEmbeddings, createFloatEmbeddings(50, DIMENSION, 7));
+  }
+
+  @Test
+  public void search_returnsResultsInDecreasingSimilarity() {
+    EmbeddingIndex index = EmbeddingIndex.create();
+    for (Embedding embedding : createFloatEmbeddings(100, DIMENSION, 8)) {
+      index.add(embedding);
+    }
+
+    List<EmbeddingIndex.SearchResult> results =
+        index.search(createFloatEmbeddings(1, DIMENSION, 9).get(0), NUM_RESULTS);
+
+    assertThat(results).hasSize(NUM_RESULTS);
+    assertThat(results)
+        .isInOrder(
+            Comparator.comparingDouble(EmbeddingIndex.SearchResult::similarity).reversed());
+  }
+
+  @Test
+  public void add_failsWithQuantizedAndFloatEmbeddings() {
+    EmbeddingIndex index = EmbeddingIndex.create();
+    index.add(createFloatEmbeddings(1, DIMENSION, 10).get(0));
+
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> index.add(createQuantizedEmbeddings(1, DIMENSION, 11).get(0)));
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("Cannot mix quantized and float embeddings in an embedding index");
+  }
+
+  @Test
+  public void search_failsWithDifferentSizes() {
+    EmbeddingIndex index = EmbeddingIndex.create();
+    index.add(createFloatEmbeddings(1, DIMENSION, 12).get(0));
+
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> index.search(createFloatEmbeddings(1, DIMENSION + 1, 13).get(0), 1));
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("Cannot mix embeddings of different sizes in an embedding index");
+  }
+
+  @Test
+  public void add_failsWithZeroNorm() {
+    EmbeddingIndex index = EmbeddingIndex.create();
+
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                index.add(
+                    Embedding.create(
+                        new float[DIMENSION],
+                        new byte[0],
+                        /*headIndex=*/ 0,
+                        /*headName=*/ Optional.empty())));
+    assertThat(exception).hasMessageThat().contains("Cannot index an embedding with 0 norm");
+  }
+
+  @Test
+  public void search_failsWithInvalidNumberOfResults() {
+    EmbeddingIndex index = EmbeddingIndex.create();
+
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> index.search(createFloatEmbeddings(1, DIMENSION, 14).get(0), 0));
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("The number of results and of explored candidates must be positive");
+  }
+
+  @Test
+  public void options_failsWithInvalidMaxConnections() {
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> EmbeddingIndex.Options.builder().setMaxConnections(1).build());
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("The maximum number of connections must be at least 2");
+  }
+
+  /** Checks the recall of the index against an exact search over all the embeddings. */
+  private static void assertRecall(
+      EmbeddingIndex index, List<Embedding> embeddings, List<Embedding> queries) {
+    CosineSimilarity.EmbeddingSet embeddingSet = CosineSimilarity.EmbeddingSet.create(embeddings);
+    int found = 0;
+    for (Embedding query : queries) {
+      double[] similarities = embeddingSet.computeAll(query);
+      Integer[] order = new Integer[similarities.length];
+      for (int i = 0; i < order.length; ++i) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Double.compare(similarities[b], similarities[a]));
+      Set<Integer> expected = new HashSet<>(Arrays.asList(order).subList(0, NUM_RESULTS));
+      for (EmbeddingIndex.SearchResult result : index.search(query, NUM_RESULTS)) {
+        assertThat(result.similarity())
+            .isWithin(SIMILARITY_TOLERANCE)
+            .of(similarities[result.id()]);
+        if (expected.contains(result.id())) {
+          ++found;
+        }
+      }
+    }
+    assertThat((double) found / (queries.size() * NUM_RESULTS)).isAtLeast(MIN_RECALL);
+  }
+}
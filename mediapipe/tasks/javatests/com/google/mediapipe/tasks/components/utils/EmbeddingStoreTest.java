@@ -0,0 +1,227 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.components.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.mediapipe.tasks.components.utils.EmbeddingTestUtils.createFloatEmbeddings;
+import static com.google.mediapipe.tasks.components.utils.EmbeddingTestUtils.createQuantizedEmbeddings;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.mediapipe.tasks.components.containers.Embedding;
+import com.google.mediapipe.tasks.components.containers.EmbeddingResult;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link EmbeddingStore}. */
+@RunWith(AndroidJUnit4.class)
+public final class EmbeddingStoreTest {
+  // The norms of the embeddings are stored as float32.
+  private static final double SIMILARITY_TOLERANCE = 1e-6;
+  private static final int DIMENSION = 30;
+  private static final int NUM_RESULTS = 10;
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("embeddings", ".bin");
+    file.delete();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void get_succeedsWithFloatEmbeddings() throws Exception {
+    List<Embedding> embeddings = createFloatEmbeddings(100, DIMENSION, 0);
+    writeAll(embeddings);
+
+    EmbeddingStore store = EmbeddingStore.open(file);
+
+    assertThat(store.size()).isEqualTo(embeddings.size());
+    assertThat(store.dimension()).isEqualTo(DIMENSION);
+    assertThat(store.isQuantized()).isFalse();
+    for (int i = 0; i < embeddings.size(); ++i) {
+      assertThat(store.get(i).floatEmbedding())
+          .isEqualTo(embeddings.get(i).floatEmbedding());
+    }
+  }
+
+  @Test
+  public void get_succeedsWithQuantizedEmbeddings() throws Exception {
+    List<Embedding> embeddings = createQuantizedEmbeddings(100, DIMENSION, 1);
+    writeAll(embeddings);
+
+    EmbeddingStore store = EmbeddingStore.open(file);
+
+    assertThat(store.size()).isEqualTo(embeddings.size());
+    assertThat(store.isQuantized()).isTrue();
+    for (int i = 0; i < embeddings.size(); ++i) {
+      assertThat(store.get(i).quantizedEmbedding())
+          .isEqualTo(embeddings.get(i).quantizedEmbedding());
+    }
+  }
+
+  @Test
+  public void search_matchesCosineSimilarityWithFloatEmbeddings() throws Exception {
+    List<Embedding> embeddings = createFloatEmbeddings(20000, DIMENSION, 2);
+    writeAll(embeddings);
+
+    assertSearchMatches(
+        EmbeddingStore.open(file), embeddings, createFloatEmbeddings(5, DIMENSION, 3));
+  }
+
+  @Test
+  public void search_matchesCosineSimilarityWithQuantizedEmbeddings() throws Exception {
+    List<Embedding> embeddings = createQuantizedEmbeddings(20000, DIMENSION, 4);
+    writeAll(embeddings);
+
+    assertSearchMatches(
+        EmbeddingStore.open(file), embeddings, createQuantizedEmbeddings(5, DIMENSION, 5));
+  }
+
+  @Test
+  public void append_continuesExistingFile() throws Exception {
+    List<Embedding> embeddings = createFloatEmbeddings(100, DIMENSION, 6);
+    writeAll(embeddings.subList(0, 50));
+
+    try (EmbeddingStore.Writer writer = EmbeddingStore.Writer.open(file)) {
+      assertThat(writer.size()).isEqualTo(50);
+      for (int i = 50; i < embeddings.size(); ++i) {
+        EmbeddingResult result =
+            EmbeddingResult.create(Arrays.asList(embeddings.get(i)), Optional.empty());
+        assertThat(writer.append(result, /*headIndex=*/ 0)).isEqualTo(i);
+      }
+    }
+
+    EmbeddingStore store = EmbeddingStore.open(file);
+    assertThat(store.size()).isEqualTo(embeddings.size());
+    assertThat(store.get(75).floatEmbedding()).isEqualTo(embeddings.get(75).floatEmbedding());
+  }
+
+  @Test
+  public void open_ignoresPartialRow() throws Exception {
+    List<Embedding> embeddings = createFloatEmbeddings(10, DIMENSION, 7);
+    writeAll(embeddings);
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.seek(randomAccessFile.length());
+      randomAccessFile.write(new byte[7]);
+    }
+
+    assertThat(EmbeddingStore.open(file).size()).isEqualTo(embeddings.size());
+    try (EmbeddingStore.Writer writer = EmbeddingStore.Writer.open(file)) {
+      assertThat(writer.append(embeddings.get(0))).isEqualTo(embeddings.size());
+    }
+    assertThat(EmbeddingStore.open(file).get(embeddings.size()).floatEmbedding())
+        .isEqualTo(embeddings.get(0).floatEmbedding());
+  }
+
+  @Test
+  public void append_failsWithQuantizedAndFloatEmbeddings() throws Exception {
+    try (EmbeddingStore.Writer writer = EmbeddingStore.Writer.open(file)) {
+      writer.append(createFloatEmbeddings(1, DIMENSION, 8).get(0));
+
+      IllegalArgumentException exception =
+          assertThrows(
+              IllegalArgumentException.class,
+              () -> writer.append(createQuantizedEmbeddings(1, DIMENSION, 9).get(0)));
+      assertThat(exception)
+          .hasMessageThat()
+          .contains("Cannot mix quantized and float embeddings in an embedding store");
+    }
+  }
+
+  @Test
+  public void append_failsWithMissingHead() throws Exception {
+    EmbeddingResult result =
+        EmbeddingResult.create(createFloatEmbeddings(1, DIMENSION, 10), Optional.empty());
+
+    try (EmbeddingStore.Writer writer = EmbeddingStore.Writer.open(file)) {
+      IllegalArgumentException exception =
+          assertThrows(
+              IllegalArgumentException.class, () -> writer.append(result, /*headIndex=*/ 1));
+      assertThat(exception)
+          .hasMessageThat()
+          .contains("The embedding result has no embedding for head 1");
+    }
+  }
+
+  @Test
+  public void search_failsWithDifferentSizes() throws Exception {
+    writeAll(createFloatEmbeddings(10, DIMENSION, 11));
+    EmbeddingStore store = EmbeddingStore.open(file);
+
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> store.search(createFloatEmbeddings(1, DIMENSION + 1, 12).get(0), NUM_RESULTS));
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("Cannot compute cosine similarity between embeddings of different sizes");
+  }
+
+  @Test
+  public void open_failsWithInvalidFile() throws Exception {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.write(new byte[64]);
+    }
+
+    IOException exception = assertThrows(IOException.class, () -> EmbeddingStore.open(file));
+    assertThat(exception).hasMessageThat().contains("Not an embedding store file");
+  }
+
+  private void writeAll(List<Embedding> embeddings) throws IOException {
+    try (EmbeddingStore.Writer writer = EmbeddingStore.Writer.open(file)) {
+      for (Embedding embedding : embeddings) {
+        writer.append(embedding);
+      }
+    }
+  }
+
+  /** Checks that the search returns the top results of an exact search over the embeddings. */
+  private static void assertSearchMatches(
+      EmbeddingStore store, List<Embedding> embeddings, List<Embedding> queries) {
+    CosineSimilarity.EmbeddingSet embeddingSet = CosineSimilarity.EmbeddingSet.create(embeddings);
+    for (Embedding query : queries) {
+      double[] similarities = embeddingSet.computeAll(query);
+      double[] sortedSimilarities = similarities.clone();
+      Arrays.sort(sortedSimilarities);
+
+      List<EmbeddingIndex.SearchResult> results = store.search(query, NUM_RESULTS);
+
+      assertThat(results).hasSize(NUM_RESULTS);
+      for (int i = 0; i < NUM_RESULTS; ++i) {
+        EmbeddingIndex.SearchResult result = results.get(i);
+        assertThat(result.similarity())
+            .isWithin(SIMILARITY_TOLERANCE)
+            .of(sortedSimilarities[sortedSimilarities.length - 1 - i]);
+        assertThat(result.similarity())
+            .isWithin(SIMILARITY_TOLERANCE)
+            .of(similarities[result.id()]);
+      }
+    }
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.components.utils;
+
+import com.google.mediapipe.tasks.components.containers.Embedding;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/** Helper class for the embedding tests in MediaPipe Tasks components utils. */
+final class EmbeddingTestUtils {
+
+  /** Creates float embeddings with values drawn from a standard normal distribution. */
+  static List<Embedding> createFloatEmbeddings(int count, int dimension, long seed) {
+    Random random = new Random(seed);
+    List<Embedding> embeddings = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      float[] values = new float[dimension];
+      for (int j = 0; j < dimension; ++j) {
+        values[j] = (float) random.nextGaussian();
+      }
+      embeddings.add(
+          Embedding.create(
+              values, new byte[0], /*headIndex=*/ 0, /*headName=*/ Optional.empty()));
+    }
+    return embeddings;
+  }
+
+  /** Creates quantized embeddings with uniformly random values. */
+  static List<Embedding> createQuantizedEmbeddings(int count, int dimension, long seed) {
+    Random random = new Random(seed);
+    List<Embedding> embeddings = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      byte[] values = new byte[dimension];
+      random.nextBytes(values);
+      embeddings.add(
+          Embedding.create(
+              new float[0], values, /*headIndex=*/ 0, /*headName=*/ Optional.empty()));
+    }
+    return embeddings;
+  }
+
+  private EmbeddingTestUtils() {}
+}
@@ -0,0 +1,212 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.components.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.mediapipe.tasks.components.containers.Embedding;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link ProductQuantizer}. */
+@RunWith(AndroidJUnit4.class)
+public final class ProductQuantizerTest {
+  private static final double SIMILARITY_TOLERANCE = 1e-6;
+  private static final int NUM_EMBEDDINGS = 1000;
+  private static final int DIMENSION = 32;
+  private static final int NUM_CLUSTERS = 20;
+  private static final int NUM_RESULTS = 10;
+  // The number of approximate results searched for the exact results.
+  private static final int NUM_CANDIDATES = 50;
+  private static final ProductQuantizer.Options OPTIONS =
+      ProductQuantizer.Options.builder().setNumSubspaces(8).setNumCentroids(16).build();
+
+  @Test
+  public void encode_succeedsWithCodeSize() {
+    ProductQuantizer quantizer =
+        ProductQuantizer.train(createClusteredEmbeddings(NUM_EMBEDDINGS, 0), OPTIONS);
+
+    assertThat(quantizer.dimension()).isEqualTo(DIMENSION);
+    assertThat(quantizer.codeSize()).isEqualTo(8);
+    assertThat(quantizer.encode(createClusteredEmbeddings(1, 1).get(0))).hasLength(8);
+  }
+
+  @Test
+  public void lookupTable_matchesCosineSimilarityOfDecodedEmbeddings() {
+    List<Embedding> embeddings = createClusteredEmbeddings(NUM_EMBEDDINGS, 2);
+    ProductQuantizer quantizer = ProductQuantizer.train(embeddings, OPTIONS);
+    Embedding query = createClusteredEmbeddings(1, 3).get(0);
+    ProductQuantizer.LookupTable lookupTable = quantizer.createLookupTable(query);
+
+    for (int i = 0; i < 100; ++i) {
+      byte[] codes = quantizer.encode(embeddings.get(i));
+
+      assertThat(lookupTable.similarity(codes, 0))
+          .isWithin(SIMILARITY_TOLERANCE)
+          .of(CosineSimilarity.compute(query, quantizer.decode(codes, 0)));
+    }
+  }
+
+  @Test
+  public void computeAll_approximatesCosineSimilarity() {
+    List<Embedding> embeddings = createClusteredEmbeddings(NUM_EMBEDDINGS, 4);
+    ProductQuantizer quantizer = ProductQuantizer.train(embeddings, OPTIONS);
+    byte[] codes = quantizer.encodeAll(embeddings);
+    CosineSimilarity.EmbeddingSet embeddingSet = CosineSimilarity.EmbeddingSet.create(embeddings);
+    List<Embedding> queries = createClusteredEmbeddings(20, 5);
+
+    double totalError = 0;
+    int found = 0;
+    for (Embedding query : queries) {
+      double[] exactSimilarities = embeddingSet.computeAll(query);
+      double[] similarities = quantizer.createLookupTable(query).computeAll(codes);
+      for (int i = 0; i < similarities.length; ++i) {
+        totalError += Math.abs(similarities[i] - exactSimilarities[i]);
+      }
+      Set<Integer> expected =
+          new HashSet<>(
+              Arrays.asList(sortByDecreasingSimilarity(exactSimilarities)).subList(0, NUM_RESULTS));
+      Integer[] candidates = sortByDecreasingSimilarity(similarities);
+      for (int i = 0; i < NUM_CANDIDATES; ++i) {
+        if (expected.contains(candidates[i])) {
+          ++found;
+        }
+      }
+    }
+
+    assertThat(totalError / (queries.size() * embeddings.size())).isLessThan(0.1);
+    assertThat((double) found / (queries.size() * NUM_RESULTS)).isAtLeast(0.9);
+  }
+
+  @Test
+  public void encode_succeedsWithQuantizedEmbeddings() {
+    List<Embedding> embeddings = new ArrayList<>();
+    for (Embedding embedding : createClusteredEmbeddings(NUM_EMBEDDINGS, 6)) {
+      byte[] values = new byte[DIMENSION];
+      for (int i = 0; i < DIMENSION; ++i) {
+        values[i] = (byte) Math.max(-128, Math.min(127, embedding.floatEmbedding()[i] * 20));
+      }
+      embeddings.add(
+          Embedding.create(
+              new float[0], values, /*headIndex=*/ 0, /*headName=*/ Optional.empty()));
+    }
+    ProductQuantizer quantizer = ProductQuantizer.train(embeddings, OPTIONS);
+
+    byte[] codes = quantizer.encode(embeddings.get(0));
+
+    assertThat(quantizer.createLookupTable(embeddings.get(0)).similarity(codes, 0))
+        .isGreaterThan(0.8);
+  }
+
+  @Test
+  public void fromByteArray_restoresQuantizer() {
+    List<Embedding> embeddings = createClusteredEmbeddings(NUM_EMBEDDINGS, 7);
+    ProductQuantizer quantizer = ProductQuantizer.train(embeddings, OPTIONS);
+
+    ProductQuantizer restoredQuantizer = ProductQuantizer.fromByteArray(quantizer.toByteArray());
+
+    assertThat(restoredQuantizer.encodeAll(embeddings)).isEqualTo(quantizer.encodeAll(embeddings));
+  }
+
+  @Test
+  public void fromByteArray_failsWithInvalidBytes() {
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class, () -> ProductQuantizer.fromByteArray(new byte[64]));
+    assertThat(exception).hasMessageThat().contains("Not a serialized product quantizer");
+  }
+
+  @Test
+  public void train_failsWithTooFewEmbeddings() {
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> ProductQuantizer.train(createClusteredEmbeddings(10, 8), OPTIONS));
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("Training 16 centroids requires at least as many embeddings");
+  }
+
+  @Test
+  public void encode_failsWithDifferentSize() {
+    ProductQuantizer quantizer =
+        ProductQuantizer.train(createClusteredEmbeddings(NUM_EMBEDDINGS, 9), OPTIONS);
+    Embedding embedding =
+        Embedding.create(
+            new float[DIMENSION + 1],
+            new byte[0],
+            /*headIndex=*/ 0,
+            /*headName=*/ Optional.empty());
+
+    IllegalArgumentException exception =
+        assertThrows(IllegalArgumentException.class, () -> quantizer.encode(embedding));
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("Cannot quantize an embedding of size 33 with a product quantizer of size 32");
+  }
+
+  @Test
+  public void options_failsWithInvalidNumCentroids() {
+    IllegalArgumentException exception =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> ProductQuantizer.Options.builder().setNumCentroids(257).build());
+    assertThat(exception)
+        .hasMessageThat()
+        .contains("The number of centroids must be between 2 and 256");
+  }
+
+  private static Integer[] sortByDecreasingSimilarity(double[] similarities) {
+    Integer[] order = new Integer[similarities.length];
+    for (int i = 0; i < order.length; ++i) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(similarities[b], similarities[a]));
+    return order;
+  }
+
+  /** Returns float embeddings drawn around the same cluster centers for every seed. */
+  private static List<Embedding> createClusteredEmbeddings(int count, long seed) {
+    Random centerRandom = new Random(0);
+    float[][] centers = new float[NUM_CLUSTERS][DIMENSION];
+    for (float[] center : centers) {
+      for (int j = 0; j < DIMENSION; ++j) {
+        center[j] = (float) centerRandom.nextGaussian();
+      }
+    }
+    Random random = new Random(seed);
+    List<Embedding> embeddings = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      float[] center = centers[random.nextInt(NUM_CLUSTERS)];
+      float[] values = new float[DIMENSION];
+      for (int j = 0; j < DIMENSION; ++j) {
+        values[j] = center[j] + 0.5f * (float) random.nextGaussian();
+      }
+      embeddings.add(
+          Embedding.create(
+              values, new byte[0], /*headIndex=*/ 0, /*headName=*/ Optional.empty()));
+    }
+    return embeddings;
+  }
+}
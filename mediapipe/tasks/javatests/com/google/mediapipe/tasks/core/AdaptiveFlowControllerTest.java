@@ -0,0 +1,130 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link AdaptiveFlowController}. */
+@RunWith(AndroidJUnit4.class)
+public final class AdaptiveFlowControllerTest {
+  private static final long TARGET_LATENCY_MS = 100;
+  private static final int MAX_IN_FLIGHT = 4;
+  private static final long FAST_LATENCY_MS = 10;
+  private static final long SLOW_LATENCY_MS = 500;
+
+  private long nowNanos;
+  private long nextTimestamp;
+  private AdaptiveFlowController flowController;
+
+  @Before
+  public void setUp() {
+    nowNanos = 0;
+    nextTimestamp = 0;
+    flowController =
+        new AdaptiveFlowController(
+            FlowLimiterOptions.builder()
+                .setMaxInFlight(MAX_IN_FLIGHT)
+                .setTargetLatencyMs(TARGET_LATENCY_MS)
+                .build(),
+            () -> nowNanos);
+  }
+
+  @Test
+  public void startsWithOneInputInFlight() {
+    assertThat(flowController.pollInFlightChange()).isEqualTo(-1);
+
+    // The first window of fast results raises the limit from 1 to 2.
+    assertThat(recordResults(/* count= */ 16, FAST_LATENCY_MS)).containsExactly(2);
+  }
+
+  @Test
+  public void increasesInFlightWhileLatencyIsBelowTarget() {
+    assertThat(recordResults(/* count= */ 15, FAST_LATENCY_MS)).isEmpty();
+    assertThat(recordResults(/* count= */ 1, FAST_LATENCY_MS)).containsExactly(2);
+
+    // Raised by one per window of 16 results, up to the maximum number of inputs in flight.
+    assertThat(recordResults(/* count= */ 100, FAST_LATENCY_MS))
+        .containsExactly(3, 4)
+        .inOrder();
+  }
+
+  @Test
+  public void keepsInFlightWhileLatencyIsCloseToTarget() {
+    // Below the target, but above the headroom required to raise the limit.
+    assertThat(recordResults(/* count= */ 100, /* latencyMs= */ 90)).isEmpty();
+  }
+
+  @Test
+  public void decreasesInFlightWhenLatencyExceedsTarget() {
+    assertThat(recordResults(/* count= */ 100, FAST_LATENCY_MS))
+        .containsExactly(2, 3, 4)
+        .inOrder();
+
+    // Lowered by one once the results of the previous limit settled, down to a single input.
+    assertThat(recordResults(/* count= */ 100, SLOW_LATENCY_MS))
+        .containsExactly(3, 2, 1)
+        .inOrder();
+
+    // Raised again once the latency recovers.
+    assertThat(recordResults(/* count= */ 100, FAST_LATENCY_MS)).contains(2);
+  }
+
+  @Test
+  public void ignoresDroppedInputs() {
+    for (int i = 0; i < 16; ++i) {
+      // The first input is dropped by the flow limiter and never produces a result, so that only
+      // the latency of the second input is measured.
+      flowController.recordInputSent(nextTimestamp++);
+      advanceMs(SLOW_LATENCY_MS);
+      long timestamp = nextTimestamp++;
+      flowController.recordInputSent(timestamp);
+      advanceMs(FAST_LATENCY_MS);
+      flowController.recordResult(timestamp);
+    }
+
+    assertThat(flowController.pollInFlightChange()).isEqualTo(2);
+  }
+
+  /**
+   * Sends {@code count} inputs one at a time with the given latency, and returns the changes of the
+   * number of inputs in flight in order.
+   */
+  private List<Integer> recordResults(int count, long latencyMs) {
+    List<Integer> changes = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      long timestamp = nextTimestamp++;
+      flowController.recordInputSent(timestamp);
+      advanceMs(latencyMs);
+      flowController.recordResult(timestamp);
+      int inFlight = flowController.pollInFlightChange();
+      if (inFlight > 0) {
+        changes.add(inFlight);
+      }
+    }
+    return changes;
+  }
+
+  private void advanceMs(long ms) {
+    nowNanos += TimeUnit.MILLISECONDS.toNanos(ms);
+  }
+}
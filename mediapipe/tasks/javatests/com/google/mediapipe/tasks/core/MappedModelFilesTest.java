@@ -0,0 +1,77 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.core;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link MappedModelFiles}. */
+@RunWith(AndroidJUnit4.class)
+public final class MappedModelFilesTest {
+  private static final int MODEL_SIZE = 64;
+
+  private File modelFile;
+
+  @Before
+  public void setUp() throws IOException {
+    modelFile = File.createTempFile("model", ".tflite");
+    try (FileOutputStream outputStream = new FileOutputStream(modelFile)) {
+      outputStream.write(new byte[MODEL_SIZE]);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    modelFile.delete();
+  }
+
+  @Test
+  public void acquire_sharesOneMappingUntilTheLastRelease() throws IOException {
+    String firstKey = MappedModelFiles.acquire(modelFile, /* prefetch= */ false);
+    MappedByteBuffer mapping = MappedModelFiles.get(modelFile);
+    String secondKey = MappedModelFiles.acquire(modelFile, /* prefetch= */ true);
+    assertThat(secondKey).isEqualTo(firstKey);
+    assertThat(MappedModelFiles.get(modelFile)).isSameInstanceAs(mapping);
+    assertThat(mapping.capacity()).isEqualTo(MODEL_SIZE);
+
+    MappedModelFiles.release(firstKey);
+    assertThat(MappedModelFiles.get(modelFile)).isSameInstanceAs(mapping);
+    MappedModelFiles.release(secondKey);
+    assertThrows(IllegalStateException.class, () -> MappedModelFiles.get(modelFile));
+
+    // The released mapping is no longer registered.
+    String newKey = MappedModelFiles.acquire(modelFile, /* prefetch= */ false);
+    assertThat(MappedModelFiles.get(modelFile)).isNotSameInstanceAs(mapping);
+    MappedModelFiles.release(newKey);
+  }
+
+  @Test
+  public void get_failsForAFileThatWasNotAcquired() {
+    IllegalStateException exception =
+        assertThrows(IllegalStateException.class, () -> MappedModelFiles.get(modelFile));
+
+    assertThat(exception).hasMessageThat().contains("isn't mapped");
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.mediapipe.proto.CalculatorOptionsProto.CalculatorOptions;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link ModelResourcesCacheRegistry}. */
+@RunWith(AndroidJUnit4.class)
+public final class ModelResourcesCacheRegistryTest {
+  private static final String TASK_GRAPH_NAME = "mediapipe.tasks.test.TestGraph";
+  private static final String OTHER_TASK_GRAPH_NAME = "mediapipe.tasks.test.OtherTestGraph";
+  private static final int MODEL_SIZE = 64;
+
+  static {
+    // Provides the native ModelResourcesCache and buffer address methods.
+    System.loadLibrary("mediapipe_tasks_vision_jni");
+  }
+
+  private static final class TestTaskOptions extends TaskOptions {
+    @Override
+    public CalculatorOptions convertToCalculatorOptionsProto() {
+      return CalculatorOptions.getDefaultInstance();
+    }
+  }
+
+  @Test
+  public void tasksOfTheSameModelBuffer_shareOneCacheUntilTheLastRelease() {
+    ByteBuffer model = ByteBuffer.allocateDirect(MODEL_SIZE);
+    TaskInfo<TestTaskOptions> firstTask = createTaskInfo(TASK_GRAPH_NAME, model);
+    TaskInfo<TestTaskOptions> secondTask = createTaskInfo(TASK_GRAPH_NAME, model.duplicate());
+    String firstKey = ModelResourcesCacheRegistry.createKey(firstTask);
+    String secondKey = ModelResourcesCacheRegistry.createKey(secondTask);
+    assertThat(firstKey).isNotNull();
+    assertThat(secondKey).isEqualTo(firstKey);
+
+    ModelResourcesCache firstCache = ModelResourcesCacheRegistry.acquire(firstKey, firstTask);
+    ModelResourcesCache secondCache = ModelResourcesCacheRegistry.acquire(secondKey, secondTask);
+    assertThat(secondCache).isSameInstanceAs(firstCache);
+
+    ModelResourcesCacheRegistry.release(firstKey);
+    assertThat(firstCache.isHandleValid()).isTrue();
+    ModelResourcesCacheRegistry.release(secondKey);
+    assertThat(firstCache.isHandleValid()).isFalse();
+
+    // The released cache is no longer registered.
+    ModelResourcesCache newCache = ModelResourcesCacheRegistry.acquire(firstKey, firstTask);
+    assertThat(newCache).isNotSameInstanceAs(firstCache);
+    assertThat(newCache.isHandleValid()).isTrue();
+    ModelResourcesCacheRegistry.release(firstKey);
+    assertThat(newCache.isHandleValid()).isFalse();
+  }
+
+  @Test
+  public void modelBuffersWithTheSameContent_areIdentifiedByTheirMemory() {
+    byte[] content = new byte[MODEL_SIZE];
+    Arrays.fill(content, (byte) 7);
+    ByteBuffer model = ByteBuffer.allocateDirect(MODEL_SIZE);
+    model.put(content);
+    ByteBuffer copy = ByteBuffer.allocateDirect(MODEL_SIZE);
+    copy.put(content);
+
+    assertThat(ModelResourcesCacheRegistry.createKey(createTaskInfo(TASK_GRAPH_NAME, copy)))
+        .isNotEqualTo(
+            ModelResourcesCacheRegistry.createKey(createTaskInfo(TASK_GRAPH_NAME, model)));
+  }
+
+  @Test
+  public void partsOfAModelBuffer_haveDifferentKeys() {
+    ByteBuffer model = ByteBuffer.allocateDirect(MODEL_SIZE);
+    setPosition(model, MODEL_SIZE / 2);
+    ByteBuffer secondHalf = model.slice();
+
+    assertThat(ModelResourcesCacheRegistry.createKey(createTaskInfo(TASK_GRAPH_NAME, secondHalf)))
+        .isNotEqualTo(
+            ModelResourcesCacheRegistry.createKey(createTaskInfo(TASK_GRAPH_NAME, model)));
+  }
+
+  @Test
+  public void tasksOfDifferentGraphs_haveDifferentKeys() {
+    ByteBuffer model = ByteBuffer.allocateDirect(MODEL_SIZE);
+
+    assertThat(ModelResourcesCacheRegistry.createKey(createTaskInfo(OTHER_TASK_GRAPH_NAME, model)))
+        .isNotEqualTo(
+            ModelResourcesCacheRegistry.createKey(createTaskInfo(TASK_GRAPH_NAME, model)));
+  }
+
+  @Test
+  public void tasksWithoutBaseOptions_haveNoKey() {
+    TaskInfo<TestTaskOptions> taskInfo =
+        TaskInfo.<TestTaskOptions>builder()
+            .setTaskGraphName(TASK_GRAPH_NAME)
+            .setInputStreams(Arrays.asList("IMAGE:image_in"))
+            .setOutputStreams(Arrays.asList("RESULT:result_out"))
+            .setTaskOptions(new TestTaskOptions())
+            .setEnableFlowLimiting(false)
+            .build();
+
+    assertThat(ModelResourcesCacheRegistry.createKey(taskInfo)).isNull();
+  }
+
+  private static TaskInfo<TestTaskOptions> createTaskInfo(String taskGraphName, ByteBuffer model) {
+    return TaskInfo.<TestTaskOptions>builder()
+        .setTaskGraphName(taskGraphName)
+        .setInputStreams(Arrays.asList("IMAGE:image_in"))
+        .setOutputStreams(Arrays.asList("RESULT:result_out"))
+        .setTaskOptions(new TestTaskOptions())
+        .setEnableFlowLimiting(false)
+        .setBaseOptions(BaseOptions.builder().setModelAssetBuffer(model).build())
+        .build();
+  }
+
+  // Called on a Buffer, as the covariant overrides of position(int) don't exist on all the Android
+  // versions.
+  private static void setPosition(Buffer buffer, int position) {
+    buffer.position(position);
+  }
+}
@@ -0,0 +1,238 @@
+// Copyright 2022 The MediaPipe Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.mediapipe.tasks.core;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.mediapipe.framework.MediaPipeException;
+import com.google.mediapipe.framework.Packet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link OutputHandler}. */
+@RunWith(AndroidJUnit4.class)
+public final class OutputHandlerTest {
+  private static final long FAILING_TIMESTAMP = 1000;
+
+  private static final class TestResult implements TaskResult {
+    private final long timestampMs;
+
+    TestResult(long timestampMs) {
+      this.timestampMs = timestampMs;
+    }
+
+    @Override
+    public long timestampMs() {
+      return timestampMs;
+    }
+  }
+
+  // The timestamp of the output packets being converted.
+  private long outputTimestamp;
+  private final List<Long> listenedTimestamps = new ArrayList<>();
+  private final List<Long> releasedInputTimestamps = new ArrayList<>();
+  private OutputHandler<TestResult, Void> outputHandler;
+
+  @Before
+  public void setUp() {
+    outputHandler = new OutputHandler<>();
+    outputHandler.setOutputPacketConverter(
+        new OutputHandler.OutputPacketConverter<TestResult, Void>() {
+          @Override
+          public TestResult convertToTaskResult(List<Packet> packets) {
+            if (outputTimestamp == FAILING_TIMESTAMP) {
+              throw new MediaPipeException(
+                  MediaPipeException.StatusCode.INTERNAL.ordinal(), "Conversion failed.");
+            }
+            return new TestResult(outputTimestamp);
+          }
+
+          @Override
+          public Void convertToTaskInput(List<Packet> packets) {
+            return null;
+          }
+
+          @Override
+          public void releaseTaskInput(Void input) {
+            releasedInputTimestamps.add(outputTimestamp);
+          }
+        });
+  }
+
+  @Test
+  public void completesPendingResultsByTimestamp() throws Exception {
+    CompletableFuture<TestResult> first = outputHandler.registerPendingResult(0, null);
+    CompletableFuture<TestResult> second = outputHandler.registerPendingResult(1, null);
+    CompletableFuture<TestResult> third = outputHandler.registerPendingResult(2, null);
+
+    handleOutput(1);
+
+    // The first invocation produced no output before the second one's.
+    assertThat(first.get()).isNull();
+    assertThat(second.get().timestampMs()).isEqualTo(1);
+    assertThat(third.isDone()).isFalse();
+    assertThat(outputHandler.getLatestOutputTimestamp()).isEqualTo(1);
+
+    handleOutput(2);
+
+    assertThat(third.get().timestampMs()).isEqualTo(2);
+    assertThat(outputHandler.getLatestOutputTimestamp()).isEqualTo(2);
+  }
+
+  @Test
+  public void completesPendingResultsOnTheirExecutor() throws Exception {
+    List<Runnable> tasks = new ArrayList<>();
+    CompletableFuture<TestResult> skipped = outputHandler.registerPendingResult(0, tasks::add);
+    CompletableFuture<TestResult> result = outputHandler.registerPendingResult(1, tasks::add);
+
+    handleOutput(1);
+
+    assertThat(skipped.isDone()).isFalse();
+    assertThat(result.isDone()).isFalse();
+    assertThat(tasks).hasSize(2);
+
+    for (Runnable task : tasks) {
+      task.run();
+    }
+
+    assertThat(skipped.get()).isNull();
+    assertThat(result.get().timestampMs()).isEqualTo(1);
+  }
+
+  @Test
+  public void pendingResultFailsWhenItsConversionFails() throws Exception {
+    CompletableFuture<TestResult> failed =
+        outputHandler.registerPendingResult(FAILING_TIMESTAMP, null);
+    CompletableFuture<TestResult> next =
+        outputHandler.registerPendingResult(FAILING_TIMESTAMP + 1, null);
+
+    handleOutput(FAILING_TIMESTAMP);
+    handleOutput(FAILING_TIMESTAMP + 1);
+
+    ExecutionException exception = assertThrows(ExecutionException.class, failed::get);
+    assertThat(exception).hasCauseThat().isInstanceOf(MediaPipeException.class);
+    assertThat(next.get().timestampMs()).isEqualTo(FAILING_TIMESTAMP + 1);
+  }
+
+  @Test
+  public void failPendingResults_failsAllPendingResults() {
+    CompletableFuture<TestResult> first = outputHandler.registerPendingResult(0, null);
+    CompletableFuture<TestResult> second = outputHandler.registerPendingResult(1, null);
+    MediaPipeException graphError =
+        new MediaPipeException(MediaPipeException.StatusCode.INTERNAL.ordinal(), "Graph failed.");
+
+    outputHandler.failPendingResults(graphError);
+
+    for (CompletableFuture<TestResult> future : Arrays.asList(first, second)) {
+      ExecutionException exception = assertThrows(ExecutionException.class, future::get);
+      assertThat(exception).hasCauseThat().isSameInstanceAs(graphError);
+    }
+    // The failed results are no longer pending.
+    handleOutput(1);
+    assertThat(outputHandler.retrieveCachedTaskResult().timestampMs()).isEqualTo(1);
+  }
+
+  @Test
+  public void completePendingResults_completesAllPendingResultsWithNull() throws Exception {
+    CompletableFuture<TestResult> first = outputHandler.registerPendingResult(0, null);
+    CompletableFuture<TestResult> second = outputHandler.registerPendingResult(1, null);
+
+    outputHandler.completePendingResults();
+
+    assertThat(first.get()).isNull();
+    assertThat(second.get()).isNull();
+  }
+
+  @Test
+  public void pendingResultsAreNotCachedNorListened() throws Exception {
+    outputHandler.setResultListener(
+        (result, input) -> listenedTimestamps.add(result.timestampMs()));
+    CompletableFuture<TestResult> pending = outputHandler.registerPendingResult(1, null);
+
+    handleOutput(0);
+    handleOutput(1);
+    handleOutput(2);
+
+    assertThat(pending.get().timestampMs()).isEqualTo(1);
+    assertThat(listenedTimestamps).containsExactly(0L, 2L).inOrder();
+  }
+
+  @Test
+  public void releasesTheTaskInputWhenTheListenerReturns() {
+    outputHandler.setResultListener(
+        (result, input) -> {
+          assertThat(releasedInputTimestamps).doesNotContain(result.timestampMs());
+          listenedTimestamps.add(result.timestampMs());
+        });
+
+    handleOutput(0);
+    handleOutput(1);
+
+    assertThat(listenedTimestamps).containsExactly(0L, 1L).inOrder();
+    assertThat(releasedInputTimestamps).containsExactly(0L, 1L).inOrder();
+  }
+
+  @Test
+  public void pendingResultsAreNeverEvicted() throws Exception {
+    List<CompletableFuture<TestResult>> results = new ArrayList<>();
+    for (long timestamp = 0; timestamp < 1000; ++timestamp) {
+      results.add(outputHandler.registerPendingResult(timestamp, null));
+    }
+
+    for (long timestamp = 0; timestamp < 1000; ++timestamp) {
+      handleOutput(timestamp);
+    }
+
+    for (int i = 0; i < results.size(); ++i) {
+      assertThat(results.get(i).get().timestampMs()).isEqualTo(i);
+    }
+    assertThat(outputHandler.retrieveCachedTaskResult()).isNull();
+  }
+
+  @Test
+  public void removePendingResult_stopsTrackingTheResult() {
+    CompletableFuture<TestResult> removed = outputHandler.registerPendingResult(0, null);
+
+    outputHandler.removePendingResult(0);
+    handleOutput(0);
+
+    assertThat(removed.isDone()).isFalse();
+    assertThat(outputHandler.retrieveCachedTaskResult().timestampMs()).isEqualTo(0);
+  }
+
+  @Test
+  public void retrieveCachedTaskResult_returnsTheLatestResultOnce() {
+    handleOutput(0);
+    handleOutput(1);
+
+    assertThat(outputHandler.retrieveCachedTaskResult().timestampMs()).isEqualTo(1);
+    assertThat(outputHandler.retrieveCachedTaskResult()).isNull();
+    assertThat(outputHandler.getLatestOutputTimestamp()).isEqualTo(1);
+  }
+
+  private void handleOutput(long timestamp) {
+    outputTimestamp = timestamp;
+    outputHandler.run(timestamp, Collections.emptyList());
+  }
+}
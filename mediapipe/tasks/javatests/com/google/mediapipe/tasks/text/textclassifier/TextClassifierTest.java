@@ -21,8 +21,10 @@ import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.mediapipe.framework.MediaPipeException;
 import com.google.mediapipe.tasks.components.containers.Category;
+import com.google.mediapipe.tasks.components.containers.CompactClassificationResult;
 import com.google.mediapipe.tasks.core.BaseOptions;
 import com.google.mediapipe.tasks.core.TestUtils;
+import com.google.mediapipe.tasks.core.logging.TasksStatsLogger.StatsSnapshot;
 import com.google.mediapipe.tasks.text.textclassifier.TextClassifier.TextClassifierOptions;
 import java.util.Arrays;
 import java.util.List;
@@ -122,6 +124,59 @@ public class TextClassifierTest {
             Category.create(2.8132641E-5f, 0, "negative", "")));
   }
 
+  @Test
+  public void classify_succeedsWithCompactResult() throws Exception {
+    TextClassifierOptions options =
+        TextClassifierOptions.builder()
+            .setBaseOptions(BaseOptions.builder().setModelAssetPath(BERT_MODEL_FILE).build())
+            .setUseCompactResult(true)
+            .build();
+    TextClassifier textClassifier =
+        TextClassifier.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+    TextClassifierResult negativeResults = textClassifier.classify(NEGATIVE_TEXT);
+    assertThat(negativeResults.classificationResult())
+        .isInstanceOf(CompactClassificationResult.class);
+    CompactClassificationResult compactResult =
+        (CompactClassificationResult) negativeResults.classificationResult();
+    assertThat(compactResult.headsCount()).isEqualTo(1);
+    assertThat(compactResult.categoriesCount(0)).isEqualTo(2);
+    assertThat(compactResult.indicesBuffer(0).get(0)).isEqualTo(0);
+    assertThat(compactResult.scoresBuffer(0).get(0)).isEqualTo(0.95630914f);
+    assertThat(compactResult.categoryName(0, 1)).isEqualTo("positive");
+    assertHasOneHead(negativeResults);
+    assertCategoriesAre(
+        negativeResults,
+        Arrays.asList(
+            Category.create(0.95630914f, 0, "negative", ""),
+            Category.create(0.04369091f, 1, "positive", "")));
+
+    // The labels are shared by the results of the classifier.
+    TextClassifierResult positiveResults = textClassifier.classify(POSITIVE_TEXT);
+    assertHasOneHead(positiveResults);
+    assertCategoriesAre(
+        positiveResults,
+        Arrays.asList(
+            Category.create(0.99997187f, 1, "positive", ""),
+            Category.create(2.8132641E-5f, 0, "negative", "")));
+    Category topCategory =
+        positiveResults.classificationResult().classifications().get(0).categories().get(0);
+    assertThat(topCategory.categoryName()).isSameInstanceAs(compactResult.categoryName(0, 1));
+  }
+
+  @Test
+  public void classify_recordsStats() throws Exception {
+    TextClassifier textClassifier =
+        TextClassifier.createFromFile(ApplicationProvider.getApplicationContext(), BERT_MODEL_FILE);
+    textClassifier.classify(NEGATIVE_TEXT);
+    textClassifier.classify(POSITIVE_TEXT);
+    StatsSnapshot stats = textClassifier.getStatsSnapshot();
+    assertThat(stats.cpuInputCount()).isEqualTo(2);
+    assertThat(stats.finishedCount()).isEqualTo(2);
+    assertThat(stats.droppedCount()).isEqualTo(0);
+    assertThat(stats.p50LatencyMs()).isGreaterThan(0);
+    assertThat(stats.p99LatencyMs()).isAtLeast(stats.p50LatencyMs());
+  }
+
   @Test
   public void classify_succeedsWithFileObject() throws Exception {
     TextClassifier textClassifier =
@@ -19,7 +19,22 @@ import static org.junit.Assert.assertThrows;
 
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.mediapipe.framework.AndroidPacketCreator;
+import com.google.mediapipe.framework.Graph;
 import com.google.mediapipe.framework.MediaPipeException;
+import com.google.mediapipe.framework.Packet;
+import com.google.mediapipe.tasks.components.containers.BufferEmbedding;
+import com.google.mediapipe.tasks.components.containers.Embedding;
+import com.google.mediapipe.tasks.components.containers.EmbeddingPacketGetter;
+import com.google.mediapipe.tasks.components.containers.EmbeddingResult;
+import com.google.mediapipe.tasks.components.containers.proto.EmbeddingsProto;
+import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.Optional;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -31,6 +46,14 @@ public class TextEmbedderTest {
 
   private static final double DOUBLE_DIFF_TOLERANCE = 1e-4;
   private static final float FLOAT_DIFF_TOLERANCE = 1e-4f;
+  private static final float[] FLOAT_VALUES = {1.5f, -2f, 3.25f};
+  private static final byte[] QUANTIZED_VALUES = {1, -2, 3, 127};
+  private static final long TIMESTAMP_MS = 42;
+
+  static {
+    // EmbeddingPacketGetter and the MediaPipe framework are in the text tasks native library.
+    System.loadLibrary("mediapipe_tasks_text_jni");
+  }
 
   @Test
   public void create_failsWithMissingModel() throws Exception {
@@ -115,4 +138,202 @@ public class TextEmbedderTest {
             result1.embeddingResult().embeddings().get(0));
     assertThat(similarity).isWithin(DOUBLE_DIFF_TOLERANCE).of(0.3477488707202946);
   }
+
+  @Test
+  public void embeddingPacketGetter_succeedsWithEmbeddingInfo() throws Exception {
+    Graph graph = new Graph();
+    try {
+      Packet packet = createEmbeddingResultPacket(graph);
+
+      assertThat(EmbeddingPacketGetter.getEmbeddingsCount(packet)).isEqualTo(2);
+      assertThat(EmbeddingPacketGetter.getHeadIndex(packet, 0)).isEqualTo(0);
+      assertThat(EmbeddingPacketGetter.getHeadName(packet, 0)).hasValue("float_head");
+      assertThat(EmbeddingPacketGetter.getEmbeddingSize(packet, 0)).isEqualTo(3);
+      assertThat(EmbeddingPacketGetter.isQuantized(packet, 0)).isFalse();
+      assertThat(EmbeddingPacketGetter.getHeadIndex(packet, 1)).isEqualTo(1);
+      assertThat(EmbeddingPacketGetter.getHeadName(packet, 1)).isEmpty();
+      assertThat(EmbeddingPacketGetter.getEmbeddingSize(packet, 1)).isEqualTo(4);
+      assertThat(EmbeddingPacketGetter.isQuantized(packet, 1)).isTrue();
+      assertThat(EmbeddingPacketGetter.getEmbeddingResult(packet))
+          .isEqualTo(
+              EmbeddingResult.create(
+                  Arrays.asList(
+                      Embedding.create(
+                          FLOAT_VALUES,
+                          new byte[0],
+                          /* headIndex= */ 0,
+                          /* headName= */ Optional.of("float_head")),
+                      Embedding.create(
+                          new float[0],
+                          QUANTIZED_VALUES,
+                          /* headIndex= */ 1,
+                          /* headName= */ Optional.empty())),
+                  Optional.of(TIMESTAMP_MS)));
+    } finally {
+      graph.tearDown();
+    }
+  }
+
+  @Test
+  public void embeddingPacketGetter_succeedsWithFloatArrayAndBuffers() throws Exception {
+    Graph graph = new Graph();
+    try {
+      Packet packet = createEmbeddingResultPacket(graph);
+      float[] array = new float[5];
+
+      assertThat(EmbeddingPacketGetter.getFloatEmbedding(packet, 0, array, /* offset= */ 1))
+          .isEqualTo(3);
+      assertThat(array).usingExactEquality().containsExactly(0f, 1.5f, -2f, 3.25f, 0f).inOrder();
+
+      ByteOrder nonNativeOrder =
+          ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN
+              ? ByteOrder.BIG_ENDIAN
+              : ByteOrder.LITTLE_ENDIAN;
+      FloatBuffer[] buffers = {
+        FloatBuffer.allocate(5),
+        ByteBuffer.allocateDirect(5 * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer(),
+        ByteBuffer.allocateDirect(5 * Float.BYTES).order(nonNativeOrder).asFloatBuffer(),
+      };
+      for (FloatBuffer buffer : buffers) {
+        buffer.position(2);
+
+        assertThat(EmbeddingPacketGetter.getFloatEmbedding(packet, 0, buffer)).isEqualTo(3);
+        assertThat(buffer.position()).isEqualTo(5);
+        buffer.position(2);
+        float[] values = new float[3];
+        buffer.get(values);
+        assertThat(values).usingExactEquality().containsExactly(FLOAT_VALUES).inOrder();
+      }
+    } finally {
+      graph.tearDown();
+    }
+  }
+
+  @Test
+  public void embeddingPacketGetter_succeedsWithQuantizedArrayAndBuffers() throws Exception {
+    Graph graph = new Graph();
+    try {
+      Packet packet = createEmbeddingResultPacket(graph);
+      byte[] array = new byte[6];
+
+      assertThat(EmbeddingPacketGetter.getQuantizedEmbedding(packet, 1, array, /* offset= */ 2))
+          .isEqualTo(4);
+      assertThat(array).isEqualTo(new byte[] {0, 0, 1, -2, 3, 127});
+
+      ByteBuffer[] buffers = {ByteBuffer.allocate(6), ByteBuffer.allocateDirect(6)};
+      for (ByteBuffer buffer : buffers) {
+        buffer.position(1);
+
+        assertThat(EmbeddingPacketGetter.getQuantizedEmbedding(packet, 1, buffer)).isEqualTo(4);
+        assertThat(buffer.position()).isEqualTo(5);
+        buffer.position(1);
+        byte[] values = new byte[4];
+        buffer.get(values);
+        assertThat(values).isEqualTo(QUANTIZED_VALUES);
+      }
+    } finally {
+      graph.tearDown();
+    }
+  }
+
+  @Test
+  public void embeddingPacketGetter_failsWithInvalidDestinations() throws Exception {
+    Graph graph = new Graph();
+    try {
+      Packet packet = createEmbeddingResultPacket(graph);
+
+      IllegalArgumentException exception =
+          assertThrows(
+              IllegalArgumentException.class,
+              () -> EmbeddingPacketGetter.getFloatEmbedding(packet, 0, new float[3], 1));
+      assertThat(exception).hasMessageThat().contains("has room for 2 values");
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> EmbeddingPacketGetter.getQuantizedEmbedding(packet, 1, ByteBuffer.allocate(3)));
+      assertThrows(
+          ReadOnlyBufferException.class,
+          () ->
+              EmbeddingPacketGetter.getFloatEmbedding(
+                  packet, 0, FloatBuffer.allocate(3).asReadOnlyBuffer()));
+      // The embedding is a float embedding.
+      assertThrows(
+          MediaPipeException.class,
+          () -> EmbeddingPacketGetter.getQuantizedEmbedding(packet, 0, new byte[4], 0));
+      // There are only two embeddings.
+      assertThrows(
+          MediaPipeException.class, () -> EmbeddingPacketGetter.getEmbeddingSize(packet, 2));
+    } finally {
+      graph.tearDown();
+    }
+  }
+
+  @Test
+  public void bufferEmbedding_equalsEmbeddingWithSameValues() throws Exception {
+    Graph graph = new Graph();
+    try {
+      Packet packet = createEmbeddingResultPacket(graph);
+      FloatBuffer floatBuffer =
+          ByteBuffer.allocateDirect(3 * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+      EmbeddingPacketGetter.getFloatEmbedding(packet, 0, floatBuffer);
+      floatBuffer.flip();
+      ByteBuffer quantizedBuffer = ByteBuffer.allocate(4);
+      EmbeddingPacketGetter.getQuantizedEmbedding(packet, 1, quantizedBuffer);
+      quantizedBuffer.flip();
+
+      BufferEmbedding floatEmbedding =
+          BufferEmbedding.create(
+              floatBuffer, /* headIndex= */ 0, /* headName= */ Optional.of("float_head"));
+      BufferEmbedding quantizedEmbedding =
+          BufferEmbedding.create(
+              quantizedBuffer, /* headIndex= */ 1, /* headName= */ Optional.empty());
+
+      Embedding expectedFloatEmbedding =
+          Embedding.create(
+              FLOAT_VALUES,
+              new byte[0],
+              /* headIndex= */ 0,
+              /* headName= */ Optional.of("float_head"));
+      assertThat(floatEmbedding).isEqualTo(expectedFloatEmbedding);
+      assertThat(expectedFloatEmbedding).isEqualTo(floatEmbedding);
+      assertThat(floatEmbedding.hashCode()).isEqualTo(expectedFloatEmbedding.hashCode());
+      assertThat(floatEmbedding.floatBuffer().isReadOnly()).isTrue();
+      Embedding expectedQuantizedEmbedding =
+          Embedding.create(
+              new float[0], QUANTIZED_VALUES, /* headIndex= */ 1, /* headName= */ Optional.empty());
+      assertThat(quantizedEmbedding).isEqualTo(expectedQuantizedEmbedding);
+      assertThat(quantizedEmbedding.hashCode()).isEqualTo(expectedQuantizedEmbedding.hashCode());
+      // The embedding is a view of the buffer.
+      quantizedBuffer.put(0, (byte) 5);
+      assertThat(quantizedEmbedding.quantizedEmbedding()[0]).isEqualTo(5);
+      assertThat(TextEmbedder.cosineSimilarity(floatEmbedding, expectedFloatEmbedding))
+          .isWithin(DOUBLE_DIFF_TOLERANCE)
+          .of(1.0);
+    } finally {
+      graph.tearDown();
+    }
+  }
+
+  private static Packet createEmbeddingResultPacket(Graph graph) {
+    EmbeddingsProto.FloatEmbedding.Builder floatEmbedding =
+        EmbeddingsProto.FloatEmbedding.newBuilder();
+    for (float value : FLOAT_VALUES) {
+      floatEmbedding.addValues(value);
+    }
+    EmbeddingsProto.EmbeddingResult result =
+        EmbeddingsProto.EmbeddingResult.newBuilder()
+            .addEmbeddings(
+                EmbeddingsProto.Embedding.newBuilder()
+                    .setFloatEmbedding(floatEmbedding)
+                    .setHeadIndex(0)
+                    .setHeadName("float_head"))
+            .addEmbeddings(
+                EmbeddingsProto.Embedding.newBuilder()
+                    .setQuantizedEmbedding(
+                        EmbeddingsProto.QuantizedEmbedding.newBuilder()
+                            .setValues(ByteString.copyFrom(QUANTIZED_VALUES)))
+                    .setHeadIndex(1))
+            .setTimestampMs(TIMESTAMP_MS)
+            .build();
+    return new AndroidPacketCreator(graph).createProto(result);
+  }
 }
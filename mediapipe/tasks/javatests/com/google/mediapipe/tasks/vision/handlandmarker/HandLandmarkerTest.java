@@ -77,6 +77,64 @@ public class HandLandmarkerTest {
       assertActualResultApproximatelyEqualsToExpectedResult(actualResult, expectedResult);
     }
 
+    @Test
+    public void detect_successWithFlatResult() throws Exception {
+      HandLandmarkerOptions options =
+          HandLandmarkerOptions.builder()
+              .setBaseOptions(
+                  BaseOptions.builder()
+                      .setModelAssetPath(HAND_LANDMARKER_BUNDLE_ASSET_FILE)
+                      .build())
+              .setUseFlatResult(true)
+              .build();
+      HandLandmarker handLandmarker =
+          HandLandmarker.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      HandLandmarkerResult actualResult =
+          handLandmarker.detect(getImageFromAsset(THUMB_UP_IMAGE));
+      HandLandmarkerResult expectedResult =
+          getExpectedHandLandmarkerResult(THUMB_UP_LANDMARKS);
+      assertThat(actualResult).isInstanceOf(FlatHandLandmarkerResult.class);
+      FlatHandLandmarkerResult flatResult = (FlatHandLandmarkerResult) actualResult;
+      assertThat(flatResult.handsCount()).isEqualTo(1);
+      assertThat(flatResult.landmarksBuffer(0).remaining())
+          .isEqualTo(flatResult.landmarksCount(0) * FlatHandLandmarkerResult.LANDMARK_STRIDE);
+      assertThat(flatResult.landmarksBuffer(0).get(0))
+          .isEqualTo(flatResult.landmarks().get(0).get(0).x());
+      assertActualResultApproximatelyEqualsToExpectedResult(actualResult, expectedResult);
+
+      // A recycled result is reused for the next frame.
+      flatResult.close();
+      HandLandmarkerResult nextResult = handLandmarker.detect(getImageFromAsset(NO_HANDS_IMAGE));
+      assertThat(nextResult).isSameInstanceAs(flatResult);
+      assertThat(nextResult.landmarks()).isEmpty();
+      assertThat(nextResult.worldLandmarks()).isEmpty();
+      assertThat(nextResult.handednesses()).isEmpty();
+    }
+
+    @Test
+    public void detect_internsFlatResultHandednessLabels() throws Exception {
+      HandLandmarkerOptions options =
+          HandLandmarkerOptions.builder()
+              .setBaseOptions(
+                  BaseOptions.builder()
+                      .setModelAssetPath(HAND_LANDMARKER_BUNDLE_ASSET_FILE)
+                      .build())
+              .setUseFlatResult(true)
+              .build();
+      HandLandmarker handLandmarker =
+          HandLandmarker.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      HandLandmarkerResult firstResult = handLandmarker.detect(getImageFromAsset(THUMB_UP_IMAGE));
+      HandLandmarkerResult secondResult = handLandmarker.detect(getImageFromAsset(THUMB_UP_IMAGE));
+
+      // The label of the same hand is converted to a String once, and shared by both results.
+      assertThat(secondResult).isNotSameInstanceAs(firstResult);
+      assertThat(secondResult.handednesses().get(0).get(0).categoryName())
+          .isSameInstanceAs(firstResult.handednesses().get(0).get(0).categoryName());
+      handLandmarker.close();
+      // The results outlive the task.
+      assertThat(firstResult.handednesses().get(0).get(0).categoryName()).isNotEmpty();
+    }
+
     @Test
     public void detect_successWithEmptyResult() throws Exception {
       HandLandmarkerOptions options =
@@ -33,8 +33,14 @@ import com.google.mediapipe.tasks.vision.core.RunningMode;
 import com.google.mediapipe.tasks.vision.imageclassifier.ImageClassifier.ImageClassifierOptions;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -291,6 +297,141 @@ public class ImageClassifierTest {
       assertCategoriesAre(
           results, Arrays.asList(Category.create(0.686824f, 560, "folding chair", "")));
     }
+
+    @Test
+    public void classify_succeedsWithChangingImageProcessingOptions() throws Exception {
+      ImageClassifierOptions options =
+          ImageClassifierOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(FLOAT_MODEL_FILE).build())
+              .setMaxResults(1)
+              .build();
+      ImageClassifier imageClassifier =
+          ImageClassifier.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      // RectF around the soccer ball.
+      RectF roi = new RectF(0.450f, 0.308f, 0.614f, 0.734f);
+      ImageProcessingOptions roiOptions =
+          ImageProcessingOptions.builder().setRegionOfInterest(roi).build();
+      List<Category> soccerBall =
+          Arrays.asList(Category.create(0.9969325f, 806, "soccer ball", ""));
+      List<Category> cheeseburger =
+          Arrays.asList(Category.create(0.7952058f, 934, "cheeseburger", ""));
+
+      assertCategoriesAre(imageClassifier.classify(getImageFromAsset(BURGER_IMAGE)), cheeseburger);
+      // The rect packet of the previous frame is only reused while the rect is unchanged.
+      assertCategoriesAre(
+          imageClassifier.classify(getImageFromAsset(MULTI_OBJECTS_IMAGE), roiOptions), soccerBall);
+      assertCategoriesAre(
+          imageClassifier.classify(getImageFromAsset(MULTI_OBJECTS_IMAGE), roiOptions), soccerBall);
+      // The region of interest is mutable, so the same options can describe another rect.
+      roi.set(0f, 0f, 1f, 1f);
+      assertCategoriesAre(
+          imageClassifier.classify(getImageFromAsset(BURGER_IMAGE), roiOptions), cheeseburger);
+      assertCategoriesAre(
+          imageClassifier.classify(
+              getImageFromAsset(BURGER_ROTATED_IMAGE),
+              ImageProcessingOptions.builder().setRotationDegrees(-90).build()),
+          Arrays.asList(Category.create(0.6390683f, 934, "cheeseburger", "")));
+    }
+
+    @Test
+    public void classifyAll_returnsResultsInInputOrder() throws Exception {
+      ImageClassifierOptions options =
+          ImageClassifierOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(FLOAT_MODEL_FILE).build())
+              .setMaxResults(1)
+              .build();
+      ImageClassifier imageClassifier =
+          ImageClassifier.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      // RectF around the soccer ball.
+      RectF roi = new RectF(0.450f, 0.308f, 0.614f, 0.734f);
+      List<ImageClassifierResult> results =
+          imageClassifier.classifyAll(
+              Arrays.asList(
+                  getImageFromAsset(BURGER_IMAGE),
+                  getImageFromAsset(MULTI_OBJECTS_IMAGE),
+                  getImageFromAsset(BURGER_ROTATED_IMAGE),
+                  getImageFromAsset(BURGER_IMAGE)),
+              Arrays.asList(
+                  ImageProcessingOptions.builder().build(),
+                  ImageProcessingOptions.builder().setRegionOfInterest(roi).build(),
+                  ImageProcessingOptions.builder().setRotationDegrees(-90).build(),
+                  ImageProcessingOptions.builder().build()));
+
+      assertThat(results).hasSize(4);
+      List<Category> expectedCategories =
+          Arrays.asList(
+              Category.create(0.7952058f, 934, "cheeseburger", ""),
+              Category.create(0.9969325f, 806, "soccer ball", ""),
+              Category.create(0.6390683f, 934, "cheeseburger", ""),
+              Category.create(0.7952058f, 934, "cheeseburger", ""));
+      for (int i = 0; i < results.size(); ++i) {
+        assertHasOneHead(results.get(i));
+        assertCategoriesAre(results.get(i), Arrays.asList(expectedCategories.get(i)));
+      }
+      // The task remains usable after the batch.
+      assertCategoriesAre(
+          imageClassifier.classify(getImageFromAsset(BURGER_IMAGE)),
+          Arrays.asList(Category.create(0.7952058f, 934, "cheeseburger", "")));
+    }
+
+    @Test
+    public void classifyAll_succeedsWithBatchLargerThanTheInFlightWindow() throws Exception {
+      ImageClassifierOptions options =
+          ImageClassifierOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(FLOAT_MODEL_FILE).build())
+              .setMaxResults(1)
+              .build();
+      ImageClassifier imageClassifier =
+          ImageClassifier.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      MPImage image = getImageFromAsset(BURGER_IMAGE);
+      List<MPImage> images = new ArrayList<>();
+      for (int i = 0; i < 40; ++i) {
+        images.add(image);
+      }
+
+      List<ImageClassifierResult> results = imageClassifier.classifyAll(images);
+
+      assertThat(results).hasSize(images.size());
+      for (ImageClassifierResult result : results) {
+        assertHasOneHead(result);
+        assertCategoriesAre(
+            result, Arrays.asList(Category.create(0.7952058f, 934, "cheeseburger", "")));
+      }
+    }
+
+    @Test
+    public void classifyAll_succeedsWithEmptyBatch() throws Exception {
+      ImageClassifierOptions options =
+          ImageClassifierOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(FLOAT_MODEL_FILE).build())
+              .build();
+      ImageClassifier imageClassifier =
+          ImageClassifier.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+
+      assertThat(imageClassifier.classifyAll(new ArrayList<>())).isEmpty();
+    }
+
+    @Test
+    public void classifyAll_failsWithMismatchedImageProcessingOptions() throws Exception {
+      ImageClassifierOptions options =
+          ImageClassifierOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(FLOAT_MODEL_FILE).build())
+              .build();
+      ImageClassifier imageClassifier =
+          ImageClassifier.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      MPImage image = getImageFromAsset(BURGER_IMAGE);
+
+      IllegalArgumentException exception =
+          assertThrows(
+              IllegalArgumentException.class,
+              () ->
+                  imageClassifier.classifyAll(
+                      Arrays.asList(image, image),
+                      Arrays.asList(ImageProcessingOptions.builder().build())));
+      assertThat(exception)
+          .hasMessageThat()
+          .contains("Expected as many image processing options as images, found: 1 vs. 2.");
+    }
   }
 
   @RunWith(AndroidJUnit4.class)
@@ -372,6 +513,11 @@ public class ImageClassifierTest {
               MediaPipeException.class,
               () -> imageClassifier.classify(getImageFromAsset(BURGER_IMAGE)));
       assertThat(exception).hasMessageThat().contains("not initialized with the image mode");
+      exception =
+          assertThrows(
+              MediaPipeException.class,
+              () -> imageClassifier.classifyAll(Arrays.asList(getImageFromAsset(BURGER_IMAGE))));
+      assertThat(exception).hasMessageThat().contains("not initialized with the image mode");
       exception =
           assertThrows(
               MediaPipeException.class,
@@ -423,6 +569,154 @@ public class ImageClassifierTest {
           results, Arrays.asList(Category.create(0.7952058f, 934, "cheeseburger", "")));
     }
 
+    @Test
+    public void classifyAsFuture_completesOnExecutor() throws Exception {
+      ImageClassifierOptions options =
+          ImageClassifierOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(FLOAT_MODEL_FILE).build())
+              .setMaxResults(1)
+              .build();
+      ImageClassifier imageClassifier =
+          ImageClassifier.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      ExecutorService executor =
+          Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "result-executor"));
+      CountDownLatch executorBlocked = new CountDownLatch(1);
+      try {
+        // Keeps the executor busy, so that the future can't be completed before the dependent
+        // stage below is attached to it.
+        executor.execute(
+            () -> {
+              try {
+                executorBlocked.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+        CompletableFuture<ImageClassifierResult> pendingResult =
+            imageClassifier.classifyAsFuture(
+                getImageFromAsset(BURGER_IMAGE),
+                ImageProcessingOptions.builder().build(),
+                executor);
+        CompletableFuture<String> completionThread =
+            pendingResult.thenApply(result -> Thread.currentThread().getName());
+        executorBlocked.countDown();
+
+        assertThat(completionThread.get()).isEqualTo("result-executor");
+        ImageClassifierResult results = pendingResult.get();
+        assertHasOneHead(results);
+        assertCategoriesAre(
+            results, Arrays.asList(Category.create(0.7952058f, 934, "cheeseburger", "")));
+      } finally {
+        executorBlocked.countDown();
+        executor.shutdown();
+        imageClassifier.close();
+      }
+    }
+
+    @Test
+    public void create_failsWithMultipleTaskRunnersInVideoMode() throws Exception {
+      IllegalArgumentException exception =
+          assertThrows(
+              IllegalArgumentException.class,
+              () ->
+                  ImageClassifierOptions.builder()
+                      .setBaseOptions(
+                          BaseOptions.builder().setModelAssetPath(FLOAT_MODEL_FILE).build())
+                      .setRunningMode(RunningMode.VIDEO)
+                      .setNumTaskRunners(2)
+                      .build());
+      assertThat(exception)
+          .hasMessageThat()
+          .contains("Only the image classifier in the image mode can have more than one");
+    }
+
+    @Test
+    public void classify_succeedsWithConcurrentCallsOnTaskRunnerPool() throws Exception {
+      MPImage burgerImage = getImageFromAsset(BURGER_IMAGE);
+      MPImage multiObjectsImage = getImageFromAsset(MULTI_OBJECTS_IMAGE);
+      ImageProcessingOptions roiOptions =
+          ImageProcessingOptions.builder()
+              .setRegionOfInterest(new RectF(0.450f, 0.308f, 0.614f, 0.734f))
+              .build();
+      ImageClassifierOptions options =
+          ImageClassifierOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(FLOAT_MODEL_FILE).build())
+              .setMaxResults(1)
+              .setNumTaskRunners(3)
+              .build();
+      ImageClassifier imageClassifier =
+          ImageClassifier.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      ExecutorService executor = Executors.newFixedThreadPool(6);
+      try {
+        List<Future<ImageClassifierResult>> pendingResults = new ArrayList<>();
+        for (int i = 0; i < 12; ++i) {
+          // Alternates between two images with different rects, so that the runners of the pool
+          // can't all share the same rect packet.
+          pendingResults.add(
+              i % 2 == 0
+                  ? executor.submit(() -> imageClassifier.classify(burgerImage))
+                  : executor.submit(() -> imageClassifier.classify(multiObjectsImage, roiOptions)));
+        }
+        for (int i = 0; i < pendingResults.size(); ++i) {
+          ImageClassifierResult results = pendingResults.get(i).get();
+          assertHasOneHead(results);
+          assertCategoriesAre(
+              results,
+              Arrays.asList(
+                  i % 2 == 0
+                      ? Category.create(0.7952058f, 934, "cheeseburger", "")
+                      : Category.create(0.9969325f, 806, "soccer ball", "")));
+        }
+      } finally {
+        executor.shutdown();
+        imageClassifier.close();
+      }
+    }
+
+    @Test
+    public void classifyAllAndAsFuture_runOnTaskRunnerPool() throws Exception {
+      MPImage burgerImage = getImageFromAsset(BURGER_IMAGE);
+      ImageClassifierOptions options =
+          ImageClassifierOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(FLOAT_MODEL_FILE).build())
+              .setMaxResults(1)
+              .setNumTaskRunners(2)
+              .build();
+      try (ImageClassifier imageClassifier =
+          ImageClassifier.createFromOptions(ApplicationProvider.getApplicationContext(), options)) {
+        CompletableFuture<ImageClassifierResult> pendingResult =
+            imageClassifier.classifyAsFuture(burgerImage, ImageProcessingOptions.builder().build());
+        List<ImageClassifierResult> results =
+            imageClassifier.classifyAll(Arrays.asList(burgerImage, burgerImage));
+
+        assertThat(results).hasSize(2);
+        for (ImageClassifierResult result : results) {
+          assertCategoriesAre(
+              result, Arrays.asList(Category.create(0.7952058f, 934, "cheeseburger", "")));
+        }
+        assertCategoriesAre(
+            pendingResult.get(),
+            Arrays.asList(Category.create(0.7952058f, 934, "cheeseburger", "")));
+      }
+    }
+
+    @Test
+    public void classify_failsOnClosedTaskRunnerPool() throws Exception {
+      MPImage burgerImage = getImageFromAsset(BURGER_IMAGE);
+      ImageClassifierOptions options =
+          ImageClassifierOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(FLOAT_MODEL_FILE).build())
+              .setNumTaskRunners(2)
+              .build();
+      ImageClassifier imageClassifier =
+          ImageClassifier.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      imageClassifier.close();
+
+      MediaPipeException exception =
+          assertThrows(MediaPipeException.class, () -> imageClassifier.classify(burgerImage));
+      assertThat(exception).hasMessageThat().contains("has been closed");
+    }
+
     @Test
     public void classify_succeedsWithVideoMode() throws Exception {
       MPImage image = getImageFromAsset(BURGER_IMAGE);
@@ -15,26 +15,37 @@
 package com.google.mediapipe.tasks.vision.objectdetector;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertThrows;
 
 import android.content.res.AssetManager;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.RectF;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.Range;
 import com.google.mediapipe.framework.MediaPipeException;
+import com.google.mediapipe.framework.image.BitmapExtractor;
 import com.google.mediapipe.framework.image.BitmapImageBuilder;
 import com.google.mediapipe.framework.image.MPImage;
 import com.google.mediapipe.tasks.components.containers.Category;
 import com.google.mediapipe.tasks.components.containers.Detection;
 import com.google.mediapipe.tasks.core.BaseOptions;
+import com.google.mediapipe.tasks.core.FlowLimiterOptions;
 import com.google.mediapipe.tasks.core.TestUtils;
 import com.google.mediapipe.tasks.vision.core.ImageProcessingOptions;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
 import com.google.mediapipe.tasks.vision.objectdetector.ObjectDetector.ObjectDetectorOptions;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -180,6 +191,25 @@ public class ObjectDetectorTest {
       assertContainsOnlyCat(results, CAT_BOUNDING_BOX, CAT_SCORE);
     }
 
+    @Test
+    public void detect_succeedsWithMappedModelFile() throws Exception {
+      ObjectDetectorOptions options =
+          ObjectDetectorOptions.builder()
+              .setBaseOptions(
+                  BaseOptions.builder()
+                      .setModelAssetMappedFile(
+                          TestUtils.loadFile(
+                              ApplicationProvider.getApplicationContext(), MODEL_FILE))
+                      .setPrefetchModelAsset(true)
+                      .build())
+              .setMaxResults(1)
+              .build();
+      ObjectDetector objectDetector =
+          ObjectDetector.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      ObjectDetectionResult results = objectDetector.detect(getImageFromAsset(CAT_AND_DOG_IMAGE));
+      assertContainsOnlyCat(results, CAT_BOUNDING_BOX, CAT_SCORE);
+    }
+
     @Test
     public void create_failsWithMissingModel() throws Exception {
       String nonexistentFile = "/path/to/non/existent/file";
@@ -401,6 +431,38 @@ public class ObjectDetectorTest {
       assertContainsOnlyCat(results, CAT_BOUNDING_BOX, CAT_SCORE);
     }
 
+    @Test
+    public void detect_successWithFlatResult() throws Exception {
+      ObjectDetectorOptions options =
+          ObjectDetectorOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(MODEL_FILE).build())
+              .setRunningMode(RunningMode.IMAGE)
+              .setMaxResults(1)
+              .setUseFlatResult(true)
+              .build();
+      ObjectDetector objectDetector =
+          ObjectDetector.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      ObjectDetectionResult results = objectDetector.detect(getImageFromAsset(CAT_AND_DOG_IMAGE));
+      assertThat(results).isInstanceOf(FlatObjectDetectionResult.class);
+      FlatObjectDetectionResult flatResults = (FlatObjectDetectionResult) results;
+      assertThat(flatResults.detectionsCount()).isEqualTo(1);
+      assertThat(flatResults.boundingBoxesBuffer().remaining())
+          .isEqualTo(FlatObjectDetectionResult.BOUNDING_BOX_STRIDE);
+      assertThat(flatResults.boundingBoxesBuffer().get(0))
+          .isWithin(PIXEL_DIFF_TOLERANCE)
+          .of(CAT_BOUNDING_BOX.left);
+      assertThat(flatResults.scoresBuffer(0).get(0))
+          .isEqualTo(flatResults.detections().get(0).categories().get(0).score());
+      assertContainsOnlyCat(results, CAT_BOUNDING_BOX, CAT_SCORE);
+
+      // A recycled result is reused for the next frame.
+      flatResults.close();
+      ObjectDetectionResult nextResults =
+          objectDetector.detect(getImageFromAsset(CAT_AND_DOG_IMAGE));
+      assertThat(nextResults).isSameInstanceAs(flatResults);
+      assertContainsOnlyCat(nextResults, CAT_BOUNDING_BOX, CAT_SCORE);
+    }
+
     @Test
     public void detect_successWithVideoMode() throws Exception {
       ObjectDetectorOptions options =
@@ -467,6 +529,193 @@ public class ObjectDetectorTest {
         }
       }
     }
+
+    @Test
+    public void detect_successWithLazyInputImageInLiveSteamMode() throws Exception {
+      MPImage image = getImageFromAsset(CAT_AND_DOG_IMAGE);
+      List<MPImage> inputImages = Collections.synchronizedList(new ArrayList<>());
+      ObjectDetectorOptions options =
+          ObjectDetectorOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(MODEL_FILE).build())
+              .setRunningMode(RunningMode.LIVE_STREAM)
+              .setResultListener(
+                  (objectDetectionResult, inputImage) -> {
+                    Bitmap bitmap = BitmapExtractor.extract(inputImage);
+                    assertThat(bitmap.getWidth()).isEqualTo(image.getWidth());
+                    assertThat(bitmap.getHeight()).isEqualTo(image.getHeight());
+                    inputImage.getInternal().acquire();
+                    inputImages.add(inputImage);
+                  })
+              .setMaxResults(1)
+              .build();
+      try (ObjectDetector objectDetector =
+          ObjectDetector.createFromOptions(ApplicationProvider.getApplicationContext(), options)) {
+        objectDetector.detectAsync(image, /* timestampsMs= */ 0);
+      }
+      assertThat(inputImages).hasSize(1);
+      // The extracted bitmap outlives the output packet.
+      assertThat(BitmapExtractor.extract(inputImages.get(0)).getWidth())
+          .isEqualTo(image.getWidth());
+      inputImages.get(0).close();
+    }
+
+    @Test
+    public void detect_closesInputImageWhenListenerReturns() throws Exception {
+      MPImage image = getImageFromAsset(CAT_AND_DOG_IMAGE);
+      BlockingQueue<MPImage> inputImages = new LinkedBlockingQueue<>();
+      ObjectDetectorOptions options =
+          ObjectDetectorOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(MODEL_FILE).build())
+              .setRunningMode(RunningMode.LIVE_STREAM)
+              .setResultListener((objectDetectionResult, inputImage) -> inputImages.add(inputImage))
+              .setMaxResults(1)
+              .build();
+      try (ObjectDetector objectDetector =
+          ObjectDetector.createFromOptions(ApplicationProvider.getApplicationContext(), options)) {
+        objectDetector.detectAsync(image, /* timestampsMs= */ 0);
+        // The output packet was released when the listener returned.
+        MPImage inputImage = inputImages.poll(10, SECONDS);
+        assertThrows(IllegalStateException.class, () -> BitmapExtractor.extract(inputImage));
+      }
+    }
+
+    @Test
+    public void detect_successWithInputImageExtractedAfterListenerReturns() throws Exception {
+      MPImage image = getImageFromAsset(CAT_AND_DOG_IMAGE);
+      BlockingQueue<MPImage> inputImages = new LinkedBlockingQueue<>();
+      ObjectDetectorOptions options =
+          ObjectDetectorOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(MODEL_FILE).build())
+              .setRunningMode(RunningMode.LIVE_STREAM)
+              .setResultListener(
+                  (objectDetectionResult, inputImage) -> {
+                    // Keeps the input image valid after the listener returns.
+                    inputImage.getInternal().acquire();
+                    inputImages.add(inputImage);
+                  })
+              .setMaxResults(1)
+              .build();
+      ObjectDetector objectDetector =
+          ObjectDetector.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      objectDetector.detectAsync(image, /* timestampsMs= */ 0);
+      objectDetector.detectAsync(image, /* timestampsMs= */ 1);
+      // The listener has returned, the image is extracted on the test thread.
+      MPImage inputImage = inputImages.poll(10, SECONDS);
+      assertThat(BitmapExtractor.extract(inputImage).getWidth()).isEqualTo(image.getWidth());
+      MPImage unextractedInputImage = inputImages.poll(10, SECONDS);
+      objectDetector.close();
+
+      assertThat(BitmapExtractor.extract(inputImage).getHeight()).isEqualTo(image.getHeight());
+      assertThrows(
+          IllegalStateException.class, () -> BitmapExtractor.extract(unextractedInputImage));
+      inputImage.close();
+      unextractedInputImage.close();
+    }
+
+    @Test
+    public void detect_successWithoutInputImageInLiveSteamMode() throws Exception {
+      MPImage image = getImageFromAsset(CAT_AND_DOG_IMAGE);
+      List<MPImage> inputImages = Collections.synchronizedList(new ArrayList<>());
+      ObjectDetectorOptions options =
+          ObjectDetectorOptions.builder()
+              .setBaseOptions(BaseOptions.builder().setModelAssetPath(MODEL_FILE).build())
+              .setRunningMode(RunningMode.LIVE_STREAM)
+              .setResultListener(
+                  (objectDetectionResult, inputImage) -> {
+                    assertContainsOnlyCat(objectDetectionResult, CAT_BOUNDING_BOX, CAT_SCORE);
+                    inputImages.add(inputImage);
+                  })
+              .setOutputInputImage(false)
+              .setMaxResults(1)
+              .build();
+      try (ObjectDetector objectDetector =
+          ObjectDetector.createFromOptions(ApplicationProvider.getApplicationContext(), options)) {
+        objectDetector.detectAsync(image, /* timestampsMs= */ 0);
+      }
+      assertThat(inputImages).containsExactly((MPImage) null);
+    }
+
+    @Test
+    public void detect_reportsDroppedInputsInLiveSteamMode() throws Exception {
+      MPImage image = getImageFromAsset(CAT_AND_DOG_IMAGE);
+      List<Long> droppedTimestamps = Collections.synchronizedList(new ArrayList<>());
+      CountDownLatch allFramesSent = new CountDownLatch(1);
+      ObjectDetectorOptions options =
+          ObjectDetectorOptions.builder()
+              .setBaseOptions(
+                  BaseOptions.builder()
+                      .setModelAssetPath(MODEL_FILE)
+                      .setFlowLimiterOptions(
+                          FlowLimiterOptions.builder()
+                              .setMaxInFlight(1)
+                              .setMaxInQueue(0)
+                              .setDropListener(droppedTimestamps::add)
+                              .build())
+                      .build())
+              .setRunningMode(RunningMode.LIVE_STREAM)
+              .setResultListener(
+                  (objectDetectionResult, inputImage) -> {
+                    try {
+                      allFramesSent.await();
+                    } catch (InterruptedException e) {
+                      Thread.currentThread().interrupt();
+                    }
+                  })
+              .setMaxResults(1)
+              .build();
+      ObjectDetector objectDetector =
+          ObjectDetector.createFromOptions(ApplicationProvider.getApplicationContext(), options);
+      int numFrames = 100;
+      try {
+        // With a single input in flight and no queue, the flow limiter drops every frame that
+        // arrives while another one is processed, and the burst is much shorter than the inference
+        // of all its frames. The result listener blocks until the whole burst is sent, so that the
+        // graph can't go idle in between.
+        for (int i = 0; i < numFrames; i++) {
+          objectDetector.detectAsync(image, /* timestampsMs= */ i);
+        }
+      } finally {
+        allFramesSent.countDown();
+        objectDetector.close();
+      }
+
+      assertThat(objectDetector.getDroppedInputCount()).isGreaterThan(0L);
+      assertThat(droppedTimestamps).hasSize((int) objectDetector.getDroppedInputCount());
+      for (long timestampMs : droppedTimestamps) {
+        assertThat(timestampMs).isIn(Range.closed(0L, (long) numFrames - 1));
+      }
+    }
+
+    @Test
+    public void detect_successWithLiveSteamModeAndAdaptiveFlowLimiting() throws Exception {
+      MPImage image = getImageFromAsset(CAT_AND_DOG_IMAGE);
+      ObjectDetectorOptions options =
+          ObjectDetectorOptions.builder()
+              .setBaseOptions(
+                  BaseOptions.builder()
+                      .setModelAssetPath(MODEL_FILE)
+                      .setFlowLimiterOptions(
+                          FlowLimiterOptions.builder()
+                              .setMaxInFlight(3)
+                              .setMaxInQueue(2)
+                              .setTargetLatencyMs(1000L)
+                              .build())
+                      .build())
+              .setRunningMode(RunningMode.LIVE_STREAM)
+              .setResultListener(
+                  (objectDetectionResult, inputImage) -> {
+                    assertContainsOnlyCat(objectDetectionResult, CAT_BOUNDING_BOX, CAT_SCORE);
+                    assertImageSizeIsExpected(inputImage);
+                  })
+              .setMaxResults(1)
+              .build();
+      try (ObjectDetector objectDetector =
+          ObjectDetector.createFromOptions(ApplicationProvider.getApplicationContext(), options)) {
+        for (int i = 0; i < 40; i++) {
+          objectDetector.detectAsync(image, /*timestampsMs=*/ i);
+        }
+      }
+    }
   }
 
   private static MPImage getImageFromAsset(String filePath) throws Exception {